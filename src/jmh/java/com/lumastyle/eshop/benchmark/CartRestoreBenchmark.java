@@ -0,0 +1,131 @@
+package com.lumastyle.eshop.benchmark;
+
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
+import com.lumastyle.eshop.dto.cart.CartItemUpdate;
+import com.lumastyle.eshop.dto.cart.CartRequest;
+import com.lumastyle.eshop.dto.cart.CartResponse;
+import com.lumastyle.eshop.entity.CartEntity;
+import com.lumastyle.eshop.mapper.CartMapper;
+import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.service.impl.CartServiceImpl;
+import com.lumastyle.eshop.store.CartStore;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Latency of restoring a saved basket of {@code items} products with {@code quantity} pieces each.
+ * <p>
+ * {@code perPiece} is the former frontend behaviour, one {@code POST /api/cart} per piece;
+ * {@code bulk} is a single {@code PUT /api/cart/items}. Every HTTP request is charged
+ * {@code requestLatencyMicros} for the network and servlet stack and every store call
+ * {@code storeLatencyMicros} for the MongoDB round-trip, both by parking. Requests and
+ * round-trips per restore are printed at the end of each run.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CartRestoreBenchmark {
+
+    @Param({"20"})
+    public int items;
+
+    @Param({"1", "3"})
+    public int quantity;
+
+    @Param({"1000"})
+    public long requestLatencyMicros;
+
+    @Param({"300"})
+    public long storeLatencyMicros;
+
+    private final AtomicLong storeCalls = new AtomicLong();
+    private CartServiceImpl service;
+    private List<String> productIds;
+    private CartBulkRequest bulkRequest;
+
+    /**
+     * Requests and store round-trips of one restore, printed at the end of the run.
+     */
+    @State(Scope.Thread)
+    public static class Calls {
+        long requests;
+        long roundTrips;
+
+        @TearDown(Level.Trial)
+        public void report(BenchmarkParams params) {
+            System.out.printf("%n%s: %d requests, %d store round-trips per restore%n",
+                    params.getBenchmark(), requests, roundTrips);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        CartEntity cart = new CartEntity("cart-1", "user-1", new HashMap<>());
+        CartStore store = (CartStore) Proxy.newProxyInstance(CartStore.class.getClassLoader(),
+                new Class<?>[]{CartStore.class},
+                (proxy, method, args) -> {
+                    if (!"incrementItem".equals(method.getName()) && !"updateItems".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    storeCalls.incrementAndGet();
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(storeLatencyMicros));
+                    return cart;
+                });
+        UserService users = (UserService) Proxy.newProxyInstance(UserService.class.getClassLoader(),
+                new Class<?>[]{UserService.class},
+                (proxy, method, args) -> "user-1");
+        service = new CartServiceImpl(store, users, Mappers.getMapper(CartMapper.class));
+
+        productIds = new ArrayList<>();
+        List<CartItemUpdate> lines = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            String productId = String.format("%024x", i);
+            productIds.add(productId);
+            lines.add(CartItemUpdate.builder().productId(productId).quantity(quantity).build());
+        }
+        bulkRequest = new CartBulkRequest(lines);
+    }
+
+    @Benchmark
+    public CartResponse perPiece(Calls calls) {
+        long before = storeCalls.get();
+        calls.requests = 0;
+        CartResponse response = null;
+        for (String productId : productIds) {
+            for (int piece = 0; piece < quantity; piece++) {
+                response = request(calls, () -> service.addToCart(new CartRequest(productId)));
+            }
+        }
+        calls.roundTrips = storeCalls.get() - before;
+        return response;
+    }
+
+    @Benchmark
+    public CartResponse bulk(Calls calls) {
+        long before = storeCalls.get();
+        calls.requests = 0;
+        CartResponse response = request(calls, () -> service.updateCart(bulkRequest));
+        calls.roundTrips = storeCalls.get() - before;
+        return response;
+    }
+
+    private CartResponse request(Calls calls, Supplier<CartResponse> handler) {
+        calls.requests++;
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(requestLatencyMicros));
+        return handler.get();
+    }
+}
@@ -0,0 +1,69 @@
+package com.lumastyle.eshop.benchmark;
+
+import com.lumastyle.eshop.service.impl.GoPayServiceImpl;
+import com.lumastyle.eshop.support.GoPayStandIn;
+import cz.gopay.api.v3.GPClientException;
+import cz.gopay.api.v3.impl.apacheclient.HttpClientGPConnector;
+import cz.gopay.api.v3.model.common.Currency;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import cz.gopay.api.v3.model.payment.PaymentFactory;
+import cz.gopay.api.v3.model.payment.support.ItemType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of creating the GoPay payment of one order against a local {@link GoPayStandIn} that
+ * answers every payment call after {@code latencyMillis}, the round-trip to GoPay.
+ * <p>
+ * {@code reused} is the {@link GoPayServiceImpl}, which keeps one connector and its app token
+ * across payments; {@code perPayment} builds a connector and requests an app token for every
+ * payment, as the service did before, so it also pays for the new connection and the OAuth call.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GoPayPaymentBenchmark {
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private GoPayStandIn goPay;
+    private GoPayServiceImpl service;
+    private BasePayment payment;
+
+    @Setup
+    public void setUp() throws Exception {
+        goPay = new GoPayStandIn(latencyMillis);
+        service = goPay.newService();
+        payment = PaymentFactory.createBasePaymentBuilder()
+                .order("665f00000000000000000001", 129900L, Currency.CZK, "Payment for an order")
+                .addItem("An item of the order", 129900L, 0L, 1, ItemType.ITEM, null, null)
+                .withCallback("http://localhost:8080/api/payment/return", "http://localhost:8080/api/payment/notify")
+                .inLang("cs")
+                .toEshop(8123456789L)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        goPay.close();
+    }
+
+    @Benchmark
+    public Payment reused() {
+        return service.createPayment(payment);
+    }
+
+    @Benchmark
+    public Payment perPayment() throws GPClientException {
+        return HttpClientGPConnector.build(goPay.apiUrl())
+                .getAppToken(GoPayStandIn.CLIENT_ID, GoPayStandIn.CLIENT_SECRET)
+                .createPayment(payment);
+    }
+}
@@ -0,0 +1,86 @@
+package com.lumastyle.eshop.benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumastyle.eshop.security.AppUserPrincipal;
+import com.lumastyle.eshop.security.VerifiedTokenCache;
+import com.lumastyle.eshop.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.Encoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the token checks done by {@code JwtAuthFilter} for each authenticated request.
+ * <p>
+ * {@code legacyValidation} reproduces the former behaviour (key and parser rebuilt per claim,
+ * three parses per request); {@code parseOnceValidation} is the current filter path and
+ * {@code cachedValidation} the same path with {@code auth.token.cache.enabled=true}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtValidationBenchmark {
+
+    private String secretKey;
+    private JwtUtil jwtUtil;
+    private UserDetails user;
+    private String token;
+    private VerifiedTokenCache tokenCache;
+
+    @Setup
+    public void setUp() {
+        Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        secretKey = Encoders.BASE64.encode(key.getEncoded());
+        jwtUtil = new JwtUtil(secretKey, 1000L * 60 * 60 * 10);
+        user = new AppUserPrincipal("user-1", "bench@example.com", "", Collections.emptyList());
+        token = jwtUtil.generateToken(user);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        tokenCache = new VerifiedTokenCache(Caffeine.newBuilder().maximumSize(1_000).build(),
+                registry.counter("hits"), registry.counter("misses"));
+        ReflectionTestUtils.setField(tokenCache, "enabled", true);
+    }
+
+    @Benchmark
+    public boolean parseOnceValidation() {
+        Claims claims = jwtUtil.parseToken(token);
+        return jwtUtil.validateToken(claims, user) && jwtUtil.extractUserId(claims) != null;
+    }
+
+    @Benchmark
+    public boolean cachedValidation() {
+        Claims claims = tokenCache.getOrVerify(token, jwtUtil::parseToken);
+        return jwtUtil.validateToken(claims, user) && jwtUtil.extractUserId(claims) != null;
+    }
+
+    @Benchmark
+    public boolean legacyValidation() {
+        String username = legacyClaims().getSubject();
+        return username.equals(user.getUsername())
+                && legacyClaims().getSubject().equals(user.getUsername())
+                && !legacyClaims().getExpiration().before(new Date());
+    }
+
+    private Claims legacyClaims() {
+        Key signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        return Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
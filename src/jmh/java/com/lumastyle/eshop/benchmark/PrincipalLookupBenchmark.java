@@ -0,0 +1,68 @@
+package com.lumastyle.eshop.benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumastyle.eshop.entity.UserEntity;
+import com.lumastyle.eshop.repository.UserRepository;
+import com.lumastyle.eshop.service.impl.AppUserDetailsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-request latency of the principal lookup done by {@code JwtAuthFilter}.
+ * <p>
+ * The repository is a stub that parks for {@code repositoryLatencyMicros} to stand in for a
+ * MongoDB round-trip; {@code uncached} uses a zero-size cache, i.e. the former behaviour.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrincipalLookupBenchmark {
+
+    private static final String EMAIL = "bench@example.com";
+
+    @Param({"200"})
+    public long repositoryLatencyMicros;
+
+    private AppUserDetailsService cached;
+    private AppUserDetailsService uncached;
+
+    @Setup
+    public void setUp() {
+        UserEntity user = UserEntity.builder().id("user-1").email(EMAIL).password("hash").build();
+        UserRepository repository = (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> {
+                    if (!"findByEmail".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(repositoryLatencyMicros));
+                    return Optional.of(user);
+                });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cached = new AppUserDetailsService(repository, Caffeine.newBuilder().maximumSize(10_000).build(),
+                registry.counter("hits"), registry.counter("misses"));
+        uncached = new AppUserDetailsService(repository, Caffeine.newBuilder().maximumSize(0).executor(Runnable::run).build(),
+                registry.counter("hits"), registry.counter("misses"));
+    }
+
+    @Benchmark
+    public UserDetails cached() {
+        return cached.loadUserByUsername(EMAIL);
+    }
+
+    @Benchmark
+    public UserDetails uncached() {
+        return uncached.loadUserByUsername(EMAIL);
+    }
+}
@@ -0,0 +1,107 @@
+package com.lumastyle.eshop.benchmark;
+
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.impl.S3AsyncFileStorageServiceImpl;
+import com.lumastyle.eshop.service.impl.S3FileStorageServiceImpl;
+import com.lumastyle.eshop.support.S3StandIn;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of uploading one product image of {@code sizeMb} megabytes to a local {@link S3StandIn}
+ * that answers every request after {@code latencyMillis}, the round-trip to S3.
+ * <p>
+ * {@code sync} is the blocking {@code S3Client} service, which sends the parts of a multipart
+ * upload one after another; {@code async} is the {@code S3AsyncClient} service, which sends them
+ * all at once. Files below 8 MB are a single PUT in both. Every invocation changes the first
+ * bytes of the file, so its content key is new and the upload is not skipped; the hashing pass
+ * that derives the key is part of the measured time.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S3UploadBenchmark {
+
+    private static final String BUCKET = "benchmark-bucket";
+
+    @Param({"1", "25"})
+    public int sizeMb;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private S3StandIn s3;
+    private S3Client client;
+    private S3AsyncClient asyncClient;
+    private FileStorageService syncService;
+    private FileStorageService asyncService;
+    private byte[] content;
+    private long invocation;
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() throws Exception {
+        s3 = new S3StandIn(latencyMillis);
+        client = s3.configure(S3Client.builder()).build();
+        asyncClient = s3.configure(S3AsyncClient.builder()).build();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // no key is ever queued for deletion here, so withdrawing it is free
+        FileCleanupQueue cleanupQueue = new FileCleanupQueue(null) {
+            @Override
+            public void withdraw(String key) {
+            }
+        };
+        syncService = configure(new S3FileStorageServiceImpl(client, registry.counter("uploads"),
+                registry.counter("deletes"), registry.counter("bytes"), registry.counter("deduplicated"), cleanupQueue));
+        asyncService = configure(new S3AsyncFileStorageServiceImpl(asyncClient, registry.counter("uploads"),
+                registry.counter("deletes"), registry.counter("bytes"), registry.counter("deduplicated"), cleanupQueue));
+
+        content = new byte[sizeMb * 1024 * 1024];
+        new Random(sizeMb).nextBytes(content);
+        file = new MockMultipartFile("file", "image.png", "image/png", content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        asyncClient.close();
+        s3.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void newContent() {
+        invocation++;
+        for (int i = 0; i < Long.BYTES; i++) {
+            content[i] = (byte) (invocation >>> (8 * i));
+        }
+    }
+
+    @Benchmark
+    public String sync() {
+        return syncService.uploadFile(file);
+    }
+
+    @Benchmark
+    public String async() {
+        return asyncService.uploadFileAsync(file).join();
+    }
+
+    private static FileStorageService configure(FileStorageService service) {
+        ReflectionTestUtils.setField(service, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(service, "multipartThreshold", 8L * 1024 * 1024);
+        ReflectionTestUtils.setField(service, "partSize", 5L * 1024 * 1024);
+        return service;
+    }
+}
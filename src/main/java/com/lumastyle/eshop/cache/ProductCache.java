@@ -0,0 +1,254 @@
+package com.lumastyle.eshop.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.lumastyle.eshop.dto.product.ProductResponse;
+import io.micrometer.core.instrument.Counter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache of the product catalog.
+ * <p>
+ * In Redis (L2) every product is stored under its own key ({@code product::<id>}), so adding
+ * or deleting a product touches only that product. Listing pages are cached as
+ * {@link ProductPage}s of product IDs keyed by the query shape; a page is assembled from
+ * its IDs and one {@code MGET}.
+ * </p>
+ * <p>
+ * In front of Redis, every node keeps an in-process near cache (L1) of single products and of
+ * listing pages, so repeated reads are heap hits without a round-trip or JSON parsing.
+ * Changes are broadcast over Redis pub/sub ({@value #INVALIDATION_CHANNEL}) and drop the
+ * affected L1 entries on every node. L1 entries also expire after
+ * {@code product.near-cache.ttl.millis}, which bounds staleness if a message is lost.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCache {
+
+    static final String KEY_PREFIX = "product::";
+    public static final String INVALIDATION_CHANNEL = "product-cache-invalidation";
+
+    // invalidation target that drops the listing pages but keeps the product entries
+    private static final String PAGES = "#pages";
+
+    private final RedisTemplate<String, ProductResponse> productRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, ProductResponse> nearProductCache;
+    private final Cache<String, ProductPage> nearPageCache;
+    private final Counter productCacheHitsCounter;
+    private final Counter productCacheMissesCounter;
+    private final Counter productNearCacheHitsCounter;
+    private final Counter productNearCacheMissesCounter;
+
+    // lets this node ignore its own broadcasts, which it has already applied locally
+    private final String nodeId = UUID.randomUUID().toString();
+    // bumped on every invalidation, so a load racing with one never repopulates L1 with stale data
+    private final AtomicLong version = new AtomicLong();
+
+    @Value("${product.cache.ttl.millis:3600000}")
+    private long ttlMillis;
+
+    /**
+     * Reads one product from L1, then from Redis.
+     *
+     * @param id the product ID
+     * @return the cached product, or empty on a miss in both tiers
+     */
+    public Optional<ProductResponse> get(String id) {
+        ProductResponse product = nearProductCache.getIfPresent(id);
+        if (product != null) {
+            productNearCacheHitsCounter.increment();
+            return Optional.of(product);
+        }
+        productNearCacheMissesCounter.increment();
+
+        long seen = version.get();
+        product = productRedisTemplate.opsForValue().get(key(id));
+        (product != null ? productCacheHitsCounter : productCacheMissesCounter).increment();
+        if (product != null) {
+            putNear(id, product, seen);
+        }
+        return Optional.ofNullable(product);
+    }
+
+    /**
+     * Reads a listing page from L1, or loads it with the loader and keeps it in L1.
+     *
+     * @param queryKey the normalized query shape
+     * @param loader   queries MongoDB for the page
+     * @return the page
+     */
+    public ProductPage getPage(String queryKey, Supplier<ProductPage> loader) {
+        ProductPage page = nearPageCache.getIfPresent(queryKey);
+        if (page != null) {
+            productNearCacheHitsCounter.increment();
+            return page;
+        }
+        productNearCacheMissesCounter.increment();
+
+        long seen = version.get();
+        page = loader.get();
+        nearPageCache.put(queryKey, page);
+        if (version.get() != seen) {
+            nearPageCache.invalidate(queryKey);
+        }
+        return page;
+    }
+
+    /**
+     * Reads several products from L1, and the rest from Redis with a single {@code MGET}.
+     *
+     * @param ids the product IDs
+     * @return the cached products by ID; IDs missing from the cache are absent
+     */
+    public Map<String, ProductResponse> getAll(List<String> ids) {
+        Map<String, ProductResponse> found = new HashMap<>(nearProductCache.getAllPresent(ids));
+        productNearCacheHitsCounter.increment(found.size());
+        List<String> remote = ids.stream().filter(id -> !found.containsKey(id)).toList();
+        if (remote.isEmpty()) {
+            return found;
+        }
+        productNearCacheMissesCounter.increment(remote.size());
+
+        long seen = version.get();
+        List<ProductResponse> values = productRedisTemplate.opsForValue()
+                .multiGet(remote.stream().map(ProductCache::key).toList());
+        int hits = 0;
+        for (int i = 0; i < remote.size(); i++) {
+            ProductResponse product = values == null ? null : values.get(i);
+            if (product != null) {
+                found.put(remote.get(i), product);
+                putNear(remote.get(i), product, seen);
+                hits++;
+            }
+        }
+        productCacheHitsCounter.increment(hits);
+        productCacheMissesCounter.increment(remote.size() - hits);
+        return found;
+    }
+
+    /**
+     * Stores one product in both tiers.
+     *
+     * @param product the product to cache
+     */
+    public void put(ProductResponse product) {
+        long seen = version.get();
+        productRedisTemplate.opsForValue().set(key(product.getId()), product, ttl());
+        putNear(product.getId(), product, seen);
+    }
+
+    /**
+     * Stores several products in L1, and in Redis in one pipelined round-trip.
+     *
+     * @param products the products to cache
+     */
+    public void putAll(Collection<ProductResponse> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        long seen = version.get();
+        Duration ttl = ttl();
+        productRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ValueOperations<String, ProductResponse> values =
+                        (ValueOperations<String, ProductResponse>) operations.opsForValue();
+                products.forEach(product -> values.set(key(product.getId()), product, ttl));
+                return null;
+            }
+        });
+        products.forEach(product -> putNear(product.getId(), product, seen));
+    }
+
+    /**
+     * Drops the listing pages on every node after a product was added; the product
+     * entries stay cached.
+     */
+    public void evictPages() {
+        invalidateNear(PAGES);
+        publish(PAGES);
+    }
+
+    /**
+     * Removes a deleted product from both tiers and the listing pages on every node.
+     *
+     * @param id the product ID
+     */
+    public void evict(String id) {
+        productRedisTemplate.delete(key(id));
+        invalidateNear(id);
+        publish(id);
+        log.debug("Product {} evicted from cache", id);
+    }
+
+    /**
+     * Applies an invalidation broadcast by another node.
+     *
+     * @param message the message received on {@link #INVALIDATION_CHANNEL}
+     */
+    public void onInvalidation(String message) {
+        int separator = message.indexOf(' ');
+        if (separator < 0 || message.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        invalidateNear(message.substring(separator + 1));
+    }
+
+    // === Helper methods ===
+
+    private void putNear(String id, ProductResponse product, long seen) {
+        nearProductCache.put(id, product);
+        if (version.get() != seen) {
+            nearProductCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Drops a product (and the pages that may list it) or just the pages from L1.
+     */
+    private void invalidateNear(String target) {
+        version.incrementAndGet();
+        nearPageCache.invalidateAll();
+        if (!PAGES.equals(target)) {
+            nearProductCache.invalidate(target);
+        }
+    }
+
+    private void publish(String target) {
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + " " + target);
+        } catch (RuntimeException e) {
+            // other nodes catch up when their L1 entries expire
+            log.warn("Could not publish product cache invalidation for {}: {}", target, e.getMessage());
+        }
+    }
+
+    private Duration ttl() {
+        return Duration.ofMillis(ttlMillis);
+    }
+
+    private static String key(String id) {
+        return KEY_PREFIX + id;
+    }
+}
@@ -0,0 +1,18 @@
+package com.lumastyle.eshop.cache;
+
+import java.util.List;
+
+/**
+ * One page of the product listing as cached per query shape: the product IDs in page
+ * order and the cursor of the next page. The products themselves come from the
+ * per-product cache.
+ *
+ * @param ids        the product IDs on the page
+ * @param nextCursor the continuation token, or {@code null} on the last page
+ */
+public record ProductPage(List<String> ids, String nextCursor) {
+
+    public ProductPage {
+        ids = List.copyOf(ids);
+    }
+}
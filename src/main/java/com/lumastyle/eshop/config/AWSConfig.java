@@ -1,14 +1,24 @@
 package com.lumastyle.eshop.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
+import java.time.Duration;
+
+/**
+ * S3 clients for the image storage; not created when images are kept on the local file system
+ * ({@code file.store=local}), so such a node needs no AWS configuration.
+ */
 @Configuration
+@ConditionalOnProperty(name = "file.store", havingValue = "s3", matchIfMissing = true)
 public class AWSConfig {
 
     @Value( "${aws.access.key}")
@@ -20,6 +30,15 @@ public class AWSConfig {
     @Value( "${aws.region}")
     private String region;
 
+    @Value("${aws.s3.async.max-concurrency:64}")
+    private int asyncMaxConcurrency;
+
+    @Value("${aws.s3.async.max-pending-acquires:1000}")
+    private int asyncMaxPendingAcquires;
+
+    @Value("${aws.s3.async.acquisition-timeout.millis:10000}")
+    private long asyncAcquisitionTimeoutMillis;
+
     @Bean
     public S3Client s3Client() {
         return S3Client.builder()
@@ -27,4 +46,24 @@ public class AWSConfig {
                 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
                 .build();
     }
+
+    /**
+     * Non-blocking S3 client used when {@code aws.s3.client=async}. Its Netty connection pool is
+     * shared by all uploads and parts: at most {@code aws.s3.async.max-concurrency} requests are
+     * in flight and further requests wait for a connection instead of failing.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "aws.s3.client", havingValue = "async")
+    public S3AsyncClient s3AsyncClient() {
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(asyncMaxConcurrency)
+                        .maxPendingConnectionAcquires(asyncMaxPendingAcquires)
+                        .connectionAcquisitionTimeout(Duration.ofMillis(asyncAcquisitionTimeoutMillis))
+                        .connectionMaxIdleTime(Duration.ofSeconds(60))
+                        .tcpKeepAlive(true))
+                .build();
+    }
 }
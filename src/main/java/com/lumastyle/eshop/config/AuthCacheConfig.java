@@ -0,0 +1,55 @@
+package com.lumastyle.eshop.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.lumastyle.eshop.entity.UserEntity;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * In-process caches used on the authentication path. They keep per-request
+ * security work (principal lookups, token signature checks) off MongoDB and
+ * the CPU while staying bounded in size and age, so a changed or removed user
+ * is never served for longer than the configured TTL.
+ */
+@Configuration
+public class AuthCacheConfig {
+
+    @Value("${auth.principal.cache.max-size:10000}")
+    private long principalCacheMaxSize;
+
+    @Value("${auth.principal.cache.ttl.millis:300000}")
+    private long principalCacheTtlMillis;
+
+    @Value("${auth.token.cache.max-size:50000}")
+    private long tokenCacheMaxSize;
+
+    /**
+     * Principal cache keyed by e-mail, used by {@code AppUserDetailsService}.
+     */
+    @Bean
+    public Cache<String, UserEntity> principalCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(principalCacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(principalCacheTtlMillis))
+                .build();
+    }
+
+    /**
+     * Verified-token cache keyed by token hash, used by {@code VerifiedTokenCache}.
+     * Every entry expires at its token's own {@code exp} claim.
+     */
+    @Bean
+    public Cache<String, Claims> tokenCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(tokenCacheMaxSize)
+                .expireAfter(Expiry.<String, Claims>creating((hash, claims) -> Duration.ofMillis(
+                        Math.max(0, claims.getExpiration().getTime() - System.currentTimeMillis()))))
+                .build();
+    }
+}
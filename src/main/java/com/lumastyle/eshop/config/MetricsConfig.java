@@ -1,20 +1,23 @@
 package com.lumastyle.eshop.config;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Registers business-related metrics so they are exported through Micrometer
  * and Prometheus. The counters track events such as order creation, failed
- * payments, sent e-mails or S3 operations. A timer measures how long it takes
- * to process an order, and a gauge captures the number of items currently in a
- * shopping cart.
+ * payments, sent e-mails or S3 operations. Timers measure how long it takes
+ * to process an order or to resize an image, gauges capture the payment outbox
+ * and reconciler backlog and the pieces in carts, and a distribution summary
+ * the size of carts.
  */
 @Configuration
 public class MetricsConfig {
@@ -40,16 +43,106 @@ public class MetricsConfig {
     }
 
     /**
-     * Measures how long the order creation and payment initialization take.
+     * Counter of GoPay payment notifications that were answered without any write, because
+     * the payment was already settled or the same notification was being handled.
+     */
+    @Bean
+    public Counter paymentNotificationsDeduplicatedCounter(MeterRegistry registry) {
+        return Counter.builder("payment_notifications_deduplicated_total")
+                .description("Payment notifications that did not change an order")
+                .register(registry);
+    }
+
+    /**
+     * Measures how long it takes to accept an order; the payment itself is created by the outbox worker.
      */
     @Bean
     public Timer orderProcessingTimer(MeterRegistry registry) {
         return Timer.builder("order_processing_seconds")
-                .description("Time to process order and payment")
+                .description("Time to accept an order")
                 .publishPercentileHistogram()
                 .register(registry);
     }
 
+    /**
+     * Number of orders whose GoPay payment has not been created yet.
+     */
+    @Bean
+    public AtomicLong paymentOutboxDepthGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("payment_outbox_depth", gauge, AtomicLong::get)
+                .description("Orders waiting for their payment to be created")
+                .register(registry);
+        return gauge;
+    }
+
+    /**
+     * Age of the oldest order still waiting in the payment outbox.
+     */
+    @Bean
+    public AtomicLong paymentOutboxOldestAgeGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("payment_outbox_oldest_age_seconds", gauge, AtomicLong::get)
+                .description("Age of the oldest order waiting for its payment")
+                .baseUnit("seconds")
+                .register(registry);
+        return gauge;
+    }
+
+    /**
+     * Counts payment attempts whose outcome was dropped because the order was taken over by a
+     * later attempt or was no longer pending.
+     */
+    @Bean
+    public Counter paymentOutboxStaleUpdatesCounter(MeterRegistry registry) {
+        return Counter.builder("payment_outbox_stale_updates_total")
+                .description("Payment attempt outcomes dropped for orders taken over by another attempt")
+                .register(registry);
+    }
+
+    /**
+     * Counts created payments whose state the reconciler read from GoPay.
+     */
+    @Bean
+    public Counter paymentReconcileCheckedCounter(MeterRegistry registry) {
+        return Counter.builder("payment_reconcile_checked_total")
+                .description("Payments checked by the reconciler")
+                .register(registry);
+    }
+
+    /**
+     * Counts orders settled by the reconciler because their notification never arrived.
+     */
+    @Bean
+    public Counter paymentReconcileSettledCounter(MeterRegistry registry) {
+        return Counter.builder("payment_reconcile_settled_total")
+                .description("Orders settled by the reconciler")
+                .register(registry);
+    }
+
+    /**
+     * Counts reconciler checks that failed, e.g. because GoPay could not be reached.
+     */
+    @Bean
+    public Counter paymentReconcileErrorsCounter(MeterRegistry registry) {
+        return Counter.builder("payment_reconcile_errors_total")
+                .description("Failed payment checks of the reconciler")
+                .register(registry);
+    }
+
+    /**
+     * Age of the oldest order whose payment is created but not yet settled.
+     */
+    @Bean
+    public AtomicLong paymentReconcileLagGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("payment_reconcile_lag_seconds", gauge, AtomicLong::get)
+                .description("Age of the oldest order waiting for its payment result")
+                .baseUnit("seconds")
+                .register(registry);
+        return gauge;
+    }
+
     /**
      * Counter for successfully sent e-mails.
      */
@@ -60,6 +153,49 @@ public class MetricsConfig {
                 .register(registry);
     }
 
+    /**
+     * Counts e-mails given up after the last delivery attempt.
+     */
+    @Bean
+    public Counter emailsFailedCounter(MeterRegistry registry) {
+        return Counter.builder("emails_failed_total")
+                .description("Emails that could not be delivered")
+                .register(registry);
+    }
+
+    /**
+     * Counts failed delivery attempts, including the ones that are retried.
+     */
+    @Bean
+    public Counter emailSendErrorsCounter(MeterRegistry registry) {
+        return Counter.builder("email_send_errors_total")
+                .description("Failed email delivery attempts")
+                .register(registry);
+    }
+
+    /**
+     * Measures the SMTP round-trip of one batch of e-mails.
+     */
+    @Bean
+    public Timer emailSendTimer(MeterRegistry registry) {
+        return Timer.builder("email_send_seconds")
+                .description("Time to send a batch of emails over one SMTP connection")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Number of e-mails waiting in the mail spool.
+     */
+    @Bean
+    public AtomicLong emailQueueDepthGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("email_queue_depth", gauge, AtomicLong::get)
+                .description("Emails waiting for delivery")
+                .register(registry);
+        return gauge;
+    }
+
     /**
      * Number of files uploaded to the S3 bucket.
      */
@@ -91,6 +227,111 @@ public class MetricsConfig {
                 .register(registry);
     }
 
+    /**
+     * Uploads skipped because an object with the same content was already stored.
+     */
+    @Bean
+    public Counter s3DeduplicatedUploadsCounter(MeterRegistry registry) {
+        return Counter.builder("s3_uploads_deduplicated_total")
+                .description("Uploads skipped because the content was already in S3")
+                .register(registry);
+    }
+
+    /**
+     * Counts files deleted from the cleanup queue.
+     */
+    @Bean
+    public Counter fileCleanupDeletedCounter(MeterRegistry registry) {
+        return Counter.builder("file_cleanup_deleted_total")
+                .description("Unreferenced files deleted from the storage")
+                .register(registry);
+    }
+
+    /**
+     * Counts failed file deletions, including the ones that are retried.
+     */
+    @Bean
+    public Counter fileCleanupErrorsCounter(MeterRegistry registry) {
+        return Counter.builder("file_cleanup_errors_total")
+                .description("Failed file deletion attempts")
+                .register(registry);
+    }
+
+    /**
+     * Counts files given up after the last deletion attempt.
+     */
+    @Bean
+    public Counter fileCleanupFailedCounter(MeterRegistry registry) {
+        return Counter.builder("file_cleanup_failed_total")
+                .description("Files that could not be deleted")
+                .register(registry);
+    }
+
+    /**
+     * Counts stored files found by the orphan sweep that no product references.
+     */
+    @Bean
+    public Counter fileCleanupOrphansCounter(MeterRegistry registry) {
+        return Counter.builder("file_cleanup_orphans_total")
+                .description("Unreferenced files found by the orphan sweep")
+                .register(registry);
+    }
+
+    /**
+     * Measures one cleanup batch: the reference check and the bulk delete.
+     */
+    @Bean
+    public Timer fileCleanupBatchTimer(MeterRegistry registry) {
+        return Timer.builder("file_cleanup_batch_seconds")
+                .description("Time to check and delete one batch of queued files")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Number of files waiting in the cleanup queue.
+     */
+    @Bean
+    public AtomicLong fileCleanupQueueDepthGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("file_cleanup_queue_depth", gauge, AtomicLong::get)
+                .description("Files waiting to be deleted")
+                .register(registry);
+        return gauge;
+    }
+
+    /**
+     * Time to decode a product image and encode all of its resized variants.
+     */
+    @Bean
+    public Timer imageVariantTimer(MeterRegistry registry) {
+        return Timer.builder("image_variant_processing_seconds")
+                .description("Time to create the resized variants of an image")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Bytes a client saves by loading a variant instead of the original image, summed over variants.
+     */
+    @Bean
+    public Counter imageVariantBytesSavedCounter(MeterRegistry registry) {
+        return Counter.builder("image_variant_bytes_saved")
+                .description("Original size minus variant size of created image variants")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Images stored without variants because they could not be processed or the workers were busy.
+     */
+    @Bean
+    public Counter imageVariantFailuresCounter(MeterRegistry registry) {
+        return Counter.builder("image_variant_failures_total")
+                .description("Images stored without resized variants")
+                .register(registry);
+    }
+
     /**
      * Counts authentication attempts that failed due to invalid credentials.
      */
@@ -112,15 +353,136 @@ public class MetricsConfig {
     }
 
     /**
-     * Gauge reporting the current total number of items in a user's cart.
+     * Counts principal lookups served from the in-process principal cache.
+     */
+    @Bean
+    public Counter principalCacheHitsCounter(MeterRegistry registry) {
+        return Counter.builder("principal_cache_hits_total")
+                .description("Principal lookups served from the cache")
+                .register(registry);
+    }
+
+    /**
+     * Counts principal lookups that had to be loaded from MongoDB.
+     */
+    @Bean
+    public Counter principalCacheMissesCounter(MeterRegistry registry) {
+        return Counter.builder("principal_cache_misses_total")
+                .description("Principal lookups loaded from the database")
+                .register(registry);
+    }
+
+    /**
+     * Counts product reads served from the Redis product cache.
+     */
+    @Bean
+    public Counter productCacheHitsCounter(MeterRegistry registry) {
+        return Counter.builder("product_cache_hits_total")
+                .description("Product reads served from the cache")
+                .register(registry);
+    }
+
+    /**
+     * Counts product reads that had to be loaded from MongoDB.
+     */
+    @Bean
+    public Counter productCacheMissesCounter(MeterRegistry registry) {
+        return Counter.builder("product_cache_misses_total")
+                .description("Product reads loaded from the database")
+                .register(registry);
+    }
+
+    /**
+     * Counts product reads served from the in-process near cache.
+     */
+    @Bean
+    public Counter productNearCacheHitsCounter(MeterRegistry registry) {
+        return Counter.builder("product_near_cache_hits_total")
+                .description("Product reads served from the in-process near cache")
+                .register(registry);
+    }
+
+    /**
+     * Counts product reads that missed the near cache and went to Redis.
+     */
+    @Bean
+    public Counter productNearCacheMissesCounter(MeterRegistry registry) {
+        return Counter.builder("product_near_cache_misses_total")
+                .description("Product reads that missed the near cache")
+                .register(registry);
+    }
+
+    /**
+     * Counts JWTs whose verified claims were served from the token cache.
+     */
+    @Bean
+    public Counter tokenCacheHitsCounter(MeterRegistry registry) {
+        return Counter.builder("token_cache_hits_total")
+                .description("JWT verifications served from the token cache")
+                .register(registry);
+    }
+
+    /**
+     * Counts JWTs that had their signature verified because they were not cached.
      */
     @Bean
-    public AtomicInteger cartItemsGauge(MeterRegistry registry) {
-        AtomicInteger gauge = new AtomicInteger(0);
-        Gauge.builder("cart_items_total", gauge, AtomicInteger::get)
-                .description("Number of items in the current cart")
+    public Counter tokenCacheMissesCounter(MeterRegistry registry) {
+        return Counter.builder("token_cache_misses_total")
+                .description("JWT verifications that missed the token cache")
+                .register(registry);
+    }
+
+    /**
+     * Share of token verifications served from the token cache since startup.
+     */
+    @Bean
+    public Gauge tokenCacheHitRatioGauge(MeterRegistry registry,
+                                         Counter tokenCacheHitsCounter,
+                                         Counter tokenCacheMissesCounter) {
+        return Gauge.builder("token_cache_hit_ratio", () -> {
+                    double hits = tokenCacheHitsCounter.count();
+                    double total = hits + tokenCacheMissesCounter.count();
+                    return total == 0 ? 0 : hits / total;
+                })
+                .description("Hit ratio of the verified-token cache")
+                .register(registry);
+    }
+
+    /**
+     * Pieces in all carts. The cart store sets it from the {@code carts} collection at startup and
+     * every {@code cart.metrics.refresh.millis}, and adds the change of every cart update in
+     * between. A {@link LongAdder} keeps concurrent updates of different carts from contending.
+     */
+    @Bean
+    public LongAdder cartItemsActive(MeterRegistry registry) {
+        LongAdder adder = new LongAdder();
+        Gauge.builder("cart_items_active", adder, LongAdder::sum)
+                .description("Pieces in all carts")
+                .register(registry);
+        return adder;
+    }
+
+    /**
+     * Number of pieces in a cart after each change.
+     */
+    @Bean
+    public DistributionSummary cartSizeSummary(MeterRegistry registry) {
+        return DistributionSummary.builder("cart_size_items")
+                .description("Pieces in a cart after a change")
+                .baseUnit("items")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Number of carts changed in Redis that have not been written to MongoDB yet.
+     */
+    @Bean
+    public AtomicLong cartWriteBehindDepthGauge(MeterRegistry registry) {
+        AtomicLong gauge = new AtomicLong(0);
+        Gauge.builder("cart_write_behind_depth", gauge, AtomicLong::get)
+                .description("Carts waiting to be written to MongoDB")
                 .register(registry);
         return gauge;
     }
 }
-
@@ -0,0 +1,68 @@
+package com.lumastyle.eshop.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumastyle.eshop.cache.ProductCache;
+import com.lumastyle.eshop.cache.ProductPage;
+import com.lumastyle.eshop.dto.product.ProductResponse;
+import com.lumastyle.eshop.listener.ProductCacheInvalidationListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+
+/**
+ * In-process near cache in front of the Redis product cache, and the pub/sub
+ * subscription that keeps it consistent across nodes. The TTL is the longest time
+ * a node may serve a changed product if an invalidation message is lost.
+ */
+@Configuration
+public class ProductCacheConfig {
+
+    @Value("${product.near-cache.max-size:10000}")
+    private long nearCacheMaxSize;
+
+    @Value("${product.near-cache.page-max-size:1000}")
+    private long nearPageCacheMaxSize;
+
+    @Value("${product.near-cache.ttl.millis:30000}")
+    private long nearCacheTtlMillis;
+
+    /**
+     * Near cache of single products keyed by product ID, used by {@link ProductCache}.
+     */
+    @Bean
+    public Cache<String, ProductResponse> nearProductCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(nearCacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(nearCacheTtlMillis))
+                .build();
+    }
+
+    /**
+     * Near cache of listing pages keyed by {@link com.lumastyle.eshop.dto.product.ProductQuery#cacheKey()}.
+     */
+    @Bean
+    public Cache<String, ProductPage> nearPageCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(nearPageCacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(nearCacheTtlMillis))
+                .build();
+    }
+
+    /**
+     * Subscribes the invalidation listener to {@link ProductCache#INVALIDATION_CHANNEL}.
+     */
+    @Bean
+    public RedisMessageListenerContainer productCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ProductCacheInvalidationListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(listener, new ChannelTopic(ProductCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+}
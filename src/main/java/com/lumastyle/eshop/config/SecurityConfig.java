@@ -53,6 +53,17 @@ public class SecurityConfig {
                                 "/api/orders/all",
                                 "/api/orders/status/**")
                         .permitAll()
+                        // product images stored on the local file system
+                        .requestMatchers(HttpMethod.GET,
+                                "/api/images/**")
+                        .permitAll()
+                        .requestMatchers(HttpMethod.HEAD,
+                                "/api/images/**")
+                        .permitAll()
+                        // GoPay payment notifications carry only the payment ID, whose state is read from GoPay
+                        .requestMatchers(HttpMethod.GET,
+                                "/api/payment/notify")
+                        .permitAll()
                         .requestMatchers(HttpMethod.OPTIONS,
                                 "/**")
                         .permitAll()
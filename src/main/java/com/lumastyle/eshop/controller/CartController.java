@@ -1,6 +1,7 @@
 package com.lumastyle.eshop.controller;
 
 
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
 import com.lumastyle.eshop.dto.cart.CartRequest;
 import com.lumastyle.eshop.dto.cart.CartResponse;
 import com.lumastyle.eshop.service.CartService;
@@ -98,4 +99,28 @@ public class CartController {
         return service.removeFromCart(request);
     }
 
+    @Operation(summary = "Update several cart items",
+            description = "Sets or changes the quantities of several products in one atomic update, "
+                    + "e.g. to restore a saved basket. Products left without pieces are removed.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Cart updated",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CartResponse.class))),
+            @ApiResponse(responseCode = "400",
+                    description = "Invalid cart request",
+                    content = @Content)
+    })
+    @PutMapping("/items")
+    @ResponseStatus(HttpStatus.OK)
+    public CartResponse updateCart(@Valid
+                                   @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                                           description = "Items to set (quantity) or change (delta)",
+                                           required = true,
+                                           content = @Content(schema = @Schema(implementation = CartBulkRequest.class)))
+                                   @RequestBody CartBulkRequest request) {
+        log.info("Received request to update {} cart items", request.getItems().size());
+        return service.updateCart(request);
+    }
+
 }
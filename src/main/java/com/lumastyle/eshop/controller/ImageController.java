@@ -0,0 +1,172 @@
+package com.lumastyle.eshop.controller;
+
+import com.lumastyle.eshop.exception.ResourceNotFoundException;
+import com.lumastyle.eshop.service.impl.LocalFileStorageServiceImpl;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Serves the product images kept by {@link LocalFileStorageServiceImpl}; only present with
+ * {@code file.store=local}.
+ * <p>
+ * Keys are content hashes, so an image never changes: the hash is a strong ETag and responses
+ * may be cached for a year. Conditional requests are answered with 304 and a single byte range
+ * with 206; several ranges are answered with the whole file. On Tomcat the file is handed to the
+ * connector, which sends it after the request returns: over plain HTTP with {@code sendfile}, so
+ * the bytes never pass through the JVM, over TLS by encrypting straight from the file. Where the
+ * container offers no sendfile, {@link FileChannel#transferTo} copies the bytes to the response.
+ * </p>
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/images")
+@CrossOrigin(origins = "*")
+@ConditionalOnProperty(name = "file.store", havingValue = "local")
+@Tag(name = "Images", description = "Product images stored on the local file system")
+public class ImageController {
+
+    // request attributes of Tomcat's sendfile support
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final LocalFileStorageServiceImpl fileStorage;
+
+    @Operation(summary = "Get image",
+            description = "Returns a stored product image; supports ETag, Last-Modified and byte ranges.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "The image"),
+            @ApiResponse(responseCode = "206", description = "The requested byte range of the image"),
+            @ApiResponse(responseCode = "304", description = "The cached image is current", content = @Content),
+            @ApiResponse(responseCode = "400", description = "Invalid key", content = @Content),
+            @ApiResponse(responseCode = "404", description = "Image not found", content = @Content),
+            @ApiResponse(responseCode = "416", description = "Range outside of the image", content = @Content)
+    })
+    @GetMapping("/{key}")
+    public void readImage(@Parameter(description = "Key of the image", required = true)
+                          @PathVariable String key,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        Path path = fileStorage.pathOf(key);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new ResourceNotFoundException("Image not found with key " + key);
+        }
+        String etag = "\"" + key.substring(0, key.indexOf('.') < 0 ? key.length() : key.indexOf('.')) + "\"";
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        long size = attributes.size();
+        long start = 0;
+        long length = size;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaTypeFactory.getMediaType(key)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeCurrent(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.getFirst();
+                start = range.getRangeStart(size);
+                if (start >= size) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                length = range.getRangeEnd(size) - start + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + start + "-" + (start + length - 1) + "/" + size);
+            }
+        }
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+            return;
+        }
+        send(path, start, length, request, response);
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Sends {@code length} bytes of the file from {@code start}: through the connector's sendfile
+     * if it offers it for this request, or else through a channel over the response stream.
+     */
+    private static void send(Path path, long start, long length,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            for (long sent = 0, transferred = -1; sent < length && transferred != 0; sent += transferred) {
+                transferred = file.transferTo(start + sent, length - sent, out);
+            }
+        }
+    }
+
+    /**
+     * Whether a range request still applies: without {@code If-Range}, or if it names the current
+     * ETag or modification time. Otherwise the whole image is sent.
+     */
+    private static boolean isRangeCurrent(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
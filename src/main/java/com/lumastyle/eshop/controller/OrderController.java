@@ -1,7 +1,12 @@
 package com.lumastyle.eshop.controller;
 
+import com.lumastyle.eshop.dto.order.OrderHistoryQuery;
+import com.lumastyle.eshop.dto.order.OrderPageResponse;
+import com.lumastyle.eshop.dto.order.OrderQuery;
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
+import com.lumastyle.eshop.dto.order.PaymentStatusResponse;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -10,12 +15,17 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @Slf4j
@@ -45,13 +55,34 @@ public class OrderController {
                     description = "Order details",
                     required = true,
                     content = @Content(schema = @Schema(implementation = OrderRequest.class)))
-            @RequestBody OrderRequest request) {
+            @Valid @RequestBody OrderRequest request) {
         log.info("Received request to create a new order: {}", request);
         return service.createOrderAndPayment(request);
     }
 
+    @Operation(summary = "Get payment status",
+            description = "Returns the payment state of an order and the GoPay gateway URL once the payment is created.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Payment status",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PaymentStatusResponse.class))),
+            @ApiResponse(responseCode = "404",
+                    description = "Order not found",
+                    content = @Content)
+    })
+    @GetMapping("/{orderId}/payment")
+    public PaymentStatusResponse getPaymentStatus(@Parameter(
+            description = "ID of the order",
+            required = true)
+                                                  @PathVariable String orderId) {
+        log.debug("Received request to get the payment status of order: {}", orderId);
+        return service.getPaymentStatus(orderId);
+    }
+
     @Operation(summary = "Verify payment",
-            description = "Verifies the payment of an existing order.")
+            description = "Verifies the payment of an existing order with GoPay, e.g. after the customer "
+                    + "returns from the payment gateway.")
     @ApiResponses({
             @ApiResponse(responseCode = "200",
                     description = "Payment verified"),
@@ -68,19 +99,27 @@ public class OrderController {
                     content = @Content(schema = @Schema(implementation = Map.class)))
             @RequestBody Map<String, String> paymentData) {
         log.info("Received request to verify a payment: {}", paymentData);
-        service.verifyPayment(paymentData, "Paid");
+        String paymentId = paymentData.get("paymentId");
+        if (paymentId == null || !paymentId.matches("\\d{1,18}")) {
+            throw new BadRequestException("Invalid payment id");
+        }
+        service.processPaymentNotification(Long.parseLong(paymentId));
     }
 
     @Operation(summary = "Get user orders",
-            description = "Retrieves orders for the authenticated user.")
-    @ApiResponse(responseCode = "200",
-            description = "Orders list",
-            content = @Content(mediaType = "application/json",
-                    schema = @Schema(implementation = OrderResponse.class)))
+            description = "Retrieves one page of the orders of the authenticated user, newest first. "
+                    + "Pass the returned nextCursor as cursor to read the next page.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Page of orders",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = OrderPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid page size or cursor", content = @Content)
+    })
     @GetMapping
-    public List<OrderResponse> getUserOrders() {
-        log.info("Received request to get all orders");
-        return service.getUserOrders();
+    public OrderPageResponse getUserOrders(@Valid @ParameterObject OrderHistoryQuery query) {
+        log.info("Received request to get orders: {}", query);
+        return service.getUserOrders(query);
     }
 
     @Operation(summary = "Delete order",
@@ -100,15 +139,39 @@ public class OrderController {
     // ===== Admin panel =====
 
     @Operation(summary = "Get all orders (admin)",
-            description = "Retrieves all user orders (admin only).")
-    @ApiResponse(responseCode = "200",
-            description = "All orders list",
-            content = @Content(mediaType = "application/json",
-                    schema = @Schema(implementation = OrderResponse.class)))
+            description = "Retrieves one page of the orders of all users, newest first, optionally filtered "
+                    + "by user, status and creation time (admin only). "
+                    + "Pass the returned nextCursor as cursor to read the next page.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Page of orders",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = OrderPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid filter or cursor", content = @Content)
+    })
     @GetMapping("/all")
-    public List<OrderResponse> getOrdersOfAllUsers() {
-        log.info("Received request to get all orders of all users");
-        return service.getOrdersOfAllUsers();
+    public OrderPageResponse getOrdersOfAllUsers(@Valid @ParameterObject OrderQuery query) {
+        log.info("Received request to get orders of all users: {}", query);
+        return service.getOrdersOfAllUsers(query);
+    }
+
+    @Operation(summary = "Export all orders (admin)",
+            description = "Streams every order matching the filters as newline-delimited JSON, newest first "
+                    + "(admin only).")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "One order per line",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = OrderResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid filter", content = @Content)
+    })
+    @GetMapping("/all/export")
+    public void exportOrders(@Valid @ParameterObject OrderQuery query,
+                             HttpServletResponse response) throws IOException {
+        log.info("Received request to export orders of all users: {}", query);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        service.exportOrders(query, response.getOutputStream());
     }
 
     @Operation(summary = "Update order status",
@@ -0,0 +1,41 @@
+package com.lumastyle.eshop.controller;
+
+import com.lumastyle.eshop.service.OrderService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/payment")
+@RequiredArgsConstructor
+@Tag(name = "Payments", description = "GoPay callbacks")
+public class PaymentController {
+
+    private final OrderService orderService;
+
+    @Operation(summary = "GoPay payment notification",
+            description = "Called by GoPay (gopay.callback.notify-url) whenever the state of a payment changes. "
+                    + "The state is read from GoPay; repeated notifications are answered without side effects.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Notification processed"),
+            @ApiResponse(responseCode = "502",
+                    description = "Unknown payment or GoPay unavailable; GoPay repeats the notification",
+                    content = @Content)
+    })
+    @GetMapping("/notify")
+    @ResponseStatus(HttpStatus.OK)
+    public void notifyPayment(@Parameter(description = "GoPay payment ID", required = true)
+                              @RequestParam("id") long paymentId) {
+        log.info("Received GoPay notification for payment: {}", paymentId);
+        orderService.processPaymentNotification(paymentId);
+    }
+}
@@ -1,5 +1,7 @@
 package com.lumastyle.eshop.controller;
 
+import com.lumastyle.eshop.dto.product.ProductPageResponse;
+import com.lumastyle.eshop.dto.product.ProductQuery;
 import com.lumastyle.eshop.dto.product.ProductRequest;
 import com.lumastyle.eshop.dto.product.ProductResponse;
 import com.lumastyle.eshop.service.ProductService;
@@ -15,13 +17,14 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Pattern;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -46,25 +49,29 @@ public class ProductController {
     })
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
-    public ProductResponse addProduct(@Valid @RequestBody(
-                                              description = "Product data", required = true,
-                                              content = @Content(schema = @Schema(implementation = ProductRequest.class)))
-                                      @RequestPart("product") ProductRequest request,
-                                      @RequestPart("file") MultipartFile file) {
+    public CompletableFuture<ProductResponse> addProduct(@Valid @RequestBody(
+                                                                 description = "Product data", required = true,
+                                                                 content = @Content(schema = @Schema(implementation = ProductRequest.class)))
+                                                         @RequestPart("product") ProductRequest request,
+                                                         @RequestPart("file") MultipartFile file) {
         log.info("Received request to add a new product: {}", request);
         return productService.addProduct(request, file);
     }
 
-    @Operation(summary = "Get all products",
-            description = "Retrieves all available products.")
-    @ApiResponse(responseCode = "200",
-            description = "List of products",
-            content = @Content(mediaType = "application/json",
-                    schema = @Schema(implementation = ProductResponse.class)))
+    @Operation(summary = "Get products",
+            description = "Retrieves one page of products, optionally filtered by category and price range. "
+                    + "Pass the returned nextCursor as cursor to read the next page.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200",
+                    description = "Page of products",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ProductPageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid filter or cursor", content = @Content)
+    })
     @GetMapping
-    public List<ProductResponse> readProducts() {
-        log.info("Received request for reading all products");
-        return productService.readProducts();
+    public ProductPageResponse readProducts(@Valid @ParameterObject ProductQuery query) {
+        log.info("Received request for reading products: {}", query);
+        return productService.readProducts(query);
     }
 
     @Operation(summary = "Get product by ID",
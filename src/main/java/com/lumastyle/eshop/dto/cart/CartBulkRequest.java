@@ -0,0 +1,45 @@
+package com.lumastyle.eshop.dto.cart;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Several cart lines changed in one call, e.g. when a saved basket is restored.
+ * All lines are applied together or not at all.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartBulkRequest {
+
+    @NotEmpty(message = "At least one item must be provided.")
+    @Size(max = 100, message = "At most 100 items can be updated at once.")
+    private List<@Valid @NotNull CartItemUpdate> items;
+
+    @JsonIgnore
+    @AssertTrue(message = "Each product may appear only once.")
+    public boolean isDistinctProducts() {
+        if (items == null) {
+            return true;
+        }
+        List<String> productIds = items.stream()
+                .filter(Objects::nonNull)
+                .map(CartItemUpdate::getProductId)
+                .filter(Objects::nonNull)
+                .toList();
+        return new HashSet<>(productIds).size() == productIds.size();
+    }
+}
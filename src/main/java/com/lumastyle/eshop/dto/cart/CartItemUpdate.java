@@ -0,0 +1,41 @@
+package com.lumastyle.eshop.dto.cart;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a bulk cart update: either the new quantity of a product or the change
+ * of its quantity. A line that leaves zero or fewer pieces removes the product.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartItemUpdate {
+
+    @NotBlank(message = "ProductId must be provided")
+    @Pattern(regexp = "^[A-Za-z0-9\\-]+$", message = "Invalid product id")
+    private String productId;
+
+    @Min(value = 0, message = "Quantity must not be negative.")
+    @Max(value = 1000, message = "Quantity must be at most 1000.")
+    private Integer quantity;
+
+    @Min(value = -1000, message = "Delta must be at least -1000.")
+    @Max(value = 1000, message = "Delta must be at most 1000.")
+    private Integer delta;
+
+    @JsonIgnore
+    @AssertTrue(message = "Exactly one of quantity and delta must be provided.")
+    public boolean isQuantityOrDelta() {
+        return (quantity == null) != (delta == null);
+    }
+}
@@ -1,6 +1,7 @@
 package com.lumastyle.eshop.dto.cart;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +14,7 @@ import lombok.NoArgsConstructor;
 public class CartRequest {
 
     @NotBlank(message = "ProductId must be provided")
+    @Pattern(regexp = "^[A-Za-z0-9\\-]+$", message = "Invalid product id")
     private String productId;
 
 }
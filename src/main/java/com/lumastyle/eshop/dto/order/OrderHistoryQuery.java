@@ -0,0 +1,26 @@
+package com.lumastyle.eshop.dto.order;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Paging options of the order history of the current user, which is listed newest first.
+ * Further pages are read with the {@code cursor} returned by the previous page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderHistoryQuery {
+
+    @Builder.Default
+    @Min(value = 1, message = "Size must be at least 1.")
+    @Max(value = 100, message = "Size must be at most 100.")
+    private int size = 20;
+
+    private String cursor;
+}
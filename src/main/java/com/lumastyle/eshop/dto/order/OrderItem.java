@@ -1,22 +1,31 @@
 package com.lumastyle.eshop.dto.order;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
-
+/**
+ * One line of an order. Prices, names and images are looked up in the product catalog
+ * when the order is placed, so a line only names the product and its quantity.
+ */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class OrderItem {
+
+    @NotBlank(message = "ProductId must be provided")
+    @Pattern(regexp = "^[A-Za-z0-9\\-]+$", message = "Invalid product id")
     private String productId;
+
+    @NotNull(message = "Quantity must be provided")
+    @Min(value = 1, message = "Quantity must be at least 1.")
+    @Max(value = 1000, message = "Quantity must be at most 1000.")
     private Integer quantity;
-    private BigDecimal price;
-    private String category;
-    private String imageUrl;
-    private String description;
-    private String name;
 }
@@ -0,0 +1,21 @@
+package com.lumastyle.eshop.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPageResponse {
+    private List<OrderResponse> items;
+
+    /**
+     * Continuation token for the next page; {@code null} on the last page.
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,50 @@
+package com.lumastyle.eshop.dto.order;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Filter and paging options of the admin order listing.
+ * <p>
+ * Orders are listed newest first. Further pages are read with the {@code cursor}
+ * returned by the previous page, which seeks in the {@code _id} index instead of
+ * skipping documents. The export ignores {@code size} and {@code cursor}.
+ * </p>
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderQuery {
+
+    @Pattern(regexp = "^[A-Za-z0-9\\-]+$", message = "Invalid user id")
+    private String userId;
+
+    private String orderStatus;
+
+    private String paymentStatus;
+
+    /**
+     * Inclusive lower bound of the order creation time.
+     */
+    private Instant from;
+
+    /**
+     * Exclusive upper bound of the order creation time.
+     */
+    private Instant to;
+
+    @Builder.Default
+    @Min(value = 1, message = "Size must be at least 1.")
+    @Max(value = 100, message = "Size must be at most 100.")
+    private int size = 20;
+
+    private String cursor;
+}
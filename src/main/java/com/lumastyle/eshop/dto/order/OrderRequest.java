@@ -1,5 +1,9 @@
 package com.lumastyle.eshop.dto.order;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,9 +17,10 @@ import java.util.List;
 @Builder
 public class OrderRequest {
 
-    private List<OrderItem> orderedItems;
+    @NotEmpty(message = "At least one item must be ordered.")
+    @Size(max = 100, message = "At most 100 items can be ordered at once.")
+    private List<@Valid @NotNull OrderItem> orderedItems;
     private String userAddress;
-    private Integer amount;
     private String phoneNumber;
     private String email;
 }
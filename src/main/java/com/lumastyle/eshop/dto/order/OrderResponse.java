@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
 
 @Data
@@ -16,13 +18,15 @@ public class OrderResponse {
 
     private String userId;
 
+    private Instant createdAt;
+
     private String userAddress;
 
     private String phoneNumber;
 
     private String email;
 
-    private Integer amount;
+    private BigDecimal amount;
 
     private String paymentStatus;
 
@@ -0,0 +1,22 @@
+package com.lumastyle.eshop.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentStatusResponse {
+    private String orderId;
+
+    private String paymentStatus;
+
+    private String paymentOrderId;
+
+    private String paymentUrl;
+
+    private Integer paymentAttempts;
+}
@@ -0,0 +1,70 @@
+package com.lumastyle.eshop.dto.product;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Filter, sort and paging options of the product listing.
+ * <p>
+ * The first pages can be addressed by {@code page}; deeper pages are read with the
+ * {@code cursor} returned by the previous page, which seeks in the index instead of
+ * skipping documents. A cursor takes precedence over {@code page}.
+ * </p>
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductQuery {
+
+    @Pattern(regexp = "^[A-Za-z0-9\\- ]+$", message = "Invalid category")
+    private String category;
+
+    @DecimalMin(value = "0.0", message = "Minimum price must not be negative.")
+    private BigDecimal minPrice;
+
+    @DecimalMin(value = "0.0", message = "Maximum price must not be negative.")
+    private BigDecimal maxPrice;
+
+    @Builder.Default
+    private ProductSort sort = ProductSort.CREATED_ASC;
+
+    @Min(value = 0, message = "Page must not be negative.")
+    @Max(value = 100, message = "Use the cursor for pages beyond 100.")
+    private int page;
+
+    @Builder.Default
+    @Min(value = 1, message = "Size must be at least 1.")
+    @Max(value = 100, message = "Size must be at most 100.")
+    private int size = 20;
+
+    private String cursor;
+
+    /**
+     * Normalized form of the query, used as the page cache key, so equal queries share
+     * an entry regardless of how their prices were written.
+     *
+     * @return the cache key
+     */
+    public String cacheKey() {
+        return String.join("|",
+                String.valueOf(category),
+                normalize(minPrice),
+                normalize(maxPrice),
+                String.valueOf(sort),
+                cursor != null ? "c" + cursor : "p" + page,
+                String.valueOf(size));
+    }
+
+    private static String normalize(BigDecimal price) {
+        return price == null ? "" : price.stripTrailingZeros().toPlainString();
+    }
+}
@@ -1,11 +1,13 @@
 package com.lumastyle.eshop.dto.product;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 @Data
 @Builder
@@ -16,6 +18,9 @@ public class ProductResponse {
     private String name;
     private String description;
     private String imageUrl;
+    // omitted for products without resized variants
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, String> imageVariants;
     private BigDecimal price;
     private String category;
 }
@@ -0,0 +1,24 @@
+package com.lumastyle.eshop.dto.product;
+
+/**
+ * Sort orders of the product listing. Products with equal prices are ordered by ID,
+ * which keeps the order stable for cursor paging.
+ */
+public enum ProductSort {
+    /**
+     * Oldest first, the order in which products were added.
+     */
+    CREATED_ASC,
+    /**
+     * Newest first.
+     */
+    CREATED_DESC,
+    /**
+     * Cheapest first.
+     */
+    PRICE_ASC,
+    /**
+     * Most expensive first.
+     */
+    PRICE_DESC
+}
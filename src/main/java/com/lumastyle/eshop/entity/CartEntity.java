@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.HashMap;
@@ -20,13 +21,26 @@ public class CartEntity {
     @Id
     private String id;
 
+    // one cart per user, which also lets concurrent first adds upsert the same document
+    @Indexed(unique = true)
     private String userId;
 
     @Builder.Default
     private Map<String, Integer> items = new HashMap<>();
 
+    // pieces over all items and the change made by the update that returned this document,
+    // kept by every update so that the cart metrics never sum the items
+    private int totalItems;
+    private int lastChange;
+
     public CartEntity(String userId, Map<String, Integer> items) {
         this.userId = userId;
         this.items = items;
     }
+
+    public CartEntity(String id, String userId, Map<String, Integer> items) {
+        this.id = id;
+        this.userId = userId;
+        this.items = items;
+    }
 }
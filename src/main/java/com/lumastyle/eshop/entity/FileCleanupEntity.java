@@ -0,0 +1,47 @@
+package com.lumastyle.eshop.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A stored file waiting in the cleanup queue to be deleted. The storage key is the ID, so a
+ * file queued twice is deleted once. Deleted files are removed from the queue, files that
+ * failed on every attempt stay there with their last error.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "file_cleanup_queue")
+@CompoundIndex(name = "file_cleanup_due", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class FileCleanupEntity {
+
+    public static final String STATUS_QUEUED = "Queued";
+    public static final String STATUS_FAILED = "Failed";
+
+    @Id
+    private String key;
+
+    private String status;
+
+    private Integer attempts;
+
+    private Instant createdAt;
+
+    private Instant nextAttemptAt;
+
+    /**
+     * Set while the worker deletes the file, until its lease expires; an upload of the same
+     * content waits for the deletion instead of reusing the file.
+     */
+    private Instant deletingUntil;
+
+    private String lastError;
+}
@@ -0,0 +1,46 @@
+package com.lumastyle.eshop.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * An e-mail waiting in the persistent mail spool. Sent mails are removed from the spool,
+ * mails that failed on every attempt stay there with their last error.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "mail_spool")
+@CompoundIndex(name = "mail_spool_due", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class MailEntity {
+
+    public static final String STATUS_QUEUED = "Queued";
+    public static final String STATUS_FAILED = "Failed";
+
+    @Id
+    private String id;
+
+    private String to;
+
+    private String subject;
+
+    private String text;
+
+    private String status;
+
+    private Integer attempts;
+
+    private Instant createdAt;
+
+    private Instant nextAttemptAt;
+
+    private String lastError;
+}
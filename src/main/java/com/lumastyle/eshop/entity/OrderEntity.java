@@ -6,8 +6,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
 
 @Data
@@ -15,12 +21,44 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "orders")
+@CompoundIndex(name = "payment_outbox", def = "{'paymentStatus': 1, 'nextPaymentAttemptAt': 1}")
+// created payments are reconciled oldest first, paging on _id
+@CompoundIndex(name = "payment_reconcile", def = "{'paymentStatus': 1, '_id': 1}")
+// the order history of a user, newest first; _id breaks ties for cursor paging
+@CompoundIndex(name = "user_orders", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
+// paid orders whose cart and confirmation e-mail are not done yet; the field is removed afterwards
+@CompoundIndex(name = "side_effects_pending", def = "{'sideEffectsPending': 1, 'nextSideEffectsAttemptAt': 1}",
+        sparse = true)
 public class OrderEntity {
+
+    /**
+     * The GoPay payment has not been created yet; the order waits in the payment outbox.
+     */
+    public static final String PAYMENT_PENDING = "Pending";
+    /**
+     * The GoPay payment exists and the customer can be redirected to {@link #paymentUrl}.
+     */
+    public static final String PAYMENT_CREATED = "Created";
+    /**
+     * Creating the GoPay payment failed on every attempt.
+     */
+    public static final String PAYMENT_FAILED = "Failed";
+    /**
+     * GoPay reported the payment as paid; set at most once, by the first notification.
+     */
+    public static final String PAYMENT_PAID = "Paid";
+    /**
+     * GoPay reported the payment as canceled or timed out.
+     */
+    public static final String PAYMENT_CANCELED = "Canceled";
+
     @Id
     private String id;
 
     private String userId;
 
+    private Instant createdAt;
+
     private String userAddress;
 
     private String phoneNumber;
@@ -29,13 +67,35 @@ public class OrderEntity {
 
     private List<OrderItem> orderedItems;
 
-    private Integer amount;
+    /**
+     * Total price of the order, computed from the catalog prices when the order is placed.
+     */
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal amount;
 
     private String paymentStatus;
 
+    // looked up by every payment callback; orders waiting for their payment have none yet
+    @Indexed(name = "gopay_payment", unique = true, sparse = true)
     private String gopayPaymentId;
 
     private String gopayTransactionId;
 
     private String orderStatus;
+
+    private String paymentUrl;
+
+    private Integer paymentAttempts;
+
+    private Instant paymentRequestedAt;
+
+    private Instant nextPaymentAttemptAt;
+
+    /**
+     * Set together with {@link #PAYMENT_PAID} while the cart is not cleared or the confirmation
+     * e-mail not spooled yet; removed once both are done.
+     */
+    private Boolean sideEffectsPending;
+
+    private Instant nextSideEffectsAttemptAt;
 }
@@ -5,21 +5,44 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "products")
+@CompoundIndexes({
+        @CompoundIndex(name = "category_price", def = "{'category': 1, 'price': 1, '_id': 1}"),
+        @CompoundIndex(name = "category_id", def = "{'category': 1, '_id': 1}"),
+        @CompoundIndex(name = "price", def = "{'price': 1, '_id': 1}"),
+        // images are shared by content hash; the file cleanup only deletes unreferenced ones
+        @CompoundIndex(name = "image_url", def = "{'imageUrl': 1}"),
+        @CompoundIndex(name = "image_variant_thumbnail", def = "{'imageVariants.thumbnail': 1}", sparse = true),
+        @CompoundIndex(name = "image_variant_card", def = "{'imageVariants.card': 1}", sparse = true)
+})
 public class ProductEntity {
+    // the fields holding the URL of a stored image, each backed by an image index
+    public static final List<String> IMAGE_FIELDS =
+            List.of("imageUrl", "imageVariants.thumbnail", "imageVariants.card");
+
     @Id
     private String id;
     private String name;
     private String description;
     private String imageUrl;
+    // resized copies of the image keyed by variant name, e.g. thumbnail and card
+    private Map<String, String> imageVariants;
+    // stored as a number so that price ranges and price sorting compare numerically
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal price;
     private String category;
 }
@@ -1,6 +1,9 @@
 package com.lumastyle.eshop.filter;
 
+import com.lumastyle.eshop.security.AppUserPrincipal;
+import com.lumastyle.eshop.security.VerifiedTokenCache;
 import com.lumastyle.eshop.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import io.micrometer.core.instrument.Counter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -22,8 +25,11 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    private static final WebAuthenticationDetailsSource DETAILS_SOURCE = new WebAuthenticationDetailsSource();
+
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final VerifiedTokenCache verifiedTokenCache;
     private final Counter invalidTokenCounter;
 
     @Override
@@ -34,13 +40,16 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         if (StringUtils.hasText(authHeader) && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
             try {
-                String email = jwtUtil.extractUsername(token);
+                // the token is parsed and verified once; the claims serve every check below
+                Claims claims = verifiedTokenCache.getOrVerify(token, jwtUtil::parseToken);
+                String email = claims.getSubject();
                 if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                     UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-                    if (jwtUtil.validateToken(token, userDetails)) {
+                    if (jwtUtil.validateToken(claims, userDetails)) {
+                        AppUserPrincipal principal = toPrincipal(jwtUtil.extractUserId(claims), userDetails);
                         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities());
-                        authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                                principal, null, principal.getAuthorities());
+                        authenticationToken.setDetails(DETAILS_SOURCE.buildDetails(request));
                         SecurityContextHolder.getContext().setAuthentication(authenticationToken);
                     } else {
                         invalidTokenCounter.increment();
@@ -53,4 +62,19 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Build the request principal from the token's user ID claim. Tokens issued before the claim
+     * was introduced fall back to the ID of the loaded user.
+     *
+     * @param userId      the user ID claim, may be {@code null}
+     * @param userDetails the loaded user
+     * @return the principal stored in the security context
+     */
+    private static AppUserPrincipal toPrincipal(String userId, UserDetails userDetails) {
+        if (userId == null && userDetails instanceof AppUserPrincipal loaded) {
+            userId = loaded.getId();
+        }
+        return new AppUserPrincipal(userId, userDetails.getUsername(), "", userDetails.getAuthorities());
+    }
 }
@@ -0,0 +1,32 @@
+package com.lumastyle.eshop.listener;
+
+import com.lumastyle.eshop.cache.ProductCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Drops near-cached products when another node changes them.
+ * <p>
+ * Messages arrive on {@link ProductCache#INVALIDATION_CHANNEL} as
+ * {@code "<node id> <product id or #pages>"}; the node's own messages are ignored.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCacheInvalidationListener implements MessageListener {
+
+    private final ProductCache productCache;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        productCache.onInvalidation(body);
+        log.debug("Product near cache invalidation received: {}", body);
+    }
+}
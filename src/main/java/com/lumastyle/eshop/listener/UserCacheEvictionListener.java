@@ -0,0 +1,38 @@
+package com.lumastyle.eshop.listener;
+
+import com.lumastyle.eshop.entity.UserEntity;
+import com.lumastyle.eshop.service.impl.AppUserDetailsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the principal cache consistent with the {@code users} collection.
+ * <p>
+ * Saved users are evicted by e-mail. Delete events only carry the query document,
+ * so a delete drops the whole cache; deletes are rare enough for this to be cheap.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserCacheEvictionListener extends AbstractMongoEventListener<UserEntity> {
+
+    private final AppUserDetailsService userDetailsService;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<UserEntity> event) {
+        String email = event.getSource().getEmail();
+        userDetailsService.evict(email);
+        log.debug("Principal cache evicted for user: {}", email);
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<UserEntity> event) {
+        userDetailsService.evictAll();
+        log.debug("Principal cache cleared after user deletion");
+    }
+}
@@ -2,6 +2,7 @@ package com.lumastyle.eshop.mapper;
 
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
+import com.lumastyle.eshop.dto.order.PaymentStatusResponse;
 import com.lumastyle.eshop.entity.OrderEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
@@ -17,21 +18,30 @@ public interface OrderMapper {
      * Converts an  {@link OrderRequest} DTO to an {@link OrderEntity} for persistence.
      * <p>
      * Maps request fields: {@code orderedItems}, {@code userAddress},
-     * {@code phoneNumber}, {@code email} an {@code amount}.
+     * {@code phoneNumber} and {@code email}.
      * Fields
-     * ({@code id}, {@code userId}, {@code paymentStatus},
-     * {@code gopayPaymentId}, {@code gopayTransactionId}, {@code orderStatus})
-     * are ignored because they are managed by the business logic.
+     * ({@code id}, {@code userId}, {@code createdAt}, {@code amount}, {@code paymentStatus},
+     * {@code gopayPaymentId}, {@code gopayTransactionId}, {@code orderStatus},
+     * the payment outbox fields and the pending side-effects fields) are ignored because they
+     * are managed by the business logic.
      *
      * @param request the {@link OrderRequest} DTO containing order placement data
      * @return a new {@link OrderEntity} populated from the request DTO
      */
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "userId", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "amount", ignore = true)
     @Mapping(target = "paymentStatus", ignore = true)
     @Mapping(target = "gopayPaymentId", ignore = true)
     @Mapping(target = "gopayTransactionId", ignore = true)
     @Mapping(target = "orderStatus", ignore = true)
+    @Mapping(target = "paymentUrl", ignore = true)
+    @Mapping(target = "paymentAttempts", ignore = true)
+    @Mapping(target = "paymentRequestedAt", ignore = true)
+    @Mapping(target = "nextPaymentAttemptAt", ignore = true)
+    @Mapping(target = "sideEffectsPending", ignore = true)
+    @Mapping(target = "nextSideEffectsAttemptAt", ignore = true)
     OrderEntity toEntity(OrderRequest request);
 
     /**
@@ -45,4 +55,15 @@ public interface OrderMapper {
      */
     @Mapping(source = "gopayPaymentId", target = "paymentOrderId")
     OrderResponse toResponse(OrderEntity entity);
+
+    /**
+     * Converts an {@link OrderEntity} into a {@link PaymentStatusResponse} used by clients
+     * polling for the outcome of the asynchronous payment creation.
+     *
+     * @param entity the {@link OrderEntity} retrieved from the database
+     * @return the payment state of the order and, once created, the gateway URL
+     */
+    @Mapping(source = "id", target = "orderId")
+    @Mapping(source = "gopayPaymentId", target = "paymentOrderId")
+    PaymentStatusResponse toPaymentStatus(OrderEntity entity);
 }
@@ -16,7 +16,7 @@ public interface ProductMapper {
     /**
      * Converts a {@link ProductRequest} DTO into a {@link ProductEntity} for persistence.
      * <p>
-     * The generated entity's {@code id} and {@code imageUrl} are ignored here,
+     * The generated entity's {@code id}, {@code imageUrl} and {@code imageVariants} are ignored here,
      * as they will be set by the business logic.
      *
      * @param request the {@link ProductRequest} DTO containing product data (e.g., {@code name}, {@code description}, {@code price})
@@ -25,12 +25,13 @@ public interface ProductMapper {
 
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "imageUrl", ignore = true)
+    @Mapping(target = "imageVariants", ignore = true)
     ProductEntity toEntity(ProductRequest request);
 
     /**
      * Converts a {@link ProductEntity} into a {@link ProductResponse} DTO for client consumption.
      * <p>
-     * Maps all fields of the entity—including its {@code id}, {@code imageUrl}, {@code name},
+     * Maps all fields of the entity—including its {@code id}, {@code imageUrl}, {@code imageVariants}, {@code name},
      * {@code description}, {@code price} and {@code category}—into the response.
      *
      * @param entity the {@link ProductEntity} retrieved from the database
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
-public interface CartRepository extends MongoRepository<CartEntity, String> {
+public interface CartRepository extends MongoRepository<CartEntity, String>, CartRepositoryCustom {
     Optional<CartEntity> findByUserId(String userId);
 
     void deleteByUserId(String userId);
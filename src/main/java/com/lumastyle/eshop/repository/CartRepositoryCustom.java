@@ -0,0 +1,58 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.CartEntity;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Atomic cart mutations. Each one is a single {@code findAndModify} on the cart
+ * document, so concurrent requests for the same cart never lose an update. Every
+ * update also keeps {@code totalItems} and records its own change in {@code lastChange}.
+ */
+public interface CartRepositoryCustom {
+
+    /**
+     * Adds one piece of the product, creating the cart if the user has none.
+     *
+     * @param userId    the cart owner
+     * @param productId the product to add
+     * @return the cart after the update
+     */
+    CartEntity incrementItem(String userId, String productId);
+
+    /**
+     * Removes one piece of the product; the entry is dropped when its quantity reaches zero.
+     *
+     * @param userId    the cart owner
+     * @param productId the product to remove
+     * @return the cart after the update, or empty if there is no cart containing the product
+     */
+    Optional<CartEntity> decrementItem(String userId, String productId);
+
+    /**
+     * Sets and changes the quantities of several products in one update, creating the cart if
+     * the user has none. Products left with zero or fewer pieces are dropped.
+     *
+     * @param userId     the cart owner
+     * @param quantities new quantities by product ID
+     * @param deltas     quantity changes by product ID; no product may appear in both maps
+     * @return the cart after the update
+     */
+    CartEntity updateItems(String userId, Map<String, Integer> quantities, Map<String, Integer> deltas);
+
+    /**
+     * Deletes the user's cart.
+     *
+     * @param userId the cart owner
+     * @return the deleted cart, or empty if the user had none
+     */
+    Optional<CartEntity> deleteCart(String userId);
+
+    /**
+     * Sums {@code totalItems} over all carts in one aggregation.
+     *
+     * @return the pieces in all carts
+     */
+    long countAllItems();
+}
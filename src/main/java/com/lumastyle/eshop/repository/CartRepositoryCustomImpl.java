@@ -0,0 +1,128 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link MongoTemplate} implementation of {@link CartRepositoryCustom}.
+ * <p>
+ * Product IDs are used as keys of the {@code items} sub-document; callers validate
+ * them so that they cannot contain {@code .} or {@code $}.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class CartRepositoryCustomImpl implements CartRepositoryCustom {
+
+    private static final Document TOTAL_ITEMS = new Document("$ifNull", List.of("$totalItems", 0));
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public CartEntity incrementItem(String userId, String productId) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+        Update update = new Update().inc(itemPath(productId), 1).inc("totalItems", 1).set("lastChange", 1);
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, CartEntity.class);
+        } catch (DuplicateKeyException e) {
+            // a concurrent first add created the cart between our match and insert; it matches now
+            return mongoTemplate.findAndModify(query, update, options, CartEntity.class);
+        }
+    }
+
+    @Override
+    public Optional<CartEntity> decrementItem(String userId, String productId) {
+        Query query = Query.query(Criteria.where("userId").is(userId).and(itemPath(productId)).exists(true));
+        String quantity = "$" + itemPath(productId);
+
+        // one pipeline stage: drop the entry when this was the last piece, otherwise decrement it
+        Document items = new Document("$cond", List.of(
+                new Document("$lte", List.of(quantity, 1)),
+                new Document("$arrayToObject", new Document("$filter", new Document()
+                        .append("input", new Document("$objectToArray", "$items"))
+                        .append("cond", new Document("$ne", List.of("$$this.k", productId))))),
+                new Document("$mergeObjects", List.of("$items",
+                        new Document(productId, new Document("$subtract", List.of(quantity, 1)))))));
+        AggregationOperation set = context -> new Document("$set", new Document("items", items)
+                .append("totalItems", new Document("$subtract", List.of(TOTAL_ITEMS, 1)))
+                .append("lastChange", -1));
+
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, AggregationUpdate.from(List.of(set)),
+                FindAndModifyOptions.options().returnNew(true), CartEntity.class));
+    }
+
+    @Override
+    public CartEntity updateItems(String userId, Map<String, Integer> quantities, Map<String, Integer> deltas) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+
+        // first stage applies every line, the second drops the products left without pieces
+        Document changes = new Document();
+        List<Object> lineChanges = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            changes.append(productId, quantity);
+            lineChanges.add(new Document("$subtract", List.of(quantity, current(productId))));
+        });
+        deltas.forEach((productId, delta) -> {
+            Document quantity = new Document("$add", List.of(current(productId), delta));
+            changes.append(productId, quantity);
+            // a line cannot take away more pieces than the cart holds
+            lineChanges.add(new Document("$subtract", List.of(new Document("$max", List.of(quantity, 0)),
+                    current(productId))));
+        });
+        Document change = new Document("$add", lineChanges);
+        AggregationOperation apply = context -> new Document("$set", new Document("items",
+                new Document("$mergeObjects", List.of(new Document("$ifNull", List.of("$items", new Document())),
+                        changes)))
+                .append("totalItems", new Document("$add", List.of(TOTAL_ITEMS, change)))
+                .append("lastChange", change));
+        AggregationOperation prune = context -> new Document("$set", new Document("items",
+                new Document("$arrayToObject", new Document("$filter", new Document()
+                        .append("input", new Document("$objectToArray", "$items"))
+                        .append("cond", new Document("$gt", List.of("$$this.v", 0)))))));
+
+        AggregationUpdate update = AggregationUpdate.from(List.of(apply, prune));
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, CartEntity.class);
+        } catch (DuplicateKeyException e) {
+            // as in incrementItem: the cart was created concurrently and matches now
+            return mongoTemplate.findAndModify(query, update, options, CartEntity.class);
+        }
+    }
+
+    @Override
+    public Optional<CartEntity> deleteCart(String userId) {
+        return Optional.ofNullable(mongoTemplate.findAndRemove(
+                Query.query(Criteria.where("userId").is(userId)), CartEntity.class));
+    }
+
+    @Override
+    public long countAllItems() {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.group().sum("totalItems").as("total"));
+        Document result = mongoTemplate.aggregate(aggregation, CartEntity.class, Document.class).getUniqueMappedResult();
+        return result == null ? 0 : ((Number) result.get("total")).longValue();
+    }
+
+    private static Document current(String productId) {
+        return new Document("$ifNull", List.of("$" + itemPath(productId), 0));
+    }
+
+    private static String itemPath(String productId) {
+        return "items." + productId;
+    }
+}
@@ -0,0 +1,9 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.MailEntity;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MailRepository extends MongoRepository<MailEntity, String> {
+}
@@ -0,0 +1,33 @@
+package com.lumastyle.eshop.security;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Authenticated principal that carries the user's database ID next to the e-mail,
+ * so services can resolve the current user without another MongoDB lookup.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class AppUserPrincipal extends User {
+
+    private final String id;
+
+    /**
+     * @param id          the user's database ID
+     * @param email       the user's e-mail (the Spring Security username)
+     * @param password    the encoded password, or an empty string for token-based principals
+     * @param authorities the granted authorities
+     */
+    public AppUserPrincipal(String id,
+                            String email,
+                            String password,
+                            Collection<? extends GrantedAuthority> authorities) {
+        super(email, password, authorities);
+        this.id = id;
+    }
+}
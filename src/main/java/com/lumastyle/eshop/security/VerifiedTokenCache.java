@@ -0,0 +1,79 @@
+package com.lumastyle.eshop.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Optional cache of already verified JWTs mapped to their claims, so the HMAC signature of a token
+ * is checked once per node instead of on every request.
+ * <p>
+ * Entries are keyed by the SHA-256 of the token, so raw bearer tokens are never kept on the heap,
+ * and expire at the token's own {@code exp}. Disabled unless {@code auth.token.cache.enabled=true}.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VerifiedTokenCache {
+
+    private final Cache<String, Claims> tokenCache;
+    private final Counter tokenCacheHitsCounter;
+    private final Counter tokenCacheMissesCounter;
+
+    @Value("${auth.token.cache.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Return the claims of the given token, verifying it only when it is not cached yet.
+     *
+     * @param token    the compact JWT
+     * @param verifier parses and verifies the token, throwing if it is invalid
+     * @return the verified claims
+     */
+    public Claims getOrVerify(String token, Function<String, Claims> verifier) {
+        if (!enabled) {
+            return verifier.apply(token);
+        }
+        String hash = hash(token);
+        Claims claims = tokenCache.getIfPresent(hash);
+        if (claims != null) {
+            tokenCacheHitsCounter.increment();
+            return claims;
+        }
+        tokenCacheMissesCounter.increment();
+        claims = verifier.apply(token);
+        if (claims.getExpiration() != null) {
+            tokenCache.put(hash, claims);
+        }
+        return claims;
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Compute the cache key of a token.
+     *
+     * @param token the compact JWT
+     * @return Base64 encoded SHA-256 digest of the token
+     */
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -15,4 +15,13 @@ public interface AuthFacade {
      * @return the current authentication token
      */
     Authentication getAuthentication();
+
+    /**
+     * Return the database ID of the logged-in user, taken from the authenticated principal
+     * without touching the database.
+     *
+     * @return the current user's ID
+     * @throws IllegalStateException if no application user is authenticated
+     */
+    String getCurrentUserId();
 }
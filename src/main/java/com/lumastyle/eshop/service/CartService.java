@@ -1,5 +1,6 @@
 package com.lumastyle.eshop.service;
 
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
 import com.lumastyle.eshop.dto.cart.CartRequest;
 import com.lumastyle.eshop.dto.cart.CartResponse;
 
@@ -35,4 +36,12 @@ public interface CartService {
      * @return the updated cart contents
      */
     CartResponse removeFromCart(CartRequest request);
+
+    /**
+     * Set or change the quantities of several items in one atomic update.
+     *
+     * @param request the lines to apply
+     * @return the updated cart contents
+     */
+    CartResponse updateCart(CartBulkRequest request);
 }
@@ -6,7 +6,8 @@ package com.lumastyle.eshop.service;
 public interface EmailService {
 
     /**
-     * Send a plain text email message.
+     * Queue a plain text email message for delivery. The message is persisted before
+     * this method returns and sent asynchronously, with retries.
      *
      * @param to      recipient email address
      * @param subject email subject line
@@ -1,7 +1,16 @@
 package com.lumastyle.eshop.service;
 
+import com.lumastyle.eshop.exception.FileStorageException;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
 /**
  * Abstraction for storing files (e.g., images) in cloud or local storage.
  */
@@ -22,4 +31,94 @@ public interface FileStorageService {
      * @return true if deletion succeeded, false otherwise
      */
     boolean deleteFile(String key);
+
+    /**
+     * Upload the given multipart file without blocking the caller, if the implementation supports it.
+     * By default the upload runs on the calling thread and the returned future is already complete.
+     *
+     * @param file the file to upload
+     * @return a future of the generated storage key or URL
+     */
+    default CompletableFuture<String> uploadFileAsync(MultipartFile file) {
+        try {
+            return CompletableFuture.completedFuture(uploadFile(file));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Upload the given multipart file without blocking the caller. By default the upload runs on
+     * the given executor, which must be meant for blocking I/O; non-blocking implementations
+     * ignore it.
+     *
+     * @param file     the file to upload
+     * @param executor the executor a blocking upload runs on
+     * @return a future of the generated storage key or URL
+     */
+    default CompletableFuture<String> uploadFileAsync(MultipartFile file, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> uploadFile(file), executor);
+    }
+
+    /**
+     * Delete the file identified by the given key without blocking the caller, if the
+     * implementation supports it.
+     *
+     * @param key the storage key or URL path to delete
+     * @return a future telling whether the deletion succeeded
+     */
+    default CompletableFuture<Boolean> deleteFileAsync(String key) {
+        try {
+            return CompletableFuture.completedFuture(deleteFile(key));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Delete several files at once. By default they are deleted one by one; S3 deletes up to
+     * 1000 keys per request.
+     *
+     * @param keys the storage keys to delete
+     * @return the keys that could not be deleted, with the reason
+     * @throws FileStorageException if the storage could not be reached at all
+     */
+    default Map<String, String> deleteFiles(Collection<String> keys) {
+        Map<String, String> failed = new HashMap<>();
+        for (String key : keys) {
+            try {
+                if (!deleteFile(key)) {
+                    failed.put(key, "Not deleted");
+                }
+            } catch (FileStorageException e) {
+                failed.put(key, e.getMessage());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * The public URL of a stored file, as returned by {@link #uploadFile(MultipartFile)}.
+     *
+     * @param key the storage key
+     * @return the URL
+     */
+    String urlOf(String key);
+
+    /**
+     * List all stored files, page by page as the stream is consumed. The stream must be closed.
+     *
+     * @return the stored files
+     * @throws FileStorageException if the storage could not be listed
+     */
+    Stream<StoredFile> listFiles();
+
+    /**
+     * A stored file.
+     *
+     * @param key          the storage key
+     * @param lastModified when the file was stored
+     */
+    record StoredFile(String key, Instant lastModified) {
+    }
 }
@@ -0,0 +1,32 @@
+package com.lumastyle.eshop.service;
+
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+
+/**
+ * Long-lived, thread-safe access to the GoPay REST API.
+ *
+ * <p>Implementations keep one authorized connector for the whole application and
+ * reuse its OAuth app token until shortly before it expires.</p>
+ */
+public interface GoPayService {
+
+    /**
+     * Creates a payment in GoPay.
+     *
+     * @param payment the payment to create
+     * @return the created payment including its GoPay ID and gateway URL
+     * @throws GoPayIntegrationException if GoPay cannot be reached or rejects the request
+     */
+    Payment createPayment(BasePayment payment);
+
+    /**
+     * Reads the current state of a payment from GoPay.
+     *
+     * @param paymentId the GoPay payment ID
+     * @return the payment with its current state
+     * @throws GoPayIntegrationException if GoPay cannot be reached or rejects the request
+     */
+    Payment getPaymentStatus(Long paymentId);
+}
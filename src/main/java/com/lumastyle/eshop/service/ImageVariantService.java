@@ -0,0 +1,25 @@
+package com.lumastyle.eshop.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates resized copies of product images for the places that show them small.
+ */
+public interface ImageVariantService {
+
+    /**
+     * Resize and recompress the image into every configured variant and store the variants
+     * next to the original. The work runs off the calling thread.
+     * <p>
+     * Variants are optional: if the file is not a readable image, is too large or the workers
+     * are saturated, the future completes with an empty map rather than exceptionally.
+     * </p>
+     *
+     * @param image the uploaded original image
+     * @return a future of the variant URLs keyed by variant name (e.g. {@code thumbnail}, {@code card})
+     */
+    CompletableFuture<Map<String, String>> createVariants(MultipartFile image);
+}
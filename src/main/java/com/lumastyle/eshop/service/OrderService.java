@@ -1,11 +1,17 @@
 package com.lumastyle.eshop.service;
 
+import com.lumastyle.eshop.dto.order.OrderHistoryQuery;
+import com.lumastyle.eshop.dto.order.OrderPageResponse;
+import com.lumastyle.eshop.dto.order.OrderQuery;
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
+import com.lumastyle.eshop.dto.order.PaymentStatusResponse;
+import com.lumastyle.eshop.exception.BadRequestException;
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Service interface for placing and managing customer orders.
@@ -16,27 +22,59 @@ import java.util.Map;
 public interface OrderService {
 
     /**
-     * Creates a new order and initiates a payment via GoPay.
+     * Creates a new order and queues its payment creation in GoPay.
+     *
+     * <p>The order is returned in the {@code Pending} payment state; the GoPay payment is
+     * created asynchronously and can be followed through {@link #getPaymentStatus(String)}.</p>
      *
      * @param request the order request details
-     * @return the response containing order and payment information
+     * @return the response containing the saved order
      */
     OrderResponse createOrderAndPayment(OrderRequest request);
 
     /**
-     * Verifies the payment for an existing order based on GoPay callback data.
+     * Retrieves the payment state of an order of the currently authenticated user.
+     *
+     * @param orderId the unique identifier of the order
+     * @return the payment state and, once the payment is created, the gateway URL
+     * @throws ResourceNotFoundException if the order does not exist or belongs to another user
+     */
+    PaymentStatusResponse getPaymentStatus(String orderId);
+
+    /**
+     * Processes a payment notification from GoPay.
+     *
+     * <p>The notification only names the payment; its state is read from GoPay. A paid,
+     * canceled or timed out payment settles the order with one conditional update, so however
+     * often the notification is repeated, only the first one clears the cart and sends the
+     * confirmation e-mail. The same update marks a paid order as waiting for these side effects,
+     * so if they fail they are completed later by {@link #completePendingSideEffects(int)}.
+     * Notifications for settled orders are answered without calling GoPay or writing anything.</p>
      *
-     * @param paymentData the map of parameters returned by GoPay (e.g., paymentId)
-     * @param status      the payment status returned by GoPay
+     * @param paymentId the GoPay payment ID
+     * @return {@code true} if this call settled the order, {@code false} if the payment is still
+     * in progress or the order was settled before
+     * @throws GoPayIntegrationException if no order has this payment or GoPay cannot be reached
      */
-    void verifyPayment(Map<String, String> paymentData, String status);
+    boolean processPaymentNotification(long paymentId);
 
     /**
-     * Retrieves all orders for the currently authenticated user.
+     * Clears the carts and spools the confirmation e-mails of paid orders whose side effects
+     * failed or were interrupted when the order was settled.
      *
-     * @return a list of order responses for the user
+     * @param limit the most orders to handle in this call
+     * @return the number of orders whose side effects are now done
      */
-    List<OrderResponse> getUserOrders();
+    int completePendingSideEffects(int limit);
+
+    /**
+     * Retrieves one page of the orders of the currently authenticated user, newest first.
+     *
+     * @param query the page size and the cursor of the previous page
+     * @return the orders of the page and the cursor of the next page
+     * @throws BadRequestException if the cursor is invalid
+     */
+    OrderPageResponse getUserOrders(OrderHistoryQuery query);
 
     /**
      * Removes an existing order by its identifier.
@@ -46,11 +84,28 @@ public interface OrderService {
     void removeOrder(String orderId);
 
     /**
-     * Retrieves orders for all users (for administrative use).
+     * Retrieves one page of the orders of all users, newest first (for administrative use).
+     *
+     * @param query the filters, page size and the cursor of the previous page
+     * @return the orders of the page and the cursor of the next page
+     * @throws BadRequestException if the cursor or the date range is invalid
+     */
+    OrderPageResponse getOrdersOfAllUsers(OrderQuery query);
+
+    /**
+     * Writes all orders matching the filters as newline-delimited JSON, newest first
+     * (for administrative use).
+     *
+     * <p>Orders are read from a database cursor and written one by one, so memory use does
+     * not grow with the number of orders.</p>
      *
-     * @return a list of all user order responses
+     * @param query the filters; the page size and cursor are ignored
+     * @param out   the stream to write to; it is flushed but not closed
+     * @return the number of orders written
+     * @throws IOException if writing to the stream fails
+     * @throws BadRequestException if the date range is invalid
      */
-    List<OrderResponse> getOrdersOfAllUsers();
+    long exportOrders(OrderQuery query, OutputStream out) throws IOException;
 
     /**
      * Updates the status of an existing order (for administrative use).
@@ -1,12 +1,15 @@
 package com.lumastyle.eshop.service;
 
+import com.lumastyle.eshop.dto.product.ProductPageResponse;
+import com.lumastyle.eshop.dto.product.ProductQuery;
 import com.lumastyle.eshop.dto.product.ProductRequest;
 import com.lumastyle.eshop.dto.product.ProductResponse;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.FileStorageException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * CRUD operations for product catalog (including image handling).
@@ -14,20 +17,24 @@ import java.util.List;
 public interface ProductService {
 
     /**
-     * Create a new product along with its image.
+     * Create a new product along with its image and the resized variants of the image.
      *
      * @param request the product metadata (name, price, etc.)
      * @param file    the image to associate with the product
-     * @return the newly created product DTO with its generated ID & URL
+     * @return the newly created product DTO with its generated ID & URL, completed once the
+     * image is stored and the product saved; completes exceptionally with a
+     * {@link FileStorageException} if the upload fails
      */
-    ProductResponse addProduct(ProductRequest request, MultipartFile file);
+    CompletableFuture<ProductResponse> addProduct(ProductRequest request, MultipartFile file);
 
     /**
-     * Read all products in the catalog.
+     * Read one page of the catalog, filtered and sorted as requested.
      *
-     * @return list of all products
+     * @param query the filter, sort and paging options
+     * @return the products on the page and the cursor of the next page
+     * @throws BadRequestException if the cursor is malformed or belongs to another sort order
      */
-    List<ProductResponse> readProducts();
+    ProductPageResponse readProducts(ProductQuery query);
 
     /**
      * Read a single product, by its ID.
@@ -39,7 +46,8 @@ public interface ProductService {
     ProductResponse readProduct(String id);
 
     /**
-     * Delete a product (and its stored image) by ID.
+     * Delete a product by ID. Its stored image and variants are queued for deletion and removed
+     * in the background unless another product still uses the same ones.
      *
      * @param id the product’s database ID
      * @throws FileStorageException if no such product exists
@@ -17,7 +17,7 @@ public interface UserService {
     UserResponse registerUser(UserRequest request);
 
     /**
-     * Get the currently logged-in user’s ID.
+     * Get the currently logged-in user’s ID, as carried by the authenticated principal.
      *
      * @return the authenticated user’s database ID
      */
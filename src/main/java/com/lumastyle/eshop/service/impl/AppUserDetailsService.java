@@ -1,10 +1,12 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.lumastyle.eshop.entity.UserEntity;
 import com.lumastyle.eshop.repository.UserRepository;
+import com.lumastyle.eshop.security.AppUserPrincipal;
+import io.micrometer.core.instrument.Counter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -18,13 +20,39 @@ import java.util.Collections;
 public class AppUserDetailsService implements UserDetailsService {
 
     private final UserRepository repository;
+    private final Cache<String, UserEntity> principalCache;
+    private final Counter principalCacheHitsCounter;
+    private final Counter principalCacheMissesCounter;
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        UserEntity user = repository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
-        log.info("User found successfully: {}", email);
-        // log displaying 2x because spring security calls the user twice
-        return new User(user.getEmail(), user.getPassword(), Collections.emptyList());
+        UserEntity user = principalCache.getIfPresent(email);
+        if (user != null) {
+            principalCacheHitsCounter.increment();
+        } else {
+            principalCacheMissesCounter.increment();
+            user = repository.findByEmail(email)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
+            principalCache.put(email, user);
+            log.debug("User loaded into principal cache: {}", email);
+        }
+        // a fresh principal per call: Spring Security erases credentials on the returned object
+        return new AppUserPrincipal(user.getId(), user.getEmail(), user.getPassword(), Collections.emptyList());
+    }
+
+    /**
+     * Drop the cached principal for the given e-mail so the next lookup reads MongoDB.
+     *
+     * @param email the e-mail of the changed user
+     */
+    public void evict(String email) {
+        principalCache.invalidate(email);
+    }
+
+    /**
+     * Drop all cached principals.
+     */
+    public void evictAll() {
+        principalCache.invalidateAll();
     }
 }
@@ -1,5 +1,6 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.security.AppUserPrincipal;
 import com.lumastyle.eshop.service.AuthFacade;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,4 +13,15 @@ public class AuthFacadeImpl implements AuthFacade {
     public Authentication getAuthentication() {
         return SecurityContextHolder.getContext().getAuthentication();
     }
+
+    @Override
+    public String getCurrentUserId() {
+        Authentication authentication = getAuthentication();
+        if (authentication != null
+                && authentication.getPrincipal() instanceof AppUserPrincipal principal
+                && principal.getId() != null) {
+            return principal.getId();
+        }
+        throw new IllegalStateException("No authenticated user");
+    }
 }
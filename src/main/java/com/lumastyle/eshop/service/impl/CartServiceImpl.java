@@ -1,50 +1,48 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
+import com.lumastyle.eshop.dto.cart.CartItemUpdate;
 import com.lumastyle.eshop.dto.cart.CartRequest;
 import com.lumastyle.eshop.dto.cart.CartResponse;
 import com.lumastyle.eshop.entity.CartEntity;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.CartMapper;
-import com.lumastyle.eshop.repository.CartRepository;
 import com.lumastyle.eshop.service.CartService;
 import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.store.CartStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Optional;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CartServiceImpl implements CartService {
 
-    private final CartRepository repository;
+    private final CartStore store;
     private final UserService service;
     private final CartMapper mapper;
-    private final AtomicInteger cartItemsGauge;
 
     @Override
     public CartResponse addToCart(CartRequest request) {
         String userId = getLoggedUserId();
         log.info("Adding item to cart for user: {}", userId);
-        CartEntity cart = repository.findByUserId(userId)
-                .orElseGet(() -> new CartEntity(userId, new HashMap<>()));
         log.info("Adding item to cart: {}", request);
-        incrementItem(cart, request.getProductId());
-        CartEntity saved = repository.save(cart);
+        CartEntity saved = store.incrementItem(userId, request.getProductId());
         log.info("Item added to cart successfully: {}", saved);
-        updateGauge(saved);
         return mapper.toResponse(saved);
     }
 
     @Override
     public CartResponse getCart() {
         String userId = getLoggedUserId();
-        log.info("Reading cart for user: {}", getLoggedUserId());
-        CartEntity entity = repository.findByUserId(userId)
+        log.info("Reading cart for user: {}", userId);
+        CartEntity entity = store.findByUserId(userId)
                 .orElse(new CartEntity(null, userId, new HashMap<>()));
         log.info("Cart found successfully: {}", entity);
         return mapper.toResponse(entity);
@@ -54,22 +52,39 @@ public class CartServiceImpl implements CartService {
     public void cleanCart() {
         String userId = getLoggedUserId();
         log.info("Cleaning cart for user: {}", userId);
-        repository.deleteByUserId(userId);
+        store.deleteByUserId(userId);
         log.info("Cart for user: {} deleted successfully", userId);
-        cartItemsGauge.set(0);
     }
 
     @Override
     public CartResponse removeFromCart(CartRequest request) {
-        CartEntity cart = loadCartOrThrow();
-        boolean changed = decrementItem(cart, request.getProductId());
+        String userId = getLoggedUserId();
         log.info("Removing item from cart: {}", request);
-        if (changed) {
-            cart = repository.save(cart);
-            log.info("Item removed from cart successfully: {}", cart);
-            updateGauge(cart);
+        Optional<CartEntity> updated = store.decrementItem(userId, request.getProductId());
+        if (updated.isEmpty()) {
+            // the product is not in the cart, which stays as it is
+            return mapper.toResponse(loadCartOrThrow(userId));
         }
-        return mapper.toResponse(cart);
+        log.info("Item removed from cart successfully: {}", updated.get());
+        return mapper.toResponse(updated.get());
+    }
+
+    @Override
+    public CartResponse updateCart(CartBulkRequest request) {
+        String userId = getLoggedUserId();
+        log.info("Updating {} cart items for user: {}", request.getItems().size(), userId);
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (CartItemUpdate item : request.getItems()) {
+            if (item.getQuantity() != null) {
+                quantities.put(item.getProductId(), item.getQuantity());
+            } else {
+                deltas.put(item.getProductId(), item.getDelta());
+            }
+        }
+        CartEntity updated = store.updateItems(userId, quantities, deltas);
+        log.info("Cart updated successfully: {}", updated);
+        return mapper.toResponse(updated);
     }
 
     // --- helper methods ---
@@ -85,67 +100,16 @@ public class CartServiceImpl implements CartService {
     }
 
     /**
-     * Load the cart for the currently authenticated user.
+     * Load the cart of the given user.
      *
-     * @return the cart entity for the logged-in user
+     * @param userId the cart owner
+     * @return the cart entity for the user
      * @throws ResourceNotFoundException if the cart does not exist
      */
-    private CartEntity loadCartOrThrow() {
-        log.info("Loading cart for user: {}", getLoggedUserId());
-        return repository.findByUserId(getLoggedUserId())
+    private CartEntity loadCartOrThrow(String userId) {
+        log.info("Loading cart for user: {}", userId);
+        return store.findByUserId(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Cart not found"));
     }
 
-    /**
-     * Increase the quantity of the given product by one.
-     *
-     * @param cart      the cart to modify
-     * @param productId the ID of the product to increment
-     */
-    private void incrementItem(CartEntity cart, String productId) {
-        log.info("Incrementing item for productID: {}", productId);
-        Map<String, Integer> items = cart.getItems();
-        items.put(productId, items.getOrDefault(productId, 0) + 1);
-        cart.setItems(items);
-    }
-
-    /**
-     * Decrease the quantity for the given product and remove it when the count reaches zero.
-     *
-     * @param cart      the cart to modify
-     * @param productId the ID of the product to decrement
-     * @return true if the cart contained the product and was updated
-     */
-    private boolean decrementItem(CartEntity cart, String productId) {
-        log.info("Decrementing item for productID: {}", productId);
-        Map<String, Integer> items = cart.getItems();
-        if (!items.containsKey(productId)) {
-            return false;
-        }
-        updateItemQuantity(items, productId);
-        cart.setItems(items);
-        return true;
-    }
-
-    /**
-     * Update the quantity entry for the given product, removing it when it becomes zero.
-     *
-     * @param items     the map of product IDs to quantities
-     * @param productId the ID of the product being adjusted
-     */
-    private void updateItemQuantity(Map<String, Integer> items, String productId) {
-        items.computeIfPresent(productId, (id, qty) -> qty > 1 ? qty - 1 : null);
-    }
-
-    /**
-     * Recalculate the {@code cart_items_total} gauge based on the provided cart.
-     *
-     * @param cart the cart whose item quantities should be summed
-     */
-    private void updateGauge(CartEntity cart) {
-        int total = cart.getItems().values().stream().mapToInt(Integer::intValue).sum();
-        cartItemsGauge.set(total);
-    }
-
 }
-
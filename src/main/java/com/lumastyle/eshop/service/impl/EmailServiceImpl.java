@@ -1,29 +1,38 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.entity.MailEntity;
+import com.lumastyle.eshop.repository.MailRepository;
 import com.lumastyle.eshop.service.EmailService;
-import io.micrometer.core.instrument.Counter;
+import com.lumastyle.eshop.worker.MailDispatcher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
-    private final JavaMailSender mailSender;
-    private final Counter emailsSentCounter;
+    private final MailRepository mailRepository;
+    private final MailDispatcher mailDispatcher;
 
     @Override
     public void sendPaymentConfirmation(String to, String subject, String text) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        mailSender.send(message);
-        emailsSentCounter.increment();
-        log.info("Email sent to {} with subject {}", to, subject);
+        Instant now = Instant.now();
+        MailEntity mail = MailEntity.builder()
+                .to(to)
+                .subject(subject)
+                .text(text)
+                .status(MailEntity.STATUS_QUEUED)
+                .attempts(0)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build();
+        // spooled first, so the mail survives a restart before it is sent
+        mail = mailRepository.save(mail);
+        mailDispatcher.enqueue(mail.getId());
+        log.info("Email to {} with subject {} queued", to, subject);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import com.lumastyle.eshop.service.GoPayService;
+import cz.gopay.api.v3.GPClientException;
+import cz.gopay.api.v3.IGPConnector;
+import cz.gopay.api.v3.impl.apacheclient.HttpClientGPConnector;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class GoPayServiceImpl implements GoPayService {
+
+    private final Object tokenLock = new Object();
+
+    // built on the first token request and kept for the bean's life, guarded by tokenLock
+    private IGPConnector client;
+    // the client, published once it holds a valid app token
+    private volatile IGPConnector connector;
+    private volatile long tokenExpiresAt;
+
+    @Value("${gopay.api.url}")
+    private String gopayApiUrl;
+    @Value("${gopay.client.id}")
+    private String gopayClientId;
+    @Value("${gopay.client.secret}")
+    private String gopayClientSecret;
+    @Value("${gopay.token.refresh-margin.millis:300000}")
+    private long refreshMarginMillis;
+
+    @Override
+    public Payment createPayment(BasePayment payment) {
+        try {
+            return authorizedConnector().createPayment(payment);
+        } catch (GPClientException e) {
+            log.error("Communication error with GoPay: {}", e.getMessage(), e);
+            throw new GoPayIntegrationException("Integration error with GoPay", e);
+        }
+    }
+
+    @Override
+    public Payment getPaymentStatus(Long paymentId) {
+        try {
+            return authorizedConnector().paymentStatus(paymentId);
+        } catch (GPClientException e) {
+            log.error("Could not read status of GoPay payment {}: {}", paymentId, e.getMessage(), e);
+            throw new GoPayIntegrationException("Integration error with GoPay", e);
+        }
+    }
+
+    /**
+     * Renews the app token in the background before it reaches the refresh margin,
+     * so request threads normally never wait for the OAuth round-trip.
+     */
+    @Scheduled(fixedDelayString = "${gopay.token.refresh-check.millis:60000}")
+    public void refreshTokenIfExpiring() {
+        if (connector == null || !isExpiring()) {
+            return;
+        }
+        try {
+            synchronized (tokenLock) {
+                if (isExpiring()) {
+                    refreshToken();
+                }
+            }
+        } catch (GPClientException e) {
+            log.warn("Background GoPay token refresh failed, retrying on next use: {}", e.getMessage());
+        }
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Returns the shared connector, obtaining a new app token first when the current one
+     * is missing or about to expire.
+     *
+     * @return a connector holding a valid app token
+     * @throws GPClientException if the token request fails
+     */
+    private IGPConnector authorizedConnector() throws GPClientException {
+        if (connector != null && !isExpiring()) {
+            return connector;
+        }
+        synchronized (tokenLock) {
+            if (connector == null || isExpiring()) {
+                refreshToken();
+            }
+            return connector;
+        }
+    }
+
+    /**
+     * Requests a new app token on the shared connector and schedules its renewal from the
+     * {@code expires_in} GoPay returned with it.
+     *
+     * @throws GPClientException if the token request fails
+     */
+    private void refreshToken() throws GPClientException {
+        log.info("Requesting GoPay app token");
+        if (client == null) {
+            client = newConnector(gopayApiUrl);
+        }
+        long requestedAt = System.currentTimeMillis();
+        client.getAppToken(gopayClientId, gopayClientSecret);
+        tokenExpiresAt = requestedAt + TimeUnit.SECONDS.toMillis(client.getAccessToken().getExpiresIn());
+        connector = client;
+    }
+
+    /**
+     * Creates an unauthorized connector; the SDK's HTTP client pools and keeps its connections
+     * alive, so one connector serves every payment.
+     */
+    IGPConnector newConnector(String apiUrl) {
+        return HttpClientGPConnector.build(apiUrl);
+    }
+
+    private boolean isExpiring() {
+        return System.currentTimeMillis() >= tokenExpiresAt - refreshMarginMillis;
+    }
+}
@@ -0,0 +1,286 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.ImageVariantService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the {@code thumbnail} and {@code card} variants of product images.
+ * <p>
+ * Decoding and resizing are CPU-bound, so they run on {@code image.variants.threads} platform
+ * threads with a queue of {@code image.variants.queue-capacity} images; when the queue is full
+ * the product is saved without variants instead of waiting. The variants are uploaded from
+ * virtual threads, so a blocking file storage never holds up the encoding threads. Large
+ * originals are decoded with subsampling, so the decoded image is at most about twice the
+ * largest variant and memory does not grow with the size of the upload. Variants are
+ * JPEG-encoded with {@code image.variants.jpeg-quality}; transparent areas become white.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantServiceImpl implements ImageVariantService {
+
+    private final FileStorageService fileStorage;
+    private final Timer imageVariantTimer;
+    private final Counter imageVariantBytesSavedCounter;
+    private final Counter imageVariantFailuresCounter;
+
+    @Value("${image.variants.threads:2}")
+    private int threads;
+    @Value("${image.variants.queue-capacity:20}")
+    private int queueCapacity;
+    @Value("${image.variants.thumbnail.max-size:200}")
+    private int thumbnailSize;
+    @Value("${image.variants.card.max-size:600}")
+    private int cardSize;
+    @Value("${image.variants.jpeg-quality:0.8}")
+    private float jpegQuality;
+    @Value("${image.variants.max-pixels:50000000}")
+    private long maxPixels;
+
+    private ThreadPoolExecutor executor;
+
+    private final ExecutorService uploadExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("image-variant-upload-", 0).factory());
+
+    @PostConstruct
+    void start() {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("image-variants-", 0).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+        uploadExecutor.shutdown();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> createVariants(MultipartFile image) {
+        CompletableFuture<List<EncodedVariant>> encoded;
+        try {
+            encoded = CompletableFuture.supplyAsync(() -> imageVariantTimer.record(() -> encode(image)), executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Image variant workers are busy, {} is stored without variants", image.getOriginalFilename());
+            imageVariantFailuresCounter.increment();
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        return encoded.thenComposeAsync(this::upload, uploadExecutor)
+                .exceptionally(e -> {
+                    log.warn("Could not create variants of {}: {}", image.getOriginalFilename(), e.getMessage());
+                    imageVariantFailuresCounter.increment();
+                    return Map.of();
+                });
+    }
+
+    // === Helper methods ===
+
+    private CompletableFuture<Map<String, String>> upload(List<EncodedVariant> variants) {
+        List<CompletableFuture<String>> uploads = variants.stream()
+                .map(variant -> fileStorage.uploadFileAsync(variant, uploadExecutor).thenApply(url -> {
+                    imageVariantBytesSavedCounter.increment(variant.savedBytes());
+                    return url;
+                }))
+                .toList();
+        return CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            Map<String, String> urls = new LinkedHashMap<>();
+            for (int i = 0; i < variants.size(); i++) {
+                urls.put(variants.get(i).variant(), uploads.get(i).join());
+            }
+            return urls;
+        });
+    }
+
+    /**
+     * Decodes the image once and encodes every variant from it.
+     */
+    private List<EncodedVariant> encode(MultipartFile image) {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        sizes.put("thumbnail", thumbnailSize);
+        sizes.put("card", cardSize);
+        int largest = sizes.values().stream().mapToInt(Integer::intValue).max().orElseThrow();
+
+        BufferedImage source = decode(image, largest);
+        String baseName = baseName(image.getOriginalFilename());
+        List<EncodedVariant> variants = new ArrayList<>();
+        for (Map.Entry<String, Integer> size : sizes.entrySet()) {
+            byte[] jpeg = toJpeg(resize(source, size.getValue()));
+            variants.add(new EncodedVariant(size.getKey(), baseName + "-" + size.getKey() + ".jpg", jpeg,
+                    Math.max(0, image.getSize() - jpeg.length)));
+        }
+        return variants;
+    }
+
+    /**
+     * Reads the image, skipping pixels so that its longer side is not needlessly larger than
+     * twice {@code targetSize}.
+     */
+    private BufferedImage decode(MultipartFile image, int targetSize) {
+        try (InputStream in = image.getInputStream();
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = imageIn == null ? null : ImageIO.getImageReaders(imageIn);
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Not a supported image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image of " + width + "x" + height + " pixels is too large");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * targetSize));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Scales the image so that its longer side is at most {@code maxSize}, halving it step by
+     * step so bilinear filtering still averages all source pixels. Images are never enlarged.
+     */
+    private static BufferedImage resize(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private byte[] toJpeg(BufferedImage image) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static String baseName(String filename) {
+        String name = filename == null || filename.isBlank() ? "image" : filename;
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * An encoded variant, handed to the file storage like an uploaded file. The bytes it saves
+     * compared to the original are recorded once it is stored.
+     */
+    private record EncodedVariant(String variant, String filename, byte[] content, long savedBytes)
+            implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return variant;
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/jpeg";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.BadRequestException;
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Stores files in a local directory, for nodes without S3 access; selected with
+ * {@code file.store=local}. The files are served by {@code ImageController} under
+ * {@code file.local.public-url}.
+ * <p>
+ * Keys are content hashes like in {@link S3FileStorageServiceImpl}, but here the hash is
+ * computed while the upload is copied into a temporary file in the directory, which is then
+ * renamed to its key. If a file with the key exists, the copy is dropped. Readers therefore
+ * never see a partly written file. The key is withdrawn from the {@link FileCleanupQueue}
+ * before that check, so a reused file is not deleted by the cleanup worker.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.store", havingValue = "local")
+public class LocalFileStorageServiceImpl implements FileStorageService {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+
+    private final FileCleanupQueue fileCleanupQueue;
+
+    @Value("${file.local.directory}")
+    private String directory;
+    @Value("${file.local.public-url}")
+    private String publicUrl;
+
+    private Path root;
+
+    @PostConstruct
+    void start() throws IOException {
+        root = Path.of(directory).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        log.info("Storing files in {}", root);
+    }
+
+    @Override
+    public String uploadFile(MultipartFile file) {
+        S3FileStorageServiceImpl.validatePath(file);
+        log.info("Uploading file: {}", file.getOriginalFilename());
+        String key;
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(root, "upload-", ".tmp");
+            MessageDigest sha256 = S3FileStorageServiceImpl.sha256();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), sha256)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            key = HexFormat.of().formatHex(sha256.digest())
+                    + S3FileStorageServiceImpl.extensionOf(Objects.requireNonNull(file.getOriginalFilename()));
+            Path target = root.resolve(key);
+            fileCleanupQueue.withdraw(key);
+            if (Files.exists(target)) {
+                log.info("File {} is already stored with key: {}", file.getOriginalFilename(), key);
+            } else {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                log.info("File stored with key: {}", key);
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Upload failed", e);
+        } finally {
+            deleteTemp(temp);
+        }
+        return urlOf(key);
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        Path path = pathOf(key);
+        log.info("Deleting file with key: {}", key);
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            throw new FileStorageException("Deletion failed", e);
+        }
+    }
+
+    @Override
+    public String urlOf(String key) {
+        return publicUrl + "/" + key;
+    }
+
+    @Override
+    public Stream<StoredFile> listFiles() {
+        try {
+            Stream<Path> files = Files.list(root);
+            return files.filter(path -> KEY.matcher(path.getFileName().toString()).matches())
+                    .map(path -> {
+                        try {
+                            return new StoredFile(path.getFileName().toString(),
+                                    Files.getLastModifiedTime(path).toInstant());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new FileStorageException("Listing failed", e);
+        }
+    }
+
+    /**
+     * Resolves a key to its file in the storage directory.
+     *
+     * @param key the key returned in the file URL
+     * @return the path of the file, which may not exist
+     * @throws BadRequestException if the key is not a key this storage creates
+     */
+    public Path pathOf(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new BadRequestException("Invalid file key: " + key);
+        }
+        return root.resolve(key);
+    }
+
+    // === Helper methods ===
+
+    private static void deleteTemp(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary file {}: {}", temp, e.getMessage());
+        }
+    }
+}
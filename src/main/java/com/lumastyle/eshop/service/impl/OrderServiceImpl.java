@@ -1,128 +1,212 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lumastyle.eshop.dto.order.OrderHistoryQuery;
+import com.lumastyle.eshop.dto.order.OrderItem;
+import com.lumastyle.eshop.dto.order.OrderPageResponse;
+import com.lumastyle.eshop.dto.order.OrderQuery;
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
+import com.lumastyle.eshop.dto.order.PaymentStatusResponse;
 import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.GoPayIntegrationException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.OrderMapper;
-import com.lumastyle.eshop.repository.CartRepository;
 import com.lumastyle.eshop.repository.OrderRepository;
+import com.lumastyle.eshop.repository.ProductRepository;
 import com.lumastyle.eshop.service.EmailService;
+import com.lumastyle.eshop.service.GoPayService;
 import com.lumastyle.eshop.service.OrderService;
 import com.lumastyle.eshop.service.UserService;
-import cz.gopay.api.v3.GPClientException;
-import cz.gopay.api.v3.IGPConnector;
-import cz.gopay.api.v3.impl.apacheclient.HttpClientGPConnector;
-import cz.gopay.api.v3.model.common.Currency;
-import cz.gopay.api.v3.model.payment.BasePayment;
+import com.lumastyle.eshop.store.CartStore;
+import com.lumastyle.eshop.util.CursorCodec;
+import com.lumastyle.eshop.worker.PaymentOutboxWorker;
 import cz.gopay.api.v3.model.payment.Payment;
-import cz.gopay.api.v3.model.payment.PaymentFactory;
-import cz.gopay.api.v3.model.payment.support.ItemType;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderServiceImpl implements OrderService {
 
+    /**
+     * Documents fetched per round trip while exporting; bounds the memory held by the cursor.
+     */
+    private static final int EXPORT_BATCH_SIZE = 500;
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "id");
+    private static final Sort NEWEST_CREATED_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    /**
+     * GoPay payment IDs whose notification is being handled on this instance.
+     */
+    private final Set<String> notificationsInFlight = ConcurrentHashMap.newKeySet();
+
     private final OrderRepository orderRepository;
-    private final CartRepository cartRepository;
+    private final CartStore cartStore;
+    private final ProductRepository productRepository;
     private final OrderMapper mapper;
     private final UserService userService;
     private final EmailService emailService;
+    private final PaymentOutboxWorker paymentOutboxWorker;
+    private final GoPayService goPayService;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
     private final Counter ordersCreatedCounter;
     private final Counter ordersPaymentFailedCounter;
+    private final Counter paymentNotificationsDeduplicatedCounter;
     private final Timer orderProcessingTimer;
 
-    @Value("${gopay.api.url}")
-    private String gopayApiUrl;
-    @Value("${gopay.client.id}")
-    private String gopayClientId;
-    @Value("${gopay.client.secret}")
-    private String gopayClientSecret;
-    @Value("${gopay.go.id}")
-    private String gopayGoId;
-    @Value("${gopay.callback.return-url}")
-    private String returnUrl;
-    @Value("${gopay.callback.notify-url}")
-    private String notifyUrl;
+    @Value("${payment.side-effects.lease.millis:60000}")
+    private long sideEffectsLeaseMillis;
 
     @Override
     public OrderResponse createOrderAndPayment(OrderRequest request) {
         Timer.Sample sample = Timer.start();
-        OrderEntity newOrder = mapper.toEntity(request);
-        log.info("Creating new order: {}", newOrder);
-        newOrder = orderRepository.save(newOrder);
-
         try {
-            log.info("Initializing GoPay connector and getting token...");
-            IGPConnector connector = HttpClientGPConnector.build(gopayApiUrl);
-            connector.getAppToken(gopayClientId, gopayClientSecret);
-
-            log.info("Creating payment in GoPay...");
-            // .order() expects order number, amount, currency, description
-            //  amount is in the smallest currency unit
-            BasePayment payment = PaymentFactory.createBasePaymentBuilder()
-                    .order(newOrder.getId(), (long) newOrder.getAmount(), Currency.CZK, "Payment for an order: " + newOrder.getId())
-                    .addItem("An item of the order", (long) newOrder.getAmount(), 0L, 1, ItemType.ITEM, null, null)
-                    .withCallback(returnUrl, notifyUrl)
-                    .inLang("cs")
-                    .toEshop(Long.valueOf(gopayGoId))
-                    .build();
-
-            // Create payment in GoPay
-            Payment createdPayment = connector.createPayment(payment);
-
-            newOrder.setGopayPaymentId(String.valueOf(createdPayment.getId()));
+            OrderEntity newOrder = mapper.toEntity(request);
             newOrder.setUserId(userService.getCurrentUserId());
+            newOrder.setAmount(priceItems(newOrder));
+            Instant now = Instant.now();
+            newOrder.setCreatedAt(now);
+            newOrder.setPaymentStatus(OrderEntity.PAYMENT_PENDING);
+            newOrder.setPaymentAttempts(0);
+            newOrder.setPaymentRequestedAt(now);
+            newOrder.setNextPaymentAttemptAt(now);
+            log.info("Creating new order: {}", newOrder);
             newOrder = orderRepository.save(newOrder);
-            log.info("GoPay payment created: {}", createdPayment);
-            ordersCreatedCounter.increment();
-        } catch (GPClientException e) {
-            log.error("Communication error with GoPay: {}", e.getMessage(), e);
-            throw new GoPayIntegrationException("Integration error with GoPay", e);
+
+            // the GoPay call runs on the outbox workers; clients poll getPaymentStatus for the URL
+            paymentOutboxWorker.dispatch(newOrder.getId());
+            return mapper.toResponse(newOrder);
         } finally {
             sample.stop(orderProcessingTimer);
         }
+    }
+
+    @Override
+    public PaymentStatusResponse getPaymentStatus(String orderId) {
+        String loggedInUserId = userService.getCurrentUserId();
+        OrderEntity order = orderRepository.findById(orderId)
+                .filter(o -> loggedInUserId.equals(o.getUserId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found: " + orderId));
+        return mapper.toPaymentStatus(order);
+    }
 
-        return mapper.toResponse(newOrder);
+    @Override
+    public boolean processPaymentNotification(long paymentId) {
+        String gopayPaymentId = String.valueOf(paymentId);
+        if (!notificationsInFlight.add(gopayPaymentId)) {
+            // a burst of the same notification: the one being handled settles the order
+            paymentNotificationsDeduplicatedCounter.increment();
+            return false;
+        }
+        try {
+            OrderEntity order = orderRepository.findByGopayPaymentId(gopayPaymentId)
+                    .orElseThrow(() -> new GoPayIntegrationException("Order not found: " + gopayPaymentId));
+            if (isSettled(order.getPaymentStatus())) {
+                log.debug("Order {} is already settled as {}", order.getId(), order.getPaymentStatus());
+                paymentNotificationsDeduplicatedCounter.increment();
+                return false;
+            }
+            Payment.SessionState state = goPayService.getPaymentStatus(paymentId).getState();
+            String status = switch (state) {
+                case PAID -> OrderEntity.PAYMENT_PAID;
+                case CANCELED, TIMEOUTED -> OrderEntity.PAYMENT_CANCELED;
+                default -> null;
+            };
+            if (status == null) {
+                log.info("Payment {} of order {} is {}, nothing to settle", gopayPaymentId, order.getId(), state);
+                return false;
+            }
+            OrderEntity settled = settle(gopayPaymentId, status);
+            if (settled == null) {
+                // another instance settled the order since it was read
+                paymentNotificationsDeduplicatedCounter.increment();
+                return false;
+            }
+            log.info("Order {} settled as {}", settled.getId(), status);
+            if (OrderEntity.PAYMENT_PAID.equals(status)) {
+                completeSideEffects(settled);
+            } else {
+                ordersPaymentFailedCounter.increment();
+            }
+            return true;
+        } finally {
+            notificationsInFlight.remove(gopayPaymentId);
+        }
     }
 
     @Override
-    public void verifyPayment(Map<String, String> paymentData, String status) {
-        // Expecting thet FE will return JSON = "paymentId": "...", "status": "Paid"
-        String gopayPaymentId = paymentData.get("paymentId");
-        OrderEntity existingOrder = orderRepository.findByGopayPaymentId(gopayPaymentId)
-                .orElseThrow(() -> new GoPayIntegrationException("Order not found: " + gopayPaymentId));
-        log.info("Order found successfully: {}", existingOrder);
-        existingOrder.setPaymentStatus(status);
-        existingOrder.setGopayTransactionId(gopayPaymentId);
-        orderRepository.save(existingOrder);
-        log.info("Order updated successfully: {}", existingOrder);
-        if ("Paid".equalsIgnoreCase(status)) {
-            cartRepository.deleteByUserId(existingOrder.getUserId());
-            log.info("Cart for user {} cleared successfully", existingOrder.getUserId());
-            sendEmail(existingOrder);
-        } else {
-            ordersPaymentFailedCounter.increment();
+    public int completePendingSideEffects(int limit) {
+        int completed = 0;
+        for (int i = 0; i < limit; i++) {
+            OrderEntity order = claimSideEffects(Instant.now());
+            if (order == null) {
+                break;
+            }
+            if (completeSideEffects(order)) {
+                completed++;
+            }
         }
+        return completed;
     }
 
     @Override
-    public List<OrderResponse> getUserOrders() {
+    public OrderPageResponse getUserOrders(OrderHistoryQuery query) {
         String loggedInUserId = userService.getCurrentUserId();
-        List<OrderEntity> list = orderRepository.findByUserId(loggedInUserId);
-        log.info("Found {} orders for user {}", list.size(), loggedInUserId);
-        return list.stream().map(mapper::toResponse).toList();
+        Criteria criteria = Criteria.where("userId").is(loggedInUserId);
+        if (query.getCursor() != null) {
+            criteria.andOperator(createdBefore(query.getCursor()));
+        }
+        Query mongoQuery = new Query(criteria).with(NEWEST_CREATED_FIRST).limit(query.getSize() + 1);
+
+        List<OrderEntity> found = mongoTemplate.find(mongoQuery, OrderEntity.class);
+        boolean hasNext = found.size() > query.getSize();
+        List<OrderEntity> page = hasNext ? found.subList(0, query.getSize()) : found;
+        log.info("Found {} orders for user {}", page.size(), loggedInUserId);
+        String nextCursor = null;
+        if (hasNext) {
+            OrderEntity last = page.getLast();
+            // orders from before createdAt get it from their ID at startup, see OrderCreatedAtBackfill
+            Instant createdAt = last.getCreatedAt() != null
+                    ? last.getCreatedAt()
+                    : new ObjectId(last.getId()).getDate().toInstant();
+            nextCursor = CursorCodec.encode(String.valueOf(createdAt.toEpochMilli()), last.getId());
+        }
+        return OrderPageResponse.builder()
+                .items(page.stream().map(mapper::toResponse).toList())
+                .nextCursor(nextCursor)
+                .build();
     }
 
     @Override
@@ -132,10 +216,48 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
-    public List<OrderResponse> getOrdersOfAllUsers() {
-        List<OrderEntity> allOrders = orderRepository.findAll();
-        log.info("Found {} orders", allOrders.size());
-        return allOrders.stream().map(mapper::toResponse).toList();
+    public OrderPageResponse getOrdersOfAllUsers(OrderQuery query) {
+        List<Criteria> criteria = filters(query);
+        if (query.getCursor() != null) {
+            String lastId = CursorCodec.decode(query.getCursor(), 1)[0];
+            if (!ObjectId.isValid(lastId)) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            criteria.add(Criteria.where("id").lt(new ObjectId(lastId)));
+        }
+        Query mongoQuery = queryOf(criteria).with(NEWEST_FIRST).limit(query.getSize() + 1);
+
+        List<OrderEntity> found = mongoTemplate.find(mongoQuery, OrderEntity.class);
+        boolean hasNext = found.size() > query.getSize();
+        List<OrderEntity> page = hasNext ? found.subList(0, query.getSize()) : found;
+        log.info("Found {} orders", page.size());
+        return OrderPageResponse.builder()
+                .items(page.stream().map(mapper::toResponse).toList())
+                .nextCursor(hasNext ? CursorCodec.encode(page.getLast().getId()) : null)
+                .build();
+    }
+
+    @Override
+    public long exportOrders(OrderQuery query, OutputStream out) throws IOException {
+        Query mongoQuery = queryOf(filters(query)).with(NEWEST_FIRST).cursorBatchSize(EXPORT_BATCH_SIZE);
+        // the generator buffers the output; flushing after every order would mean one write per line
+        ObjectWriter writer = objectMapper.writerFor(OrderResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long exported = 0;
+        try (Stream<OrderEntity> orders = mongoTemplate.stream(mongoQuery, OrderEntity.class);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            Iterator<OrderEntity> iterator = orders.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, mapper.toResponse(iterator.next()));
+                generator.writeRaw('\n');
+                exported++;
+            }
+        }
+        out.flush();
+        log.info("Exported {} orders", exported);
+        return exported;
     }
 
     @Override
@@ -149,6 +271,160 @@ public class OrderServiceImpl implements OrderService {
 
     // === Helper methods ===
 
+    private static boolean isSettled(String paymentStatus) {
+        return OrderEntity.PAYMENT_PAID.equals(paymentStatus) || OrderEntity.PAYMENT_CANCELED.equals(paymentStatus);
+    }
+
+    /**
+     * Moves the order of the payment to a final payment status unless it already has one. A paid
+     * order is marked in the same update as waiting for its side effects, leased to this call.
+     *
+     * @return the settled order, or {@code null} if it was settled before
+     */
+    private OrderEntity settle(String gopayPaymentId, String status) {
+        Query query = Query.query(Criteria.where("gopayPaymentId").is(gopayPaymentId)
+                .and("paymentStatus").nin(OrderEntity.PAYMENT_PAID, OrderEntity.PAYMENT_CANCELED));
+        Update update = new Update()
+                .set("paymentStatus", status)
+                .set("gopayTransactionId", gopayPaymentId);
+        if (OrderEntity.PAYMENT_PAID.equals(status)) {
+            update.set("sideEffectsPending", true)
+                    .set("nextSideEffectsAttemptAt", Instant.now().plusMillis(sideEffectsLeaseMillis));
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                OrderEntity.class);
+    }
+
+    /**
+     * Atomically takes a paid order whose side effects are due, pushing the next attempt out by
+     * the lease so that one instance at a time completes them.
+     */
+    private OrderEntity claimSideEffects(Instant now) {
+        Query query = Query.query(Criteria.where("sideEffectsPending").is(true)
+                        .and("nextSideEffectsAttemptAt").lte(now))
+                .with(Sort.by("nextSideEffectsAttemptAt"));
+        Update update = new Update().set("nextSideEffectsAttemptAt", now.plusMillis(sideEffectsLeaseMillis));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                OrderEntity.class);
+    }
+
+    /**
+     * Clears the cart of a paid order and spools its confirmation e-mail, then removes the
+     * pending mark. If either step fails the mark stays, and the order is retried once its
+     * lease has passed; a mail spooled before a failure may then be spooled a second time.
+     *
+     * @return whether the side effects are done
+     */
+    private boolean completeSideEffects(OrderEntity order) {
+        try {
+            cartStore.deleteByUserId(order.getUserId());
+            log.info("Cart for user {} cleared successfully", order.getUserId());
+            sendEmail(order);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(order.getId())),
+                    new Update().unset("sideEffectsPending").unset("nextSideEffectsAttemptAt"),
+                    OrderEntity.class);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Side effects of paid order {} failed and will be retried: {}", order.getId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds the filter criteria of the admin listing. The creation time is taken from the
+     * timestamp in the ObjectId, so the date range is matched to the second.
+     */
+    private static List<Criteria> filters(OrderQuery query) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (query.getUserId() != null) {
+            criteria.add(Criteria.where("userId").is(query.getUserId()));
+        }
+        if (query.getOrderStatus() != null) {
+            criteria.add(Criteria.where("orderStatus").is(query.getOrderStatus()));
+        }
+        if (query.getPaymentStatus() != null) {
+            criteria.add(Criteria.where("paymentStatus").is(query.getPaymentStatus()));
+        }
+        if (query.getFrom() != null) {
+            criteria.add(Criteria.where("id").gte(firstIdAt(query.getFrom())));
+        }
+        if (query.getTo() != null) {
+            criteria.add(Criteria.where("id").lt(firstIdAt(query.getTo())));
+        }
+        return criteria;
+    }
+
+    /**
+     * Seeks past the last order of the previous page of a user's history, following the
+     * {@code (createdAt, _id)} order of the {@code user_orders} index.
+     */
+    private static Criteria createdBefore(String cursor) {
+        String[] parts = CursorCodec.decode(cursor, 2);
+        Instant createdAt;
+        try {
+            createdAt = Instant.ofEpochMilli(Long.parseLong(parts[0]));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        if (!ObjectId.isValid(parts[1])) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        Criteria sameTime = Criteria.where("createdAt").is(createdAt);
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                sameTime.andOperator(Criteria.where("id").lt(new ObjectId(parts[1]))));
+    }
+
+    private static Query queryOf(List<Criteria> criteria) {
+        return criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria));
+    }
+
+    /**
+     * Returns the smallest ObjectId generated in the second of the given instant.
+     */
+    private static ObjectId firstIdAt(Instant instant) {
+        long seconds = instant.getEpochSecond();
+        if (seconds < 0 || seconds > 0xFFFFFFFFL) {
+            throw new BadRequestException("Invalid date range");
+        }
+        return new ObjectId(String.format("%08x%016x", seconds, 0));
+    }
+
+    /**
+     * Prices the order from the product catalog.
+     * <p>
+     * Repeated lines of one product are merged and all products are loaded with a single
+     * query, so checkout costs one catalog read however large the order is. The order keeps
+     * only the product IDs and quantities; the client never supplies prices.
+     * </p>
+     *
+     * @param order the new order whose lines are merged in place
+     * @return the total price of the order
+     * @throws BadRequestException if a product does not exist or has no price
+     */
+    private BigDecimal priceItems(OrderEntity order) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : order.getOrderedItems()) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        Map<String, BigDecimal> prices = new HashMap<>();
+        productRepository.findAllById(quantities.keySet())
+                .forEach(product -> prices.put(product.getId(), product.getPrice()));
+
+        BigDecimal total = BigDecimal.ZERO;
+        List<OrderItem> items = new ArrayList<>(quantities.size());
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            BigDecimal price = prices.get(line.getKey());
+            if (price == null) {
+                throw new BadRequestException("Product not found: " + line.getKey());
+            }
+            total = total.add(price.multiply(BigDecimal.valueOf(line.getValue())));
+            items.add(new OrderItem(line.getKey(), line.getValue()));
+        }
+        order.setOrderedItems(items);
+        return total;
+    }
+
     /**
      * Sends a payment confirmation email to the customer.
      * <p>
@@ -177,8 +453,7 @@ public class OrderServiceImpl implements OrderService {
                 subject,
                 text
         );
-        log.info("Confirmation email was sent to '{}' with subject '{}'", existingOrder.getEmail(), subject);
-        log.info("Order '{}' - payment confirmation email sent successfully", existingOrder.getId());
+        log.info("Confirmation email was queued for '{}' with subject '{}'", existingOrder.getEmail(), subject);
     }
 }
 
@@ -1,98 +1,263 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.cache.ProductCache;
+import com.lumastyle.eshop.cache.ProductPage;
+import com.lumastyle.eshop.dto.product.ProductPageResponse;
+import com.lumastyle.eshop.dto.product.ProductQuery;
 import com.lumastyle.eshop.dto.product.ProductRequest;
 import com.lumastyle.eshop.dto.product.ProductResponse;
+import com.lumastyle.eshop.dto.product.ProductSort;
 import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.FileStorageException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.ProductMapper;
 import com.lumastyle.eshop.repository.ProductRepository;
 import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.ImageVariantService;
 import com.lumastyle.eshop.service.ProductService;
+import com.lumastyle.eshop.util.CursorCodec;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import com.lumastyle.eshop.worker.FileCleanupWorker;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
 
+    // price part of a cursor whose last product has no price
+    private static final String NO_PRICE = "none";
+
     private final FileStorageService fileStorage;
+    private final ImageVariantService imageVariantService;
     private final ProductMapper productMapper;
     private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final MongoTemplate mongoTemplate;
+    private final FileCleanupQueue fileCleanupQueue;
+
+    // uploads, MongoDB and Redis calls of added products; never the request or image threads
+    private final ExecutorService ioExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("product-io-", 0).factory());
 
+    @PreDestroy
+    void stop() {
+        ioExecutor.shutdown();
+    }
 
     @Override
-    @CacheEvict(cacheNames = "products", allEntries = true)
-    public ProductResponse addProduct(ProductRequest request, MultipartFile file) {
+    public CompletableFuture<ProductResponse> addProduct(ProductRequest request, MultipartFile file) {
         log.info("Adding product: {}", request);
-        String imageUrl;
-        try {
-            imageUrl = fileStorage.uploadFile(file);
-        } catch (RuntimeException e) {
-            log.error("File upload failed", e);
-            throw new FileStorageException("File upload failed", e);
-        }
-        ProductEntity entity = productMapper.toEntity(request);
-        entity.setImageUrl(imageUrl);
-        ProductEntity saved = productRepository.save(entity);
-        return productMapper.toResponse(saved);
+        // the resized variants are created while the original is uploaded
+        CompletableFuture<Map<String, String>> variants = imageVariantService.createVariants(file);
+        return fileStorage.uploadFileAsync(file, ioExecutor)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.error("File upload failed", cause);
+                    variants.thenAcceptAsync(variantUrls -> deleteImages(variantUrls.values()), ioExecutor);
+                    throw new FileStorageException("File upload failed", cause);
+                })
+                .thenCombineAsync(variants, (imageUrl, variantUrls) -> {
+                    ProductEntity entity = productMapper.toEntity(request);
+                    entity.setImageUrl(imageUrl);
+                    entity.setImageVariants(variantUrls.isEmpty() ? null : variantUrls);
+                    ProductEntity saved = productRepository.save(entity);
+                    ProductResponse response = productMapper.toResponse(saved);
+                    productCache.put(response);
+                    productCache.evictPages();
+                    return response;
+                }, ioExecutor);
     }
 
     @Override
-    @Cacheable("products")
-    public List<ProductResponse> readProducts() {
-        log.info("Reading all products");
-        return productRepository.findAll().stream().map(productMapper::toResponse).toList();
+    public ProductPageResponse readProducts(ProductQuery query) {
+        log.info("Reading products: {}", query);
+        ProductPage page = productCache.getPage(query.cacheKey(), () -> findPage(query));
+        return ProductPageResponse.builder()
+                .items(readAll(page.ids()))
+                .nextCursor(page.nextCursor())
+                .build();
     }
 
     @Override
-    @CacheEvict(cacheNames = "products", allEntries = true)
     public ProductResponse readProduct(String id) {
         log.info("Reading product with id: {}", id);
-        ProductEntity existingProductEntity = productRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Product not found with the id: " + id));
-        log.info("Product found successfully");
-        return productMapper.toResponse(existingProductEntity);
+        return productCache.get(id).orElseGet(() -> {
+            ProductEntity existingProductEntity = productRepository.findById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Product not found with the id: " + id));
+            log.info("Product found successfully");
+            ProductResponse response = productMapper.toResponse(existingProductEntity);
+            productCache.put(response);
+            return response;
+        });
     }
 
     @Override
     public void deleteProduct(String id) {
         ProductEntity entity = findProductById(id);
 
-        String imageUrl = entity.getImageUrl();
-        String key = imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
-
-        boolean isFileDeleted = fileStorage.deleteFile(key);
-        ensureFileDeleted(isFileDeleted, key);
-
         productRepository.deleteById(id);
-        log.info("Product with id: {} deleted successfully (file key: {})", id, key);
+        productCache.evict(id);
+
+        // images are stored by content and may be shared, so the cleanup checks the references
+        List<String> imageUrls = new ArrayList<>();
+        imageUrls.add(entity.getImageUrl());
+        if (entity.getImageVariants() != null) {
+            imageUrls.addAll(entity.getImageVariants().values());
+        }
+        deleteImages(imageUrls);
+        log.info("Product with id: {} deleted successfully", id);
     }
 
 
-    // === Helper method ===
+    // === Helper methods ===
 
     /**
-     * Ensures that the given file was deleted successfully; if not, logs and throws.
+     * Queues stored images for deletion. If the queue cannot be written the images are only
+     * orphaned, and the orphan sweep of {@link FileCleanupWorker} finds them later.
      *
-     * @param isFileDeleted whether S3 reported success
-     * @param key           the S3 object key that was attempted to delete
-     * @throws FileStorageException if deletion failed
+     * @param imageUrls the URLs of the images
+     */
+    private void deleteImages(Collection<String> imageUrls) {
+        List<String> keys = imageUrls.stream().filter(Objects::nonNull).map(FileCleanupWorker::keyOf).toList();
+        try {
+            fileCleanupQueue.enqueue(keys);
+        } catch (RuntimeException e) {
+            log.error("Could not queue files {} for deletion: {}", keys, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queries the IDs of one listing page. Only {@code _id} and {@code price} are read, so
+     * the query is answered from the {@code category_price}, {@code category_id} or
+     * {@code price} index. One extra document is fetched to tell whether a next page exists.
+     *
+     * @param query the filter, sort and paging options
+     * @return the page IDs and the cursor of the next page
+     */
+    private ProductPage findPage(ProductQuery query) {
+        ProductSort sort = query.getSort() != null ? query.getSort() : ProductSort.CREATED_ASC;
+        List<Criteria> criteria = new ArrayList<>();
+        if (query.getCategory() != null) {
+            criteria.add(Criteria.where("category").is(query.getCategory()));
+        }
+        if (query.getMinPrice() != null || query.getMaxPrice() != null) {
+            Criteria price = Criteria.where("price");
+            if (query.getMinPrice() != null) {
+                price.gte(new Decimal128(query.getMinPrice()));
+            }
+            if (query.getMaxPrice() != null) {
+                price.lte(new Decimal128(query.getMaxPrice()));
+            }
+            criteria.add(price);
+        }
+        if (query.getCursor() != null) {
+            criteria.add(seek(sort, query.getCursor()));
+        }
+
+        Query mongoQuery = criteria.isEmpty() ? new Query() : new Query(new Criteria().andOperator(criteria));
+        mongoQuery.with(sortOf(sort)).limit(query.getSize() + 1);
+        if (query.getCursor() == null) {
+            mongoQuery.skip((long) query.getPage() * query.getSize());
+        }
+        mongoQuery.fields().include("id", "price");
+
+        List<ProductEntity> found = mongoTemplate.find(mongoQuery, ProductEntity.class);
+        boolean hasNext = found.size() > query.getSize();
+        List<ProductEntity> page = hasNext ? found.subList(0, query.getSize()) : found;
+        return new ProductPage(page.stream().map(ProductEntity::getId).toList(),
+                hasNext ? cursorOf(sort, page.getLast()) : null);
+    }
+
+    /**
+     * Continues after the last product of the previous page: by ID, or by price with the
+     * ID breaking ties. MongoDB sorts products without a price before all prices, so they
+     * come first in ascending and last in descending order.
      */
-    private static void ensureFileDeleted(boolean isFileDeleted, String key) {
-        if (!isFileDeleted) {
-            log.error("Failed to delete file with key {}", key);
-            throw new FileStorageException("Could not delete file with key " + key);
+    private static Criteria seek(ProductSort sort, String cursor) {
+        String[] parts = CursorCodec.decode(cursor, 3);
+        if (!sort.name().equals(parts[0]) || !ObjectId.isValid(parts[2])) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        boolean ascending = sort == ProductSort.CREATED_ASC || sort == ProductSort.PRICE_ASC;
+        Criteria afterId = ascending ? Criteria.where("id").gt(parts[2]) : Criteria.where("id").lt(parts[2]);
+        if (sort == ProductSort.CREATED_ASC || sort == ProductSort.CREATED_DESC) {
+            return afterId;
         }
+
+        if (NO_PRICE.equals(parts[1])) {
+            Criteria unpriced = Criteria.where("price").is(null).andOperator(afterId);
+            return ascending ? new Criteria().orOperator(unpriced, Criteria.where("price").ne(null)) : unpriced;
+        }
+        Decimal128 price;
+        try {
+            price = new Decimal128(new BigDecimal(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+        Criteria afterPrice = ascending ? Criteria.where("price").gt(price) : Criteria.where("price").lt(price);
+        Criteria samePrice = Criteria.where("price").is(price).andOperator(afterId);
+        return ascending
+                ? new Criteria().orOperator(afterPrice, samePrice)
+                : new Criteria().orOperator(afterPrice, samePrice, Criteria.where("price").is(null));
+    }
+
+    private static Sort sortOf(ProductSort sort) {
+        return switch (sort) {
+            case CREATED_ASC -> Sort.by(Sort.Direction.ASC, "id");
+            case CREATED_DESC -> Sort.by(Sort.Direction.DESC, "id");
+            case PRICE_ASC -> Sort.by(Sort.Direction.ASC, "price", "id");
+            case PRICE_DESC -> Sort.by(Sort.Direction.DESC, "price", "id");
+        };
+    }
+
+    private static String cursorOf(ProductSort sort, ProductEntity last) {
+        String price = last.getPrice() != null ? last.getPrice().toPlainString() : NO_PRICE;
+        return CursorCodec.encode(sort.name(), price, last.getId());
     }
 
+    /**
+     * Reads the products of a page from the cache, loading whatever is missing from MongoDB.
+     *
+     * @param ids the product IDs in page order
+     * @return the products in page order
+     */
+    private List<ProductResponse> readAll(List<String> ids) {
+        Map<String, ProductResponse> products = new HashMap<>(productCache.getAll(ids));
+        List<String> missing = ids.stream().filter(id -> !products.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            List<ProductResponse> loaded = productRepository.findAllById(missing).stream()
+                    .map(productMapper::toResponse)
+                    .toList();
+            productCache.putAll(loaded);
+            loaded.forEach(product -> products.put(product.getId(), product));
+        }
+        // IDs deleted since the page was cached have no product and are skipped
+        return ids.stream().map(products::get).filter(Objects::nonNull).toList();
+    }
 
     /**
      * Looks up a ProductEntity by its id or throws if not found.
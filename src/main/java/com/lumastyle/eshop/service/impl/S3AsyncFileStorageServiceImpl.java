@@ -0,0 +1,434 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Stores files in an S3 bucket through the non-blocking {@link S3AsyncClient}; selected with
+ * {@code aws.s3.client=async}.
+ * <p>
+ * {@link #uploadFileAsync(MultipartFile)} and {@link #deleteFileAsync(String)} return as soon as
+ * the request is started. The file is streamed from the multipart input stream like in
+ * {@link S3FileStorageServiceImpl}; the stream is read by virtual threads, so the Netty event
+ * loops never block on the temporary file. Files of at least {@code aws.s3.multipart.threshold.bytes}
+ * are uploaded in parts, all parts at once; the shared connection pool bounds how many
+ * requests reach S3 at the same time. {@code s3_transferred_bytes} grows by the size of each
+ * object or part S3 has accepted, so bytes resent by SDK retries are counted once.
+ * </p>
+ * <p>
+ * Keys are content hashes as in {@link S3FileStorageServiceImpl}; the file is hashed and its
+ * key withdrawn from the {@link FileCleanupQueue} on a virtual thread, and the upload is skipped
+ * when a HEAD request finds the key already stored.
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.store", havingValue = "s3", matchIfMissing = true)
+@ConditionalOnProperty(name = "aws.s3.client", havingValue = "async")
+public class S3AsyncFileStorageServiceImpl implements FileStorageService {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final Counter s3UploadsCounter;
+    private final Counter s3DeletesCounter;
+    private final Counter s3TransferredBytesCounter;
+    private final Counter s3DeduplicatedUploadsCounter;
+    private final FileCleanupQueue fileCleanupQueue;
+
+    private final ExecutorService streamReaders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("s3-upload-reader-", 0).factory());
+
+    @Value("${aws.s3.bucket.name}")
+    private String bucketName;
+    @Value("${aws.s3.multipart.threshold.bytes:8388608}")
+    private long multipartThreshold;
+    @Value("${aws.s3.multipart.part-size.bytes:5242880}")
+    private long partSize;
+
+    @PreDestroy
+    void stop() {
+        streamReaders.shutdown();
+    }
+
+    @Override
+    public String uploadFile(MultipartFile file) {
+        return await(uploadFileAsync(file));
+    }
+
+    @Override
+    public boolean deleteFile(String key) {
+        return await(deleteFileAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file, Executor executor) {
+        return uploadFileAsync(file);
+    }
+
+    @Override
+    public CompletableFuture<String> uploadFileAsync(MultipartFile file) {
+        CompletableFuture<String> key;
+        try {
+            S3FileStorageServiceImpl.validatePath(file);
+            log.info("Uploading file: {}", file.getOriginalFilename());
+            key = CompletableFuture.supplyAsync(() -> {
+                String k = S3FileStorageServiceImpl.getKey(file);
+                fileCleanupQueue.withdraw(k);
+                return k;
+            }, streamReaders);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return key.thenCompose(k -> exists(k).thenCompose(exists -> {
+                    if (exists) {
+                        s3DeduplicatedUploadsCounter.increment();
+                        log.info("File {} is already stored with key: {}", file.getOriginalFilename(), k);
+                        return CompletableFuture.completedFuture(k);
+                    }
+                    CompletableFuture<?> upload = file.getSize() >= multipartThreshold
+                            ? uploadMultipart(file, k)
+                            : s3AsyncClient.putObject(buildPutObjectRequest(file, k), new StreamingBody(file, 0, file.getSize()))
+                                    .thenApply(response -> {
+                                        s3TransferredBytesCounter.increment(file.getSize());
+                                        return response;
+                                    });
+                    return upload.thenApply(response -> {
+                        s3UploadsCounter.increment();
+                        log.info("File uploaded successfully to S3 with key: {}", k);
+                        return k;
+                    });
+                }))
+                .handle((k, e) -> {
+                    if (e != null) {
+                        throw failure("Upload failed", e);
+                    }
+                    return urlOf(k);
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteFileAsync(String key) {
+        DeleteObjectRequest request = DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        log.info("Deleting file with key: {}", key);
+        return s3AsyncClient.deleteObject(request).handle((response, e) -> {
+            if (e != null) {
+                throw failure("Deletion failed", e);
+            }
+            s3DeletesCounter.increment();
+            return true;
+        });
+    }
+
+    /**
+     * Sends one DeleteObjects request per 1000 keys, all at once, and waits for them.
+     */
+    @Override
+    public Map<String, String> deleteFiles(Collection<String> keys) {
+        List<String> all = List.copyOf(keys);
+        List<CompletableFuture<Map<String, String>>> batches = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += S3FileStorageServiceImpl.MAX_KEYS_PER_DELETE) {
+            List<String> batch = all.subList(from,
+                    Math.min(all.size(), from + S3FileStorageServiceImpl.MAX_KEYS_PER_DELETE));
+            batches.add(s3AsyncClient.deleteObjects(S3FileStorageServiceImpl.buildDeleteObjectsRequest(bucketName, batch))
+                    .handle((response, e) -> {
+                        if (e != null) {
+                            throw failure("Deletion failed", e);
+                        }
+                        Map<String, String> failed = new HashMap<>();
+                        S3FileStorageServiceImpl.collectErrors(response, batch.size(), failed, s3DeletesCounter);
+                        return failed;
+                    }));
+        }
+        Map<String, String> failed = new HashMap<>();
+        for (CompletableFuture<Map<String, String>> batch : batches) {
+            failed.putAll(await(batch));
+        }
+        log.info("Deleted {} of {} files", keys.size() - failed.size(), keys.size());
+        return failed;
+    }
+
+    @Override
+    public String urlOf(String key) {
+        return "https://" + bucketName + ".s3.amazonaws.com/" + key;
+    }
+
+    /**
+     * Lists the bucket one page at a time; the next page is requested when the stream reaches it.
+     */
+    @Override
+    public Stream<StoredFile> listFiles() {
+        return Stream.iterate(listPage(null),
+                        Objects::nonNull,
+                        page -> Boolean.TRUE.equals(page.isTruncated()) ? listPage(page.nextContinuationToken()) : null)
+                .flatMap(page -> page.contents().stream())
+                .map(object -> new StoredFile(object.key(), object.lastModified()));
+    }
+
+    // === Helper methods ===
+
+    private ListObjectsV2Response listPage(String continuationToken) {
+        return await(s3AsyncClient.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .continuationToken(continuationToken)
+                        .build())
+                .handle((response, e) -> {
+                    if (e != null) {
+                        throw failure("Listing failed", e);
+                    }
+                    return response;
+                }));
+    }
+
+    /**
+     * Checks with a HEAD request whether an object is stored under the key; S3 answering 404
+     * completes the future with false.
+     */
+    private CompletableFuture<Boolean> exists(String key) {
+        HeadObjectRequest request = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        return s3AsyncClient.headObject(request).handle((response, e) -> {
+            if (e == null) {
+                return true;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+                return false;
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Starts the upload of all parts in parallel and completes the upload when every part is
+     * stored. If a part fails, the upload is aborted so S3 does not keep the other parts.
+     */
+    private CompletableFuture<?> uploadMultipart(MultipartFile file, String key) {
+        CreateMultipartUploadRequest create = CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(file.getContentType())
+                .build();
+        return s3AsyncClient.createMultipartUpload(create).thenCompose(created -> {
+            String uploadId = created.uploadId();
+            List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+            long size = file.getSize();
+            for (long offset = 0; offset < size; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long length = Math.min(partSize, size - offset);
+                UploadPartRequest request = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(length)
+                        .build();
+                parts.add(s3AsyncClient.uploadPart(request, new StreamingBody(file, offset, length))
+                        .thenApply(response -> {
+                            s3TransferredBytesCounter.increment(length);
+                            return CompletedPart.builder()
+                                    .partNumber(partNumber)
+                                    .eTag(response.eTag())
+                                    .build();
+                        }));
+            }
+            return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                    .thenCompose(ignored -> s3AsyncClient.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .multipartUpload(CompletedMultipartUpload.builder()
+                                    .parts(parts.stream().map(CompletableFuture::join).toList())
+                                    .build())
+                            .build()))
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            abortMultipart(key, uploadId);
+                        } else {
+                            log.info("Multipart upload of {} finished in {} parts", key, parts.size());
+                        }
+                    });
+        });
+    }
+
+    private void abortMultipart(String key, String uploadId) {
+        s3AsyncClient.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .build())
+                .exceptionally(e -> {
+                    log.warn("Could not abort multipart upload {} of {}: {}", uploadId, key, e.getMessage());
+                    return null;
+                });
+    }
+
+    private PutObjectRequest buildPutObjectRequest(MultipartFile file, String key) {
+        return PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .acl(ObjectCannedACL.PUBLIC_READ)
+                .contentType(file.getContentType())
+                .build();
+    }
+
+    private static FileStorageException failure(String message, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof FileStorageException storageException
+                ? storageException
+                : new FileStorageException(message, cause);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A request body over a range of the file. Every subscription, including the one of a retried
+     * request, reads the range from a new stream, which is closed when the subscription ends.
+     */
+    private final class StreamingBody implements AsyncRequestBody {
+        private final MultipartFile file;
+        private final long offset;
+        private final long length;
+
+        StreamingBody(MultipartFile file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public Optional<Long> contentLength() {
+            return Optional.of(length);
+        }
+
+        @Override
+        public String contentType() {
+            return Objects.requireNonNullElse(file.getContentType(), "application/octet-stream");
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            InputStream in;
+            try {
+                in = S3FileStorageServiceImpl.openRange(file, offset, length);
+            } catch (UncheckedIOException e) {
+                subscriber.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(e);
+                return;
+            }
+            // the SDK body does not close the stream it reads, so it is closed when the
+            // subscription ends in any way
+            AtomicBoolean open = new AtomicBoolean(true);
+            Runnable close = () -> {
+                if (open.compareAndSet(true, false)) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        log.warn("Could not close {}: {}", file.getOriginalFilename(), e.getMessage());
+                    }
+                }
+            };
+            AsyncRequestBody.fromInputStream(in, length, streamReaders).subscribe(new Subscriber<ByteBuffer>() {
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    subscriber.onSubscribe(new Subscription() {
+                        @Override
+                        public void request(long n) {
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            subscription.cancel();
+                            close.run();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(ByteBuffer buffer) {
+                    subscriber.onNext(buffer);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    close.run();
+                    subscriber.onError(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    close.run();
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+}
@@ -3,37 +3,98 @@ package com.lumastyle.eshop.service.impl;
 import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.FileStorageException;
 import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
 import io.micrometer.core.instrument.Counter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+/**
+ * Stores files in an S3 bucket.
+ * <p>
+ * Uploads are streamed from the multipart input stream with the length known from the
+ * request, so a file is never copied into the heap. The SDK reopens the stream when it
+ * retries a request. Files of at least {@code aws.s3.multipart.threshold.bytes} are sent
+ * as a multipart upload, one part after another, each part read from its own stream.
+ * </p>
+ * <p>
+ * Objects are stored under the SHA-256 of their content, so the same image uploaded twice is
+ * one object: the file is hashed in a streaming pass before the upload, and if a HEAD request
+ * finds the key already stored the upload is skipped. Callers must therefore only delete a key
+ * once nothing references it anymore; the key is withdrawn from the {@link FileCleanupQueue}
+ * before the HEAD request, so the cleanup worker does not delete a file that is being reused.
+ * </p>
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "file.store", havingValue = "s3", matchIfMissing = true)
+@ConditionalOnProperty(name = "aws.s3.client", havingValue = "sync", matchIfMissing = true)
 public class S3FileStorageServiceImpl implements FileStorageService {
 
+    private static final Pattern EXTENSION = Pattern.compile("\\.[a-z0-9]{1,10}");
+    // the most keys S3 accepts in one DeleteObjects request
+    static final int MAX_KEYS_PER_DELETE = 1000;
+
     private final S3Client s3Client;
     private final Counter s3UploadsCounter;
     private final Counter s3DeletesCounter;
     private final Counter s3TransferredBytesCounter;
+    private final Counter s3DeduplicatedUploadsCounter;
+    private final FileCleanupQueue fileCleanupQueue;
 
     @Value("${aws.s3.bucket.name}")
     private String bucketName;
+    @Value("${aws.s3.multipart.threshold.bytes:8388608}")
+    private long multipartThreshold;
+    // S3 requires at least 5 MB for every part but the last
+    @Value("${aws.s3.multipart.part-size.bytes:5242880}")
+    private long partSize;
 
     @Override
     public String uploadFile(MultipartFile file) {
@@ -43,17 +104,27 @@ public class S3FileStorageServiceImpl implements FileStorageService {
             log.info("Uploading file: {}", file.getOriginalFilename());
             key = getKey(file);
 
-            PutObjectRequest request = buildS3PutObjectRequest(file, key);
-
-            PutObjectResponse response = s3Client.putObject(request, RequestBody.fromBytes(file.getBytes()));
-            validateResponse(response, key);
+            // a queued key is about to be used again, so it must not be deleted after the check
+            fileCleanupQueue.withdraw(key);
+            if (exists(key)) {
+                s3DeduplicatedUploadsCounter.increment();
+                log.info("File {} is already stored with key: {}", file.getOriginalFilename(), key);
+                return urlOf(key);
+            }
+            if (file.getSize() >= multipartThreshold) {
+                uploadMultipart(file, key);
+            } else {
+                PutObjectRequest request = buildS3PutObjectRequest(file, key);
+                PutObjectResponse response = s3Client.putObject(request, streamOf(file, 0, file.getSize()));
+                validateResponse(response, key);
+            }
             s3UploadsCounter.increment();
             s3TransferredBytesCounter.increment(file.getSize());
-        } catch (IOException e) {
+        } catch (SdkException | UncheckedIOException e) {
             throw new FileStorageException("Upload failed", e);
         }
         log.info("File uploaded successfully to S3 with key: {}", key);
-        return "https://" + bucketName + ".s3.amazonaws.com/" + key;
+        return urlOf(key);
     }
 
     @Override
@@ -72,8 +143,167 @@ public class S3FileStorageServiceImpl implements FileStorageService {
         }
     }
 
+    @Override
+    public Map<String, String> deleteFiles(Collection<String> keys) {
+        Map<String, String> failed = new HashMap<>();
+        List<String> all = List.copyOf(keys);
+        for (int from = 0; from < all.size(); from += MAX_KEYS_PER_DELETE) {
+            List<String> batch = all.subList(from, Math.min(all.size(), from + MAX_KEYS_PER_DELETE));
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(buildDeleteObjectsRequest(bucketName, batch));
+                collectErrors(response, batch.size(), failed, s3DeletesCounter);
+            } catch (SdkException e) {
+                throw new FileStorageException("Deletion failed", e);
+            }
+        }
+        log.info("Deleted {} of {} files", keys.size() - failed.size(), keys.size());
+        return failed;
+    }
+
+    @Override
+    public String urlOf(String key) {
+        return "https://" + bucketName + ".s3.amazonaws.com/" + key;
+    }
+
+    @Override
+    public Stream<StoredFile> listFiles() {
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucketName).build())
+                .contents()
+                .stream()
+                .map(object -> new StoredFile(object.key(), object.lastModified()));
+    }
+
     // === Helper methods ===
 
+    /**
+     * Builds a quiet DeleteObjects request, whose response lists only the keys that failed.
+     *
+     * @param bucketName the bucket
+     * @param keys       at most {@link #MAX_KEYS_PER_DELETE} keys
+     * @return a configured DeleteObjectsRequest
+     */
+    static DeleteObjectsRequest buildDeleteObjectsRequest(String bucketName, List<String> keys) {
+        return DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder()
+                        .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList())
+                        .quiet(true)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Adds the keys S3 could not delete to {@code failed} and counts the others as deleted.
+     */
+    static void collectErrors(DeleteObjectsResponse response, int requested, Map<String, String> failed,
+                              Counter deletesCounter) {
+        for (S3Error error : response.errors()) {
+            failed.put(error.key(), error.code() + ": " + error.message());
+        }
+        deletesCounter.increment(requested - response.errors().size());
+    }
+
+    /**
+     * Checks with a HEAD request whether an object is stored under the key.
+     *
+     * @param key the S3 key to look up
+     * @return true if the object exists, false if S3 answers 404
+     */
+    private boolean exists(String key) {
+        try {
+            s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the file in parts of {@code partSize} bytes and aborts the upload if a part fails,
+     * so S3 does not keep the parts already sent.
+     *
+     * @param file the incoming multipart file
+     * @param key  the S3 key under which to store the file
+     */
+    private void uploadMultipart(MultipartFile file, String key) {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .acl(ObjectCannedACL.PUBLIC_READ)
+                        .contentType(file.getContentType())
+                        .build())
+                .uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            long size = file.getSize();
+            for (long offset = 0; offset < size; offset += partSize) {
+                int partNumber = parts.size() + 1;
+                long length = Math.min(partSize, size - offset);
+                UploadPartRequest request = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(length)
+                        .build();
+                UploadPartResponse response = s3Client.uploadPart(request, streamOf(file, offset, length));
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            log.info("Multipart upload of {} finished in {} parts", key, parts.size());
+        } catch (RuntimeException e) {
+            abortMultipart(key, uploadId);
+            throw e;
+        }
+    }
+
+    private void abortMultipart(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException e) {
+            log.warn("Could not abort multipart upload {} of {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    /**
+     * A request body reading {@code length} bytes of the file from {@code offset}. Every call of
+     * the provider opens a new stream, so a retried request starts again from the offset.
+     */
+    private static RequestBody streamOf(MultipartFile file, long offset, long length) {
+        return RequestBody.fromContentProvider(() -> openRange(file, offset, length), length,
+                Objects.requireNonNullElse(file.getContentType(), "application/octet-stream"));
+    }
+
+    /**
+     * Opens a new stream over {@code length} bytes of the file starting at {@code offset}.
+     *
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    static InputStream openRange(MultipartFile file, long offset, long length) {
+        try {
+            InputStream in = file.getInputStream();
+            in.skipNBytes(offset);
+            return new RangeInputStream(in, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file.getOriginalFilename(), e);
+        }
+    }
+
     /**
      * Validates the S3 PutObjectResponse and throws FileStorageException if the upload was not successful.
      *
@@ -91,17 +321,43 @@ public class S3FileStorageServiceImpl implements FileStorageService {
     }
 
     /**
-     * Generates a unique key for S3 by appending a UUID to the original file’s extension.
+     * Derives the S3 key from the content: the hex SHA-256 of the file followed by its lower-cased
+     * extension. The file is read once as a stream, so hashing needs no more memory than a buffer.
      *
      * @param file the incoming multipart file
-     * @return a random UUID + original extension (e.g. “ae13f4d2-... .png”)
+     * @return the content hash + original extension (e.g. “9f86d081... .png”)
+     * @throws UncheckedIOException if the file cannot be read
      */
-    private static String getKey(MultipartFile file) {
+    static String getKey(MultipartFile file) {
         String original = Objects.requireNonNull(file.getOriginalFilename());
-        String extension = original.contains(".")
-                ? original.substring(original.lastIndexOf('.'))
-                : "";
-        return UUID.randomUUID() + extension;
+        MessageDigest sha256 = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), sha256)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + original, e);
+        }
+        return HexFormat.of().formatHex(sha256.digest()) + extensionOf(original);
+    }
+
+    /**
+     * The lower-cased extension of a file name including the dot, or an empty string if the name
+     * has none or the extension is not a short alphanumeric one.
+     *
+     * @param filename the original file name
+     * @return e.g. “.png”
+     */
+    static String extensionOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        String extension = dot < 0 ? "" : filename.substring(dot).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(extension).matches() ? extension : "";
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -110,7 +366,7 @@ public class S3FileStorageServiceImpl implements FileStorageService {
      * @param file the multipart file to validate
      * @throws BadRequestException if the file name contains “..”
      */
-    private void validatePath(MultipartFile file) {
+    static void validatePath(MultipartFile file) {
         String original = StringUtils.cleanPath(Objects.requireNonNull(file.getOriginalFilename()));
         if (original.contains("..")) {
             throw new BadRequestException(
@@ -133,4 +389,57 @@ public class S3FileStorageServiceImpl implements FileStorageService {
                 .contentType(file.getContentType())
                 .build();
     }
+
+    /**
+     * Ends after the given number of bytes of the underlying stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
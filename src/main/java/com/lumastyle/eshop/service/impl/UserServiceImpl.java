@@ -34,11 +34,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public String getCurrentUserId() {
-        String loggedInUserEmail = authFacade.getAuthentication().getName();
-        UserEntity loggedInUser = repository.findByEmail(loggedInUserEmail)
-                .orElseThrow(() -> new IllegalStateException("User not found: " + loggedInUserEmail));
-        log.info("User found successfully: {}", loggedInUserEmail);
-        return loggedInUser.getId();
+        return authFacade.getCurrentUserId();
     }
 
     // === Helper methods ===
@@ -0,0 +1,62 @@
+package com.lumastyle.eshop.store;
+
+import com.lumastyle.eshop.entity.CartEntity;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage of live shopping carts. Every mutation is atomic per cart and returns the cart
+ * as it is after the update.
+ * <p>
+ * The implementation is chosen by {@code cart.store}: {@code mongo} (default) writes each
+ * change to the {@code carts} collection, {@code redis} keeps live carts in Redis and
+ * persists them to MongoDB in the background.
+ * </p>
+ */
+public interface CartStore {
+
+    /**
+     * Adds one piece of the product, creating the cart if the user has none.
+     *
+     * @param userId    the cart owner
+     * @param productId the product to add
+     * @return the cart after the update
+     */
+    CartEntity incrementItem(String userId, String productId);
+
+    /**
+     * Removes one piece of the product; the entry is dropped when its quantity reaches zero.
+     *
+     * @param userId    the cart owner
+     * @param productId the product to remove
+     * @return the cart after the update, or empty if there is no cart containing the product
+     */
+    Optional<CartEntity> decrementItem(String userId, String productId);
+
+    /**
+     * Sets and changes the quantities of several products atomically, creating the cart if the
+     * user has none. Products left with zero or fewer pieces are dropped.
+     *
+     * @param userId     the cart owner
+     * @param quantities new quantities by product ID
+     * @param deltas     quantity changes by product ID; no product may appear in both maps
+     * @return the cart after the update
+     */
+    CartEntity updateItems(String userId, Map<String, Integer> quantities, Map<String, Integer> deltas);
+
+    /**
+     * Reads the user's cart.
+     *
+     * @param userId the cart owner
+     * @return the cart, or empty if the user has none
+     */
+    Optional<CartEntity> findByUserId(String userId);
+
+    /**
+     * Deletes the user's cart.
+     *
+     * @param userId the cart owner
+     */
+    void deleteByUserId(String userId);
+}
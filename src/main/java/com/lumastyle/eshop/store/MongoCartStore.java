@@ -0,0 +1,76 @@
+package com.lumastyle.eshop.store;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import com.lumastyle.eshop.repository.CartRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default {@link CartStore}: every change is an atomic update of the cart document.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "cart.store", havingValue = "mongo", matchIfMissing = true)
+public class MongoCartStore implements CartStore {
+
+    private final CartRepository cartRepository;
+    private final LongAdder cartItemsActive;
+    private final DistributionSummary cartSizeSummary;
+
+    @Override
+    public CartEntity incrementItem(String userId, String productId) {
+        return recorded(cartRepository.incrementItem(userId, productId));
+    }
+
+    @Override
+    public Optional<CartEntity> decrementItem(String userId, String productId) {
+        return cartRepository.decrementItem(userId, productId).map(this::recorded);
+    }
+
+    @Override
+    public CartEntity updateItems(String userId, Map<String, Integer> quantities, Map<String, Integer> deltas) {
+        return recorded(cartRepository.updateItems(userId, quantities, deltas));
+    }
+
+    @Override
+    public Optional<CartEntity> findByUserId(String userId) {
+        return cartRepository.findByUserId(userId);
+    }
+
+    @Override
+    public void deleteByUserId(String userId) {
+        cartRepository.deleteCart(userId).ifPresent(cart -> cartItemsActive.add(-cart.getTotalItems()));
+    }
+
+    /**
+     * Sets the active pieces to the sum over the {@code carts} collection, at startup and then
+     * every {@code cart.metrics.refresh.millis}. In between, the gauge follows the changes made
+     * through this instance, so it also picks up the changes of other instances here.
+     */
+    @Scheduled(fixedDelayString = "${cart.metrics.refresh.millis:300000}")
+    public void refreshItemsActive() {
+        try {
+            cartItemsActive.add(cartRepository.countAllItems() - cartItemsActive.sum());
+        } catch (RuntimeException e) {
+            log.warn("Could not count the pieces in carts: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Feeds the change and size of an updated cart to the cart metrics.
+     */
+    private CartEntity recorded(CartEntity cart) {
+        cartItemsActive.add(cart.getLastChange());
+        cartSizeSummary.record(cart.getTotalItems());
+        return cart;
+    }
+}
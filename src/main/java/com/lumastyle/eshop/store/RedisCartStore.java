@@ -0,0 +1,436 @@
+package com.lumastyle.eshop.store;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import com.lumastyle.eshop.repository.CartRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link CartStore} that keeps live carts in Redis and writes them behind to MongoDB.
+ * <p>
+ * Each cart is a hash {@code cart:<userId>} of product ID to quantity, changed with
+ * {@code HINCRBY} inside Lua scripts, so every mutation is one atomic round-trip. Besides the
+ * products, the hash holds a version ({@value #VERSION}), bumped on every change, the total
+ * pieces ({@value #TOTAL}), the change made by the last update ({@value #LAST_CHANGE}) and the
+ * MongoDB ID ({@value #MONGO_ID}); product IDs cannot start with an underscore. A deleted cart
+ * is kept as a tombstone ({@value #DELETED}) until the deletion reaches MongoDB.
+ * </p>
+ * <p>
+ * Changed carts are recorded in the sorted set {@value #DIRTY_KEY}, scored by the time they
+ * are due. A scheduled flush claims a batch of them with a lease, writes them to MongoDB in one
+ * bulk operation and then clears each entry only if its version has not changed meanwhile.
+ * If a node dies or MongoDB fails mid-flush, the claimed carts become due again when the lease
+ * runs out and any node flushes them. Changes reach MongoDB within
+ * {@code cart.redis.flush.millis}; carts the flush has not written yet are lost only if
+ * Redis loses them, so Redis must not evict them ({@code noeviction} or a {@code volatile-*}
+ * policy with AOF persistence).
+ * </p>
+ * <p>
+ * A cart missing from Redis is loaded from MongoDB on first access. A user without a stored
+ * cart only gets one by adding or updating items; removing items or deleting the cart finds
+ * no cart and writes nothing to Redis.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "cart.store", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+
+    static final String KEY_PREFIX = "cart:";
+    static final String DIRTY_KEY = "cart-dirty";
+    static final String VERSION = "_v";
+    static final String DELETED = "_d";
+    static final String MONGO_ID = "_id";
+    static final String TOTAL = "_n";
+    static final String LAST_CHANGE = "_c";
+
+    /**
+     * Changes a product's quantity by ARGV[5] and marks the cart dirty. Returns nil if the cart
+     * is not loaded and an empty reply if a missing product is decremented; otherwise the cart.
+     * KEYS: cart, dirty set. ARGV: user ID, now, TTL in seconds, product ID, delta.
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> MUTATE = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return false
+            end
+            if tonumber(ARGV[5]) < 0 and redis.call('HEXISTS', KEYS[1], ARGV[4]) == 0 then
+              return {}
+            end
+            redis.call('HDEL', KEYS[1], '_d')
+            local change = tonumber(ARGV[5])
+            local quantity = redis.call('HINCRBY', KEYS[1], ARGV[4], change)
+            if quantity <= 0 then
+              redis.call('HDEL', KEYS[1], ARGV[4])
+              change = change - quantity
+            end
+            redis.call('HINCRBY', KEYS[1], '_n', change)
+            redis.call('HSET', KEYS[1], '_c', change)
+            redis.call('HINCRBY', KEYS[1], '_v', 1)
+            redis.call('ZADD', KEYS[2], 'NX', ARGV[2], ARGV[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return redis.call('HGETALL', KEYS[1])
+            """, List.class);
+
+    /**
+     * Applies several lines at once and marks the cart dirty; each line is a product ID, an
+     * operation ({@code =} sets, {@code +} adds) and a value. Returns nil if the cart is not
+     * loaded, otherwise the cart.
+     * KEYS: cart, dirty set. ARGV: user ID, now, TTL in seconds, then the lines.
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> UPDATE = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return false
+            end
+            redis.call('HDEL', KEYS[1], '_d')
+            local change = 0
+            for i = 4, #ARGV, 3 do
+              local old = tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0')
+              local quantity = tonumber(ARGV[i + 2])
+              if ARGV[i + 1] == '+' then
+                quantity = old + quantity
+              end
+              if quantity > 0 then
+                redis.call('HSET', KEYS[1], ARGV[i], quantity)
+              else
+                redis.call('HDEL', KEYS[1], ARGV[i])
+                quantity = 0
+              end
+              change = change + quantity - old
+            end
+            redis.call('HINCRBY', KEYS[1], '_n', change)
+            redis.call('HSET', KEYS[1], '_c', change)
+            redis.call('HINCRBY', KEYS[1], '_v', 1)
+            redis.call('ZADD', KEYS[2], 'NX', ARGV[2], ARGV[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return redis.call('HGETALL', KEYS[1])
+            """, List.class);
+
+    /**
+     * Loads a cart read from MongoDB unless the cart is already in Redis.
+     * KEYS: cart. ARGV: TTL in seconds, then field and value pairs.
+     */
+    static final RedisScript<Long> LOAD = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+              return 0
+            end
+            redis.call('HSET', KEYS[1], '_v', '0', unpack(ARGV, 2))
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * Replaces the cart with a tombstone and marks it dirty. Returns nil if the cart is not
+     * loaded, otherwise the number of pieces it held.
+     * KEYS: cart, dirty set. ARGV: user ID, now, TTL in seconds.
+     */
+    static final RedisScript<Long> DELETE = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return false
+            end
+            local removed = tonumber(redis.call('HGET', KEYS[1], '_n') or '0')
+            local version = redis.call('HINCRBY', KEYS[1], '_v', 1)
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], '_v', version, '_d', '1')
+            redis.call('ZADD', KEYS[2], 'NX', ARGV[2], ARGV[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return removed
+            """, Long.class);
+
+    /**
+     * Claims up to ARGV[3] due carts by moving their score to the end of the lease.
+     * KEYS: dirty set. ARGV: now, lease end, batch size.
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLAIM = RedisScript.of("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])
+            for _, user in ipairs(due) do
+              redis.call('ZADD', KEYS[1], 'XX', ARGV[2], user)
+            end
+            return due
+            """, List.class);
+
+    /**
+     * Clears a flushed cart from the dirty set and drops its tombstone, unless the cart changed
+     * after it was read; then it is due again immediately.
+     * KEYS: cart, dirty set. ARGV: user ID, flushed version, now.
+     */
+    static final RedisScript<Long> COMPLETE = RedisScript.of("""
+            local current = redis.call('HGET', KEYS[1], '_v')
+            if current and current ~= ARGV[2] then
+              redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])
+              return 0
+            end
+            redis.call('ZREM', KEYS[2], ARGV[1])
+            if redis.call('HEXISTS', KEYS[1], '_d') == 1 then
+              redis.call('DEL', KEYS[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CartRepository cartRepository;
+    private final MongoTemplate mongoTemplate;
+    private final AtomicLong cartWriteBehindDepthGauge;
+    private final LongAdder cartItemsActive;
+    private final DistributionSummary cartSizeSummary;
+
+    @Value("${cart.redis.flush.batch-size:200}")
+    private int batchSize;
+    @Value("${cart.redis.lease.millis:60000}")
+    private long leaseMillis;
+    @Value("${cart.redis.ttl.seconds:604800}")
+    private long ttlSeconds;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartEntity incrementItem(String userId, String productId) {
+        return recorded(toCart(userId, executeLoaded(MUTATE, userId, List.of(productId, "1"))));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<CartEntity> decrementItem(String userId, String productId) {
+        // no cart and no such product in the cart both leave nothing to return
+        List<String> cart = executeStored(MUTATE, userId, List.of(productId, "-1")).orElse(List.of());
+        return cart.isEmpty() ? Optional.empty() : Optional.of(recorded(toCart(userId, cart)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CartEntity updateItems(String userId, Map<String, Integer> quantities, Map<String, Integer> deltas) {
+        List<String> lines = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> lines.addAll(List.of(productId, "=", String.valueOf(quantity))));
+        deltas.forEach((productId, delta) -> lines.addAll(List.of(productId, "+", String.valueOf(delta))));
+        return recorded(toCart(userId, executeLoaded(UPDATE, userId, lines)));
+    }
+
+    @Override
+    public Optional<CartEntity> findByUserId(String userId) {
+        Map<Object, Object> cart = stringRedisTemplate.opsForHash().entries(key(userId));
+        if (cart.isEmpty()) {
+            Optional<CartEntity> stored = cartRepository.findByUserId(userId);
+            stored.ifPresent(entity -> load(userId, entity));
+            return stored;
+        }
+        if (cart.containsKey(DELETED)) {
+            return Optional.empty();
+        }
+        return Optional.of(toCart(userId, cart));
+    }
+
+    @Override
+    public void deleteByUserId(String userId) {
+        executeStored(DELETE, userId, List.of()).ifPresent(removed -> cartItemsActive.add(-removed));
+    }
+
+    /**
+     * Writes due carts to MongoDB, batch by batch, and refreshes the backlog gauge.
+     */
+    @Scheduled(fixedDelayString = "${cart.redis.flush.millis:5000}")
+    public void flush() {
+        try {
+            int flushed;
+            do {
+                flushed = flushBatch();
+            } while (flushed == batchSize);
+        } catch (RuntimeException e) {
+            // the claimed carts are retried when their lease runs out
+            log.warn("Could not flush carts to MongoDB: {}", e.getMessage());
+        }
+        Long depth = stringRedisTemplate.opsForZSet().zCard(DIRTY_KEY);
+        cartWriteBehindDepthGauge.set(depth == null ? 0 : depth);
+    }
+
+    /**
+     * Sets the active pieces to the sum over the {@code carts} collection, at startup and then
+     * every {@code cart.metrics.refresh.millis}; changes not flushed yet are missing from the sum
+     * until the next refresh. In between, the gauge follows the changes made through this instance.
+     */
+    @Scheduled(fixedDelayString = "${cart.metrics.refresh.millis:300000}")
+    public void refreshItemsActive() {
+        try {
+            cartItemsActive.add(cartRepository.countAllItems() - cartItemsActive.sum());
+        } catch (RuntimeException e) {
+            log.warn("Could not count the pieces in carts: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flush();
+    }
+
+    /**
+     * Claims one batch of due carts and writes it to MongoDB.
+     *
+     * @return the number of carts claimed
+     */
+    @SuppressWarnings("unchecked")
+    int flushBatch() {
+        long now = System.currentTimeMillis();
+        List<String> users = stringRedisTemplate.execute(CLAIM, List.of(DIRTY_KEY),
+                String.valueOf(now), String.valueOf(now + leaseMillis), String.valueOf(batchSize));
+        if (users == null || users.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Object> versions = new LinkedHashMap<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CartEntity.class);
+        int writes = 0;
+        for (String userId : users) {
+            Map<Object, Object> cart = stringRedisTemplate.opsForHash().entries(key(userId));
+            versions.put(userId, cart.get(VERSION));
+            if (cart.isEmpty()) {
+                // expired before it was flushed; nothing left to write
+                continue;
+            }
+            Query query = Query.query(Criteria.where("userId").is(userId));
+            if (cart.containsKey(DELETED)) {
+                bulk.remove(query);
+            } else {
+                bulk.upsert(query, Update.update("items", items(cart))
+                        .set("totalItems", Integer.parseInt((String) cart.getOrDefault(TOTAL, "0"))));
+            }
+            writes++;
+        }
+        if (writes > 0) {
+            bulk.execute();
+        }
+
+        String completedAt = now();
+        versions.forEach((userId, version) -> stringRedisTemplate.execute(COMPLETE,
+                List.of(key(userId), DIRTY_KEY), userId, version == null ? "" : version, completedAt));
+        log.debug("Flushed {} carts to MongoDB", writes);
+        return users.size();
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Runs a script changing the cart, loading the cart from MongoDB first if Redis does not
+     * have it; a user without a cart gets an empty one.
+     */
+    private <T> T executeLoaded(RedisScript<T> script, String userId, List<String> extraArgs) {
+        return execute(script, userId, extraArgs, true).orElseThrow();
+    }
+
+    /**
+     * Runs a script changing an existing cart, loading the cart from MongoDB first if Redis
+     * does not have it. Returns empty, and leaves Redis untouched, if the user has no cart.
+     */
+    private <T> Optional<T> executeStored(RedisScript<T> script, String userId, List<String> extraArgs) {
+        return execute(script, userId, extraArgs, false);
+    }
+
+    private <T> Optional<T> execute(RedisScript<T> script, String userId, List<String> extraArgs, boolean create) {
+        List<String> keys = List.of(key(userId), DIRTY_KEY);
+        List<String> args = new ArrayList<>(List.of(userId, now(), String.valueOf(ttlSeconds)));
+        args.addAll(extraArgs);
+        T result = stringRedisTemplate.execute(script, keys, args.toArray());
+        if (notLoaded(result)) {
+            Optional<CartEntity> stored = cartRepository.findByUserId(userId);
+            if (stored.isEmpty() && !create) {
+                return Optional.empty();
+            }
+            load(userId, stored.orElse(null));
+            result = stringRedisTemplate.execute(script, keys, args.toArray());
+        }
+        if (notLoaded(result)) {
+            throw new IllegalStateException("Cart of user " + userId + " could not be loaded into Redis");
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Tells whether a script found the cart missing. Its {@code false} reply reaches the client as
+     * nil, or as a list holding nil for scripts returning a list.
+     */
+    private static boolean notLoaded(Object result) {
+        return result == null || result instanceof List<?> list && list.size() == 1 && list.get(0) == null;
+    }
+
+    /**
+     * Feeds the change and size of an updated cart to the cart metrics.
+     */
+    private CartEntity recorded(CartEntity cart) {
+        cartItemsActive.add(cart.getLastChange());
+        cartSizeSummary.record(cart.getTotalItems());
+        return cart;
+    }
+
+    private void load(String userId, CartEntity stored) {
+        List<Object> args = new ArrayList<>();
+        args.add(String.valueOf(ttlSeconds));
+        if (stored != null) {
+            if (stored.getId() != null) {
+                args.add(MONGO_ID);
+                args.add(stored.getId());
+            }
+            args.add(TOTAL);
+            args.add(String.valueOf(stored.getTotalItems()));
+            stored.getItems().forEach((productId, quantity) -> {
+                args.add(productId);
+                args.add(String.valueOf(quantity));
+            });
+        }
+        stringRedisTemplate.execute(LOAD, List.of(key(userId)), args.toArray());
+    }
+
+    private static CartEntity toCart(String userId, List<String> flat) {
+        Map<Object, Object> cart = new HashMap<>();
+        for (int i = 0; i + 1 < flat.size(); i += 2) {
+            cart.put(flat.get(i), flat.get(i + 1));
+        }
+        return toCart(userId, cart);
+    }
+
+    private static CartEntity toCart(String userId, Map<Object, Object> cart) {
+        CartEntity entity = new CartEntity((String) cart.get(MONGO_ID), userId, items(cart));
+        entity.setTotalItems(Integer.parseInt((String) cart.getOrDefault(TOTAL, "0")));
+        entity.setLastChange(Integer.parseInt((String) cart.getOrDefault(LAST_CHANGE, "0")));
+        return entity;
+    }
+
+    private static Map<String, Integer> items(Map<Object, Object> cart) {
+        Map<String, Integer> items = new HashMap<>();
+        cart.forEach((field, value) -> {
+            if (!((String) field).startsWith("_")) {
+                items.put((String) field, Integer.parseInt((String) value));
+            }
+        });
+        return items;
+    }
+
+    private static String now() {
+        return String.valueOf(System.currentTimeMillis());
+    }
+
+    private static String key(String userId) {
+        return KEY_PREFIX + userId;
+    }
+}
@@ -0,0 +1,51 @@
+package com.lumastyle.eshop.util;
+
+import com.lumastyle.eshop.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Encodes the sort key values of the last item of a page into an opaque, URL-safe
+ * continuation token, and decodes them back when the next page is requested.
+ */
+public final class CursorCodec {
+
+    private static final String SEPARATOR = "|";
+
+    private CursorCodec() {
+    }
+
+    /**
+     * Encodes the given values; they must not contain {@value #SEPARATOR}.
+     *
+     * @param parts the sort key values
+     * @return the cursor
+     */
+    public static String encode(String... parts) {
+        byte[] bytes = String.join(SEPARATOR, parts).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Decodes a cursor created by {@link #encode(String...)}.
+     *
+     * @param cursor the cursor sent by the client
+     * @param parts  the expected number of values
+     * @return the sort key values
+     * @throws BadRequestException if the cursor is malformed
+     */
+    public static String[] decode(String cursor, int parts) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] values = decoded.split(Pattern.quote(SEPARATOR), -1);
+            if (values.length == parts) {
+                return values;
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through to the common error
+        }
+        throw new BadRequestException("Invalid cursor");
+    }
+}
@@ -1,7 +1,9 @@
 package com.lumastyle.eshop.util;
 
 
+import com.lumastyle.eshop.security.AppUserPrincipal;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -20,70 +22,98 @@ import java.util.function.Function;
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret.key}")
-    private String secretKey;
+    /**
+     * Claim carrying the user's database ID.
+     */
+    public static final String USER_ID_CLAIM = "uid";
 
-    @Value("${jwt.expiration.millis}")
-    private long expiration;            // 10-hours expiration
+    private final long expiration;            // 10-hours expiration
+
+    // the key and the parser are immutable and thread-safe, so both are built once
+    private final Key signingKey;
+    private final JwtParser parser;
+
+    public JwtUtil(@Value("${jwt.secret.key}") String secretKey,
+                   @Value("${jwt.expiration.millis}") long expiration) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
 
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof AppUserPrincipal principal) {
+            claims.put(USER_ID_CLAIM, principal.getId());
+        }
         return createToken(claims, userDetails.getUsername());
     }
 
+    /**
+     * Parse the token and verify its signature and expiration in a single pass.
+     * The returned claims are meant to be reused for every further check on the same request.
+     *
+     * @param token the compact JWT
+     * @return the verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, tampered with or expired
+     */
+    public Claims parseToken(String token) {
+        return parser.parseClaimsJws(token).getBody();
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
+    public String extractUserId(String token) {
+        return extractClaim(token, this::extractUserId);
+    }
+
+    public String extractUserId(Claims claims) {
+        return claims.get(USER_ID_CLAIM, String.class);
+    }
+
     public Date extractExpiration(String token) {
         return extractClaim(token, Claims::getExpiration);
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = parseToken(token);
         return claimsResolver.apply(claims);
     }
 
     public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(parseToken(token), userDetails);
+    }
+
+    /**
+     * Check already parsed claims against the loaded user.
+     *
+     * @param claims      claims returned by {@link #parseToken(String)}
+     * @param userDetails the user the token claims to belong to
+     * @return true if the subject matches and the token is not expired
+     */
+    public boolean validateToken(Claims claims, UserDetails userDetails) {
+        final String username = claims.getSubject();
+        return (username.equals(userDetails.getUsername()) && !isTokenExpired(claims));
     }
 
     // === Helper methods ===
 
     private String createToken(Map<String, Object> claims, String subject) {
-
-        Key signingKey = getSigningKey();
-
-        log.info("Signing key generated");
-
+        long now = System.currentTimeMillis();
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expiration))
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expiration))
                 .signWith(signingKey)
                 .compact();
     }
 
-    private Key getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
-
-    private Claims extractAllClaims(String token) {
-        Key signingKey = getSigningKey();
-
-        return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private static boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
 }
@@ -0,0 +1,27 @@
+package com.lumastyle.eshop.worker;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry delays shared by the background workers.
+ */
+final class Backoff {
+
+    private Backoff() {
+    }
+
+    /**
+     * Exponential backoff capped at {@code max}, with the upper half randomized so that
+     * items failing together during an outage do not retry in lockstep.
+     *
+     * @param attempt the number of attempts made so far, starting at 1
+     * @param initial the delay after the first attempt
+     * @param max     the upper bound of the delay
+     * @return the delay before the next attempt in milliseconds
+     */
+    static long millis(int attempt, long initial, long max) {
+        long ceiling = Math.min(max, initial << Math.min(attempt - 1, 30));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
@@ -0,0 +1,97 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.FileCleanupEntity;
+import com.lumastyle.eshop.exception.FileStorageException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * The persistent queue of stored files to delete, drained by {@link FileCleanupWorker}.
+ * <p>
+ * Files are stored under their content hash, so an upload can reuse a key that is queued. A
+ * queued key only becomes due after {@code file.cleanup.grace.millis}, longer than an upload
+ * takes until its product is saved; the worker's reference check then sees that product. An
+ * upload also withdraws its key from the queue before it looks for a stored file, see
+ * {@link #withdraw(String)}.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileCleanupQueue {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${file.cleanup.grace.millis:600000}")
+    private long graceMillis;
+    @Value("${file.cleanup.lease.millis:300000}")
+    private long leaseMillis;
+    @Value("${file.cleanup.withdraw.poll.millis:200}")
+    private long pollMillis;
+
+    /**
+     * Queues files for deletion, due after the grace period. A key already in the queue is
+     * made due again.
+     *
+     * @param keys the storage keys of files that may no longer be referenced
+     */
+    public void enqueue(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileCleanupEntity.class);
+        for (String key : keys) {
+            bulk.upsert(Query.query(Criteria.where("key").is(key)), new Update()
+                    .set("status", FileCleanupEntity.STATUS_QUEUED)
+                    .set("nextAttemptAt", now.plusMillis(graceMillis))
+                    .setOnInsert("attempts", 0)
+                    .setOnInsert("createdAt", now));
+        }
+        bulk.execute();
+        log.info("Queued {} files for deletion", keys.size());
+    }
+
+    /**
+     * Removes a key from the queue because an upload is about to use it, so the worker no
+     * longer deletes the file. If the worker is already deleting the file, this waits until it
+     * is done, and the caller then finds the file missing and stores it again. Call this before
+     * checking whether the file is stored.
+     *
+     * @param key the storage key of the uploaded content
+     * @throws FileStorageException if the deletion does not end within the worker's lease
+     */
+    public void withdraw(String key) {
+        Query entry = Query.query(Criteria.where("key").is(key));
+        long deadline = System.nanoTime() + leaseMillis * 1_000_000;
+        while (mongoTemplate.exists(entry, FileCleanupEntity.class)) {
+            // an entry the worker is deleting is kept until its lease has expired
+            Query notDeleting = Query.query(Criteria.where("key").is(key).orOperator(
+                    Criteria.where("deletingUntil").is(null),
+                    Criteria.where("deletingUntil").lte(Instant.now())));
+            if (mongoTemplate.remove(notDeleting, FileCleanupEntity.class).getDeletedCount() > 0) {
+                log.info("Withdrew file {} from the cleanup queue", key);
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new FileStorageException("File " + key + " is still being deleted");
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileStorageException("Interrupted while file " + key + " is being deleted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.FileCleanupEntity;
+import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.FileStorageService.StoredFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Deletes stored files that no product references anymore, through the persistent cleanup queue.
+ * <p>
+ * Deleting a product only removes the document and queues the keys of its images in the
+ * {@link FileCleanupQueue}, so a storage outage never fails the request. The queue is drained
+ * every {@code file.cleanup.poll.millis} in batches of up to {@code file.cleanup.batch-size}
+ * keys. Images are shared by content hash, so each batch is first checked against the products;
+ * keys that are referenced again are dropped from the queue. The rest are marked as being
+ * deleted, which makes an upload of the same content wait instead of reusing the file, and are
+ * deleted with {@link FileStorageService#deleteFiles(Collection)}, one S3 DeleteObjects request
+ * per 1000 keys. Failed keys are retried with backoff; after {@code file.cleanup.max-attempts}
+ * they stay in the queue as {@link FileCleanupEntity#STATUS_FAILED}.
+ * </p>
+ * <p>
+ * Files can still be orphaned, e.g. when an upload succeeds but the product is never saved, or
+ * when the process dies between the product delete and the enqueue. The orphan sweep lists the
+ * storage every {@code file.cleanup.sweep.millis} and queues the files older than
+ * {@code file.cleanup.orphan.min-age.millis} that no product references. It only considers keys
+ * shaped like the content-hash keys this application creates.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileCleanupWorker {
+
+    // the keys FileStorageService implementations create: a SHA-256 and the file extension
+    private static final Pattern STORED_KEY = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+
+    private final FileStorageService fileStorage;
+    private final FileCleanupQueue fileCleanupQueue;
+    private final MongoTemplate mongoTemplate;
+    private final Counter fileCleanupDeletedCounter;
+    private final Counter fileCleanupErrorsCounter;
+    private final Counter fileCleanupFailedCounter;
+    private final Counter fileCleanupOrphansCounter;
+    private final Timer fileCleanupBatchTimer;
+    private final AtomicLong fileCleanupQueueDepthGauge;
+
+    @Value("${file.cleanup.batch-size:1000}")
+    private int batchSize;
+    @Value("${file.cleanup.max-attempts:10}")
+    private int maxAttempts;
+    @Value("${file.cleanup.backoff.initial.millis:60000}")
+    private long initialBackoffMillis;
+    @Value("${file.cleanup.backoff.max.millis:3600000}")
+    private long maxBackoffMillis;
+    @Value("${file.cleanup.lease.millis:300000}")
+    private long leaseMillis;
+    @Value("${file.cleanup.sweep.enabled:true}")
+    private boolean sweepEnabled;
+    @Value("${file.cleanup.orphan.min-age.millis:86400000}")
+    private long orphanMinAgeMillis;
+
+    /**
+     * Deletes the due files batch by batch and refreshes the queue depth gauge.
+     */
+    @Scheduled(fixedDelayString = "${file.cleanup.poll.millis:30000}")
+    public void drainQueue() {
+        int claimed;
+        do {
+            claimed = deleteBatch();
+        } while (claimed == batchSize);
+        fileCleanupQueueDepthGauge.set(mongoTemplate.count(Query.query(queued()), FileCleanupEntity.class));
+    }
+
+    /**
+     * Queues the stored files that are older than the minimum age and referenced by no product.
+     */
+    @Scheduled(fixedDelayString = "${file.cleanup.sweep.millis:86400000}",
+            initialDelayString = "${file.cleanup.sweep.initial-delay.millis:600000}")
+    public void sweepOrphans() {
+        if (!sweepEnabled) {
+            return;
+        }
+        // a product saved after this point may reference an old file; the drain checks again
+        Set<String> referenced = referencedKeys();
+        Instant createdBefore = Instant.now().minusMillis(orphanMinAgeMillis);
+        List<String> orphans = new ArrayList<>(batchSize);
+        long found = 0;
+        try (Stream<StoredFile> files = fileStorage.listFiles()) {
+            for (StoredFile file : (Iterable<StoredFile>) files::iterator) {
+                if (!STORED_KEY.matcher(file.key()).matches()
+                        || file.lastModified() == null
+                        || !file.lastModified().isBefore(createdBefore)
+                        || referenced.contains(file.key())) {
+                    continue;
+                }
+                orphans.add(file.key());
+                found++;
+                if (orphans.size() == batchSize) {
+                    fileCleanupQueue.enqueue(orphans);
+                    orphans.clear();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Orphan sweep stopped after {} orphaned files: {}", found, e.getMessage(), e);
+        }
+        fileCleanupQueue.enqueue(orphans);
+        fileCleanupOrphansCounter.increment(found);
+        log.info("Orphan sweep found {} unreferenced files", found);
+    }
+
+    /**
+     * Claims up to one batch of due files, drops the ones still referenced and deletes the rest.
+     *
+     * @return the number of claimed files
+     */
+    int deleteBatch() {
+        Instant now = Instant.now();
+        Instant lease = now.plusMillis(leaseMillis);
+        Map<String, FileCleanupEntity> batch = new LinkedHashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            FileCleanupEntity file = claim(now, lease);
+            if (file == null) {
+                break;
+            }
+            batch.put(file.getKey(), file);
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Timer.Sample sample = Timer.start();
+        try {
+            Set<String> referenced = referencedKeys(batch.keySet());
+            if (!referenced.isEmpty()) {
+                remove(referenced);
+                log.info("Kept {} queued files that are referenced by products", referenced.size());
+            }
+            List<String> keys = markDeleting(batch.keySet().stream()
+                    .filter(key -> !referenced.contains(key))
+                    .toList(), lease);
+            if (keys.isEmpty()) {
+                return batch.size();
+            }
+
+            Map<String, String> failed;
+            try {
+                failed = fileStorage.deleteFiles(keys);
+            } catch (RuntimeException e) {
+                failed = new LinkedHashMap<>();
+                for (String key : keys) {
+                    failed.put(key, e.getMessage());
+                }
+            }
+            Set<String> failedKeys = failed.keySet();
+            List<String> deleted = keys.stream().filter(key -> !failedKeys.contains(key)).toList();
+            remove(deleted);
+            fileCleanupDeletedCounter.increment(deleted.size());
+            for (Map.Entry<String, String> failure : failed.entrySet()) {
+                FileCleanupEntity file = batch.get(failure.getKey());
+                if (file != null) {
+                    reschedule(file, failure.getValue());
+                }
+            }
+        } finally {
+            sample.stop(fileCleanupBatchTimer);
+        }
+        return batch.size();
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Atomically takes the next due file, so a file is handled by one instance at a time. The
+     * lease makes the file due again if this instance dies mid-batch.
+     */
+    private FileCleanupEntity claim(Instant now, Instant lease) {
+        Query query = Query.query(queued().and("nextAttemptAt").lte(now)).with(Sort.by("nextAttemptAt"));
+        Update update = new Update()
+                .set("nextAttemptAt", lease)
+                .unset("deletingUntil")
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), FileCleanupEntity.class);
+    }
+
+    /**
+     * Marks the claimed files as being deleted and returns the ones still claimed. A file an
+     * upload has withdrawn, or that was queued again, since the claim is left alone.
+     */
+    private List<String> markDeleting(List<String> keys, Instant lease) {
+        if (keys.isEmpty()) {
+            return keys;
+        }
+        Criteria claimed = Criteria.where("key").in(keys).and("nextAttemptAt").is(lease);
+        long marked = mongoTemplate.updateMulti(Query.query(claimed),
+                new Update().set("deletingUntil", lease), FileCleanupEntity.class).getModifiedCount();
+        if (marked == keys.size()) {
+            return keys;
+        }
+        Query query = Query.query(claimed.and("deletingUntil").is(lease));
+        query.fields().include("key");
+        Set<String> deleting = new HashSet<>();
+        for (FileCleanupEntity file : mongoTemplate.find(query, FileCleanupEntity.class)) {
+            deleting.add(file.getKey());
+        }
+        log.info("Skipped {} files that were withdrawn from the queue", keys.size() - deleting.size());
+        return keys.stream().filter(deleting::contains).toList();
+    }
+
+    private void reschedule(FileCleanupEntity file, String error) {
+        fileCleanupErrorsCounter.increment();
+        file.setLastError(error);
+        int attempts = file.getAttempts();
+        if (attempts >= maxAttempts) {
+            file.setStatus(FileCleanupEntity.STATUS_FAILED);
+            file.setNextAttemptAt(null);
+            fileCleanupFailedCounter.increment();
+            log.error("File {} could not be deleted after {} attempts: {}", file.getKey(), attempts, error);
+        } else {
+            long delay = Backoff.millis(attempts, initialBackoffMillis, maxBackoffMillis);
+            file.setNextAttemptAt(Instant.now().plusMillis(delay));
+            log.warn("File {} could not be deleted (attempt {}), retrying in {} ms: {}",
+                    file.getKey(), attempts, delay, error);
+        }
+        mongoTemplate.save(file);
+    }
+
+    private void remove(Collection<String> keys) {
+        if (!keys.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("key").in(keys)), FileCleanupEntity.class);
+        }
+    }
+
+    /**
+     * Which of the keys a product references in any image field; answered from the image indexes.
+     */
+    private Set<String> referencedKeys(Collection<String> keys) {
+        List<String> urls = keys.stream().map(fileStorage::urlOf).toList();
+        Query query = new Query(new Criteria().orOperator(ProductEntity.IMAGE_FIELDS.stream()
+                .map(field -> Criteria.where(field).in(urls))
+                .toList()));
+        query.fields().include(ProductEntity.IMAGE_FIELDS.toArray(String[]::new));
+        Set<String> referenced = new HashSet<>();
+        for (ProductEntity product : mongoTemplate.find(query, ProductEntity.class)) {
+            addKeys(product, referenced);
+        }
+        referenced.retainAll(keys);
+        return referenced;
+    }
+
+    /**
+     * The keys of every image any product references, read with a projection on the image fields.
+     */
+    private Set<String> referencedKeys() {
+        Query query = new Query();
+        query.fields().include(ProductEntity.IMAGE_FIELDS.toArray(String[]::new));
+        Set<String> referenced = new HashSet<>();
+        try (Stream<ProductEntity> products = mongoTemplate.stream(query, ProductEntity.class)) {
+            products.forEach(product -> addKeys(product, referenced));
+        }
+        return referenced;
+    }
+
+    private static void addKeys(ProductEntity product, Set<String> keys) {
+        if (product.getImageUrl() != null) {
+            keys.add(keyOf(product.getImageUrl()));
+        }
+        if (product.getImageVariants() != null) {
+            product.getImageVariants().values().forEach(url -> keys.add(keyOf(url)));
+        }
+    }
+
+    /**
+     * The storage key of a file URL: its last path segment.
+     *
+     * @param url the URL returned by {@link FileStorageService#uploadFile}
+     * @return the storage key
+     */
+    public static String keyOf(String url) {
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
+
+    private static Criteria queued() {
+        return Criteria.where("status").is(FileCleanupEntity.STATUS_QUEUED);
+    }
+}
@@ -0,0 +1,249 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.MailEntity;
+import com.lumastyle.eshop.repository.MailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers e-mails from the persistent mail spool.
+ * <p>
+ * Spooled mails are put on a bounded in-process queue drained by virtual threads.
+ * Each drainer takes up to {@code mail.dispatch.batch-size} mails and hands them to
+ * {@link JavaMailSender#send(SimpleMailMessage...)} in one call, which sends the whole
+ * batch over a single SMTP connection. Failed mails are retried with backoff; after
+ * {@code mail.dispatch.max-attempts} they stay in the spool as {@link MailEntity#STATUS_FAILED}.
+ * </p>
+ * <p>
+ * A full queue only delays delivery: the mail is already spooled and the scheduled poll
+ * enqueues it again, as it does for retries and for mails left over from a restart.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MailDispatcher {
+
+    private final JavaMailSender mailSender;
+    private final MailRepository mailRepository;
+    private final MongoTemplate mongoTemplate;
+    private final Counter emailsSentCounter;
+    private final Counter emailsFailedCounter;
+    private final Counter emailSendErrorsCounter;
+    private final Timer emailSendTimer;
+    private final AtomicLong emailQueueDepthGauge;
+
+    @Value("${mail.dispatch.threads:2}")
+    private int threads;
+    @Value("${mail.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${mail.dispatch.batch-size:20}")
+    private int batchSize;
+    @Value("${mail.dispatch.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${mail.dispatch.backoff.initial.millis:5000}")
+    private long initialBackoffMillis;
+    @Value("${mail.dispatch.backoff.max.millis:900000}")
+    private long maxBackoffMillis;
+    @Value("${mail.dispatch.lease.millis:120000}")
+    private long leaseMillis;
+
+    private BlockingQueue<String> queue;
+    private final List<Thread> drainers = new ArrayList<>();
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        // drainers block on the queue and on SMTP I/O, which virtual threads make cheap;
+        // Jakarta Mail connects inside synchronized blocks, so at most `threads` carriers get pinned
+        for (int i = 0; i < threads; i++) {
+            drainers.add(Thread.ofVirtual().name("mail-dispatch-", i).start(this::drain));
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread drainer : drainers) {
+            drainer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Queues a spooled mail for delivery without blocking the caller.
+     *
+     * @param mailId the ID of a mail in the spool
+     */
+    public void enqueue(String mailId) {
+        if (!queue.offer(mailId)) {
+            log.warn("Mail queue is full, mail {} will be sent by the spool poll", mailId);
+        }
+    }
+
+    /**
+     * Enqueues due spooled mails and refreshes the queue depth gauge.
+     */
+    @Scheduled(fixedDelayString = "${mail.dispatch.poll.millis:10000}")
+    public void pollSpool() {
+        int free = queue.remainingCapacity();
+        if (free > 0) {
+            Query due = Query.query(queued().and("nextAttemptAt").lte(Instant.now()))
+                    .with(Sort.by("nextAttemptAt"))
+                    .limit(free);
+            due.fields().include("id");
+            mongoTemplate.find(due, MailEntity.class).forEach(mail -> enqueue(mail.getId()));
+        }
+        emailQueueDepthGauge.set(mongoTemplate.count(Query.query(queued()), MailEntity.class));
+    }
+
+    /**
+     * Claims the given mails and sends them over one SMTP connection.
+     *
+     * @param mailIds the IDs of spooled mails
+     */
+    void sendBatch(List<String> mailIds) {
+        Instant now = Instant.now();
+        Map<SimpleMailMessage, MailEntity> batch = new IdentityHashMap<>();
+        for (String mailId : mailIds) {
+            MailEntity mail = claim(mailId, now);
+            if (mail != null) {
+                batch.put(toMessage(mail), mail);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failed = Map.of();
+        Timer.Sample sample = Timer.start();
+        try {
+            mailSender.send(batch.keySet().toArray(SimpleMailMessage[]::new));
+        } catch (MailSendException e) {
+            // lists every message not sent, all of them if the connection failed
+            failed = e.getFailedMessages();
+            if (failed.isEmpty()) {
+                // only closing the connection failed, after every message was accepted
+                log.warn("Mail batch was sent but the SMTP connection did not close: {}", e.getMessage());
+            }
+        } catch (MailException e) {
+            // authentication or preparing the messages failed before anything was sent
+            failed = allFailed(batch, e);
+        } finally {
+            sample.stop(emailSendTimer);
+        }
+
+        for (Map.Entry<SimpleMailMessage, MailEntity> entry : batch.entrySet()) {
+            Exception error = failed.get(entry.getKey());
+            if (error == null) {
+                mailRepository.deleteById(entry.getValue().getId());
+                emailsSentCounter.increment();
+                log.info("Email sent to {} with subject {}", entry.getValue().getTo(), entry.getValue().getSubject());
+            } else {
+                reschedule(entry.getValue(), error);
+            }
+        }
+    }
+
+    // === Helper methods ===
+
+    private void drain() {
+        List<String> mailIds = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                mailIds.add(first);
+                queue.drainTo(mailIds, batchSize - 1);
+                sendBatch(mailIds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // the mails stay in the spool and are picked up again once their lease ends
+                log.error("Mail batch could not be processed: {}", e.getMessage(), e);
+            } finally {
+                mailIds.clear();
+            }
+        }
+    }
+
+    /**
+     * Atomically takes a due spooled mail, so a mail queued twice or by two instances is
+     * sent once. The lease makes the mail due again if this instance dies mid-send.
+     */
+    private MailEntity claim(String mailId, Instant now) {
+        Query query = Query.query(queued().and("id").is(mailId).and("nextAttemptAt").lte(now));
+        Update update = new Update()
+                .set("nextAttemptAt", now.plusMillis(leaseMillis))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), MailEntity.class);
+    }
+
+    private void reschedule(MailEntity mail, Exception error) {
+        emailSendErrorsCounter.increment();
+        mail.setLastError(error.getMessage());
+        int attempts = mail.getAttempts();
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailEntity.STATUS_FAILED);
+            mail.setNextAttemptAt(null);
+            emailsFailedCounter.increment();
+            log.error("Email {} to {} failed after {} attempts: {}", mail.getId(), mail.getTo(), attempts, error.getMessage());
+        } else {
+            long delay = Backoff.millis(attempts, initialBackoffMillis, maxBackoffMillis);
+            mail.setNextAttemptAt(Instant.now().plusMillis(delay));
+            log.warn("Email {} to {} failed (attempt {}), retrying in {} ms: {}",
+                    mail.getId(), mail.getTo(), attempts, delay, error.getMessage());
+        }
+        mailRepository.save(mail);
+    }
+
+    private static Map<Object, Exception> allFailed(Map<SimpleMailMessage, MailEntity> batch, Exception e) {
+        Map<Object, Exception> failed = new IdentityHashMap<>();
+        batch.keySet().forEach(message -> failed.put(message, e));
+        return failed;
+    }
+
+    private static SimpleMailMessage toMessage(MailEntity mail) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(mail.getTo());
+        message.setSubject(mail.getSubject());
+        message.setText(mail.getText());
+        return message;
+    }
+
+    private static Criteria queued() {
+        return Criteria.where("status").is(MailEntity.STATUS_QUEUED);
+    }
+}
@@ -0,0 +1,43 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets {@code createdAt} on orders saved before the field existed, from the timestamp of
+ * their ObjectId, so they take their place in the {@code user_orders} index and the order
+ * history can page past them. Runs once the application has started; orders already
+ * backfilled are not matched again, so later runs are no-ops.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderCreatedAtBackfill {
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            long updated = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("createdAt").exists(false)),
+                    AggregationUpdate.update().set("createdAt").toValue(ConvertOperators.valueOf("_id").convertToDate()),
+                    OrderEntity.class).getModifiedCount();
+            if (updated > 0) {
+                log.info("Set createdAt on {} orders from their IDs", updated);
+            }
+        } catch (RuntimeException e) {
+            // the history falls back to the ID time for these orders; the next start retries
+            log.error("Could not backfill createdAt of orders: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.service.GoPayService;
+import cz.gopay.api.v3.model.common.Currency;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import cz.gopay.api.v3.model.payment.PaymentFactory;
+import cz.gopay.api.v3.model.payment.support.ItemType;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates GoPay payments for orders waiting in the payment outbox.
+ * <p>
+ * Orders are saved as {@link OrderEntity#PAYMENT_PENDING} on the request thread and
+ * handed to a bounded worker pool. Each worker atomically claims its order, so several
+ * application instances can share the outbox. Failed attempts are retried with
+ * exponential backoff and jitter until {@code payment.outbox.max-attempts} is reached.
+ * The outcome of an attempt is written only while the order is still pending with that
+ * attempt's counter, so a worker whose lease ran out cannot overwrite the attempt that took
+ * the order over.
+ * </p>
+ * <p>
+ * The pool's queue may drop work when it is full: the order stays pending in MongoDB
+ * and the scheduled poll dispatches it again.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PaymentOutboxWorker {
+
+    private final MongoTemplate mongoTemplate;
+    private final GoPayService goPayService;
+    private final Counter ordersCreatedCounter;
+    private final Counter ordersPaymentFailedCounter;
+    private final Counter paymentOutboxStaleUpdatesCounter;
+    private final AtomicLong paymentOutboxDepthGauge;
+    private final AtomicLong paymentOutboxOldestAgeGauge;
+
+    @Value("${gopay.go.id}")
+    private String gopayGoId;
+    @Value("${gopay.callback.return-url}")
+    private String returnUrl;
+    @Value("${gopay.callback.notify-url}")
+    private String notifyUrl;
+
+    @Value("${payment.outbox.workers:4}")
+    private int workers;
+    @Value("${payment.outbox.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${payment.outbox.batch-size:100}")
+    private int batchSize;
+    @Value("${payment.outbox.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${payment.outbox.backoff.initial.millis:2000}")
+    private long initialBackoffMillis;
+    @Value("${payment.outbox.backoff.max.millis:300000}")
+    private long maxBackoffMillis;
+    @Value("${payment.outbox.lease.millis:60000}")
+    private long leaseMillis;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("payment-outbox-", 0).factory(),
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Payment outbox workers did not finish in time, pending orders will be retried on restart");
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues the payment creation of an order without blocking the caller.
+     *
+     * @param orderId the ID of a pending order
+     */
+    public void dispatch(String orderId) {
+        executor.execute(() -> process(orderId));
+    }
+
+    /**
+     * Dispatches due pending orders, picking up retries and work dropped by a full queue
+     * or left behind by a stopped instance, and refreshes the outbox gauges.
+     */
+    @Scheduled(fixedDelayString = "${payment.outbox.poll.millis:5000}")
+    public void pollDueOrders() {
+        Instant now = Instant.now();
+        Query due = Query.query(pending().and("nextPaymentAttemptAt").lte(now))
+                .with(Sort.by("nextPaymentAttemptAt"))
+                .limit(batchSize);
+        due.fields().include("id");
+        mongoTemplate.find(due, OrderEntity.class).forEach(order -> dispatch(order.getId()));
+        updateGauges(now);
+    }
+
+    /**
+     * Claims an order and creates its GoPay payment. On failure the order is either
+     * rescheduled or, after the last attempt, marked as {@link OrderEntity#PAYMENT_FAILED}.
+     *
+     * @param orderId the ID of a pending order
+     */
+    void process(String orderId) {
+        OrderEntity order = claim(orderId, Instant.now());
+        if (order == null) {
+            // already claimed by another worker, not due yet or no longer pending
+            return;
+        }
+        try {
+            log.info("Creating payment in GoPay for order {} (attempt {})", orderId, order.getPaymentAttempts());
+            Payment createdPayment = goPayService.createPayment(toPayment(order));
+
+            Update created = new Update()
+                    .set("gopayPaymentId", String.valueOf(createdPayment.getId()))
+                    .set("paymentUrl", createdPayment.getGwUrl())
+                    .set("paymentStatus", OrderEntity.PAYMENT_CREATED)
+                    .unset("nextPaymentAttemptAt");
+            if (updateClaimed(order, created)) {
+                log.info("GoPay payment created: {}", createdPayment);
+                ordersCreatedCounter.increment();
+            }
+        } catch (RuntimeException e) {
+            reschedule(order, e);
+        }
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Atomically takes a due pending order. The attempt counter is increased and the next
+     * attempt is pushed out by the lease, so the order is retried if this instance dies.
+     */
+    private OrderEntity claim(String orderId, Instant now) {
+        Query query = Query.query(pending().and("id").is(orderId).and("nextPaymentAttemptAt").lte(now));
+        Update update = new Update()
+                .set("nextPaymentAttemptAt", now.plusMillis(leaseMillis))
+                .inc("paymentAttempts", 1);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), OrderEntity.class);
+    }
+
+    private void reschedule(OrderEntity order, RuntimeException e) {
+        int attempts = order.getPaymentAttempts();
+        if (attempts >= maxAttempts) {
+            Update failed = new Update()
+                    .set("paymentStatus", OrderEntity.PAYMENT_FAILED)
+                    .unset("nextPaymentAttemptAt");
+            if (updateClaimed(order, failed)) {
+                ordersPaymentFailedCounter.increment();
+                log.error("Payment for order {} failed after {} attempts: {}", order.getId(), attempts, e.getMessage(), e);
+            }
+        } else {
+            long delay = Backoff.millis(attempts, initialBackoffMillis, maxBackoffMillis);
+            if (updateClaimed(order, new Update().set("nextPaymentAttemptAt", Instant.now().plusMillis(delay)))) {
+                log.warn("Payment for order {} failed (attempt {}), retrying in {} ms: {}",
+                        order.getId(), attempts, delay, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the outcome of an attempt if the order is still pending and no later claim has
+     * increased its attempt counter. Otherwise the lease ran out and another attempt owns the
+     * order, so the outcome is dropped; a payment created by this attempt is never shown to the
+     * customer, and GoPay sees the same order number for both.
+     *
+     * @return whether the order was updated
+     */
+    private boolean updateClaimed(OrderEntity order, Update update) {
+        Query claimed = Query.query(pending().and("id").is(order.getId())
+                .and("paymentAttempts").is(order.getPaymentAttempts()));
+        if (mongoTemplate.updateFirst(claimed, update, OrderEntity.class).getMatchedCount() > 0) {
+            return true;
+        }
+        paymentOutboxStaleUpdatesCounter.increment();
+        log.warn("Dropped the outcome of payment attempt {} for order {}: the order was taken over or is no longer pending",
+                order.getPaymentAttempts(), order.getId());
+        return false;
+    }
+
+    private BasePayment toPayment(OrderEntity order) {
+        // .order() expects order number, amount, currency, description
+        //  the order number is the order ID on every attempt, so retries stay tied to one order
+        //  amount is in the smallest currency unit, i.e. hellers
+        long amount = order.getAmount().movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        return PaymentFactory.createBasePaymentBuilder()
+                .order(order.getId(), amount, Currency.CZK, "Payment for an order: " + order.getId())
+                .addItem("An item of the order", amount, 0L, 1, ItemType.ITEM, null, null)
+                .withCallback(returnUrl, notifyUrl)
+                .inLang("cs")
+                .toEshop(Long.valueOf(gopayGoId))
+                .build();
+    }
+
+    private void updateGauges(Instant now) {
+        paymentOutboxDepthGauge.set(mongoTemplate.count(Query.query(pending()), OrderEntity.class));
+        Query oldest = Query.query(pending()).with(Sort.by("paymentRequestedAt")).limit(1);
+        OrderEntity order = mongoTemplate.findOne(oldest, OrderEntity.class);
+        paymentOutboxOldestAgeGauge.set(order == null || order.getPaymentRequestedAt() == null
+                ? 0 : Duration.between(order.getPaymentRequestedAt(), now).toSeconds());
+    }
+
+    private static Criteria pending() {
+        return Criteria.where("paymentStatus").is(OrderEntity.PAYMENT_PENDING);
+    }
+}
@@ -0,0 +1,200 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.service.GoPayService;
+import com.lumastyle.eshop.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settles orders whose GoPay notification was lost.
+ * <p>
+ * Orders stay {@link OrderEntity#PAYMENT_CREATED} until GoPay notifies the application
+ * about the result of their payment. Each scheduled run pages through those orders, oldest
+ * first, and reads the state of their payments from GoPay, at most
+ * {@code payment.reconcile.concurrency} at a time through the shared {@link GoPayService}
+ * connector. The state is applied by {@link OrderService#processPaymentNotification(long)},
+ * exactly as if the notification had arrived, so a late notification and the reconciler
+ * settle an order only once.
+ * </p>
+ * <p>
+ * Orders younger than {@code payment.reconcile.min-age.millis} are left to their notification.
+ * A run checks at most {@code payment.reconcile.max-per-run} orders and the next run continues
+ * after the last one, so a large backlog is worked off over several runs.
+ * </p>
+ * <p>
+ * Each run also completes the side effects of paid orders that failed when the order was
+ * settled, see {@link OrderService#completePendingSideEffects(int)}.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PaymentReconciler {
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderService orderService;
+    private final Counter paymentReconcileCheckedCounter;
+    private final Counter paymentReconcileSettledCounter;
+    private final Counter paymentReconcileErrorsCounter;
+    private final AtomicLong paymentReconcileLagGauge;
+
+    @Value("${payment.reconcile.concurrency:4}")
+    private int concurrency;
+    @Value("${payment.reconcile.batch-size:100}")
+    private int batchSize;
+    @Value("${payment.reconcile.max-per-run:1000}")
+    private int maxPerRun;
+    @Value("${payment.reconcile.min-age.millis:600000}")
+    private long minAgeMillis;
+
+    private ExecutorService executor;
+
+    // the last order checked by the previous run; null starts from the oldest order
+    private ObjectId resumeAfter;
+
+    @PostConstruct
+    void start() {
+        // GoPay calls block on HTTP, so the checks run on virtual threads; the pool size bounds
+        // how many of them GoPay sees at once
+        executor = Executors.newFixedThreadPool(concurrency,
+                Thread.ofVirtual().name("payment-reconcile-", 0).factory());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks the next batches of created payments against GoPay and refreshes the lag gauge.
+     */
+    @Scheduled(fixedDelayString = "${payment.reconcile.poll.millis:60000}",
+            initialDelayString = "${payment.reconcile.initial-delay.millis:60000}")
+    public void reconcile() {
+        Instant now = Instant.now();
+        ObjectId createdBefore = firstIdAt(now.minusMillis(minAgeMillis));
+        int checked = 0;
+        try {
+            while (checked < maxPerRun) {
+                int limit = Math.min(batchSize, maxPerRun - checked);
+                List<OrderEntity> page = mongoTemplate.find(page(createdBefore, limit), OrderEntity.class);
+                checkAll(page);
+                checked += page.size();
+                if (page.size() < limit) {
+                    // the end of the backlog: the next run starts again from the oldest order
+                    resumeAfter = null;
+                    break;
+                }
+                resumeAfter = new ObjectId(page.getLast().getId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Payment reconciliation interrupted after {} orders", checked);
+            return;
+        }
+        if (checked > 0) {
+            log.info("Reconciled {} created payments with GoPay", checked);
+        }
+        completeSideEffects();
+        updateLag(now);
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Checks the orders of one page in parallel and waits until all of them are done.
+     */
+    private void checkAll(List<OrderEntity> page) throws InterruptedException {
+        List<Callable<Void>> checks = page.stream()
+                .map(order -> (Callable<Void>) () -> {
+                    check(order);
+                    return null;
+                })
+                .toList();
+        executor.invokeAll(checks);
+    }
+
+    private void check(OrderEntity order) {
+        try {
+            if (orderService.processPaymentNotification(Long.parseLong(order.getGopayPaymentId()))) {
+                log.info("Order {} settled by reconciliation", order.getId());
+                paymentReconcileSettledCounter.increment();
+            }
+        } catch (RuntimeException e) {
+            paymentReconcileErrorsCounter.increment();
+            log.warn("Could not reconcile payment {} of order {}: {}",
+                    order.getGopayPaymentId(), order.getId(), e.getMessage());
+        } finally {
+            paymentReconcileCheckedCounter.increment();
+        }
+    }
+
+    /**
+     * Retries the cart clearing and confirmation e-mails of paid orders left pending.
+     */
+    private void completeSideEffects() {
+        try {
+            int completed = orderService.completePendingSideEffects(maxPerRun);
+            if (completed > 0) {
+                log.info("Completed the side effects of {} paid orders", completed);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not complete the side effects of paid orders: {}", e.getMessage());
+        }
+    }
+
+    private Query page(ObjectId createdBefore, int limit) {
+        Criteria id = Criteria.where("id").lt(createdBefore);
+        if (resumeAfter != null) {
+            id.gt(resumeAfter);
+        }
+        Query query = Query.query(created().andOperator(id))
+                .with(Sort.by("id"))
+                .limit(limit);
+        query.fields().include("id", "gopayPaymentId");
+        return query;
+    }
+
+    private void updateLag(Instant now) {
+        Query oldest = Query.query(created()).with(Sort.by("id")).limit(1);
+        oldest.fields().include("id");
+        OrderEntity order = mongoTemplate.findOne(oldest, OrderEntity.class);
+        paymentReconcileLagGauge.set(order == null
+                ? 0 : Duration.between(new ObjectId(order.getId()).getDate().toInstant(), now).toSeconds());
+    }
+
+    /**
+     * The smallest ObjectId generated at the given second, i.e. a bound on the creation time.
+     */
+    private static ObjectId firstIdAt(Instant instant) {
+        return new ObjectId(String.format("%08x%016x", instant.getEpochSecond(), 0));
+    }
+
+    private static Criteria created() {
+        return Criteria.where("paymentStatus").is(OrderEntity.PAYMENT_CREATED);
+    }
+}
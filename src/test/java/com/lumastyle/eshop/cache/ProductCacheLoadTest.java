@@ -0,0 +1,192 @@
+package com.lumastyle.eshop.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumastyle.eshop.dto.product.ProductQuery;
+import com.lumastyle.eshop.dto.product.ProductRequest;
+import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.mapper.ProductMapper;
+import com.lumastyle.eshop.repository.ProductRepository;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.ImageVariantService;
+import com.lumastyle.eshop.service.impl.ProductServiceImpl;
+import com.lumastyle.eshop.support.InMemoryRedis;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Load test for the per-product cache: drives {@link ProductServiceImpl} with mixed,
+ * concurrent read traffic and occasional product additions against an in-memory Redis
+ * stand-in, and checks the resulting cache hit ratio and MongoDB load.
+ */
+@ActiveProfiles("test")
+class ProductCacheLoadTest {
+
+    private static final int PRODUCTS = 500;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 2_000;
+
+    private final Map<String, ProductEntity> database = new ConcurrentSkipListMap<>();
+    private final AtomicLong databaseReads = new AtomicLong();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ProductServiceImpl service;
+
+    /**
+     * Wires the service with a map-backed repository, a real mapper and the cache
+     * over an in-memory Redis.
+     */
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < PRODUCTS; i++) {
+            insert(ProductEntity.builder().name("Tie " + i).price(BigDecimal.TEN).category("Tie").build());
+        }
+
+        InMemoryRedis redis = new InMemoryRedis();
+        ProductCache cache = new ProductCache(redis.template(), redis.stringTemplate(),
+                Caffeine.newBuilder().maximumSize(PRODUCTS * 2).build(), Caffeine.newBuilder().maximumSize(100).build(),
+                registry.counter("hits"), registry.counter("misses"),
+                registry.counter("nearHits"), registry.counter("nearMisses"));
+        ReflectionTestUtils.setField(cache, "ttlMillis", 3_600_000L);
+
+        FileStorageService fileStorage = mock(FileStorageService.class);
+        when(fileStorage.uploadFileAsync(any(), any())).thenReturn(CompletableFuture.completedFuture("https://bucket/image.png"));
+
+        ImageVariantService imageVariants = mock(ImageVariantService.class);
+        when(imageVariants.createVariants(any())).thenReturn(CompletableFuture.completedFuture(Map.of()));
+
+        service = new ProductServiceImpl(fileStorage, imageVariants, Mappers.getMapper(ProductMapper.class), repository(),
+                cache, mongoTemplate(), mock(FileCleanupQueue.class));
+    }
+
+    /**
+     * Test: under mixed traffic (85% single reads skewed to popular products, 14% reads of the
+     * first listing pages, 1% additions) nearly all product reads are served from the cache.
+     */
+    @Test
+    @DisplayName("per-product cache keeps a high hit ratio under mixed traffic")
+    @Tag("Load")
+    void mixedTraffic_hitRatio() throws Exception {
+        MultipartFile file = mock(MultipartFile.class);
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                clients.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        int roll = random.nextInt(100);
+                        if (roll < 85) {
+                            service.readProduct(popularId(random));
+                        } else if (roll < 99) {
+                            ProductQuery query = ProductQuery.builder().page(random.nextInt(3)).build();
+                            assertFalse(service.readProducts(query).getItems().isEmpty());
+                        } else {
+                            service.addProduct(new ProductRequest("New", "Desc", BigDecimal.ONE, "Tie"), file).join();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        }
+
+        double nearHits = registry.counter("nearHits").count();
+        double nearHitRatio = nearHits / (nearHits + registry.counter("nearMisses").count());
+        // reads served by either tier; a near-cached catalog counts as one hit rather than one per
+        // product, so the first load of each product weighs more than with Redis alone
+        double hits = nearHits + registry.counter("hits").count();
+        double hitRatio = hits / (hits + registry.counter("misses").count());
+        long requests = (long) THREADS * REQUESTS_PER_THREAD;
+
+        assertTrue(hitRatio > 0.98, "hit ratio was " + hitRatio);
+        // only first reads and catalog reads right after an addition go past the near cache
+        assertTrue(nearHitRatio > 0.9, "near cache hit ratio was " + nearHitRatio);
+        // every product is loaded about once; page reads after an addition only reload the page IDs
+        assertTrue(databaseReads.get() < requests / 5, "database reads: " + databaseReads.get());
+        assertEquals(20, service.readProducts(new ProductQuery()).getItems().size());
+    }
+
+    // === Helper methods ===
+
+    private ProductEntity insert(ProductEntity entity) {
+        entity.setId(String.format("%024x", nextId.getAndIncrement()));
+        database.put(entity.getId(), entity);
+        return entity;
+    }
+
+    /**
+     * Picks a product ID with a skew towards the first products, like a catalog with bestsellers.
+     */
+    private static String popularId(ThreadLocalRandom random) {
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return String.format("%024x", (int) (skewed * PRODUCTS));
+    }
+
+    /**
+     * Serves page queries in insertion order, honoring skip and limit but not filters.
+     */
+    private MongoTemplate mongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            Query query = invocation.getArgument(0);
+            return database.keySet().stream()
+                    .skip(query.getSkip())
+                    .limit(query.getLimit())
+                    .map(id -> ProductEntity.builder().id(id).build())
+                    .toList();
+        });
+        return mongoTemplate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProductRepository repository() {
+        ProductRepository repository = mock(ProductRepository.class, withSettings().strictness(Strictness.LENIENT));
+        when(repository.findById(anyString())).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            return Optional.ofNullable(database.get(invocation.<String>getArgument(0)));
+        });
+        when(repository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            return ((Collection<String>) invocation.getArgument(0)).stream()
+                    .map(database::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+        });
+        when(repository.save(any(ProductEntity.class))).thenAnswer(invocation -> insert(invocation.getArgument(0)));
+        return repository;
+    }
+}
@@ -0,0 +1,167 @@
+package com.lumastyle.eshop.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lumastyle.eshop.dto.product.ProductResponse;
+import com.lumastyle.eshop.listener.ProductCacheInvalidationListener;
+import com.lumastyle.eshop.support.InMemoryRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the near cache of {@link ProductCache}: two nodes share one in-memory Redis
+ * and invalidate each other's in-process entries over pub/sub.
+ */
+@ActiveProfiles("test")
+class ProductCacheTest {
+
+    private final InMemoryRedis redis = new InMemoryRedis();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ProductCache nodeA;
+    private ProductCache nodeB;
+
+    /**
+     * Creates two nodes, each subscribed to the invalidation channel.
+     */
+    @BeforeEach
+    void setUp() {
+        nodeA = node("a");
+        nodeB = node("b");
+    }
+
+    /**
+     * Test: a product read once is served from the near cache without a Redis command.
+     */
+    @Test
+    @DisplayName("get serves repeated reads from the near cache")
+    @Tag("Unit")
+    void get_nearCacheHit() {
+        nodeA.put(product("p1", "Tie"));
+        long commands = redis.getCommands();
+
+        assertEquals("Tie", nodeB.get("p1").orElseThrow().getName());
+        assertEquals("Tie", nodeB.get("p1").orElseThrow().getName());
+
+        assertEquals(commands + 1, redis.getCommands());
+        assertEquals(1, registry.counter("b.nearHits").count());
+        assertEquals(1, registry.counter("b.hits").count());
+    }
+
+    /**
+     * Test: a product deleted on one node disappears from the other node's near cache.
+     */
+    @Test
+    @DisplayName("evict invalidates the product on other nodes")
+    @Tag("Unit")
+    void evict_invalidatesOtherNodes() {
+        nodeA.put(product("p1", "Tie"));
+        nodeA.put(product("p2", "Bow"));
+        nodeB.get("p1");
+        nodeB.get("p2");
+
+        nodeA.evict("p1");
+
+        assertTrue(nodeB.get("p1").isEmpty());
+        assertTrue(nodeA.get("p1").isEmpty());
+        assertTrue(nodeB.get("p2").isPresent());
+        assertEquals(1, registry.counter("b.nearHits").count());
+    }
+
+    /**
+     * Test: adding a product drops the near-cached listing pages on every node.
+     */
+    @Test
+    @DisplayName("evictPages invalidates the pages on all nodes")
+    @Tag("Unit")
+    void evictPages_invalidatesPages() {
+        AtomicInteger loads = new AtomicInteger();
+        ProductPage page = new ProductPage(List.of("p1"), null);
+        nodeA.getPage("all", () -> { loads.incrementAndGet(); return page; });
+        nodeB.getPage("all", () -> { loads.incrementAndGet(); return page; });
+        nodeB.getPage("all", () -> { loads.incrementAndGet(); return page; });
+        assertEquals(2, loads.get());
+
+        nodeA.evictPages();
+        nodeA.getPage("all", () -> { loads.incrementAndGet(); return page; });
+        nodeB.getPage("all", () -> { loads.incrementAndGet(); return page; });
+
+        assertEquals(4, loads.get());
+    }
+
+    /**
+     * Test: pages are cached per query shape.
+     */
+    @Test
+    @DisplayName("getPage keys pages on the query shape")
+    @Tag("Unit")
+    void getPage_perQueryShape() {
+        ProductPage ties = nodeA.getPage("Tie", () -> new ProductPage(List.of("p1"), null));
+        ProductPage bows = nodeA.getPage("Bow", () -> new ProductPage(List.of("p2"), null));
+
+        assertSame(ties, nodeA.getPage("Tie", () -> fail("page should be cached")));
+        assertSame(bows, nodeA.getPage("Bow", () -> fail("page should be cached")));
+    }
+
+    /**
+     * Test: a page loaded while an invalidation arrives is returned but not kept.
+     */
+    @Test
+    @DisplayName("getPage does not keep a page loaded during an invalidation")
+    @Tag("Unit")
+    void getPage_racingInvalidation_notKept() {
+        AtomicInteger loads = new AtomicInteger();
+        ProductPage stale = nodeB.getPage("all", () -> {
+            loads.incrementAndGet();
+            nodeA.evict("p1");
+            return new ProductPage(List.of("p1"), null);
+        });
+        nodeB.getPage("all", () -> { loads.incrementAndGet(); return new ProductPage(List.of(), null); });
+
+        assertEquals(List.of("p1"), stale.ids());
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * Test: getAll serves near-cached products and fetches only the rest from Redis.
+     */
+    @Test
+    @DisplayName("getAll reads near-cached products without Redis")
+    @Tag("Unit")
+    void getAll_nearCacheFirst() {
+        nodeA.put(product("p1", "Tie"));
+        nodeA.put(product("p2", "Bow"));
+        nodeB.get("p1");
+        long commands = redis.getCommands();
+
+        assertEquals(2, nodeB.getAll(List.of("p1", "p2", "p3")).size());
+        assertEquals(commands + 1, redis.getCommands());
+        assertEquals(2, nodeB.getAll(List.of("p1", "p2")).size());
+        assertEquals(commands + 1, redis.getCommands());
+    }
+
+    // === Helper methods ===
+
+    private ProductCache node(String name) {
+        ProductCache cache = new ProductCache(redis.template(), redis.stringTemplate(),
+                Caffeine.newBuilder().maximumSize(100).build(), Caffeine.newBuilder().maximumSize(100).build(),
+                registry.counter(name + ".hits"), registry.counter(name + ".misses"),
+                registry.counter(name + ".nearHits"), registry.counter(name + ".nearMisses"));
+        ReflectionTestUtils.setField(cache, "ttlMillis", 3_600_000L);
+        redis.subscribe(new ProductCacheInvalidationListener(cache));
+        return cache;
+    }
+
+    private static ProductResponse product(String id, String name) {
+        return ProductResponse.builder().id(id).name(name).build();
+    }
+}
@@ -2,6 +2,8 @@ package com.lumastyle.eshop.controller;
 
 import com.diffblue.cover.annotations.MethodsUnderTest;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
+import com.lumastyle.eshop.dto.cart.CartItemUpdate;
 import com.lumastyle.eshop.dto.cart.CartRequest;
 import com.lumastyle.eshop.dto.cart.CartResponse;
 import com.lumastyle.eshop.exception.GlobalExceptionHandler;
@@ -25,7 +27,11 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.result.StatusResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ContextConfiguration(classes = {CartController.class, GlobalExceptionHandler.class})
@@ -197,4 +203,56 @@ class CartControllerTest {
                         MockMvcResultMatchers.content()
                                 .string("{\"id\":\"42\",\"userId\":\"42\",\"items\":{}}"));
     }
+
+    /**
+     * Test {@link CartController#updateCart(CartBulkRequest)} returns the cart updated by all lines.
+     */
+    @Test
+    @DisplayName("Test updateCart(CartBulkRequest)")
+    @Tag("Unit")
+    void testUpdateCart() throws Exception {
+        // Arrange
+        CartResponse buildResult = CartResponse.builder().id("42").userId("42").items(Map.of("p1", 3)).build();
+        when(cartService.updateCart(Mockito.<CartBulkRequest>any())).thenReturn(buildResult);
+        String content = new ObjectMapper().writeValueAsString(new CartBulkRequest(List.of(
+                CartItemUpdate.builder().productId("p1").quantity(3).build(),
+                CartItemUpdate.builder().productId("p2").delta(-1).build())));
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.put("/api/cart/items")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(content);
+
+        // Act and Assert
+        MockMvcBuilders.standaloneSetup(cartController)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.items.p1").value(3));
+    }
+
+    /**
+     * Test {@link CartController#updateCart(CartBulkRequest)} rejects a product listed twice
+     * and a line with both a quantity and a delta.
+     */
+    @Test
+    @DisplayName("Test updateCart(CartBulkRequest) rejects ambiguous lines")
+    @Tag("Unit")
+    void testUpdateCart_ambiguousLines() throws Exception {
+        for (CartBulkRequest request : List.of(
+                new CartBulkRequest(List.of(
+                        CartItemUpdate.builder().productId("p1").quantity(3).build(),
+                        CartItemUpdate.builder().productId("p1").delta(1).build())),
+                new CartBulkRequest(List.of(new CartItemUpdate("p1", 3, 1))))) {
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.put("/api/cart/items")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(new ObjectMapper().writeValueAsString(request));
+
+            MockMvcBuilders.standaloneSetup(cartController)
+                    .setControllerAdvice(globalExceptionHandler)
+                    .build()
+                    .perform(requestBuilder)
+                    .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        }
+        verifyNoInteractions(cartService);
+    }
 }
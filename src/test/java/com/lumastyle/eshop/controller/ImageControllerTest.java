@@ -0,0 +1,175 @@
+package com.lumastyle.eshop.controller;
+
+import com.lumastyle.eshop.exception.GlobalExceptionHandler;
+import com.lumastyle.eshop.service.impl.LocalFileStorageServiceImpl;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link ImageController} against a {@link LocalFileStorageServiceImpl} on a temporary
+ * directory: caching headers, conditional and range requests, and the hand-off to sendfile.
+ */
+class ImageControllerTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+
+    @TempDir
+    private Path directory;
+
+    private MockMvc mockMvc;
+    private String key;
+    private String etag;
+
+    /**
+     * Stores a ten byte image and builds the controller around the storage.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        LocalFileStorageServiceImpl storage = new LocalFileStorageServiceImpl(mock(FileCleanupQueue.class));
+        ReflectionTestUtils.setField(storage, "directory", directory.toString());
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost/api/images");
+        ReflectionTestUtils.invokeMethod(storage, "start");
+        String url = storage.uploadFile(new MockMultipartFile("file", "image.png", "image/png", CONTENT));
+        key = url.substring(url.lastIndexOf('/') + 1);
+        etag = "\"" + key.substring(0, key.indexOf('.')) + "\"";
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(storage))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    /**
+     * Test: the whole image is returned with its content type, the content hash as ETag, the
+     * modification time and an immutable cache policy.
+     */
+    @Test
+    @DisplayName("Test readImage; then the image with caching headers")
+    @Tag("Unit")
+    void testReadImage() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("image/png"))
+                .andExpect(MockMvcResultMatchers.content().bytes(CONTENT))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, etag))
+                .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CACHE_CONTROL,
+                        "public, max-age=31536000, immutable"));
+    }
+
+    /**
+     * Test: a request with the current ETag or a later If-Modified-Since gets 304 without a body.
+     */
+    @Test
+    @DisplayName("Test readImage; cached copy is current; then status 304")
+    @Tag("Unit")
+    void testReadImage_notModified() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[0]));
+        String tomorrow = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusDays(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.IF_MODIFIED_SINCE, tomorrow))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    /**
+     * Test: single byte ranges, including open and suffix ranges, are answered with 206 and a
+     * Content-Range; several ranges or a stale If-Range get the whole image.
+     */
+    @Test
+    @DisplayName("Test readImage; byte range; then status 206 with the range")
+    @Tag("Unit")
+    void testReadImage_range() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(MockMvcResultMatchers.content().string("2345"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.RANGE, "bytes=7-"))
+                .andExpect(MockMvcResultMatchers.content().string("789"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.RANGE, "bytes=-2"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-9/10"))
+                .andExpect(MockMvcResultMatchers.content().string("89"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key)
+                        .header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, etag))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.RANGE, "bytes=0-1,4-5"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().bytes(CONTENT));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key)
+                        .header(HttpHeaders.RANGE, "bytes=0-1")
+                        .header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().bytes(CONTENT));
+    }
+
+    /**
+     * Test: a range starting after the end of the image is answered with 416 and the size.
+     */
+    @Test
+    @DisplayName("Test readImage; range outside of the image; then status 416")
+    @Tag("Unit")
+    void testReadImage_unsatisfiableRange() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key).header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(MockMvcResultMatchers.status().isRequestedRangeNotSatisfiable())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    /**
+     * Test: when the container supports sendfile, the file and range are handed to it in request
+     * attributes instead of being written to the response.
+     */
+    @Test
+    @DisplayName("Test readImage; container supports sendfile; then the file is handed to it")
+    @Tag("Unit")
+    void testReadImage_sendfile() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", key)
+                        .requestAttr(ImageController.SENDFILE_SUPPORT, true)
+                        .header(HttpHeaders.RANGE, "bytes=3-"))
+                .andExpect(MockMvcResultMatchers.status().isPartialContent())
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, 7))
+                .andReturn();
+
+        assertEquals(directory.resolve(key).toAbsolutePath().toString(),
+                result.getRequest().getAttribute(ImageController.SENDFILE_FILENAME));
+        assertEquals(3L, result.getRequest().getAttribute(ImageController.SENDFILE_START));
+        assertEquals(10L, result.getRequest().getAttribute(ImageController.SENDFILE_END));
+        assertEquals(0, result.getResponse().getContentAsByteArray().length);
+    }
+
+    /**
+     * Test: an unknown key is answered with 404 and a malformed key with 400.
+     */
+    @Test
+    @DisplayName("Test readImage; unknown or invalid key; then status 404 or 400")
+    @Tag("Unit")
+    void testReadImage_missing() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", "0".repeat(64) + ".png"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/images/{key}", "passwd"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+}
@@ -1,19 +1,30 @@
 package com.lumastyle.eshop.controller;
 
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.diffblue.cover.annotations.ManagedByDiffblue;
 import com.diffblue.cover.annotations.MethodsUnderTest;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.dto.order.OrderHistoryQuery;
+import com.lumastyle.eshop.dto.order.OrderItem;
+import com.lumastyle.eshop.dto.order.OrderPageResponse;
+import com.lumastyle.eshop.dto.order.OrderQuery;
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
 import com.lumastyle.eshop.dto.order.OrderResponse.OrderResponseBuilder;
 import com.lumastyle.eshop.exception.GlobalExceptionHandler;
 import com.lumastyle.eshop.service.OrderService;
 
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.DisplayName;
@@ -61,7 +72,7 @@ class OrderControllerTest {
         // Arrange
         OrderResponseBuilder orderStatusResult =
                 OrderResponse.builder()
-                        .amount(10)
+                        .amount(new BigDecimal("10"))
                         .email("jane.doe@example.org")
                         .id("42")
                         .orderStatus("Order Status");
@@ -76,9 +87,8 @@ class OrderControllerTest {
                         .build();
         when(orderService.createOrderAndPayment(Mockito.<OrderRequest>any())).thenReturn(buildResult);
         OrderRequest orderRequest = new OrderRequest();
-        orderRequest.setAmount(10);
         orderRequest.setEmail("jane.doe@example.org");
-        orderRequest.setOrderedItems(new ArrayList<>());
+        orderRequest.setOrderedItems(List.of(new OrderItem("42", 1)));
         orderRequest.setPhoneNumber("6625550144");
         orderRequest.setUserAddress("42 Main St");
         String content = new ObjectMapper().writeValueAsString(orderRequest);
@@ -97,11 +107,35 @@ class OrderControllerTest {
                 .andExpect(
                         MockMvcResultMatchers.content()
                                 .string(
-                                        "{\"id\":\"42\",\"userId\":\"42\",\"userAddress\":\"42 Main St\",\"phoneNumber\":\"6625550144\",\"email\":\"jane.doe@example"
+                                        "{\"id\":\"42\",\"userId\":\"42\",\"createdAt\":null,\"userAddress\":\"42 Main St\",\"phoneNumber\":\"6625550144\",\"email\":\"jane.doe@example"
                                                 + ".org\",\"amount\":10,\"paymentStatus\":\"Payment Status\",\"paymentOrderId\":\"42\",\"orderStatus\":\"Order"
                                                 + " Status\",\"orderedItems\":[]}"));
     }
 
+    /**
+     * Test {@link OrderController#createOrderAndPayment(OrderRequest)} rejects an order
+     * without items and a line without a quantity.
+     */
+    @Test
+    @DisplayName("Test createOrderAndPayment(OrderRequest) rejects invalid items")
+    @Tag("Unit")
+    void testCreateOrderAndPayment_invalidItems() throws Exception {
+        for (OrderRequest request : List.of(
+                OrderRequest.builder().orderedItems(List.of()).build(),
+                OrderRequest.builder().orderedItems(List.of(OrderItem.builder().productId("42").build())).build())) {
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/orders/create")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(new ObjectMapper().writeValueAsString(request));
+
+            MockMvcBuilders.standaloneSetup(orderController)
+                    .setControllerAdvice(globalExceptionHandler)
+                    .build()
+                    .perform(requestBuilder)
+                    .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        }
+        verify(orderService, never()).createOrderAndPayment(Mockito.any());
+    }
+
     /**
      * Test {@link OrderController#verifyPayment(Map)}.
      *
@@ -114,15 +148,13 @@ class OrderControllerTest {
     @MethodsUnderTest({"void OrderController.verifyPayment(Map)"})
     void testVerifyPayment() throws Exception {
         // Arrange
-        doNothing()
-                .when(orderService)
-                .verifyPayment(Mockito.<Map<String, String>>any(), Mockito.<String>any());
+        when(orderService.processPaymentNotification(Mockito.anyLong())).thenReturn(true);
         MockHttpServletRequestBuilder contentTypeResult =
                 MockMvcRequestBuilders.post("/api/orders/verify").contentType(MediaType.APPLICATION_JSON);
 
         ObjectMapper objectMapper = new ObjectMapper();
         MockHttpServletRequestBuilder requestBuilder =
-                contentTypeResult.content(objectMapper.writeValueAsString(new HashMap<>()));
+                contentTypeResult.content(objectMapper.writeValueAsString(Map.of("paymentId", "3000006529")));
 
         // Act and Assert
         MockMvcBuilders.standaloneSetup(orderController)
@@ -130,21 +162,44 @@ class OrderControllerTest {
                 .build()
                 .perform(requestBuilder)
                 .andExpect(MockMvcResultMatchers.status().isOk());
+        verify(orderService).processPaymentNotification(3000006529L);
     }
 
     /**
-     * Test {@link OrderController#getUserOrders()}.
+     * Test {@link OrderController#verifyPayment(Map)} rejects a missing or non-numeric payment ID.
+     */
+    @Test
+    @DisplayName("Test verifyPayment(Map) rejects an invalid payment id")
+    @Tag("Unit")
+    void testVerifyPayment_invalidPaymentId() throws Exception {
+        for (Map<String, String> paymentData : List.of(Map.<String, String>of(), Map.of("paymentId", "gp1"))) {
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/orders/verify")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(new ObjectMapper().writeValueAsString(paymentData));
+
+            MockMvcBuilders.standaloneSetup(orderController)
+                    .setControllerAdvice(globalExceptionHandler)
+                    .build()
+                    .perform(requestBuilder)
+                    .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        }
+        verify(orderService, never()).processPaymentNotification(Mockito.anyLong());
+    }
+
+    /**
+     * Test {@link OrderController#getUserOrders(OrderHistoryQuery)}.
      *
-     * <p>Method under test: {@link OrderController#getUserOrders()}
+     * <p>Method under test: {@link OrderController#getUserOrders(OrderHistoryQuery)}
      */
     @Test
     @DisplayName("Test getUserOrders()")
     @Tag("ContributionFromDiffblue")
     @ManagedByDiffblue
-    @MethodsUnderTest({"java.util.List OrderController.getUserOrders()"})
+    @MethodsUnderTest({"OrderPageResponse OrderController.getUserOrders(OrderHistoryQuery)"})
     void testGetUserOrders() throws Exception {
         // Arrange
-        when(orderService.getUserOrders()).thenReturn(new ArrayList<>());
+        when(orderService.getUserOrders(Mockito.<OrderHistoryQuery>any()))
+                .thenReturn(new OrderPageResponse(new ArrayList<>(), null));
         MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/orders");
 
         // Act and Assert
@@ -154,7 +209,7 @@ class OrderControllerTest {
                 .perform(requestBuilder)
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().contentType("application/json"))
-                .andExpect(MockMvcResultMatchers.content().string("[]"));
+                .andExpect(MockMvcResultMatchers.content().string("{\"items\":[],\"nextCursor\":null}"));
     }
 
     /**
@@ -182,7 +237,7 @@ class OrderControllerTest {
     }
 
     /**
-     * Test {@link OrderController#getOrdersOfAllUsers()}.
+     * Test {@link OrderController#getOrdersOfAllUsers(OrderQuery)}.
      *
      * <ul>
      *   <li>Given {@code /api/orders/all}.
@@ -190,18 +245,17 @@ class OrderControllerTest {
      *   <li>Then status {@link StatusResultMatchers#isNotFound()}.
      * </ul>
      *
-     * <p>Method under test: {@link OrderController#getOrdersOfAllUsers()}
+     * <p>Method under test: {@link OrderController#getOrdersOfAllUsers(OrderQuery)}
      */
     @Test
     @DisplayName(
             "Test getOrdersOfAllUsers(); given '/api/orders/all'; when formLogin; then status isNotFound()")
     @Tag("ContributionFromDiffblue")
     @ManagedByDiffblue
-    @MethodsUnderTest({"java.util.List OrderController.getOrdersOfAllUsers()"})
+    @MethodsUnderTest({"OrderPageResponse OrderController.getOrdersOfAllUsers(OrderQuery)"})
     void testGetOrdersOfAllUsers_givenApiOrdersAll_whenFormLogin_thenStatusIsNotFound()
             throws Exception {
         // Arrange
-        when(orderService.getOrdersOfAllUsers()).thenReturn(new ArrayList<>());
         FormLoginRequestBuilder requestBuilder = SecurityMockMvcRequestBuilders.formLogin();
 
         // Act and Assert
@@ -213,24 +267,25 @@ class OrderControllerTest {
     }
 
     /**
-     * Test {@link OrderController#getOrdersOfAllUsers()}.
+     * Test {@link OrderController#getOrdersOfAllUsers(OrderQuery)}.
      *
      * <ul>
      *   <li>When {@link MockMvcRequestBuilders#get(String, Object[])} {@code /api/orders/all}.
      *   <li>Then status {@link StatusResultMatchers#isOk()}.
      * </ul>
      *
-     * <p>Method under test: {@link OrderController#getOrdersOfAllUsers()}
+     * <p>Method under test: {@link OrderController#getOrdersOfAllUsers(OrderQuery)}
      */
     @Test
     @DisplayName(
             "Test getOrdersOfAllUsers(); when get(String, Object[]) '/api/orders/all'; then status isOk()")
     @Tag("ContributionFromDiffblue")
     @ManagedByDiffblue
-    @MethodsUnderTest({"java.util.List OrderController.getOrdersOfAllUsers()"})
+    @MethodsUnderTest({"OrderPageResponse OrderController.getOrdersOfAllUsers(OrderQuery)"})
     void testGetOrdersOfAllUsers_whenGetApiOrdersAll_thenStatusIsOk() throws Exception {
         // Arrange
-        when(orderService.getOrdersOfAllUsers()).thenReturn(new ArrayList<>());
+        when(orderService.getOrdersOfAllUsers(Mockito.<OrderQuery>any()))
+                .thenReturn(new OrderPageResponse(new ArrayList<>(), null));
         MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/orders/all");
 
         // Act and Assert
@@ -240,7 +295,48 @@ class OrderControllerTest {
                 .perform(requestBuilder)
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().contentType("application/json"))
-                .andExpect(MockMvcResultMatchers.content().string("[]"));
+                .andExpect(MockMvcResultMatchers.content().string("{\"items\":[],\"nextCursor\":null}"));
+    }
+
+    /**
+     * Test {@link OrderController#getOrdersOfAllUsers(OrderQuery)} rejects a page size over the limit.
+     */
+    @Test
+    @DisplayName("Test getOrdersOfAllUsers(OrderQuery) rejects an oversized page")
+    @Tag("Unit")
+    void testGetOrdersOfAllUsers_sizeTooLarge() throws Exception {
+        MockMvcBuilders.standaloneSetup(orderController)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(MockMvcRequestBuilders.get("/api/orders/all").param("size", "101"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        verify(orderService, never()).getOrdersOfAllUsers(Mockito.any());
+    }
+
+    /**
+     * Test {@link OrderController#exportOrders(OrderQuery, jakarta.servlet.http.HttpServletResponse)}
+     * streams the service output as NDJSON with the filters bound from the query string.
+     */
+    @Test
+    @DisplayName("Test exportOrders(OrderQuery, HttpServletResponse) streams NDJSON")
+    @Tag("Unit")
+    void testExportOrders_streamsNdjson() throws Exception {
+        when(orderService.exportOrders(Mockito.argThat(query -> "Paid".equals(query.getPaymentStatus())
+                && Instant.parse("2025-01-01T00:00:00Z").equals(query.getFrom())), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    invocation.<OutputStream>getArgument(1).write("{\"id\":\"42\"}\n".getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        MockMvcBuilders.standaloneSetup(orderController)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(MockMvcRequestBuilders.get("/api/orders/all/export")
+                        .param("paymentStatus", "Paid")
+                        .param("from", "2025-01-01T00:00:00Z"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson;charset=UTF-8"))
+                .andExpect(MockMvcResultMatchers.content().string("{\"id\":\"42\"}\n"));
     }
 
     /**
@@ -0,0 +1,68 @@
+package com.lumastyle.eshop.controller;
+
+import com.lumastyle.eshop.exception.GlobalExceptionHandler;
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import com.lumastyle.eshop.service.OrderService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.aot.DisabledInAotMode;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+@ContextConfiguration(classes = {PaymentController.class, GlobalExceptionHandler.class})
+@DisabledInAotMode
+@ExtendWith(SpringExtension.class)
+class PaymentControllerTest {
+    @Autowired
+    private PaymentController paymentController;
+
+    @MockitoBean
+    private OrderService orderService;
+
+    @Autowired
+    private GlobalExceptionHandler globalExceptionHandler;
+
+    /**
+     * Test {@link PaymentController#notifyPayment(long)} hands the payment ID to the order service.
+     */
+    @Test
+    @DisplayName("Test notifyPayment(long)")
+    @Tag("Unit")
+    void testNotifyPayment() throws Exception {
+        MockMvcBuilders.standaloneSetup(paymentController)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(MockMvcRequestBuilders.get("/api/payment/notify").param("id", "3000006529"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        verify(orderService).processPaymentNotification(3000006529L);
+    }
+
+    /**
+     * Test {@link PaymentController#notifyPayment(long)} answers 502 for an unknown payment, so
+     * GoPay repeats the notification.
+     */
+    @Test
+    @DisplayName("Test notifyPayment(long); unknown payment; then status 502")
+    @Tag("Unit")
+    void testNotifyPayment_unknownPayment_thenBadGateway() throws Exception {
+        doThrow(new GoPayIntegrationException("Order not found for payment ID: 7"))
+                .when(orderService).processPaymentNotification(7L);
+
+        MockMvcBuilders.standaloneSetup(paymentController)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(MockMvcRequestBuilders.get("/api/payment/notify").param("id", "7"))
+                .andExpect(MockMvcResultMatchers.status().isBadGateway());
+    }
+}
@@ -1,13 +1,19 @@
 package com.lumastyle.eshop.controller;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.diffblue.cover.annotations.ManagedByDiffblue;
 import com.diffblue.cover.annotations.MethodsUnderTest;
+import com.lumastyle.eshop.dto.product.ProductPageResponse;
+import com.lumastyle.eshop.dto.product.ProductQuery;
 import com.lumastyle.eshop.dto.product.ProductRequest;
 import com.lumastyle.eshop.dto.product.ProductResponse;
 import com.lumastyle.eshop.dto.product.ProductResponse.ProductResponseBuilder;
+import com.lumastyle.eshop.dto.product.ProductSort;
 import com.lumastyle.eshop.exception.GlobalExceptionHandler;
 import com.lumastyle.eshop.service.ProductService;
 
@@ -51,18 +57,19 @@ class ProductControllerTest {
     private ProductService productService;
 
     /**
-     * Test {@link ProductController#readProducts()}.
+     * Test {@link ProductController#readProducts(ProductQuery)}.
      *
-     * <p>Method under test: {@link ProductController#readProducts()}
+     * <p>Method under test: {@link ProductController#readProducts(ProductQuery)}
      */
     @Test
-    @DisplayName("Test readProducts()")
+    @DisplayName("Test readProducts(ProductQuery)")
     @Tag("ContributionFromDiffblue")
     @ManagedByDiffblue
-    @MethodsUnderTest({"java.util.List ProductController.readProducts()"})
+    @MethodsUnderTest({"ProductPageResponse ProductController.readProducts(ProductQuery)"})
     void testReadProducts() throws Exception {
         // Arrange
-        when(productService.readProducts()).thenReturn(new ArrayList<>());
+        when(productService.readProducts(any(ProductQuery.class)))
+                .thenReturn(new ProductPageResponse(new ArrayList<>(), null));
         MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products");
 
         // Act and Assert
@@ -72,7 +79,60 @@ class ProductControllerTest {
                 .perform(requestBuilder)
                 .andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().contentType("application/json"))
-                .andExpect(MockMvcResultMatchers.content().string("[]"));
+                .andExpect(MockMvcResultMatchers.content().string("{\"items\":[],\"nextCursor\":null}"));
+    }
+
+    /**
+     * Test {@link ProductController#readProducts(ProductQuery)} binds filter, sort and paging parameters.
+     */
+    @Test
+    @DisplayName("Test readProducts(ProductQuery) with query parameters")
+    @Tag("Unit")
+    void testReadProducts_bindsQuery() throws Exception {
+        // Arrange
+        when(productService.readProducts(any(ProductQuery.class)))
+                .thenReturn(new ProductPageResponse(new ArrayList<>(), "next"));
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products")
+                .param("category", "Tie")
+                .param("minPrice", "100")
+                .param("maxPrice", "500.50")
+                .param("sort", "PRICE_DESC")
+                .param("size", "10")
+                .param("cursor", "abc");
+
+        // Act and Assert
+        MockMvcBuilders.standaloneSetup(productController2)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").value("next"));
+        verify(productService).readProducts(ProductQuery.builder()
+                .category("Tie")
+                .minPrice(new BigDecimal("100"))
+                .maxPrice(new BigDecimal("500.50"))
+                .sort(ProductSort.PRICE_DESC)
+                .size(10)
+                .cursor("abc")
+                .build());
+    }
+
+    /**
+     * Test {@link ProductController#readProducts(ProductQuery)} rejects an oversized page.
+     */
+    @Test
+    @DisplayName("Test readProducts(ProductQuery) rejects size above 100")
+    @Tag("Unit")
+    void testReadProducts_sizeTooLarge() throws Exception {
+        MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products")
+                .param("size", "1000");
+
+        MockMvcBuilders.standaloneSetup(productController2)
+                .setControllerAdvice(globalExceptionHandler)
+                .build()
+                .perform(requestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        verifyNoInteractions(productService);
     }
 
     /**
@@ -84,7 +144,7 @@ class ProductControllerTest {
     @DisplayName("Test addProduct(ProductRequest, MultipartFile)")
     @Tag("ContributionFromDiffblue")
     @MethodsUnderTest({
-            "com.lumastyle.eshop.dto.product.ProductResponse ProductController.addProduct(ProductRequest, MultipartFile)"
+            "java.util.concurrent.CompletableFuture ProductController.addProduct(ProductRequest, MultipartFile)"
     })
      void testAddProduct() throws Exception {
         // Arrange
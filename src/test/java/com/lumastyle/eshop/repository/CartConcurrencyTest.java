@@ -0,0 +1,159 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrency tests for the atomic cart mutations against an embedded MongoDB: many
+ * threads hammer one cart and the final quantities must be exact. Skipped when the
+ * embedded server cannot be started (e.g. the binaries cannot be downloaded).
+ */
+@ActiveProfiles("test")
+class CartConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 100;
+    private static final String USER = "u1";
+
+    private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    private CartRepositoryCustomImpl repository;
+
+    @BeforeAll
+    static void startMongo() {
+        try {
+            mongod = Mongod.instance().start(Version.Main.V7_0);
+        } catch (RuntimeException e) {
+            Assumptions.abort("Embedded MongoDB is not available: " + e.getMessage());
+        }
+        client = MongoClients.create("mongodb://" + mongod.current().getServerAddress());
+        mongoTemplate = new MongoTemplate(client, "cart-concurrency-test");
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (client != null) {
+            client.close();
+        }
+        if (mongod != null) {
+            mongod.close();
+        }
+    }
+
+    /**
+     * Recreates the carts collection with the indexes declared on {@link CartEntity}.
+     */
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(CartEntity.class);
+        IndexResolver.create(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(CartEntity.class)
+                .forEach(mongoTemplate.indexOps(CartEntity.class)::ensureIndex);
+        repository = new CartRepositoryCustomImpl(mongoTemplate);
+    }
+
+    /**
+     * Test: concurrent first adds create exactly one cart and no increment is lost.
+     */
+    @Test
+    @DisplayName("concurrent adds to one cart keep exact counts")
+    @Tag("Integration")
+    void concurrentAdds_exactCounts() throws Exception {
+        runConcurrently(thread -> repository.incrementItem(USER, "p" + (thread % 4)));
+
+        assertEquals(1, mongoTemplate.count(new org.springframework.data.mongodb.core.query.Query(), CartEntity.class));
+        int perProduct = THREADS / 4 * OPERATIONS_PER_THREAD;
+        assertEquals(Map.of("p0", perProduct, "p1", perProduct, "p2", perProduct, "p3", perProduct), items());
+    }
+
+    /**
+     * Test: concurrent adds and removes on one cart net out exactly, and an entry
+     * removed down to zero disappears.
+     */
+    @Test
+    @DisplayName("concurrent adds and removes net out exactly")
+    @Tag("Integration")
+    void concurrentAddsAndRemoves_exactCounts() throws Exception {
+        int initial = THREADS / 2 * OPERATIONS_PER_THREAD;
+        for (int i = 0; i < initial; i++) {
+            repository.incrementItem(USER, "kept");
+            repository.incrementItem(USER, "drained");
+        }
+
+        // half the threads add and remove "kept" in equal numbers, the other half drain "drained"
+        runConcurrently(thread -> thread % 2 == 0
+                ? repository.incrementItem(USER, "kept")
+                : repository.decrementItem(USER, "drained").orElse(null));
+        runConcurrently(thread -> thread % 2 == 0
+                ? repository.decrementItem(USER, "kept").orElse(null)
+                : repository.decrementItem(USER, "drained").orElse(null));
+
+        assertEquals(Map.of("kept", initial), items());
+    }
+
+    // === Helper methods ===
+
+    private interface Operation {
+        CartEntity apply(int thread);
+    }
+
+    /**
+     * Runs {@link #OPERATIONS_PER_THREAD} operations on each of {@link #THREADS} threads,
+     * all released at the same moment.
+     */
+    private void runConcurrently(Operation operation) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        operation.apply(thread);
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private Map<String, Integer> items() {
+        List<CartEntity> carts = mongoTemplate.findAll(CartEntity.class);
+        assertEquals(1, carts.size());
+        return carts.getFirst().getItems();
+    }
+}
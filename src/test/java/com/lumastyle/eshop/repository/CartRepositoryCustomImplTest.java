@@ -0,0 +1,186 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CartRepositoryCustomImpl}, verifying that every mutation is a single
+ * atomic {@code findAndModify} with the expected update.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class CartRepositoryCustomImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private CartRepositoryCustomImpl repository;
+
+    /**
+     * Test: adding an item is an upsert with {@code $inc} returning the updated cart.
+     */
+    @Test
+    @DisplayName("incrementItem upserts with $inc and returns the new document")
+    @Tag("Unit")
+    void incrementItem_upsertsWithInc() {
+        CartEntity cart = new CartEntity("c1", "u1", null);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        when(mongoTemplate.findAndModify(query.capture(), update.capture(), options.capture(), eq(CartEntity.class)))
+                .thenReturn(cart);
+
+        assertSame(cart, repository.incrementItem("u1", "p1"));
+
+        assertEquals(new Document("userId", "u1"), query.getValue().getQueryObject());
+        assertEquals(new Document("$inc", new Document("items.p1", 1).append("totalItems", 1))
+                        .append("$set", new Document("lastChange", 1)),
+                update.getValue().getUpdateObject());
+        assertTrue(options.getValue().isUpsert());
+        assertTrue(options.getValue().isReturnNew());
+    }
+
+    /**
+     * Test: an upsert that lost the race to create the cart is retried as an update.
+     */
+    @Test
+    @DisplayName("incrementItem retries after a concurrent cart creation")
+    @Tag("Unit")
+    void incrementItem_duplicateKey_retries() {
+        CartEntity cart = new CartEntity("c1", "u1", null);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(CartEntity.class)))
+                .thenThrow(new DuplicateKeyException("E11000"))
+                .thenReturn(cart);
+
+        assertSame(cart, repository.incrementItem("u1", "p1"));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(CartEntity.class));
+    }
+
+    /**
+     * Test: removing an item matches only carts containing it and decrements or drops it
+     * in one pipeline update.
+     */
+    @Test
+    @DisplayName("decrementItem decrements or drops the entry in one update")
+    @Tag("Unit")
+    void decrementItem_singlePipelineUpdate() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        when(mongoTemplate.findAndModify(query.capture(), update.capture(),
+                any(FindAndModifyOptions.class), eq(CartEntity.class))).thenReturn(null);
+
+        assertEquals(Optional.empty(), repository.decrementItem("u1", "p1"));
+
+        assertEquals(new Document("userId", "u1").append("items.p1", new Document("$exists", true)),
+                query.getValue().getQueryObject());
+        List<Document> pipeline = update.getValue().toPipeline(
+                org.springframework.data.mongodb.core.aggregation.Aggregation.DEFAULT_CONTEXT);
+        assertEquals(1, pipeline.size());
+        String stage = pipeline.getFirst().toJson();
+        assertTrue(stage.contains("\"$lte\": [\"$items.p1\", 1]"), stage);
+        assertTrue(stage.contains("\"$subtract\": [\"$items.p1\", 1]"), stage);
+        assertTrue(stage.contains("$arrayToObject"), stage);
+        assertTrue(stage.contains("\"totalItems\": {\"$subtract\": [{\"$ifNull\": [\"$totalItems\", 0]}, 1]}"), stage);
+        assertTrue(stage.contains("\"lastChange\": -1"), stage);
+    }
+
+    /**
+     * Test: a bulk update is one upserting pipeline that applies every line and then drops
+     * the products left without pieces.
+     */
+    @Test
+    @DisplayName("updateItems applies all lines in one upserting pipeline update")
+    @Tag("Unit")
+    void updateItems_singlePipelineUpsert() {
+        CartEntity cart = new CartEntity("c1", "u1", Map.of("p1", 3, "p2", 2));
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        when(mongoTemplate.findAndModify(any(Query.class), update.capture(), options.capture(),
+                eq(CartEntity.class))).thenReturn(cart);
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        deltas.put("p2", 2);
+        deltas.put("p3", -1);
+
+        assertSame(cart, repository.updateItems("u1", Map.of("p1", 3), deltas));
+
+        List<Document> pipeline = update.getValue().toPipeline(
+                org.springframework.data.mongodb.core.aggregation.Aggregation.DEFAULT_CONTEXT);
+        assertEquals(2, pipeline.size());
+        String apply = pipeline.getFirst().toJson();
+        assertTrue(apply.contains("\"p1\": 3"), apply);
+        assertTrue(apply.contains("\"$add\": [{\"$ifNull\": [\"$items.p2\", 0]}, 2]"), apply);
+        assertTrue(apply.contains("\"$add\": [{\"$ifNull\": [\"$items.p3\", 0]}, -1]"), apply);
+        // the change of a delta line is clamped so it never takes more pieces than the cart holds
+        assertTrue(apply.contains("\"$max\": [{\"$add\": [{\"$ifNull\": [\"$items.p3\", 0]}, -1]}, 0]"), apply);
+        assertTrue(apply.contains("\"totalItems\": {\"$add\": [{\"$ifNull\": [\"$totalItems\", 0]}"), apply);
+        assertTrue(apply.contains("\"lastChange\": {\"$add\": "), apply);
+        String prune = pipeline.get(1).toJson();
+        assertTrue(prune.contains("\"$gt\": [\"$$this.v\", 0]"), prune);
+        assertTrue(options.getValue().isUpsert());
+        assertTrue(options.getValue().isReturnNew());
+    }
+
+    /**
+     * Test: deleting a cart returns the removed document so its pieces can be accounted for.
+     */
+    @Test
+    @DisplayName("deleteCart removes the cart and returns it")
+    @Tag("Unit")
+    void deleteCart_returnsRemovedDocument() {
+        CartEntity cart = new CartEntity("c1", "u1", Map.of("p1", 2));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.findAndRemove(query.capture(), eq(CartEntity.class))).thenReturn(cart);
+
+        assertEquals(Optional.of(cart), repository.deleteCart("u1"));
+        assertEquals(new Document("userId", "u1"), query.getValue().getQueryObject());
+    }
+
+    /**
+     * Test: the pieces in all carts are summed in one group stage; no carts count as zero.
+     */
+    @Test
+    @DisplayName("countAllItems sums totalItems over all carts")
+    @Tag("Unit")
+    void countAllItems_sumsTotals() {
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        when(mongoTemplate.aggregate(aggregation.capture(), eq(CartEntity.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(new Document("_id", null).append("total", 42L)), new Document()))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+
+        assertEquals(42, repository.countAllItems());
+        assertEquals(0, repository.countAllItems());
+        assertEquals(new Document("$group", new Document("_id", null).append("total", new Document("$sum", "$totalItems"))),
+                aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).getFirst());
+    }
+}
@@ -0,0 +1,137 @@
+package com.lumastyle.eshop.repository;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks against an embedded MongoDB that the order queries run on the indexes declared on
+ * {@link OrderEntity} rather than scanning the collection. Skipped when the embedded server
+ * cannot be started (e.g. the binaries cannot be downloaded).
+ */
+@ActiveProfiles("test")
+class OrderIndexTest {
+
+    private static final int ORDERS = 2_000;
+
+    private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static MongoCollection<Document> orders;
+
+    /**
+     * Starts the server, creates the declared indexes and inserts orders of 100 users, every
+     * other one with a payment.
+     */
+    @BeforeAll
+    static void startMongo() {
+        try {
+            mongod = Mongod.instance().start(Version.Main.V7_0);
+        } catch (RuntimeException e) {
+            Assumptions.abort("Embedded MongoDB is not available: " + e.getMessage());
+        }
+        client = MongoClients.create("mongodb://" + mongod.current().getServerAddress());
+        mongoTemplate = new MongoTemplate(client, "order-index-test");
+        IndexResolver.create(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(OrderEntity.class)
+                .forEach(mongoTemplate.indexOps(OrderEntity.class)::ensureIndex);
+
+        List<OrderEntity> entities = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            entities.add(OrderEntity.builder()
+                    .userId("user-" + i % 100)
+                    .createdAt(Instant.ofEpochSecond(1_700_000_000L + i))
+                    .gopayPaymentId(i % 2 == 0 ? String.valueOf(i) : null)
+                    .build());
+        }
+        mongoTemplate.insertAll(entities);
+        orders = mongoTemplate.getCollection(mongoTemplate.getCollectionName(OrderEntity.class));
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (client != null) {
+            client.close();
+        }
+        if (mongod != null) {
+            mongod.close();
+        }
+    }
+
+    /**
+     * Test: the first page of a user's history and a page after a cursor both read the
+     * {@code user_orders} index in order, without scanning or sorting in memory.
+     */
+    @Test
+    @DisplayName("order history pages use the user_orders index")
+    @Tag("Integration")
+    void userOrders_indexScan() {
+        Document sort = new Document("createdAt", -1).append("_id", -1);
+        Document firstPage = new Document("userId", "user-7");
+        Date cursorTime = Date.from(Instant.ofEpochSecond(1_700_001_007L));
+        Document nextPage = new Document("userId", "user-7").append("$or", List.of(
+                new Document("createdAt", new Document("$lt", cursorTime)),
+                new Document("createdAt", cursorTime).append("_id", new Document("$lt", new ObjectId()))));
+
+        for (Document filter : List.of(firstPage, nextPage)) {
+            String plan = orders.find(filter).sort(sort).limit(21).explain().toJson();
+            assertTrue(plan.contains("\"stage\": \"IXSCAN\""), plan);
+            assertTrue(plan.contains("\"indexName\": \"user_orders\""), plan);
+            assertFalse(plan.contains("COLLSCAN"), plan);
+            assertFalse(plan.contains("\"stage\": \"SORT\""), plan);
+        }
+    }
+
+    /**
+     * Test: a payment callback finds its order through the {@code gopay_payment} index.
+     */
+    @Test
+    @DisplayName("payment lookup uses the gopay_payment index")
+    @Tag("Integration")
+    void paymentLookup_indexScan() {
+        String plan = orders.find(new Document("gopayPaymentId", "42")).explain().toJson();
+
+        assertTrue(plan.contains("\"stage\": \"IXSCAN\""), plan);
+        assertTrue(plan.contains("\"indexName\": \"gopay_payment\""), plan);
+        assertFalse(plan.contains("COLLSCAN"), plan);
+    }
+
+    /**
+     * Test: the payment index is unique, but orders still waiting for their payment do not
+     * collide with each other.
+     */
+    @Test
+    @DisplayName("gopay_payment is unique and sparse")
+    @Tag("Integration")
+    void paymentIndex_uniqueAndSparse() {
+        mongoTemplate.insert(OrderEntity.builder().userId("user-1").build());
+        mongoTemplate.insert(OrderEntity.builder().userId("user-2").build());
+
+        assertThrows(DuplicateKeyException.class,
+                () -> mongoTemplate.insert(OrderEntity.builder().userId("user-3").gopayPaymentId("42").build()));
+    }
+}
@@ -0,0 +1,107 @@
+package com.lumastyle.eshop.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Counter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link VerifiedTokenCache}.
+ */
+@ExtendWith(MockitoExtension.class)
+class VerifiedTokenCacheTest {
+
+    @Mock
+    private Counter tokenCacheHitsCounter;
+
+    @Mock
+    private Counter tokenCacheMissesCounter;
+
+    private VerifiedTokenCache cache;
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        cache = new VerifiedTokenCache(Caffeine.newBuilder().<String, Claims>build(),
+                tokenCacheHitsCounter, tokenCacheMissesCounter);
+    }
+
+    /**
+     * Test: with the cache enabled a token is verified once and then served from the cache.
+     */
+    @Test
+    @DisplayName("getOrVerify verifies a token once when enabled")
+    @Tag("Unit")
+    void getOrVerify_enabled_verifiesOnce() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        Function<String, Claims> verifier = countingVerifier(60_000);
+
+        Claims first = cache.getOrVerify("token", verifier);
+        Claims second = cache.getOrVerify("token", verifier);
+
+        assertSame(first, second);
+        assertEquals(1, verifications.get());
+        verify(tokenCacheMissesCounter).increment();
+        verify(tokenCacheHitsCounter).increment();
+    }
+
+    /**
+     * Test: with the cache disabled every call verifies the token.
+     */
+    @Test
+    @DisplayName("getOrVerify verifies every call when disabled")
+    @Tag("Unit")
+    void getOrVerify_disabled_alwaysVerifies() {
+        Function<String, Claims> verifier = countingVerifier(60_000);
+
+        cache.getOrVerify("token", verifier);
+        cache.getOrVerify("token", verifier);
+
+        assertEquals(2, verifications.get());
+        verifyNoInteractions(tokenCacheHitsCounter, tokenCacheMissesCounter);
+    }
+
+    /**
+     * Test: a failed verification is propagated and nothing is cached.
+     */
+    @Test
+    @DisplayName("getOrVerify does not cache rejected tokens")
+    @Tag("Unit")
+    void getOrVerify_rejected_notCached() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        Function<String, Claims> verifier = token -> {
+            verifications.incrementAndGet();
+            throw new IllegalArgumentException("bad token");
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> cache.getOrVerify("bad", verifier));
+        assertThrows(IllegalArgumentException.class, () -> cache.getOrVerify("bad", verifier));
+
+        assertEquals(2, verifications.get());
+        verifyNoInteractions(tokenCacheHitsCounter);
+    }
+
+    private Function<String, Claims> countingVerifier(long validForMillis) {
+        return token -> {
+            verifications.incrementAndGet();
+            return Jwts.claims()
+                    .setSubject("test@example.com")
+                    .setExpiration(new Date(System.currentTimeMillis() + validForMillis));
+        };
+    }
+}
@@ -1,12 +1,14 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.lumastyle.eshop.entity.UserEntity;
 import com.lumastyle.eshop.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -14,7 +16,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.test.context.ActiveProfiles;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Unit tests for {@link AppUserDetailsService}, verifying its behavior
@@ -27,9 +29,23 @@ class AppUserDetailsServiceTest {
     @Mock
     private UserRepository repository;
 
-    @InjectMocks
+    @Mock
+    private Counter principalCacheHitsCounter;
+
+    @Mock
+    private Counter principalCacheMissesCounter;
+
     private AppUserDetailsService service;
 
+    /**
+     * Creates the service with an empty, unbounded principal cache.
+     */
+    @BeforeEach
+    void setUp() {
+        service = new AppUserDetailsService(repository, Caffeine.newBuilder().build(),
+                principalCacheHitsCounter, principalCacheMissesCounter);
+    }
+
     /**
      * Test: loading an existing user returns correct {@link UserDetails}.
      */
@@ -62,4 +78,46 @@ class AppUserDetailsServiceTest {
         assertThrows(UsernameNotFoundException.class,
                 () -> service.loadUserByUsername("nope@example.com"));
     }
+
+    /**
+     * Test: repeated lookups are served from the principal cache and keep their credentials.
+     */
+    @Test
+    @DisplayName("loadUserByUsername reads the repository once for repeated lookups")
+    @Tag("Unit")
+    void loadUserByUsername_cached() {
+        UserEntity user = new UserEntity();
+        user.setEmail("cached@example.com");
+        user.setPassword("pass");
+        when(repository.findByEmail("cached@example.com"))
+                .thenReturn(java.util.Optional.of(user));
+
+        service.loadUserByUsername("cached@example.com");
+        UserDetails details = service.loadUserByUsername("cached@example.com");
+
+        assertEquals("pass", details.getPassword());
+        verify(repository, times(1)).findByEmail("cached@example.com");
+        verify(principalCacheMissesCounter).increment();
+        verify(principalCacheHitsCounter).increment();
+    }
+
+    /**
+     * Test: an evicted principal is loaded again from the repository.
+     */
+    @Test
+    @DisplayName("loadUserByUsername reloads the user after eviction")
+    @Tag("Unit")
+    void loadUserByUsername_afterEvict() {
+        UserEntity user = new UserEntity();
+        user.setEmail("evicted@example.com");
+        user.setPassword("pass");
+        when(repository.findByEmail("evicted@example.com"))
+                .thenReturn(java.util.Optional.of(user));
+
+        service.loadUserByUsername("evicted@example.com");
+        service.evict("evicted@example.com");
+        service.loadUserByUsername("evicted@example.com");
+
+        verify(repository, times(2)).findByEmail("evicted@example.com");
+    }
 }
@@ -1,16 +1,17 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.dto.cart.CartBulkRequest;
+import com.lumastyle.eshop.dto.cart.CartItemUpdate;
 import com.lumastyle.eshop.dto.cart.CartRequest;
 import com.lumastyle.eshop.dto.cart.CartResponse;
 import com.lumastyle.eshop.entity.CartEntity;
-import com.lumastyle.eshop.entity.UserEntity;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.CartMapper;
 import com.lumastyle.eshop.mapper.UserMapperImpl;
-import com.lumastyle.eshop.repository.CartRepository;
 import com.lumastyle.eshop.repository.UserRepository;
 import com.lumastyle.eshop.service.AuthFacade;
 import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.store.CartStore;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -18,13 +19,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.authentication.ott.OneTimeTokenAuthenticationToken;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -38,22 +39,21 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class CartServiceTest {
 
-    @Mock private CartRepository cartRepository;
+    @Mock private CartStore cartStore;
     @Mock private CartMapper cartMapper;
     @Mock private UserService userService;
-    @Mock private AtomicInteger cartItemsGauge;
 
     @InjectMocks
     private CartServiceImpl cartServiceImpl;
 
     /**
-     * Test addToCart propagates an exception when repository.findByUserId fails.
+     * Test addToCart propagates an exception when store.incrementItem fails.
      */
     @Test
-    @DisplayName("addToCart throws when repository findByUserId fails")
+    @DisplayName("addToCart throws when store incrementItem fails")
     @Tag("Unit")
     void testAddToCart_repositoryThrows() {
-        when(cartRepository.findByUserId(anyString()))
+        when(cartStore.incrementItem(anyString(), any()))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
         when(userService.getCurrentUserId()).thenReturn("42");
 
@@ -61,19 +61,18 @@ class CartServiceTest {
                 () -> cartServiceImpl.addToCart(new CartRequest()));
 
         verify(userService).getCurrentUserId();
-        verify(cartRepository).findByUserId("42");
+        verify(cartStore).incrementItem("42", null);
     }
 
     /**
-     * Test addToCart propagates an exception when mapper.toResponse fails after save.
+     * Test addToCart propagates an exception when mapper.toResponse fails after the update.
      */
     @Test
     @DisplayName("addToCart throws when mapper.toResponse fails")
     @Tag("Unit")
     void testAddToCart_mapperThrows() {
         CartEntity saved = new CartEntity(); saved.setId("42"); saved.setItems(new HashMap<>()); saved.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.of(saved));
-        when(cartRepository.save(any(CartEntity.class))).thenReturn(saved);
+        when(cartStore.incrementItem(anyString(), any())).thenReturn(saved);
         when(userService.getCurrentUserId()).thenReturn("42");
         when(cartMapper.toResponse(any(CartEntity.class)))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
@@ -81,33 +80,27 @@ class CartServiceTest {
         assertThrows(ResourceNotFoundException.class,
                 () -> cartServiceImpl.addToCart(new CartRequest()));
 
-        verify(cartRepository).findByUserId("42");
-        verify(cartRepository).save(isA(CartEntity.class));
+        verify(cartStore).incrementItem("42", null);
         verify(cartMapper).toResponse(isA(CartEntity.class));
     }
 
     /**
-     * Test addToCart returns response when repository initially empty.
+     * Test addToCart returns the cart as updated by the atomic upsert, without reading or saving it.
      */
     @Test
-    @DisplayName("addToCart returns new cart when none exists")
+    @DisplayName("addToCart returns the upserted cart")
     @Tag("Unit")
-    void testAddToCart_createsNewCart() {
-        CartEntity saved = new CartEntity(); saved.setId("42"); saved.setItems(new HashMap<>()); saved.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.empty());
-        when(cartRepository.save(any(CartEntity.class))).thenReturn(saved);
+    void testAddToCart_returnsUpdatedCart() {
+        CartEntity updated = new CartEntity("42", "42", new HashMap<>(Map.of("p1", 2, "p2", 1)));
+        when(cartStore.incrementItem("42", "p1")).thenReturn(updated);
         when(userService.getCurrentUserId()).thenReturn("42");
-        CartResponse expected = CartResponse.builder().id("42").userId("42").items(new HashMap<>()).build();
-        when(cartMapper.toResponse(any(CartEntity.class))).thenReturn(expected);
+        CartResponse expected = CartResponse.builder().id("42").userId("42").items(updated.getItems()).build();
+        when(cartMapper.toResponse(updated)).thenReturn(expected);
 
-        CartResponse actual = cartServiceImpl.addToCart(new CartRequest());
+        CartResponse actual = cartServiceImpl.addToCart(new CartRequest("p1"));
 
-        verify(cartRepository).findByUserId("42");
-        verify(cartRepository).save(isA(CartEntity.class));
-        verify(cartMapper).toResponse(isA(CartEntity.class));
-        assertEquals("42", actual.getId());
-        assertEquals("42", actual.getUserId());
-        assertTrue(actual.getItems().isEmpty());
+        assertSame(expected, actual);
+        verify(cartStore, never()).findByUserId(anyString());
     }
 
     /**
@@ -118,14 +111,14 @@ class CartServiceTest {
     @Tag("Unit")
     void testGetCart_mapperThrows() {
         CartEntity existing = new CartEntity(); existing.setId("42"); existing.setItems(new HashMap<>()); existing.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.of(existing));
+        when(cartStore.findByUserId(anyString())).thenReturn(Optional.of(existing));
         when(userService.getCurrentUserId()).thenReturn("42");
         when(cartMapper.toResponse(any(CartEntity.class)))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
 
         assertThrows(ResourceNotFoundException.class, () -> cartServiceImpl.getCart());
 
-        verify(cartRepository).findByUserId("42");
+        verify(cartStore).findByUserId("42");
         verify(cartMapper).toResponse(isA(CartEntity.class));
     }
 
@@ -144,35 +137,31 @@ class CartServiceTest {
     }
 
     /**
-     * Test getCart integrates with UserRepository, AuthFacade and UserServiceImpl when cart not found.
+     * Test getCart resolves the user ID through AuthFacade without a UserRepository lookup when cart not found.
      */
     @Test
-    @DisplayName("getCart loads user and handles missing cart")
+    @DisplayName("getCart resolves the user from the principal and handles missing cart")
     @Tag("Unit")
-    void testGetCart_callsFindByEmail() {
-        CartRepository repo = mock(CartRepository.class);
-        when(repo.findByUserId(anyString()))
+    void testGetCart_resolvesUserFromPrincipal() {
+        CartStore store = mock(CartStore.class);
+        when(store.findByUserId(anyString()))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
 
-        UserEntity user = new UserEntity(); user.setId("42"); user.setEmail("jane.doe@example.org");
         UserRepository userRepo = mock(UserRepository.class);
-        when(userRepo.findByEmail(anyString())).thenReturn(Optional.of(user));
         AuthFacade auth = mock(AuthFacade.class);
-        when(auth.getAuthentication())
-                .thenReturn(OneTimeTokenAuthenticationToken.unauthenticated("ABC123"));
+        when(auth.getCurrentUserId()).thenReturn("42");
         UserService userSvcImpl = new UserServiceImpl(userRepo, new UserMapperImpl(), auth, new BCryptPasswordEncoder());
         CartServiceImpl svc = new CartServiceImpl(
-                repo,
+                store,
                 userSvcImpl,
-                mock(CartMapper.class),
-                new AtomicInteger()
+                mock(CartMapper.class)
         );
 
 
         assertThrows(ResourceNotFoundException.class, svc::getCart);
-        verify(repo).findByUserId("42");
-        verify(userRepo, times(2)).findByEmail("");
-        verify(auth, times(2)).getAuthentication();
+        verify(store).findByUserId("42");
+        verify(userRepo, never()).findByEmail(anyString());
+        verify(auth).getCurrentUserId();
     }
 
     /**
@@ -183,14 +172,14 @@ class CartServiceTest {
     @Tag("Unit")
     void testGetCart_returnsCart() {
         CartEntity existing = new CartEntity(); existing.setId("42"); existing.setItems(new HashMap<>()); existing.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.of(existing));
+        when(cartStore.findByUserId(anyString())).thenReturn(Optional.of(existing));
         when(userService.getCurrentUserId()).thenReturn("42");
         CartResponse expected = CartResponse.builder().id("42").userId("42").items(new HashMap<>()).build();
         when(cartMapper.toResponse(any(CartEntity.class))).thenReturn(expected);
 
         CartResponse actual = cartServiceImpl.getCart();
 
-        verify(cartRepository, atLeast(1)).findByUserId("42");
+        verify(cartStore, atLeast(1)).findByUserId("42");
         verify(cartMapper).toResponse(isA(CartEntity.class));
         assertEquals("42", actual.getId());
         assertEquals("42", actual.getUserId());
@@ -198,34 +187,34 @@ class CartServiceTest {
     }
 
     /**
-     * Test cleanCart propagates an exception when repository.deleteByUserId fails.
+     * Test cleanCart propagates an exception when store.deleteByUserId fails.
      */
     @Test
-    @DisplayName("cleanCart throws when repository fails")
+    @DisplayName("cleanCart throws when store fails")
     @Tag("Unit")
     void testCleanCart_repositoryThrows() {
         doThrow(new ResourceNotFoundException("An error occurred"))
-                .when(cartRepository).deleteByUserId(anyString());
+                .when(cartStore).deleteByUserId(anyString());
         when(userService.getCurrentUserId()).thenReturn("42");
 
         assertThrows(ResourceNotFoundException.class, () -> cartServiceImpl.cleanCart());
-        verify(cartRepository).deleteByUserId("42");
+        verify(cartStore).deleteByUserId("42");
         verify(userService).getCurrentUserId();
     }
 
     /**
-     * Test cleanCart succeeds when repository.deleteByUserId does nothing.
+     * Test cleanCart succeeds when store.deleteByUserId does nothing.
      */
     @Test
     @DisplayName("cleanCart does nothing on success")
     @Tag("Unit")
     void testCleanCart_success() {
-        doNothing().when(cartRepository).deleteByUserId(anyString());
+        doNothing().when(cartStore).deleteByUserId(anyString());
         when(userService.getCurrentUserId()).thenReturn("42");
 
         cartServiceImpl.cleanCart();
 
-        verify(cartRepository).deleteByUserId("42");
+        verify(cartStore).deleteByUserId("42");
         verify(userService).getCurrentUserId();
     }
 
@@ -251,7 +240,7 @@ class CartServiceTest {
     @Tag("Unit")
     void testRemoveFromCart_mapperThrows() {
         CartEntity existing = new CartEntity(); existing.setId("42"); existing.setItems(new HashMap<>()); existing.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.of(existing));
+        when(cartStore.decrementItem(anyString(), any())).thenReturn(Optional.of(existing));
         when(userService.getCurrentUserId()).thenReturn("42");
         when(cartMapper.toResponse(any(CartEntity.class)))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
@@ -260,78 +249,115 @@ class CartServiceTest {
                 () -> cartServiceImpl.removeFromCart(new CartRequest()));
 
         verify(cartMapper).toResponse(isA(CartEntity.class));
-        verify(cartRepository).findByUserId("42");
+        verify(cartStore).decrementItem("42", null);
     }
 
     /**
-     * Test removeFromCart propagates an exception when repository.findByUserId returns empty.
+     * Test removeFromCart propagates an exception when store.findByUserId returns empty.
      */
     @Test
-    @DisplayName("removeFromCart throws when repository returns empty")
+    @DisplayName("removeFromCart throws when store returns empty")
     @Tag("Unit")
     void testRemoveFromCart_emptyRepoThrows() {
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.empty());
+        when(cartStore.decrementItem(anyString(), any())).thenReturn(Optional.empty());
+        when(cartStore.findByUserId(anyString())).thenReturn(Optional.empty());
         when(userService.getCurrentUserId()).thenReturn("42");
 
         assertThrows(ResourceNotFoundException.class,
                 () -> cartServiceImpl.removeFromCart(new CartRequest()));
 
-        verify(cartRepository).findByUserId("42");
-        verify(userService, times(2)).getCurrentUserId();
+        verify(cartStore).findByUserId("42");
+        verify(userService).getCurrentUserId();
     }
 
     /**
-     * Test removeFromCart integrates with UserRepository, AuthFacade and UserServiceImpl when cart not found.
+     * Test removeFromCart resolves the user ID through AuthFacade without a UserRepository lookup when cart not found.
      */
     @Test
-    @DisplayName("removeFromCart loads user and handles missing cart")
+    @DisplayName("removeFromCart resolves the user from the principal and handles missing cart")
     @Tag("Unit")
-    void testRemoveFromCart_callsFindByEmail() {
-        CartRepository repo = mock(CartRepository.class);
-        when(repo.findByUserId(anyString()))
+    void testRemoveFromCart_resolvesUserFromPrincipal() {
+        CartStore store = mock(CartStore.class);
+        when(store.findByUserId(anyString()))
                 .thenThrow(new ResourceNotFoundException("An error occurred"));
 
-        UserEntity user = new UserEntity(); user.setId("42"); user.setEmail("jane.doe@example.org");
         UserRepository userRepo = mock(UserRepository.class);
-        when(userRepo.findByEmail(anyString())).thenReturn(Optional.of(user));
         AuthFacade auth = mock(AuthFacade.class);
-        when(auth.getAuthentication())
-                .thenReturn(OneTimeTokenAuthenticationToken.unauthenticated("ABC123"));
+        when(auth.getCurrentUserId()).thenReturn("42");
         UserService userSvcImpl = new UserServiceImpl(userRepo, new UserMapperImpl(), auth, new BCryptPasswordEncoder());
         CartServiceImpl svc = new CartServiceImpl(
-                repo,
+                store,
                 userSvcImpl,
-                mock(CartMapper.class),
-                new AtomicInteger()
+                mock(CartMapper.class)
         );
 
         assertThrows(ResourceNotFoundException.class,
                 () -> svc.removeFromCart(new CartRequest()));
 
-        verify(repo).findByUserId("42");
-        verify(userRepo, times(2)).findByEmail("");
-        verify(auth, times(2)).getAuthentication();
+        verify(store).findByUserId("42");
+        verify(userRepo, never()).findByEmail(anyString());
+        verify(auth).getCurrentUserId();
     }
 
     /**
-     * Test removeFromCart returns response when cart exists.
+     * Test removeFromCart returns the decremented cart without reading or saving it.
+     */
+    @Test
+    @DisplayName("removeFromCart returns the updated cart")
+    @Tag("Unit")
+    void testRemoveFromCart_returnsUpdatedCart() {
+        CartEntity updated = new CartEntity("42", "42", new HashMap<>(Map.of("p1", 1)));
+        when(cartStore.decrementItem("42", "p1")).thenReturn(Optional.of(updated));
+        when(userService.getCurrentUserId()).thenReturn("42");
+        CartResponse expected = CartResponse.builder().id("42").userId("42").items(updated.getItems()).build();
+        when(cartMapper.toResponse(updated)).thenReturn(expected);
+
+        assertSame(expected, cartServiceImpl.removeFromCart(new CartRequest("p1")));
+        verify(cartStore, never()).findByUserId(anyString());
+    }
+
+    /**
+     * Test removeFromCart returns the unchanged cart when it does not contain the product.
      */
     @Test
     @DisplayName("removeFromCart returns existing cart")
     @Tag("Unit")
     void testRemoveFromCart_returnsCart() {
         CartEntity existing = new CartEntity(); existing.setId("42"); existing.setItems(new HashMap<>()); existing.setUserId("42");
-        when(cartRepository.findByUserId(anyString())).thenReturn(Optional.of(existing));
+        when(cartStore.decrementItem(anyString(), any())).thenReturn(Optional.empty());
+        when(cartStore.findByUserId(anyString())).thenReturn(Optional.of(existing));
         when(userService.getCurrentUserId()).thenReturn("42");
         CartResponse expected = CartResponse.builder().id("42").userId("42").items(new HashMap<>()).build();
         when(cartMapper.toResponse(any(CartEntity.class))).thenReturn(expected);
 
         CartResponse actual = cartServiceImpl.removeFromCart(new CartRequest());
 
-        verify(cartRepository).findByUserId("42");
+        verify(cartStore).findByUserId("42");
         verify(cartMapper).toResponse(isA(CartEntity.class));
         assertEquals("42", actual.getId());
         assertEquals("42", actual.getUserId());
         assertTrue(actual.getItems().isEmpty());
     }
+
+    /**
+     * Test updateCart splits the lines into absolute quantities and deltas and applies
+     * them in one store update.
+     */
+    @Test
+    @DisplayName("updateCart applies all lines in one store update")
+    @Tag("Unit")
+    void testUpdateCart_singleStoreUpdate() {
+        CartEntity updated = new CartEntity("42", "42", new HashMap<>(Map.of("p1", 3, "p2", 2)));
+        when(userService.getCurrentUserId()).thenReturn("42");
+        when(cartStore.updateItems("42", Map.of("p1", 3), Map.of("p2", 2, "p3", -1))).thenReturn(updated);
+        CartResponse expected = CartResponse.builder().id("42").userId("42").items(updated.getItems()).build();
+        when(cartMapper.toResponse(updated)).thenReturn(expected);
+        CartBulkRequest request = new CartBulkRequest(List.of(
+                CartItemUpdate.builder().productId("p1").quantity(3).build(),
+                CartItemUpdate.builder().productId("p2").delta(2).build(),
+                CartItemUpdate.builder().productId("p3").delta(-1).build()));
+
+        assertSame(expected, cartServiceImpl.updateCart(request));
+        verify(cartStore, never()).incrementItem(anyString(), anyString());
+    }
 }
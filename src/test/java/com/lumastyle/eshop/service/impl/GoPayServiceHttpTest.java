@@ -0,0 +1,91 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import com.lumastyle.eshop.support.GoPayStandIn;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for {@link GoPayServiceImpl} talking HTTP to the {@link GoPayStandIn},
+ * verifying that payments share one connection and one app token, and that the token
+ * is renewed by the {@code expires_in} GoPay returns with it.
+ */
+@ActiveProfiles("test")
+class GoPayServiceHttpTest {
+
+    private GoPayStandIn goPay;
+    private GoPayServiceImpl service;
+
+    /**
+     * Starts the GoPay stand-in and a service pointed at it.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        goPay = new GoPayStandIn();
+        service = goPay.newService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        goPay.close();
+    }
+
+    /**
+     * Test: payments and status reads share one connection and one app token request.
+     */
+    @Test
+    @DisplayName("payments reuse connection and app token")
+    @Tag("Integration")
+    void payments_reuseConnectionAndToken() {
+        Payment created = service.createPayment(new BasePayment());
+        service.createPayment(new BasePayment());
+        service.createPayment(new BasePayment());
+        Payment status = service.getPaymentStatus(created.getId());
+
+        assertEquals(created.getId(), status.getId());
+        assertEquals(Payment.SessionState.CREATED, status.getState());
+        assertEquals(1, goPay.tokenRequests());
+        assertEquals(1, goPay.connections());
+    }
+
+    /**
+     * Test: a token GoPay lets expire within the refresh margin is renewed before every call,
+     * still on the same connection.
+     */
+    @Test
+    @DisplayName("payments renew token by its expires_in")
+    @Tag("Integration")
+    void payments_renewShortLivedToken() {
+        goPay.setTokenExpiresIn(60);
+
+        service.createPayment(new BasePayment());
+        service.createPayment(new BasePayment());
+        service.createPayment(new BasePayment());
+
+        assertEquals(3, goPay.tokenRequests());
+        assertEquals(1, goPay.connections());
+    }
+
+    /**
+     * Test: an error response from GoPay surfaces as {@link GoPayIntegrationException}.
+     */
+    @Test
+    @DisplayName("getPaymentStatus wraps GoPay error responses")
+    @Tag("Integration")
+    void getPaymentStatus_errorResponse() {
+        Payment created = service.createPayment(new BasePayment());
+        goPay.fail(created.getId());
+
+        assertThrows(GoPayIntegrationException.class, () -> service.getPaymentStatus(created.getId()));
+    }
+}
@@ -0,0 +1,141 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import cz.gopay.api.v3.GPClientException;
+import cz.gopay.api.v3.IGPConnector;
+import cz.gopay.api.v3.model.access.AccessToken;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link GoPayServiceImpl}, verifying that the connector and its
+ * app token are reused across payments and renewed only when close to expiry.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class GoPayServiceTest {
+
+    @Mock
+    private IGPConnector connector;
+    @Mock
+    private AccessToken accessToken;
+
+    private final AtomicInteger connectorsBuilt = new AtomicInteger();
+
+    private GoPayServiceImpl service;
+
+    /**
+     * Creates the service with a connector factory returning the mock, whose app tokens
+     * live for 30 minutes.
+     */
+    @BeforeEach
+    void setUp() {
+        when(connector.getAccessToken()).thenReturn(accessToken);
+        when(accessToken.getExpiresIn()).thenReturn(1800L);
+        service = new GoPayServiceImpl() {
+            @Override
+            IGPConnector newConnector(String apiUrl) {
+                connectorsBuilt.incrementAndGet();
+                return connector;
+            }
+        };
+        ReflectionTestUtils.setField(service, "gopayApiUrl", "https://gw.sandbox.gopay.test/api");
+        ReflectionTestUtils.setField(service, "gopayClientId", "client");
+        ReflectionTestUtils.setField(service, "gopayClientSecret", "secret");
+        ReflectionTestUtils.setField(service, "refreshMarginMillis", 300_000L);
+    }
+
+    /**
+     * Test: consecutive payments share one connector and one app token request.
+     */
+    @Test
+    @DisplayName("createPayment reuses connector and app token")
+    @Tag("Unit")
+    void createPayment_reusesToken() throws Exception {
+        Payment payment = new Payment();
+        when(connector.createPayment(any(BasePayment.class))).thenReturn(payment);
+
+        assertSame(payment, service.createPayment(new BasePayment()));
+        assertSame(payment, service.createPayment(new BasePayment()));
+        service.getPaymentStatus(1L);
+
+        assertEquals(1, connectorsBuilt.get());
+        verify(connector, times(1)).getAppToken("client", "secret");
+        verify(connector, times(2)).createPayment(any(BasePayment.class));
+    }
+
+    /**
+     * Test: a token inside the refresh margin is renewed on the same connector before the next call.
+     */
+    @Test
+    @DisplayName("createPayment renews token close to expiry")
+    @Tag("Unit")
+    void createPayment_renewsExpiringToken() throws Exception {
+        service.createPayment(new BasePayment());
+        ReflectionTestUtils.setField(service, "tokenExpiresAt", System.currentTimeMillis() + 60_000L);
+
+        service.createPayment(new BasePayment());
+
+        assertEquals(1, connectorsBuilt.get());
+        verify(connector, times(2)).getAppToken("client", "secret");
+    }
+
+    /**
+     * Test: the token expiry follows the {@code expires_in} GoPay returns with the token.
+     */
+    @Test
+    @DisplayName("createPayment renews token by its expires_in")
+    @Tag("Unit")
+    void createPayment_tokenExpiresIn() throws Exception {
+        when(accessToken.getExpiresIn()).thenReturn(600L);
+        long before = System.currentTimeMillis();
+
+        service.createPayment(new BasePayment());
+
+        long expiresAt = (long) ReflectionTestUtils.getField(service, "tokenExpiresAt");
+        assertTrue(expiresAt >= before + 600_000L && expiresAt <= System.currentTimeMillis() + 600_000L);
+    }
+
+    /**
+     * Test: the scheduled check does nothing while the token is still fresh.
+     */
+    @Test
+    @DisplayName("refreshTokenIfExpiring skips fresh token")
+    @Tag("Unit")
+    void refreshTokenIfExpiring_freshToken() throws Exception {
+        service.createPayment(new BasePayment());
+
+        service.refreshTokenIfExpiring();
+
+        assertEquals(1, connectorsBuilt.get());
+    }
+
+    /**
+     * Test: SDK failures surface as {@link GoPayIntegrationException}.
+     */
+    @Test
+    @DisplayName("createPayment wraps GoPay client errors")
+    @Tag("Unit")
+    void createPayment_wrapsClientError() throws Exception {
+        when(connector.createPayment(any(BasePayment.class)))
+                .thenThrow(GPClientException.class);
+
+        assertThrows(GoPayIntegrationException.class,
+                () -> service.createPayment(new BasePayment()));
+    }
+}
@@ -0,0 +1,225 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.service.FileStorageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link ImageVariantServiceImpl}: resizing, upload of the variants, metrics and
+ * the fallbacks for unreadable images and saturated workers.
+ */
+@ActiveProfiles("test")
+class ImageVariantServiceTest {
+
+    private final FileStorageService fileStorage = mock(FileStorageService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // uploaded variants by file name
+    private final Map<String, MultipartFile> uploaded = new ConcurrentHashMap<>();
+    // the threads the uploads were started from
+    private final List<String> uploadThreads = new CopyOnWriteArrayList<>();
+
+    private ImageVariantServiceImpl service;
+
+    /**
+     * Starts the service with one worker and a queue of one image; the storage records the
+     * uploaded variants and the uploading threads and returns the file name as URL.
+     */
+    @BeforeEach
+    void setUp() {
+        service = new ImageVariantServiceImpl(fileStorage, registry.timer("processing"),
+                registry.counter("saved"), registry.counter("failures"));
+        ReflectionTestUtils.setField(service, "threads", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1);
+        ReflectionTestUtils.setField(service, "thumbnailSize", 200);
+        ReflectionTestUtils.setField(service, "cardSize", 600);
+        ReflectionTestUtils.setField(service, "jpegQuality", 0.8f);
+        ReflectionTestUtils.setField(service, "maxPixels", 50_000_000L);
+        service.start();
+        lenient().when(fileStorage.uploadFileAsync(any(), any())).thenAnswer(invocation -> {
+            MultipartFile variant = invocation.getArgument(0);
+            uploaded.put(variant.getOriginalFilename(), variant);
+            uploadThreads.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture("https://bucket/" + variant.getOriginalFilename());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    /**
+     * Test: a 3000x2000 PNG becomes a 200x133 thumbnail and a 600x400 card JPEG, both uploaded
+     * from the upload threads and far smaller than the original; processing time and saved bytes
+     * are recorded.
+     */
+    @Test
+    @DisplayName("createVariants resizes, recompresses and uploads the variants")
+    @Tag("Unit")
+    void createVariants_resizesAndUploads() throws Exception {
+        MockMultipartFile original = png("shirt.png", 3000, 2000);
+
+        Map<String, String> urls = service.createVariants(original).get(30, TimeUnit.SECONDS);
+
+        assertEquals(Map.of("thumbnail", "https://bucket/shirt-thumbnail.jpg", "card", "https://bucket/shirt-card.jpg"), urls);
+        assertEquals(List.of("thumbnail", "card"), List.copyOf(urls.keySet()));
+        assertDimensions(uploaded.get("shirt-thumbnail.jpg"), 200, 133);
+        assertDimensions(uploaded.get("shirt-card.jpg"), 600, 400);
+        long variantBytes = uploaded.values().stream().mapToLong(MultipartFile::getSize).sum();
+        assertTrue(variantBytes < original.getSize() / 10, "variants: " + variantBytes + " bytes");
+        assertEquals(2 * original.getSize() - variantBytes, registry.counter("saved").count());
+        assertEquals(1, registry.timer("processing").count());
+        assertEquals(0, registry.counter("failures").count());
+        assertEquals(2, uploadThreads.size());
+        assertTrue(uploadThreads.stream().allMatch(name -> name.startsWith("image-variant-upload-")), uploadThreads.toString());
+    }
+
+    /**
+     * Test: variants whose upload fails count a failure and no saved bytes.
+     */
+    @Test
+    @DisplayName("createVariants records saved bytes only for stored variants")
+    @Tag("Unit")
+    void createVariants_uploadFails_noSavedBytes() throws Exception {
+        doReturn(CompletableFuture.failedFuture(new RuntimeException("S3 down")))
+                .when(fileStorage).uploadFileAsync(any(), any());
+
+        assertEquals(Map.of(), service.createVariants(png("shirt.png", 800, 600)).get(30, TimeUnit.SECONDS));
+        assertEquals(0, registry.counter("saved").count());
+        assertEquals(1, registry.counter("failures").count());
+    }
+
+    /**
+     * Test: a variant handed to a storage that moves uploads into files writes its JPEG bytes.
+     */
+    @Test
+    @DisplayName("an encoded variant can be transferred to a file")
+    @Tag("Unit")
+    void variant_transferTo_writesContent(@TempDir Path directory) throws Exception {
+        service.createVariants(png("icon.png", 120, 80)).get(30, TimeUnit.SECONDS);
+        MultipartFile variant = uploaded.get("icon-card.jpg");
+        File target = directory.resolve("card.jpg").toFile();
+
+        variant.transferTo(target);
+
+        assertArrayEquals(variant.getBytes(), Files.readAllBytes(target.toPath()));
+    }
+
+    /**
+     * Test: an image smaller than a variant is not enlarged.
+     */
+    @Test
+    @DisplayName("createVariants does not enlarge small images")
+    @Tag("Unit")
+    void createVariants_smallImage_notEnlarged() throws Exception {
+        Map<String, String> urls = service.createVariants(png("icon.png", 120, 80)).get(30, TimeUnit.SECONDS);
+
+        assertEquals(2, urls.size());
+        assertDimensions(uploaded.get("icon-thumbnail.jpg"), 120, 80);
+        assertDimensions(uploaded.get("icon-card.jpg"), 120, 80);
+    }
+
+    /**
+     * Test: a file that is not an image yields no variants and counts a failure.
+     */
+    @Test
+    @DisplayName("createVariants returns no variants for a file that is not an image")
+    @Tag("Unit")
+    void createVariants_notAnImage_empty() throws Exception {
+        MockMultipartFile text = new MockMultipartFile("file", "notes.png", "image/png", "not an image".getBytes());
+
+        assertEquals(Map.of(), service.createVariants(text).get(30, TimeUnit.SECONDS));
+        assertEquals(1, registry.counter("failures").count());
+        verifyNoInteractions(fileStorage);
+    }
+
+    /**
+     * Test: when the worker is busy and the queue is full, further images get no variants
+     * immediately instead of waiting.
+     */
+    @Test
+    @DisplayName("createVariants skips variants when the workers are saturated")
+    @Tag("Unit")
+    void createVariants_saturated_empty() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MultipartFile blocking = mock(MultipartFile.class);
+        when(blocking.getInputStream()).thenAnswer(invocation -> {
+            release.await(30, TimeUnit.SECONDS);
+            return new ByteArrayInputStream(new byte[0]);
+        });
+
+        CompletableFuture<Map<String, String>> running = service.createVariants(blocking);
+        CompletableFuture<Map<String, String>> queued = service.createVariants(blocking);
+        CompletableFuture<Map<String, String>> rejected = service.createVariants(png("late.png", 100, 100));
+
+        assertTrue(rejected.isDone());
+        assertEquals(Map.of(), rejected.join());
+        assertEquals(1, registry.counter("failures").count());
+        release.countDown();
+        running.get(30, TimeUnit.SECONDS);
+        queued.get(30, TimeUnit.SECONDS);
+    }
+
+    // === Helper methods ===
+
+    /**
+     * A PNG with a gradient and noise, so it compresses like a photo rather than a flat image.
+     */
+    private static MockMultipartFile png(String name, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        Random random = new Random(width);
+        for (int y = 0; y < height; y += 3) {
+            for (int x = 0; x < width; x += 3) {
+                image.setRGB(x, y, random.nextInt() | 0xFF000000);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return new MockMultipartFile("file", name, "image/png", out.toByteArray());
+    }
+
+    private static void assertDimensions(MultipartFile variant, int width, int height) throws IOException {
+        assertNotNull(variant);
+        assertEquals("image/jpeg", variant.getContentType());
+        BufferedImage image = ImageIO.read(variant.getInputStream());
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+}
@@ -0,0 +1,123 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.BadRequestException;
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link LocalFileStorageServiceImpl}, covering content-addressed storage in a
+ * directory, deletion and key validation.
+ */
+@ActiveProfiles("test")
+class LocalFileStorageServiceTest {
+
+    private static final String PUBLIC_URL = "http://localhost:8080/api/images";
+
+    @TempDir
+    private Path directory;
+
+    private final FileCleanupQueue fileCleanupQueue = mock(FileCleanupQueue.class);
+
+    private LocalFileStorageServiceImpl service;
+
+    /**
+     * Starts the service on a new temporary directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new LocalFileStorageServiceImpl(fileCleanupQueue);
+        ReflectionTestUtils.setField(service, "directory", directory.toString());
+        ReflectionTestUtils.setField(service, "publicUrl", PUBLIC_URL);
+        service.start();
+    }
+
+    /**
+     * Test: an upload is stored under the SHA-256 of its content and a second upload of the same
+     * content returns the same URL without leaving another file behind.
+     */
+    @Test
+    @DisplayName("uploadFile stores the file under its content hash once")
+    @Tag("Unit")
+    void uploadFile_storesByContentOnce() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "shirt.PNG", "image/png", "content".getBytes());
+        String key = "ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73.png";
+
+        String url = service.uploadFile(file);
+        String again = service.uploadFile(new MockMultipartFile("file", "copy.png", "image/png", "content".getBytes()));
+
+        assertEquals(PUBLIC_URL + "/" + key, url);
+        assertEquals(url, again);
+        assertArrayEquals("content".getBytes(), Files.readAllBytes(directory.resolve(key)));
+        verify(fileCleanupQueue, times(2)).withdraw(key);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Test: a file that cannot be read fails with a FileStorageException and leaves no temporary
+     * file behind.
+     */
+    @Test
+    @DisplayName("uploadFile throws and cleans up when the file cannot be read")
+    @Tag("Unit")
+    void uploadFile_ioException_throws() throws IOException {
+        MultipartFile badFile = mock(MultipartFile.class);
+        when(badFile.getOriginalFilename()).thenReturn("test.png");
+        when(badFile.getInputStream()).thenThrow(new IOException("fail"));
+
+        assertThrows(FileStorageException.class, () -> service.uploadFile(badFile));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Test: deleteFile removes the stored file and succeeds for a file that is already gone.
+     */
+    @Test
+    @DisplayName("deleteFile removes the file")
+    @Tag("Unit")
+    void deleteFile_removesFile() {
+        String url = service.uploadFile(new MockMultipartFile("file", "a.jpg", "image/jpeg", new byte[]{1, 2, 3}));
+        String key = url.substring(url.lastIndexOf('/') + 1);
+
+        assertTrue(service.deleteFile(key));
+        assertFalse(Files.exists(directory.resolve(key)));
+        assertTrue(service.deleteFile(key));
+    }
+
+    /**
+     * Test: keys that were not created by the storage, such as path traversals, are rejected.
+     */
+    @Test
+    @DisplayName("pathOf rejects keys the storage does not create")
+    @Tag("Unit")
+    void pathOf_invalidKey_throws() {
+        assertThrows(BadRequestException.class, () -> service.pathOf("../etc/passwd"));
+        assertThrows(BadRequestException.class, () -> service.pathOf("upload-123.tmp"));
+        assertThrows(BadRequestException.class, () -> service.deleteFile("ED7002B4.png"));
+        assertThrows(BadRequestException.class, () -> service.uploadFile(
+                new MockMultipartFile("file", "../evil.png", "image/png", new byte[1])));
+    }
+}
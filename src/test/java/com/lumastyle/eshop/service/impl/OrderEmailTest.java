@@ -1,12 +1,20 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.entity.MailEntity;
 import com.lumastyle.eshop.entity.OrderEntity;
 import com.lumastyle.eshop.exception.GoPayIntegrationException;
 import com.lumastyle.eshop.mapper.OrderMapper;
-import com.lumastyle.eshop.repository.CartRepository;
+import com.lumastyle.eshop.repository.MailRepository;
 import com.lumastyle.eshop.repository.OrderRepository;
+import com.lumastyle.eshop.repository.ProductRepository;
 import com.lumastyle.eshop.service.EmailService;
+import com.lumastyle.eshop.service.GoPayService;
 import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.store.CartStore;
+import com.lumastyle.eshop.worker.MailDispatcher;
+import com.lumastyle.eshop.worker.PaymentOutboxWorker;
+import cz.gopay.api.v3.model.payment.Payment;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,23 +22,27 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.ActiveProfiles;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
- * Unit tests for {@link OrderServiceImpl#verifyPayment(Map, String)},
+ * Unit tests for {@link OrderServiceImpl#processPaymentNotification(long)},
  * ensuring emails are sent and cart cleared on successful payment.
  */
 @ActiveProfiles("test")
@@ -38,71 +50,112 @@ import static org.mockito.Mockito.*;
 class OrderEmailTest {
 
     @Mock private OrderRepository orderRepository;
-    @Mock private CartRepository cartRepository;
+    @Mock private CartStore cartStore;
+    @Mock private ProductRepository productRepository;
     @Mock private OrderMapper mapper;
     @Mock private UserService userService;
-    @Mock private JavaMailSender mailSender;
+    @Mock private MailRepository mailRepository;
+    @Mock private MailDispatcher mailDispatcher;
     @Mock private EmailService emailService;
+    @Mock private PaymentOutboxWorker paymentOutboxWorker;
+    @Mock private GoPayService goPayService;
+    @Mock private MongoTemplate mongoTemplate;
     @Mock private Counter ordersCreatedCounter;
     @Mock private Counter ordersPaymentFailedCounter;
+    @Mock private Counter paymentNotificationsDeduplicatedCounter;
     @Mock private Timer orderProcessingTimer;
-    @Mock private Counter emailsSentCounter;
 
     @InjectMocks
     private OrderServiceImpl service;
 
     @BeforeEach
     void setUp() {
-        // Initialize real EmailServiceImpl with mocked mailSender and metrics
-        emailService = new EmailServiceImpl(mailSender, emailsSentCounter);
+        // Initialize real EmailServiceImpl with mocked spool and dispatcher
+        emailService = new EmailServiceImpl(mailRepository, mailDispatcher);
         service = new OrderServiceImpl(
                 orderRepository,
-                cartRepository,
+                cartStore,
+                productRepository,
                 mapper,
                 userService,
                 emailService,
+                paymentOutboxWorker,
+                goPayService,
+                mongoTemplate,
+                new ObjectMapper(),
                 ordersCreatedCounter,
                 ordersPaymentFailedCounter,
+                paymentNotificationsDeduplicatedCounter,
                 orderProcessingTimer
         );
     }
 
     /**
-     * Verifies that when payment is marked as Paid, an email is sent and the cart is cleared.
+     * Verifies that when GoPay reports the payment as paid, an email is spooled and queued
+     * for delivery and the cart is cleared.
      */
     @Test
-    @DisplayName("verifyPayment sends email and clears cart on Paid status")
+    @DisplayName("processPaymentNotification queues email and clears cart on a paid payment")
     @Tag("Unit")
-    void verifyPayment_paid_sendsEmailAndClearsCart() {
+    void processPaymentNotification_paid_sendsEmailAndClearsCart() {
         OrderEntity order = new OrderEntity();
         order.setId("123");
         order.setUserId("user1");
         order.setEmail("customer@example.com");
+        order.setPaymentStatus(OrderEntity.PAYMENT_CREATED);
+        Payment payment = mock(Payment.class);
+        when(payment.getState()).thenReturn(Payment.SessionState.PAID);
 
-        when(orderRepository.findByGopayPaymentId("gp1")).thenReturn(Optional.of(order));
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+        when(goPayService.getPaymentStatus(77L)).thenReturn(payment);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenReturn(order);
+        when(mailRepository.save(any(MailEntity.class))).thenAnswer(invocation -> {
+            MailEntity mail = invocation.getArgument(0);
+            mail.setId("mail-1");
+            return mail;
+        });
 
-        Map<String, String> data = new HashMap<>();
-        data.put("paymentId", "gp1");
+        service.processPaymentNotification(77L);
 
-        service.verifyPayment(data, "Paid");
-
-        // Verify email sent
-        verify(mailSender).send(any(SimpleMailMessage.class));
+        // Verify email spooled and queued
+        ArgumentCaptor<MailEntity> mail = ArgumentCaptor.forClass(MailEntity.class);
+        verify(mailRepository).save(mail.capture());
+        assertEquals("customer@example.com", mail.getValue().getTo());
+        assertEquals(MailEntity.STATUS_QUEUED, mail.getValue().getStatus());
+        verify(mailDispatcher).enqueue("mail-1");
         // Verify cart cleared
-        verify(cartRepository).deleteByUserId("user1");
+        verify(cartStore).deleteByUserId("user1");
+    }
+
+    /**
+     * Verifies that a repeated notification of a paid order sends no second email and
+     * counts as deduplicated.
+     */
+    @Test
+    @DisplayName("processPaymentNotification sends no email for a paid order")
+    @Tag("Unit")
+    void processPaymentNotification_alreadyPaid_noEmail() {
+        OrderEntity order = new OrderEntity();
+        order.setId("123");
+        order.setPaymentStatus(OrderEntity.PAYMENT_PAID);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+
+        service.processPaymentNotification(77L);
+
+        verifyNoInteractions(mailRepository, mailDispatcher, cartStore, goPayService);
+        verify(paymentNotificationsDeduplicatedCounter).increment();
     }
 
     /**
      * Verifies that when no order is found, a GoPayIntegrationException is thrown.
      */
     @Test
-    @DisplayName("verifyPayment throws when order not found")
+    @DisplayName("processPaymentNotification throws when order not found")
     @Tag("Unit")
-    void verifyPayment_orderNotFound_throws() {
+    void processPaymentNotification_orderNotFound_throws() {
         when(orderRepository.findByGopayPaymentId(anyString())).thenReturn(Optional.empty());
-        Map<String, String> data = new HashMap<>();
-        data.put("paymentId", "gpX");
 
-        assertThrows(GoPayIntegrationException.class, () -> service.verifyPayment(data, "Paid"));
+        assertThrows(GoPayIntegrationException.class, () -> service.processPaymentNotification(77L));
     }
 }
@@ -0,0 +1,139 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.dto.order.OrderItem;
+import com.lumastyle.eshop.dto.order.OrderQuery;
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.mapper.OrderMapper;
+import com.lumastyle.eshop.repository.OrderRepository;
+import com.lumastyle.eshop.repository.ProductRepository;
+import com.lumastyle.eshop.service.EmailService;
+import com.lumastyle.eshop.service.GoPayService;
+import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.store.CartStore;
+import com.lumastyle.eshop.worker.PaymentOutboxWorker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load test for the admin order export: streams a million synthetic orders through
+ * {@link OrderServiceImpl#exportOrders(OrderQuery, OutputStream)} and checks that the heap
+ * retained during the export stays flat instead of growing with the number of orders.
+ */
+@ActiveProfiles("test")
+class OrderExportLoadTest {
+
+    private static final int ORDERS = 1_000_000;
+    private static final int CHECKPOINTS = 10;
+    /**
+     * A million mapped orders held in a list take several hundred megabytes.
+     */
+    private static final long MAX_RETAINED_GROWTH = 32L * 1024 * 1024;
+
+    private final AtomicLong peakRetained = new AtomicLong();
+
+    /**
+     * Test: exporting a million orders writes a million lines while the heap retained after
+     * a full collection grows by less than a few megabytes.
+     */
+    @Test
+    @DisplayName("order export streams a million orders in constant memory")
+    @Tag("Load")
+    void exportMillionOrders_constantMemory() throws Exception {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.stream(any(Query.class), eq(OrderEntity.class))).thenAnswer(invocation ->
+                LongStream.range(0, ORDERS).mapToObj(OrderExportLoadTest::order).peek(this::sample));
+        OrderServiceImpl service = new OrderServiceImpl(mock(OrderRepository.class), mock(CartStore.class),
+                mock(ProductRepository.class), Mappers.getMapper(OrderMapper.class), mock(UserService.class),
+                mock(EmailService.class), mock(PaymentOutboxWorker.class), mock(GoPayService.class), mongoTemplate,
+                new ObjectMapper().findAndRegisterModules(), mock(Counter.class), mock(Counter.class),
+                mock(Counter.class), mock(Timer.class));
+        CountingOutputStream out = new CountingOutputStream();
+
+        long baseline = retainedHeap();
+        long exported = service.exportOrders(new OrderQuery(), out);
+
+        assertEquals(ORDERS, exported);
+        assertEquals(ORDERS, out.lines);
+        assertTrue(out.bytes > ORDERS * 100L, "bytes written: " + out.bytes);
+        long growth = peakRetained.get() - baseline;
+        assertTrue(growth < MAX_RETAINED_GROWTH, "retained heap grew by " + growth + " bytes");
+    }
+
+    // === Helper methods ===
+
+    private static OrderEntity order(long n) {
+        return OrderEntity.builder()
+                .id(new ObjectId(String.format("%08x%016x", 0x665f0000L + n / 100, n)).toHexString())
+                .userId("user-" + n % 10_000)
+                .createdAt(Instant.ofEpochSecond(0x665f0000L + n / 100))
+                .userAddress("Street " + n + ", Prague")
+                .phoneNumber("+420777" + n % 1_000_000)
+                .email("customer" + n + "@example.com")
+                .orderedItems(List.of(new OrderItem("product-" + n % 500, 1), new OrderItem("product-7", 2)))
+                .amount(BigDecimal.valueOf(n % 10_000, 2))
+                .paymentStatus("Paid")
+                .orderStatus("Delivered")
+                .build();
+    }
+
+    /**
+     * Records the retained heap at a few points of the export.
+     */
+    private void sample(OrderEntity order) {
+        long n = Long.parseLong(order.getId().substring(8), 16);
+        if (n % (ORDERS / CHECKPOINTS) == ORDERS / CHECKPOINTS - 1) {
+            peakRetained.accumulateAndGet(retainedHeap(), Math::max);
+        }
+    }
+
+    private static long retainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Discards the output, counting bytes and lines.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long bytes;
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+}
@@ -1,28 +1,60 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.dto.order.OrderHistoryQuery;
+import com.lumastyle.eshop.dto.order.OrderItem;
+import com.lumastyle.eshop.dto.order.OrderPageResponse;
+import com.lumastyle.eshop.dto.order.OrderQuery;
 import com.lumastyle.eshop.dto.order.OrderRequest;
 import com.lumastyle.eshop.dto.order.OrderResponse;
+import com.lumastyle.eshop.dto.order.PaymentStatusResponse;
 import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.GoPayIntegrationException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.OrderMapper;
-import com.lumastyle.eshop.repository.CartRepository;
 import com.lumastyle.eshop.repository.OrderRepository;
+import com.lumastyle.eshop.repository.ProductRepository;
 import com.lumastyle.eshop.service.EmailService;
+import com.lumastyle.eshop.service.GoPayService;
 import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.store.CartStore;
+import com.lumastyle.eshop.util.CursorCodec;
+import com.lumastyle.eshop.worker.PaymentOutboxWorker;
+import cz.gopay.api.v3.model.payment.Payment;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -39,7 +71,9 @@ class OrderServiceTest {
     @Mock
     private OrderRepository orderRepository;
     @Mock
-    private CartRepository cartRepository;
+    private CartStore cartStore;
+    @Mock
+    private ProductRepository productRepository;
     @Mock
     private OrderMapper orderMapper;
     @Mock
@@ -47,6 +81,14 @@ class OrderServiceTest {
     @Mock
     private EmailService emailService;
     @Mock
+    private PaymentOutboxWorker paymentOutboxWorker;
+    @Mock
+    private GoPayService goPayService;
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+    @Mock
     private Counter ordersCreatedCounter;
     @Mock
     private Counter ordersPaymentFailedCounter;
@@ -56,6 +98,12 @@ class OrderServiceTest {
     @InjectMocks
     private OrderServiceImpl orderServiceImpl;
 
+    private static OrderEntity orderWithId(String id) {
+        OrderEntity order = new OrderEntity();
+        order.setId(id);
+        return order;
+    }
+
     /**
      * Creates a sample OrderEntity for use in tests.
      *
@@ -63,7 +111,7 @@ class OrderServiceTest {
      */
     private static OrderEntity getOrderEntity() {
         OrderEntity orderEntity = new OrderEntity();
-        orderEntity.setAmount(10);
+        orderEntity.setAmount(BigDecimal.TEN);
         orderEntity.setEmail("jane.doe@example.org");
         orderEntity.setGopayPaymentId("42");
         orderEntity.setGopayTransactionId("42");
@@ -123,38 +171,192 @@ class OrderServiceTest {
     }
 
     /**
-     * Verifies that getUserOrders propagates repository exceptions.
+     * Ensures a new order is saved as pending and handed to the payment outbox
+     * instead of calling GoPay on the request thread.
      */
     @Test
-    @DisplayName("getUserOrders throws when repository fails")
+    @DisplayName("createOrderAndPayment saves pending order and dispatches payment")
     @Tag("Unit")
-    void testGetUserOrders_throwsGoPayIntegrationException() {
+    void testCreateOrderAndPayment_savesPendingAndDispatches() {
+        OrderEntity entity = new OrderEntity();
+        entity.setOrderedItems(new ArrayList<>());
+        OrderResponse response = new OrderResponse();
+        when(orderMapper.toEntity(any(OrderRequest.class))).thenReturn(entity);
         when(userService.getCurrentUserId()).thenReturn("42");
-        when(orderRepository.findByUserId(anyString()))
-                .thenThrow(new GoPayIntegrationException("Error"));
+        when(orderRepository.save(entity)).thenAnswer(invocation -> {
+            entity.setId("order-1");
+            return entity;
+        });
+        when(orderMapper.toResponse(entity)).thenReturn(response);
+
+        assertSame(response, orderServiceImpl.createOrderAndPayment(new OrderRequest()));
+
+        assertEquals(OrderEntity.PAYMENT_PENDING, entity.getPaymentStatus());
+        assertEquals(0, entity.getPaymentAttempts());
+        assertNotNull(entity.getNextPaymentAttemptAt());
+        assertEquals("42", entity.getUserId());
+        assertEquals(entity.getPaymentRequestedAt(), entity.getCreatedAt());
+        verify(paymentOutboxWorker).dispatch("order-1");
+    }
 
-        assertThrows(GoPayIntegrationException.class, () -> orderServiceImpl.getUserOrders());
+    /**
+     * Ensures the total is computed from catalog prices fetched in one query, with repeated
+     * lines of a product merged and only product IDs and quantities kept on the order.
+     */
+    @Test
+    @DisplayName("createOrderAndPayment prices items with one catalog lookup")
+    @Tag("Unit")
+    @SuppressWarnings("unchecked")
+    void testCreateOrderAndPayment_pricesFromCatalog() {
+        OrderEntity entity = new OrderEntity();
+        entity.setOrderedItems(List.of(new OrderItem("p1", 2), new OrderItem("p2", 1), new OrderItem("p1", 1)));
+        when(orderMapper.toEntity(any(OrderRequest.class))).thenReturn(entity);
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(
+                ProductEntity.builder().id("p1").price(new BigDecimal("19.90")).build(),
+                ProductEntity.builder().id("p2").price(new BigDecimal("0.35")).build()));
+        when(orderRepository.save(entity)).thenReturn(entity);
+
+        orderServiceImpl.createOrderAndPayment(new OrderRequest());
+
+        assertEquals(new BigDecimal("60.05"), entity.getAmount());
+        assertEquals(List.of(new OrderItem("p1", 3), new OrderItem("p2", 1)), entity.getOrderedItems());
+        verify(productRepository).findAllById(argThat(ids -> List.of("p1", "p2").equals(new ArrayList<>((Collection<String>) ids))));
+    }
 
-        verify(userService).getCurrentUserId();
-        verify(orderRepository).findByUserId("42");
+    /**
+     * Ensures an order with a product missing from the catalog is rejected and not saved.
+     */
+    @Test
+    @DisplayName("createOrderAndPayment rejects unknown products")
+    @Tag("Unit")
+    void testCreateOrderAndPayment_unknownProduct_throws() {
+        OrderEntity entity = new OrderEntity();
+        entity.setOrderedItems(List.of(new OrderItem("p1", 1), new OrderItem("gone", 1)));
+        when(orderMapper.toEntity(any(OrderRequest.class))).thenReturn(entity);
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(
+                ProductEntity.builder().id("p1").price(BigDecimal.ONE).build()));
+
+        assertThrows(BadRequestException.class,
+                () -> orderServiceImpl.createOrderAndPayment(new OrderRequest()));
+        verify(orderRepository, never()).save(any());
+        verify(paymentOutboxWorker, never()).dispatch(anyString());
+    }
+
+    /**
+     * Verifies getPaymentStatus hides orders of other users.
+     */
+    @Test
+    @DisplayName("getPaymentStatus throws for order of another user")
+    @Tag("Unit")
+    void testGetPaymentStatus_foreignOrder_throws() {
+        OrderEntity entity = getOrderEntity();
+        when(userService.getCurrentUserId()).thenReturn("7");
+        when(orderRepository.findById("42")).thenReturn(Optional.of(entity));
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> orderServiceImpl.getPaymentStatus("42"));
+        verify(orderMapper, never()).toPaymentStatus(any());
     }
 
     /**
-     * Ensures getUserOrders returns an empty list when no orders exist.
+     * Verifies getPaymentStatus maps the order of the current user.
      */
     @Test
-    @DisplayName("getUserOrders returns empty list when none")
+    @DisplayName("getPaymentStatus returns status of own order")
     @Tag("Unit")
-    void testGetUserOrders_thenReturnEmpty() {
+    void testGetPaymentStatus_ownOrder() {
+        OrderEntity entity = getOrderEntity();
+        PaymentStatusResponse status = new PaymentStatusResponse();
         when(userService.getCurrentUserId()).thenReturn("42");
-        when(orderRepository.findByUserId(anyString()))
-                .thenReturn(Collections.emptyList());
+        when(orderRepository.findById("42")).thenReturn(Optional.of(entity));
+        when(orderMapper.toPaymentStatus(entity)).thenReturn(status);
 
-        List<OrderResponse> responses = orderServiceImpl.getUserOrders();
+        assertSame(status, orderServiceImpl.getPaymentStatus("42"));
+    }
 
-        verify(userService).getCurrentUserId();
-        verify(orderRepository).findByUserId("42");
-        assertTrue(responses.isEmpty());
+    /**
+     * Ensures the order history of the current user is read newest first and the next cursor
+     * holds the creation time and ID of the last order.
+     */
+    @Test
+    @DisplayName("getUserOrders returns a page of the user's orders and the next cursor")
+    @Tag("Unit")
+    void testGetUserOrders_pageWithCursor() {
+        OrderEntity newer = orderWithId("665f00000000000000000002");
+        newer.setCreatedAt(Instant.ofEpochMilli(2_000));
+        OrderEntity older = orderWithId("665f00000000000000000001");
+        older.setCreatedAt(Instant.ofEpochMilli(1_000));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(userService.getCurrentUserId()).thenReturn("42");
+        when(mongoTemplate.find(query.capture(), eq(OrderEntity.class))).thenReturn(List.of(newer, older));
+        when(orderMapper.toResponse(any(OrderEntity.class))).thenReturn(new OrderResponse());
+
+        OrderPageResponse page = orderServiceImpl.getUserOrders(OrderHistoryQuery.builder().size(1).build());
+
+        assertEquals(1, page.getItems().size());
+        assertEquals(CursorCodec.encode("2000", "665f00000000000000000002"), page.getNextCursor());
+        assertEquals(new Document("userId", "42"), query.getValue().getQueryObject());
+        assertEquals(new Document("createdAt", -1).append("id", -1), query.getValue().getSortObject());
+        assertEquals(2, query.getValue().getLimit());
+    }
+
+    /**
+     * Ensures a page ending on an order saved before {@code createdAt} existed takes the cursor
+     * time from the order's ID instead of failing.
+     */
+    @Test
+    @DisplayName("getUserOrders builds the cursor of an order without createdAt from its ID")
+    @Tag("Unit")
+    void testGetUserOrders_missingCreatedAt_cursorFromId() {
+        OrderEntity legacy = orderWithId("665f00000000000000000002");
+        when(userService.getCurrentUserId()).thenReturn("42");
+        when(mongoTemplate.find(any(Query.class), eq(OrderEntity.class)))
+                .thenReturn(List.of(legacy, orderWithId("665f00000000000000000001")));
+        when(orderMapper.toResponse(any(OrderEntity.class))).thenReturn(new OrderResponse());
+
+        OrderPageResponse page = orderServiceImpl.getUserOrders(OrderHistoryQuery.builder().size(1).build());
+
+        assertEquals(CursorCodec.encode("1717501952000", "665f00000000000000000002"), page.getNextCursor());
+    }
+
+    /**
+     * Ensures a cursor seeks past the last order of the previous page, ordering orders created
+     * at the same time by ID.
+     */
+    @Test
+    @DisplayName("getUserOrders seeks after the cursor")
+    @Tag("Unit")
+    void testGetUserOrders_seeksAfterCursor() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(userService.getCurrentUserId()).thenReturn("42");
+        when(mongoTemplate.find(query.capture(), eq(OrderEntity.class))).thenReturn(List.of());
+        OrderHistoryQuery historyQuery = OrderHistoryQuery.builder()
+                .cursor(CursorCodec.encode("2000", "665f00000000000000000002"))
+                .build();
+
+        OrderPageResponse page = orderServiceImpl.getUserOrders(historyQuery);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+        String filter = query.getValue().getQueryObject().toString();
+        assertTrue(filter.startsWith("Document{{userId=42, $and="), filter);
+        assertTrue(filter.contains("createdAt=Document{{$lt=1970-01-01T00:00:02Z}}"), filter);
+        assertTrue(filter.contains("createdAt=1970-01-01T00:00:02Z"), filter);
+        assertTrue(filter.contains("id=Document{{$lt=665f00000000000000000002}}"), filter);
+    }
+
+    /**
+     * Verifies a malformed history cursor is rejected.
+     */
+    @Test
+    @DisplayName("getUserOrders rejects an invalid cursor")
+    @Tag("Unit")
+    void testGetUserOrders_invalidCursor_throws() {
+        when(userService.getCurrentUserId()).thenReturn("42");
+        OrderHistoryQuery query = OrderHistoryQuery.builder().cursor(CursorCodec.encode("yesterday", "x")).build();
+
+        assertThrows(BadRequestException.class, () -> orderServiceImpl.getUserOrders(query));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(OrderEntity.class));
     }
 
     /**
@@ -183,30 +385,94 @@ class OrderServiceTest {
     }
 
     /**
-     * Ensures getOrdersOfAllUsers returns an empty list when the repository is empty.
+     * Ensures the admin listing reads one order more than the page size to detect the next
+     * page, and returns the ID of the last order as the cursor.
+     */
+    @Test
+    @DisplayName("getOrdersOfAllUsers returns a page and the next cursor")
+    @Tag("Unit")
+    void testGetOrdersOfAllUsers_pageWithCursor() {
+        List<OrderEntity> found = List.of(orderWithId("665f00000000000000000003"),
+                orderWithId("665f00000000000000000002"), orderWithId("665f00000000000000000001"));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.find(query.capture(), eq(OrderEntity.class))).thenReturn(found);
+        when(orderMapper.toResponse(any(OrderEntity.class))).thenReturn(new OrderResponse());
+
+        OrderPageResponse page = orderServiceImpl.getOrdersOfAllUsers(OrderQuery.builder().size(2).build());
+
+        assertEquals(2, page.getItems().size());
+        assertEquals(CursorCodec.encode("665f00000000000000000002"), page.getNextCursor());
+        assertEquals(3, query.getValue().getLimit());
+        assertEquals(new Document("id", -1), query.getValue().getSortObject());
+    }
+
+    /**
+     * Ensures the filters and the cursor become criteria of one query; the date range and the
+     * cursor seek in the {@code _id} index.
      */
     @Test
-    @DisplayName("getOrdersOfAllUsers returns empty list")
+    @DisplayName("getOrdersOfAllUsers applies filters and seeks after the cursor")
     @Tag("Unit")
-    void testGetOrdersOfAllUsers_thenReturnEmpty() {
-        when(orderRepository.findAll()).thenReturn(Collections.emptyList());
+    void testGetOrdersOfAllUsers_filtersAndCursor() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.find(query.capture(), eq(OrderEntity.class))).thenReturn(List.of());
+        OrderQuery orderQuery = OrderQuery.builder()
+                .userId("u1")
+                .paymentStatus("Paid")
+                .from(Instant.ofEpochSecond(0x665f0000L))
+                .cursor(CursorCodec.encode("665f00000000000000000009"))
+                .build();
+
+        OrderPageResponse page = orderServiceImpl.getOrdersOfAllUsers(orderQuery);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+        String filter = query.getValue().getQueryObject().toJson();
+        assertTrue(filter.contains("\"userId\": \"u1\""), filter);
+        assertTrue(filter.contains("\"paymentStatus\": \"Paid\""), filter);
+        assertTrue(filter.contains("\"$gte\": {\"$oid\": \"665f00000000000000000000\"}"), filter);
+        assertTrue(filter.contains("\"$lt\": {\"$oid\": \"665f00000000000000000009\"}"), filter);
+    }
 
-        List<OrderResponse> responses = orderServiceImpl.getOrdersOfAllUsers();
+    /**
+     * Verifies a cursor that does not hold an order ID is rejected.
+     */
+    @Test
+    @DisplayName("getOrdersOfAllUsers rejects an invalid cursor")
+    @Tag("Unit")
+    void testGetOrdersOfAllUsers_invalidCursor_throws() {
+        OrderQuery query = OrderQuery.builder().cursor(CursorCodec.encode("not-an-id")).build();
 
-        verify(orderRepository).findAll();
-        assertTrue(responses.isEmpty());
+        assertThrows(BadRequestException.class, () -> orderServiceImpl.getOrdersOfAllUsers(query));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(OrderEntity.class));
     }
 
     /**
-     * Verifies getOrdersOfAllUsers propagates repository exceptions.
+     * Ensures the export writes one JSON document per line from a database cursor and leaves
+     * the output stream open.
      */
     @Test
-    @DisplayName("getOrdersOfAllUsers throws when repository fails")
+    @DisplayName("exportOrders writes NDJSON from a cursor")
     @Tag("Unit")
-    void testGetOrdersOfAllUsers_thenThrowGoPayIntegrationException() {
-        when(orderRepository.findAll()).thenThrow(new GoPayIntegrationException("Error"));
-        assertThrows(GoPayIntegrationException.class, () -> orderServiceImpl.getOrdersOfAllUsers());
-        verify(orderRepository).findAll();
+    void testExportOrders_writesNdjson() throws Exception {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.stream(query.capture(), eq(OrderEntity.class)))
+                .thenReturn(Stream.of(orderWithId("a"), orderWithId("b")));
+        when(orderMapper.toResponse(any(OrderEntity.class)))
+                .thenAnswer(invocation -> OrderResponse.builder()
+                        .id(invocation.<OrderEntity>getArgument(0).getId()).build());
+        ByteArrayOutputStream out = spy(new ByteArrayOutputStream());
+
+        long exported = orderServiceImpl.exportOrders(new OrderQuery(), out);
+
+        assertEquals(2, exported);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":\"a\""), lines[0]);
+        assertTrue(lines[1].startsWith("{\"id\":\"b\""), lines[1]);
+        assertEquals("", lines[2]);
+        assertEquals(500, query.getValue().getMeta().getCursorBatchSize());
+        verify(out, never()).close();
     }
 
     /**
@@ -241,39 +507,210 @@ class OrderServiceTest {
     }
 
     /**
-     * Ensures verifyPayment sends confirmation email and clears the cart on payment success.
+     * Ensures the first notification of a paid payment settles the order with a conditional
+     * update, clears the cart and sends the confirmation email.
      */
     @Test
-    @DisplayName("verifyPayment processes payment and clears cart")
+    @DisplayName("processPaymentNotification settles a paid order once")
     @Tag("Unit")
-    void testVerifyPayment_paid_sendsEmailAndClearsCart() {
+    void testProcessPaymentNotification_paid_settlesAndNotifies() {
         OrderEntity order = getOrderEntity();
-        when(orderRepository.findByGopayPaymentId("gp1")).thenReturn(Optional.of(order));
-        Map<String, String> data = new HashMap<>();
-        data.put("paymentId", "gp1");
-
-        orderServiceImpl.verifyPayment(data, "Paid");
-
+        order.setPaymentStatus(OrderEntity.PAYMENT_CREATED);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+        Payment paid = payment(Payment.SessionState.PAID);
+        when(goPayService.getPaymentStatus(77L)).thenReturn(paid);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        when(mongoTemplate.findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenReturn(order);
+
+        assertTrue(orderServiceImpl.processPaymentNotification(77L));
+
+        assertEquals(new Document("gopayPaymentId", "77").append("paymentStatus",
+                        new Document("$nin", List.of(OrderEntity.PAYMENT_PAID, OrderEntity.PAYMENT_CANCELED))),
+                query.getValue().getQueryObject());
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals(OrderEntity.PAYMENT_PAID, set.get("paymentStatus"));
+        assertEquals("77", set.get("gopayTransactionId"));
+        // the side effects are recorded with the transition, so they survive a failure
+        assertEquals(true, set.get("sideEffectsPending"));
+        assertNotNull(set.get("nextSideEffectsAttemptAt"));
         verify(emailService).sendPaymentConfirmation(
                 eq(order.getEmail()),
                 contains(order.getId()),
                 contains("objednávku"));
-        verify(cartRepository).deleteByUserId(order.getUserId());
+        verify(cartStore).deleteByUserId(order.getUserId());
+        ArgumentCaptor<Update> done = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), done.capture(), eq(OrderEntity.class));
+        assertEquals(new Document("sideEffectsPending", 1).append("nextSideEffectsAttemptAt", 1),
+                done.getValue().getUpdateObject().get("$unset", Document.class));
+        verify(orderRepository, never()).save(any());
+    }
+
+    /**
+     * Ensures a paid order stays settled and keeps its pending side effects when the cart
+     * cannot be cleared, and that a later retry completes them.
+     */
+    @Test
+    @DisplayName("processPaymentNotification leaves failed side effects for a retry")
+    @Tag("Unit")
+    void testProcessPaymentNotification_sideEffectsFail_retried() {
+        OrderEntity order = getOrderEntity();
+        order.setPaymentStatus(OrderEntity.PAYMENT_CREATED);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+        Payment paid = payment(Payment.SessionState.PAID);
+        when(goPayService.getPaymentStatus(77L)).thenReturn(paid);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class)))
+                .thenReturn(order)
+                .thenReturn(order)
+                .thenReturn(null);
+        doThrow(new RuntimeException("redis down")).doNothing().when(cartStore).deleteByUserId(order.getUserId());
+
+        assertTrue(orderServiceImpl.processPaymentNotification(77L));
+        verifyNoInteractions(emailService);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(OrderEntity.class));
+
+        ArgumentCaptor<Query> claim = ArgumentCaptor.forClass(Query.class);
+        assertEquals(1, orderServiceImpl.completePendingSideEffects(10));
+        verify(mongoTemplate, times(3)).findAndModify(claim.capture(), any(Update.class),
+                any(FindAndModifyOptions.class), eq(OrderEntity.class));
+        assertEquals(true, claim.getAllValues().get(1).getQueryObject().get("sideEffectsPending"));
+        verify(emailService).sendPaymentConfirmation(eq(order.getEmail()), contains(order.getId()), anyString());
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(OrderEntity.class));
+    }
+
+    /**
+     * Ensures a repeated notification of a settled order neither asks GoPay nor writes.
+     */
+    @Test
+    @DisplayName("processPaymentNotification ignores settled orders")
+    @Tag("Unit")
+    void testProcessPaymentNotification_settled_noWrites() {
+        OrderEntity order = getOrderEntity();
+        order.setPaymentStatus(OrderEntity.PAYMENT_PAID);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+
+        assertFalse(orderServiceImpl.processPaymentNotification(77L));
+
+        verifyNoInteractions(goPayService, mongoTemplate, cartStore, emailService);
+    }
+
+    /**
+     * Ensures no side effects run when another instance settled the order between the read
+     * and the conditional update.
+     */
+    @Test
+    @DisplayName("processPaymentNotification skips side effects after a lost race")
+    @Tag("Unit")
+    void testProcessPaymentNotification_lostRace_noSideEffects() {
+        OrderEntity order = getOrderEntity();
+        order.setPaymentStatus(OrderEntity.PAYMENT_CREATED);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+        Payment paid = payment(Payment.SessionState.PAID);
+        when(goPayService.getPaymentStatus(77L)).thenReturn(paid);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenReturn(null);
+
+        assertFalse(orderServiceImpl.processPaymentNotification(77L));
+
+        verifyNoInteractions(cartStore, emailService);
+    }
+
+    /**
+     * Ensures a timed out payment cancels the order but keeps the cart and sends no email,
+     * and a payment still in progress changes nothing.
+     */
+    @Test
+    @DisplayName("processPaymentNotification cancels timed out payments only")
+    @Tag("Unit")
+    void testProcessPaymentNotification_timeoutAndInProgress() {
+        OrderEntity order = getOrderEntity();
+        order.setPaymentStatus(OrderEntity.PAYMENT_CREATED);
+        when(orderRepository.findByGopayPaymentId("77")).thenReturn(Optional.of(order));
+        Payment inProgress = payment(Payment.SessionState.PAYMENT_METHOD_CHOSEN);
+        Payment timeouted = payment(Payment.SessionState.TIMEOUTED);
+        when(goPayService.getPaymentStatus(77L))
+                .thenReturn(inProgress)
+                .thenReturn(timeouted);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        when(mongoTemplate.findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenReturn(order);
+
+        assertFalse(orderServiceImpl.processPaymentNotification(77L));
+        verifyNoInteractions(mongoTemplate);
+
+        assertTrue(orderServiceImpl.processPaymentNotification(77L));
+        assertEquals(OrderEntity.PAYMENT_CANCELED,
+                update.getValue().getUpdateObject().get("$set", Document.class).get("paymentStatus"));
+        verifyNoInteractions(cartStore, emailService);
     }
 
     /**
-     * Verifies verifyPayment throws when the order is not found.
+     * Verifies a notification for an unknown payment fails, so GoPay repeats it.
      */
     @Test
-    @DisplayName("verifyPayment throws when order not found")
+    @DisplayName("processPaymentNotification throws when order not found")
     @Tag("Unit")
-    void testVerifyPayment_orderNotFound_throws() {
+    void testProcessPaymentNotification_orderNotFound_throws() {
         when(orderRepository.findByGopayPaymentId(anyString()))
                 .thenReturn(Optional.empty());
-        Map<String, String> data = new HashMap<>();
-        data.put("paymentId", "gpX");
 
         assertThrows(GoPayIntegrationException.class,
-                () -> orderServiceImpl.verifyPayment(data, "Paid"));
+                () -> orderServiceImpl.processPaymentNotification(77L));
+        verifyNoInteractions(goPayService);
+    }
+
+    /**
+     * Ensures a burst of concurrent notifications for one payment sends one email, clears the
+     * cart once and modifies the order once.
+     */
+    @Test
+    @DisplayName("processPaymentNotification settles once under a notification burst")
+    @Tag("Unit")
+    void testProcessPaymentNotification_burst_singleSideEffect() throws Exception {
+        AtomicReference<String> storedStatus = new AtomicReference<>(OrderEntity.PAYMENT_CREATED);
+        AtomicInteger writes = new AtomicInteger();
+        when(orderRepository.findByGopayPaymentId("77")).thenAnswer(invocation -> {
+            OrderEntity order = getOrderEntity();
+            order.setPaymentStatus(storedStatus.get());
+            return Optional.of(order);
+        });
+        Payment paid = payment(Payment.SessionState.PAID);
+        when(goPayService.getPaymentStatus(77L)).thenReturn(paid);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenAnswer(invocation -> {
+            if (!storedStatus.compareAndSet(OrderEntity.PAYMENT_CREATED, OrderEntity.PAYMENT_PAID)) {
+                return null;
+            }
+            writes.incrementAndGet();
+            return getOrderEntity();
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            List<Future<?>> notifications = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                notifications.add(executor.submit(() -> {
+                    start.await();
+                    orderServiceImpl.processPaymentNotification(77L);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> notification : notifications) {
+                notification.get();
+            }
+        }
+
+        assertEquals(1, writes.get());
+        verify(emailService, times(1)).sendPaymentConfirmation(anyString(), anyString(), anyString());
+        verify(cartStore, times(1)).deleteByUserId("42");
+    }
+
+    private static Payment payment(Payment.SessionState state) {
+        Payment payment = mock(Payment.class);
+        when(payment.getState()).thenReturn(state);
+        return payment;
     }
 }
@@ -1,29 +1,51 @@
 package com.lumastyle.eshop.service.impl;
 
+import com.lumastyle.eshop.cache.ProductCache;
+import com.lumastyle.eshop.cache.ProductPage;
+import com.lumastyle.eshop.dto.product.ProductPageResponse;
+import com.lumastyle.eshop.dto.product.ProductQuery;
 import com.lumastyle.eshop.dto.product.ProductRequest;
 import com.lumastyle.eshop.dto.product.ProductResponse;
+import com.lumastyle.eshop.dto.product.ProductSort;
 import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.exception.FileStorageException;
 import com.lumastyle.eshop.exception.ResourceNotFoundException;
 import com.lumastyle.eshop.mapper.ProductMapper;
 import com.lumastyle.eshop.repository.ProductRepository;
 import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.ImageVariantService;
+import com.lumastyle.eshop.util.CursorCodec;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -33,15 +55,31 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ProductServiceTest {
 
+    private static final String ID_1 = "65f000000000000000000001";
+    private static final String ID_2 = "65f000000000000000000002";
+    private static final String ID_3 = "65f000000000000000000003";
+
     @Mock
     private FileStorageService fileStorage;
 
+    @Mock
+    private ImageVariantService imageVariantService;
+
     @Mock
     private ProductMapper mapper;
 
     @Mock
     private ProductRepository repository;
 
+    @Mock
+    private ProductCache productCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private FileCleanupQueue fileCleanupQueue;
+
     @InjectMocks
     private ProductServiceImpl service;
 
@@ -70,55 +108,231 @@ class ProductServiceTest {
     }
 
     /**
-     * Test the successful addition of a product.
+     * Test the successful addition of a product; the product is saved on an I/O thread, not on
+     * the calling one.
      */
     @Test
     @DisplayName("addProduct returns response on success")
     @Tag("Unit")
     void addProduct_success() {
-        when(fileStorage.uploadFile(file)).thenReturn("http://img/url.jpg");
+        Map<String, String> variants = Map.of("thumbnail", "http://img/thumb.jpg", "card", "http://img/card.jpg");
+        when(imageVariantService.createVariants(file)).thenReturn(CompletableFuture.completedFuture(variants));
+        when(fileStorage.uploadFileAsync(eq(file), any())).thenReturn(CompletableFuture.completedFuture("http://img/url.jpg"));
         when(mapper.toEntity(request)).thenReturn(entity);
-        when(repository.save(entity)).thenReturn(savedEntity);
+        List<String> saveThreads = new ArrayList<>();
+        when(repository.save(entity)).thenAnswer(invocation -> {
+            saveThreads.add(Thread.currentThread().getName());
+            return savedEntity;
+        });
         when(mapper.toResponse(savedEntity)).thenReturn(response);
 
-        ProductResponse result = service.addProduct(request, file);
+        ProductResponse result = service.addProduct(request, file).join();
 
         assertSame(response, result);
-        verify(fileStorage).uploadFile(file);
+        assertEquals("http://img/url.jpg", entity.getImageUrl());
+        assertEquals(variants, entity.getImageVariants());
+        verify(fileStorage).uploadFileAsync(eq(file), any());
         verify(repository).save(entity);
         verify(mapper).toResponse(savedEntity);
+        verify(productCache).put(response);
+        verify(productCache).evictPages();
+        assertEquals(1, saveThreads.size());
+        assertTrue(saveThreads.getFirst().startsWith("product-io-"), saveThreads.getFirst());
     }
 
     /**
-     * Test that a file upload failure throws FileStorageException.
+     * Test that a file upload failure completes the result with a FileStorageException and
+     * queues the variants created meanwhile for deletion.
      */
     @Test
-    @DisplayName("addProduct throws FileStorageException on upload failure")
+    @DisplayName("addProduct fails with FileStorageException on upload failure")
     @Tag("Unit")
     void addProduct_fileUploadFails_throws() {
-        when(fileStorage.uploadFile(file)).thenThrow(new RuntimeException("fail"));
+        when(imageVariantService.createVariants(file))
+                .thenReturn(CompletableFuture.completedFuture(Map.of("thumbnail", "http://img/thumb.jpg")));
+        when(fileStorage.uploadFileAsync(eq(file), any())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("fail")));
 
-        assertThrows(FileStorageException.class, () -> service.addProduct(request, file));
-        verify(fileStorage).uploadFile(file);
+        CompletionException e = assertThrows(CompletionException.class, () -> service.addProduct(request, file).join());
+        assertInstanceOf(FileStorageException.class, e.getCause());
+        assertEquals("fail", e.getCause().getCause().getMessage());
+        verify(fileStorage).uploadFileAsync(eq(file), any());
+        // the variants of an image that was not stored are removed again
+        verify(fileCleanupQueue, timeout(5000)).enqueue(List.of("thumb.jpg"));
         verifyNoInteractions(repository, mapper);
     }
 
     /**
-     * Test reading all products returns a mapped list.
+     * Test reading the first page queries MongoDB for one extra ID, loads the products missing
+     * from the cache and returns a cursor when another page exists.
+     */
+    @Test
+    @DisplayName("readProducts queries one page and returns a cursor")
+    @Tag("Unit")
+    void readProducts_firstPage() {
+        ProductResponse cached = ProductResponse.builder().id(ID_1).build();
+        ProductResponse loaded = ProductResponse.builder().id(ID_2).build();
+        ProductEntity second = ProductEntity.builder().id(ID_2).price(new BigDecimal("150.00")).build();
+        loadPageOnNearMiss();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenReturn(List.of(
+                ProductEntity.builder().id(ID_1).price(new BigDecimal("120")).build(),
+                second,
+                ProductEntity.builder().id(ID_3).price(new BigDecimal("180")).build()));
+        when(productCache.getAll(List.of(ID_1, ID_2))).thenReturn(Map.of(ID_1, cached));
+        when(repository.findAllById(List.of(ID_2))).thenReturn(List.of(second));
+        when(mapper.toResponse(second)).thenReturn(loaded);
+
+        ProductPageResponse page = service.readProducts(ProductQuery.builder()
+                .category("Tie").minPrice(new BigDecimal("100")).sort(ProductSort.PRICE_ASC).size(2).build());
+
+        assertEquals(List.of(cached, loaded), page.getItems());
+        assertArrayEquals(new String[]{"PRICE_ASC", "150.00", ID_2}, CursorCodec.decode(page.getNextCursor(), 3));
+        verify(productCache).putAll(List.of(loaded));
+
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(ProductEntity.class));
+        Query query = captor.getValue();
+        assertEquals(3, query.getLimit());
+        assertEquals(0, query.getSkip());
+        assertEquals(new Document("price", 1).append("id", 1), query.getSortObject());
+        assertEquals(new Document("id", 1).append("price", 1), query.getFieldsObject());
+        assertTrue(query.getQueryObject().toJson().contains("\"category\": \"Tie\""));
+    }
+
+    /**
+     * Test reading the last page returns no cursor.
+     */
+    @Test
+    @DisplayName("readProducts returns no cursor on the last page")
+    @Tag("Unit")
+    void readProducts_lastPage() {
+        loadPageOnNearMiss();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class)))
+                .thenReturn(List.of(ProductEntity.builder().id(ID_1).build()));
+        when(productCache.getAll(List.of(ID_1))).thenReturn(Map.of(ID_1, response));
+
+        ProductPageResponse page = service.readProducts(ProductQuery.builder().page(3).build());
+
+        assertEquals(List.of(response), page.getItems());
+        assertNull(page.getNextCursor());
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(ProductEntity.class));
+        assertEquals(60, captor.getValue().getSkip());
+    }
+
+    /**
+     * Test a cursor seeks past the last product instead of skipping documents.
+     */
+    @Test
+    @DisplayName("readProducts with cursor seeks after the last product")
+    @Tag("Unit")
+    void readProducts_cursor_seeks() {
+        loadPageOnNearMiss();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenReturn(List.of());
+
+        service.readProducts(ProductQuery.builder()
+                .sort(ProductSort.PRICE_DESC).page(5).cursor(CursorCodec.encode("PRICE_DESC", "150.00", ID_2)).build());
+
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(ProductEntity.class));
+        Query query = captor.getValue();
+        String filter = query.getQueryObject().toJson();
+        assertEquals(0, query.getSkip());
+        assertTrue(filter.contains("$or"), filter);
+        assertTrue(filter.contains("$lt"), filter);
+        assertTrue(filter.contains(ID_2), filter);
+    }
+
+    /**
+     * Test a page ending on a product without a price returns a cursor that marks the missing
+     * price, and that cursor continues with the remaining unpriced and then the priced products.
+     */
+    @Test
+    @DisplayName("readProducts pages past products without a price")
+    @Tag("Unit")
+    void readProducts_unpricedCursor_seeks() {
+        loadPageOnNearMiss();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenReturn(List.of(
+                ProductEntity.builder().id(ID_1).build(),
+                ProductEntity.builder().id(ID_2).build()));
+        when(productCache.getAll(List.of(ID_1))).thenReturn(Map.of(ID_1, response));
+
+        ProductPageResponse first = service.readProducts(ProductQuery.builder().sort(ProductSort.PRICE_ASC).size(1).build());
+        service.readProducts(ProductQuery.builder().sort(ProductSort.PRICE_ASC).size(1).cursor(first.getNextCursor()).build());
+
+        assertArrayEquals(new String[]{"PRICE_ASC", "none", ID_1}, CursorCodec.decode(first.getNextCursor(), 3));
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(captor.capture(), eq(ProductEntity.class));
+        String filter = captor.getValue().getQueryObject().toJson();
+        assertTrue(filter.contains("\"price\": null"), filter);
+        assertTrue(filter.contains("\"$ne\": null"), filter);
+        assertTrue(filter.contains(ID_1), filter);
+    }
+
+    /**
+     * Test a descending price cursor also continues with the products without a price, which
+     * MongoDB sorts last.
      */
     @Test
-    @DisplayName("readProducts returns list of ProductResponse")
+    @DisplayName("readProducts by descending price ends with products without a price")
     @Tag("Unit")
-    void readProducts_returnsList() {
-        List<ProductEntity> entities = List.of(entity);
-        ProductResponse resp = new ProductResponse();
-        when(repository.findAll()).thenReturn(entities);
-        when(mapper.toResponse(entity)).thenReturn(resp);
+    void readProducts_descendingCursor_includesUnpriced() {
+        loadPageOnNearMiss();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenReturn(List.of());
 
-        List<ProductResponse> list = service.readProducts();
+        service.readProducts(ProductQuery.builder()
+                .sort(ProductSort.PRICE_DESC).cursor(CursorCodec.encode("PRICE_DESC", "150.00", ID_2)).build());
 
-        assertEquals(1, list.size());
-        assertSame(resp, list.getFirst());
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(captor.capture(), eq(ProductEntity.class));
+        String filter = captor.getValue().getQueryObject().toJson();
+        assertTrue(filter.contains("\"price\": null"), filter);
+    }
+
+    /**
+     * Test a cursor issued for another sort order is rejected.
+     */
+    @Test
+    @DisplayName("readProducts rejects a cursor of another sort order")
+    @Tag("Unit")
+    void readProducts_foreignCursor_throws() {
+        loadPageOnNearMiss();
+        ProductQuery query = ProductQuery.builder()
+                .sort(ProductSort.CREATED_ASC).cursor(CursorCodec.encode("PRICE_ASC", "150.00", ID_2)).build();
+
+        assertThrows(BadRequestException.class, () -> service.readProducts(query));
+        assertThrows(BadRequestException.class, () -> service.readProducts(ProductQuery.builder().cursor("%%").build()));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    /**
+     * Test a page cached for the query shape touches neither Redis nor MongoDB beyond the products.
+     */
+    @Test
+    @DisplayName("readProducts serves cached page")
+    @Tag("Unit")
+    void readProducts_cachedPage() {
+        ProductQuery query = ProductQuery.builder().category("Tie").build();
+        when(productCache.getPage(eq(query.cacheKey()), any())).thenReturn(new ProductPage(List.of(ID_1), "next"));
+        when(productCache.getAll(List.of(ID_1))).thenReturn(Map.of(ID_1, response));
+
+        ProductPageResponse page = service.readProducts(query);
+
+        assertEquals(List.of(response), page.getItems());
+        assertEquals("next", page.getNextCursor());
+        verifyNoInteractions(repository, mapper, mongoTemplate);
+    }
+
+    /**
+     * Test reading a cached product does not touch MongoDB.
+     */
+    @Test
+    @DisplayName("readProduct returns cached ProductResponse")
+    @Tag("Unit")
+    void readProduct_cached() {
+        when(productCache.get("id123")).thenReturn(Optional.of(response));
+
+        assertSame(response, service.readProduct("id123"));
+        verifyNoInteractions(repository);
     }
 
     /**
@@ -133,6 +347,7 @@ class ProductServiceTest {
 
         ProductResponse resp = service.readProduct("id123");
         assertSame(response, resp);
+        verify(productCache).put(response);
     }
 
     /**
@@ -147,36 +362,41 @@ class ProductServiceTest {
     }
 
     /**
-     * Test successful deletion of a product and its file.
+     * Test that deleting a product removes the entity first and then queues its file and image
+     * variants for deletion, without calling the storage.
      */
     @Test
-    @DisplayName("deleteProduct deletes file and entity on success")
+    @DisplayName("deleteProduct deletes entity and queues its files")
     @Tag("Unit")
     void deleteProduct_success() {
         entity.setImageUrl("https://host/path/file.png");
+        entity.setImageVariants(Map.of("thumbnail", "https://host/path/file-thumbnail.jpg"));
         when(repository.findById("id123")).thenReturn(Optional.of(entity));
-        when(fileStorage.deleteFile("file.png")).thenReturn(true);
 
         service.deleteProduct("id123");
 
-        verify(fileStorage).deleteFile("file.png");
-        verify(repository).deleteById("id123");
+        InOrder inOrder = inOrder(repository, fileCleanupQueue);
+        inOrder.verify(repository).deleteById("id123");
+        inOrder.verify(fileCleanupQueue).enqueue(List.of("file.png", "file-thumbnail.jpg"));
+        verify(productCache).evict("id123");
+        verifyNoInteractions(fileStorage);
     }
 
     /**
-     * Test deletion failure when file deletion fails.
+     * Test that a product is still deleted when its files cannot be queued; they are left to
+     * the orphan sweep.
      */
     @Test
-    @DisplayName("deleteProduct throws FileStorageException on file delete failure")
+    @DisplayName("deleteProduct succeeds when the cleanup queue is unavailable")
     @Tag("Unit")
-    void deleteProduct_fileDeletionFails_throws() {
+    void deleteProduct_queueFails_deletesEntity() {
         entity.setImageUrl("https://host/path/img.jpg");
         when(repository.findById("id123")).thenReturn(Optional.of(entity));
-        when(fileStorage.deleteFile("img.jpg")).thenReturn(false);
+        doThrow(new RuntimeException("down")).when(fileCleanupQueue).enqueue(List.of("img.jpg"));
 
-        assertThrows(FileStorageException.class, () -> service.deleteProduct("id123"));
-        verify(fileStorage).deleteFile("img.jpg");
-        verify(repository, never()).deleteById(any());
+        assertDoesNotThrow(() -> service.deleteProduct("id123"));
+        verify(repository).deleteById("id123");
+        verify(productCache).evict("id123");
     }
 
     /**
@@ -189,7 +409,17 @@ class ProductServiceTest {
         when(repository.findById("bad")).thenReturn(Optional.empty());
         assertThrows(ResourceNotFoundException.class, () -> service.deleteProduct("bad"));
         verify(repository).findById("bad");
-        verifyNoInteractions(fileStorage);
+        verifyNoInteractions(fileStorage, fileCleanupQueue);
         verify(repository, never()).deleteById(any());
     }
+
+    // === Helper methods ===
+
+    /**
+     * Makes the mocked cache miss the near-cached page and run the service's loader.
+     */
+    private void loadPageOnNearMiss() {
+        when(productCache.getPage(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<ProductPage>>getArgument(1).get());
+    }
 }
@@ -0,0 +1,385 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.support.S3StandIn;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link S3AsyncFileStorageServiceImpl}, covering parallel multipart uploads,
+ * aborts, skipped uploads of stored content, deletion and streamed uploads through the real
+ * async client.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class S3AsyncFileStorageServiceTest {
+
+    private static final String BUCKET = "test-bucket";
+
+    @Mock
+    private S3AsyncClient s3AsyncClient;
+    @Mock
+    private Counter s3UploadsCounter;
+    @Mock
+    private Counter s3DeletesCounter;
+    @Mock
+    private Counter s3TransferredBytesCounter;
+    @Mock
+    private Counter s3DeduplicatedUploadsCounter;
+    @Mock
+    private FileCleanupQueue fileCleanupQueue;
+
+    private S3AsyncFileStorageServiceImpl service;
+
+    /**
+     * Creates the service with a 16 byte multipart threshold and 8 byte parts; S3 answers 404 to
+     * HEAD requests, so no object is stored yet.
+     */
+    @BeforeEach
+    void setUp() {
+        service = service(s3AsyncClient, s3TransferredBytesCounter, 16, 8);
+        lenient().when(s3AsyncClient.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(NoSuchKeyException.builder().statusCode(404).build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    /**
+     * Test: all parts of a multipart upload are started before any of them completes, and the
+     * upload is completed with every part in order once they have.
+     */
+    @Test
+    @DisplayName("uploadFileAsync uploads the parts in parallel")
+    @Tag("Unit")
+    void uploadFileAsync_multipart_partsInParallel() throws InterruptedException {
+        List<CompletableFuture<UploadPartResponse>> parts = new CopyOnWriteArrayList<>();
+        when(s3AsyncClient.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload-1").build()));
+        when(s3AsyncClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+            CompletableFuture<UploadPartResponse> part = new CompletableFuture<>();
+            parts.add(part);
+            return part;
+        });
+        when(s3AsyncClient.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        CompletableFuture<String> upload = service.uploadFileAsync(file(20));
+
+        // the file is hashed on a virtual thread before the parts are started
+        for (int i = 0; i < 500 && parts.size() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, parts.size());
+        assertFalse(upload.isDone());
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            parts.get(i).complete(UploadPartResponse.builder().eTag("etag-" + (i + 1)).build());
+        }
+        assertTrue(upload.join().startsWith("https://" + BUCKET + ".s3.amazonaws.com/"));
+
+        ArgumentCaptor<UploadPartRequest> partRequests = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3AsyncClient, times(3)).uploadPart(partRequests.capture(), any(AsyncRequestBody.class));
+        assertEquals(List.of(8L, 8L, 4L), partRequests.getAllValues().stream().map(UploadPartRequest::contentLength).toList());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3AsyncClient).completeMultipartUpload(complete.capture());
+        assertEquals(List.of("etag-1", "etag-2", "etag-3"),
+                complete.getValue().multipartUpload().parts().stream().map(CompletedPart::eTag).toList());
+        verify(s3UploadsCounter).increment();
+        verify(s3AsyncClient, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    /**
+     * Test: a failed part aborts the multipart upload and fails the upload with a
+     * FileStorageException.
+     */
+    @Test
+    @DisplayName("uploadFileAsync aborts the multipart upload when a part fails")
+    @Tag("Unit")
+    void uploadFileAsync_partFails_aborts() {
+        when(s3AsyncClient.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload-1").build()));
+        when(s3AsyncClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(UploadPartResponse.builder().eTag("etag").build()))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().message("boom").build()))
+                .thenReturn(CompletableFuture.completedFuture(UploadPartResponse.builder().eTag("etag").build()));
+        when(s3AsyncClient.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+
+        CompletionException e = assertThrows(CompletionException.class, () -> service.uploadFileAsync(file(20)).join());
+
+        assertInstanceOf(FileStorageException.class, e.getCause());
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3AsyncClient).abortMultipartUpload(abort.capture());
+        assertEquals("upload-1", abort.getValue().uploadId());
+        verify(s3AsyncClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verifyNoInteractions(s3UploadsCounter);
+    }
+
+    /**
+     * Test: a file whose content is already stored completes with the URL of the stored object
+     * without being uploaded, and its key is withdrawn from the cleanup queue.
+     */
+    @Test
+    @DisplayName("uploadFileAsync skips the upload when the content is already stored")
+    @Tag("Unit")
+    void uploadFileAsync_alreadyStored_skipsUpload() {
+        MockMultipartFile file = file(4);
+        String key = S3FileStorageServiceImpl.getKey(file);
+        when(s3AsyncClient.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals("https://" + BUCKET + ".s3.amazonaws.com/" + key, service.uploadFileAsync(file).join());
+
+        verify(fileCleanupQueue).withdraw(key);
+        verify(s3AsyncClient, never()).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        verify(s3DeduplicatedUploadsCounter).increment();
+        verifyNoInteractions(s3UploadsCounter);
+    }
+
+    /**
+     * Test: every subscription to the request body, including the one of a retry, closes the
+     * stream it opened, and the bytes are counted once when S3 has accepted the object.
+     */
+    @Test
+    @DisplayName("uploadFileAsync closes the streams of retried bodies and counts the bytes once")
+    @Tag("Unit")
+    void uploadFileAsync_retriedBody_closesStreams() throws InterruptedException {
+        ClosingTrackedFile file = new ClosingTrackedFile(new byte[10]);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+            AsyncRequestBody body = invocation.getArgument(1);
+            // the first attempt fails after the body was sent, the retry sends it again
+            drain(body, false).join();
+            drain(body, false).join();
+            // a cancelled attempt closes its stream as well
+            drain(body, true);
+            return CompletableFuture.completedFuture(PutObjectResponse.builder().build());
+        });
+
+        service.uploadFileAsync(file).join();
+
+        // one stream for the hash and three for the attempts
+        assertEquals(4, file.opened.get());
+        for (int i = 0; i < 500 && file.closed.get() < 4; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, file.closed.get());
+        verify(s3TransferredBytesCounter).increment(10);
+    }
+
+    /**
+     * Test: deleteFile deletes the object and counts the deletion; a failed deletion throws a
+     * FileStorageException.
+     */
+    @Test
+    @DisplayName("deleteFile deletes the object and wraps failures")
+    @Tag("Unit")
+    void deleteFile_successAndFailure() {
+        when(s3AsyncClient.deleteObject(any(DeleteObjectRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DeleteObjectResponse.builder().build()))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().message("denied").build()));
+
+        assertTrue(service.deleteFile("key.png"));
+        verify(s3DeletesCounter).increment();
+
+        FileStorageException e = assertThrows(FileStorageException.class, () -> service.deleteFile("key.png"));
+        assertEquals("Deletion failed", e.getMessage());
+    }
+
+    /**
+     * Test: a path traversal in the file name fails the upload without calling S3.
+     */
+    @Test
+    @DisplayName("uploadFileAsync rejects a path traversal without calling S3")
+    @Tag("Unit")
+    void uploadFileAsync_pathTraversal_fails() {
+        MockMultipartFile file = new MockMultipartFile("file", "../evil.png", "image/png", new byte[4]);
+
+        CompletableFuture<String> upload = service.uploadFileAsync(file);
+
+        assertTrue(upload.isCompletedExceptionally());
+        verifyNoInteractions(s3AsyncClient);
+    }
+
+    /**
+     * Test: through the real async client, a small file is stored intact with a single PUT and
+     * a 12 MB file in three parallel parts; the byte counter matches the bytes S3 received, and a
+     * copy of the small file is not sent again.
+     */
+    @Test
+    @DisplayName("uploads through the async client arrive intact and are counted")
+    @Tag("Integration")
+    void uploadFileAsync_realClient() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (S3StandIn s3 = new S3StandIn();
+             S3AsyncClient client = s3.configure(S3AsyncClient.builder()).build()) {
+            S3AsyncFileStorageServiceImpl realService = service(client, registry.counter("bytes"),
+                    8L * 1024 * 1024, 5L * 1024 * 1024);
+            try {
+                MockMultipartFile small = file(1024 * 1024);
+                MockMultipartFile large = file(12 * 1024 * 1024);
+
+                CompletableFuture<String> smallUpload = realService.uploadFileAsync(small);
+                CompletableFuture<String> largeUpload = realService.uploadFileAsync(large);
+
+                S3StandIn.StoredObject smallObject = s3.object(BUCKET, keyOf(smallUpload.join()));
+                assertEquals(small.getSize(), smallObject.size());
+                assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(small.getBytes())),
+                        smallObject.md5());
+                S3StandIn.StoredObject largeObject = s3.object(BUCKET, keyOf(largeUpload.join()));
+                assertEquals(large.getSize(), largeObject.size());
+                assertEquals(3, largeObject.parts());
+                assertEquals(0, s3.openUploads());
+                assertEquals(small.getSize() + large.getSize(), s3.bytesReceived());
+                assertEquals(s3.bytesReceived(), registry.counter("bytes").count());
+
+                // the same content again is found by its key and not transferred
+                MockMultipartFile copy = new MockMultipartFile("file", "copy.png", "image/png", small.getBytes());
+                assertEquals(smallUpload.join(), realService.uploadFileAsync(copy).join());
+                assertEquals(small.getSize() + large.getSize(), s3.bytesReceived());
+                assertEquals(2, s3.objectCount());
+
+                assertTrue(realService.deleteFileAsync(keyOf(smallUpload.join())).join());
+                assertEquals(1, s3.objectCount());
+            } finally {
+                realService.stop();
+            }
+        }
+    }
+
+    // === Helper methods ===
+
+    private S3AsyncFileStorageServiceImpl service(S3AsyncClient client, Counter bytesCounter,
+                                                  long multipartThreshold, long partSize) {
+        S3AsyncFileStorageServiceImpl storage = new S3AsyncFileStorageServiceImpl(client, s3UploadsCounter,
+                s3DeletesCounter, bytesCounter, s3DeduplicatedUploadsCounter, fileCleanupQueue);
+        ReflectionTestUtils.setField(storage, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(storage, "multipartThreshold", multipartThreshold);
+        ReflectionTestUtils.setField(storage, "partSize", partSize);
+        return storage;
+    }
+
+    private static MockMultipartFile file(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return new MockMultipartFile("file", "image.png", "image/png", content);
+    }
+
+    /**
+     * Subscribes to a request body like the HTTP client does.
+     *
+     * @param body   the body
+     * @param cancel whether to cancel the subscription right away
+     * @return completes with the number of bytes published once the body is complete
+     */
+    private static CompletableFuture<Long> drain(AsyncRequestBody body, boolean cancel) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            private long bytes;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                if (cancel) {
+                    subscription.cancel();
+                } else {
+                    subscription.request(Long.MAX_VALUE);
+                }
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                bytes += buffer.remaining();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(bytes);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * A multipart file that counts how many of its input streams were opened and closed.
+     */
+    private static final class ClosingTrackedFile extends MockMultipartFile {
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+
+        ClosingTrackedFile(byte[] content) {
+            super("file", "image.png", "image/png", content);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            opened.incrementAndGet();
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    closed.incrementAndGet();
+                    super.close();
+                }
+            };
+        }
+    }
+
+    private static String keyOf(String url) {
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
+}
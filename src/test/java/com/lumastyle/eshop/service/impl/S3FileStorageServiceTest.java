@@ -1,35 +1,65 @@
 package com.lumastyle.eshop.service.impl;
 
 import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
 import io.micrometer.core.instrument.Counter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 /**
- * Unit tests for {@link S3FileStorageServiceImpl}, covering file upload and deletion scenarios.
+ * Unit tests for {@link S3FileStorageServiceImpl}, covering content-addressed, streamed and multipart
+ * uploads, single and batched deletion, and listing.
  */
 @ActiveProfiles("test")
 @ExtendWith(MockitoExtension.class)
@@ -43,20 +73,27 @@ class S3FileStorageServiceTest {
     private Counter s3DeletesCounter;
     @Mock
     private Counter s3TransferredBytesCounter;
+    @Mock
+    private Counter s3DeduplicatedUploadsCounter;
+    @Mock
+    private FileCleanupQueue fileCleanupQueue;
 
-    @InjectMocks
     private S3FileStorageServiceImpl service;
 
     private MockMultipartFile file;
     private final String bucketName = "test-bucket";
 
     /**
-     * Sets up a mock multipart file and injects the bucket name via reflection before each test.
+     * Creates the service, sets up a mock multipart file, injects the bucket name via reflection and lets S3 answer
+     * 404 to HEAD requests, so no object is stored yet.
      *
      * @throws Exception if reflection fails when setting the bucketName field
      */
     @BeforeEach
     void setUp() throws Exception {
+        // created by hand: the counters share a type, so they cannot be injected by type
+        service = new S3FileStorageServiceImpl(s3Client, s3UploadsCounter, s3DeletesCounter,
+                s3TransferredBytesCounter, s3DeduplicatedUploadsCounter, fileCleanupQueue);
         file = new MockMultipartFile(
                 "file",
                 "test.png",
@@ -66,6 +103,10 @@ class S3FileStorageServiceTest {
         Field bucketField = S3FileStorageServiceImpl.class.getDeclaredField("bucketName");
         bucketField.setAccessible(true);
         bucketField.set(service, bucketName);
+        ReflectionTestUtils.setField(service, "multipartThreshold", 8L * 1024 * 1024);
+        ReflectionTestUtils.setField(service, "partSize", 5L * 1024 * 1024);
+        lenient().when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenThrow(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
     }
 
     /**
@@ -88,6 +129,48 @@ class S3FileStorageServiceTest {
         verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
     }
 
+    /**
+     * Verifies that the key is the SHA-256 of the content with the lower-cased extension, so the
+     * same content always gets the same key; extensions that are not alphanumeric are dropped.
+     */
+    @Test
+    @DisplayName("getKey derives the key from the content")
+    @Tag("Unit")
+    void getKey_contentHash() {
+        MockMultipartFile sameContent = new MockMultipartFile("file", "other.PNG", "image/png", "content".getBytes());
+        MockMultipartFile otherContent = new MockMultipartFile("file", "test.png", "image/png", "Content".getBytes());
+
+        assertEquals("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73.png",
+                S3FileStorageServiceImpl.getKey(file));
+        assertEquals(S3FileStorageServiceImpl.getKey(file), S3FileStorageServiceImpl.getKey(sameContent));
+        assertNotEquals(S3FileStorageServiceImpl.getKey(file), S3FileStorageServiceImpl.getKey(otherContent));
+        assertEquals("", S3FileStorageServiceImpl.extensionOf("photo.p?ng"));
+        assertEquals("", S3FileStorageServiceImpl.extensionOf("photo"));
+    }
+
+    /**
+     * Verifies that a file whose content is already stored is not uploaded again and gets the URL
+     * of the stored object, after its key has been withdrawn from the cleanup queue.
+     */
+    @Test
+    @DisplayName("uploadFile skips the upload when the content is already stored")
+    @Tag("Unit")
+    void uploadFile_alreadyStored_skipsUpload() {
+        doReturn(HeadObjectResponse.builder().build()).when(s3Client).headObject(any(HeadObjectRequest.class));
+
+        String result = service.uploadFile(file);
+
+        assertEquals("https://" + bucketName + ".s3.amazonaws.com/" + S3FileStorageServiceImpl.getKey(file), result);
+        ArgumentCaptor<HeadObjectRequest> head = ArgumentCaptor.forClass(HeadObjectRequest.class);
+        InOrder inOrder = inOrder(fileCleanupQueue, s3Client);
+        inOrder.verify(fileCleanupQueue).withdraw(S3FileStorageServiceImpl.getKey(file));
+        inOrder.verify(s3Client).headObject(head.capture());
+        assertEquals(S3FileStorageServiceImpl.getKey(file), head.getValue().key());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3DeduplicatedUploadsCounter).increment();
+        verifyNoInteractions(s3UploadsCounter, s3TransferredBytesCounter);
+    }
+
     /**
      * Ensures that uploadFile throws FileStorageException when HTTP status indicates failure.
      */
@@ -106,7 +189,32 @@ class S3FileStorageServiceTest {
     }
 
     /**
-     * Ensures that uploadFile throws FileStorageException when reading the file bytes fails.
+     * Verifies that the file is streamed with its known length instead of being read into a byte array.
+     */
+    @Test
+    @DisplayName("uploadFile streams the file with its content length")
+    @Tag("Unit")
+    void uploadFile_streamsWithContentLength() throws IOException {
+        MultipartFile streamedFile = spy(file);
+        PutObjectResponse response = mock(PutObjectResponse.class);
+        SdkHttpResponse httpResponse = mock(SdkHttpResponse.class);
+        when(httpResponse.isSuccessful()).thenReturn(true);
+        when(response.sdkHttpResponse()).thenReturn(httpResponse);
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        when(s3Client.putObject(any(PutObjectRequest.class), body.capture())).thenReturn(response);
+
+        service.uploadFile(streamedFile);
+
+        assertEquals(Optional.of(7L), body.getValue().optionalContentLength());
+        try (InputStream in = body.getValue().contentStreamProvider().newStream()) {
+            assertArrayEquals("content".getBytes(), in.readAllBytes());
+        }
+        verify(streamedFile, never()).getBytes();
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    /**
+     * Ensures that uploadFile throws FileStorageException when reading the file fails.
      */
     @Test
     @DisplayName("uploadFile throws when file IO fails")
@@ -114,9 +222,64 @@ class S3FileStorageServiceTest {
     void uploadFile_ioException_throwsFileStorageException() throws IOException {
         MultipartFile badFile = mock(MultipartFile.class);
         when(badFile.getOriginalFilename()).thenReturn("test.png");
-        when(badFile.getBytes()).thenThrow(new IOException("fail"));
+        when(badFile.getInputStream()).thenThrow(new IOException("fail"));
 
         assertThrows(FileStorageException.class, () -> service.uploadFile(badFile));
+        verifyNoInteractions(s3Client);
+    }
+
+    /**
+     * Verifies that a file above the threshold is uploaded in parts, each streamed from its offset.
+     */
+    @Test
+    @DisplayName("uploadFile uses a multipart upload for large files")
+    @Tag("Unit")
+    void uploadFile_largeFile_multipart() throws IOException {
+        ReflectionTestUtils.setField(service, "multipartThreshold", 8L);
+        ReflectionTestUtils.setField(service, "partSize", 5L);
+        MockMultipartFile large = new MockMultipartFile("file", "large.png", "image/png", "0123456789ab".getBytes());
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        ArgumentCaptor<RequestBody> bodies = ArgumentCaptor.forClass(RequestBody.class);
+        when(s3Client.uploadPart(parts.capture(), bodies.capture())).thenAnswer(invocation ->
+                UploadPartResponse.builder().eTag("etag-" + invocation.<UploadPartRequest>getArgument(0).partNumber())
+                        .build());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete =
+                ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+
+        service.uploadFile(large);
+
+        assertEquals(List.of(1, 2, 3), parts.getAllValues().stream().map(UploadPartRequest::partNumber).toList());
+        List<String> contents = new ArrayList<>();
+        for (RequestBody body : bodies.getAllValues()) {
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                contents.add(new String(in.readAllBytes()));
+            }
+        }
+        assertEquals(List.of("01234", "56789", "ab"), contents);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals(List.of("etag-1", "etag-2", "etag-3"), complete.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::eTag).toList());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    /**
+     * Ensures a failed part aborts the multipart upload.
+     */
+    @Test
+    @DisplayName("uploadFile aborts the multipart upload when a part fails")
+    @Tag("Unit")
+    void uploadFile_partFails_aborts() {
+        ReflectionTestUtils.setField(service, "multipartThreshold", 5L);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("fail").build());
+
+        assertThrows(FileStorageException.class, () -> service.uploadFile(file));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
     }
 
     /**
@@ -145,4 +308,74 @@ class S3FileStorageServiceTest {
 
         assertThrows(FileStorageException.class, () -> service.deleteFile("some-key"));
     }
+
+    /**
+     * Verifies that deleteFiles sends one quiet DeleteObjects request per 1000 keys and returns
+     * the keys S3 reported as not deleted.
+     */
+    @Test
+    @DisplayName("deleteFiles deletes in batches of 1000 keys")
+    @Tag("Unit")
+    void deleteFiles_batches() {
+        List<String> keys = IntStream.range(0, 1500).mapToObj(i -> "key-" + i).toList();
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenReturn(DeleteObjectsResponse.builder()
+                        .errors(S3Error.builder().key("key-3").code("AccessDenied").message("Access Denied").build())
+                        .build())
+                .thenReturn(DeleteObjectsResponse.builder().build());
+
+        Map<String, String> failed = service.deleteFiles(keys);
+
+        assertEquals(Map.of("key-3", "AccessDenied: Access Denied"), failed);
+        ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(2)).deleteObjects(captor.capture());
+        DeleteObjectsRequest first = captor.getAllValues().get(0);
+        assertEquals(bucketName, first.bucket());
+        assertTrue(first.delete().quiet());
+        assertEquals(1000, first.delete().objects().size());
+        assertEquals("key-1000", captor.getAllValues().get(1).delete().objects().getFirst().key());
+        verify(s3DeletesCounter).increment(999);
+        verify(s3DeletesCounter).increment(500);
+    }
+
+    /**
+     * Ensures deleteFiles throws FileStorageException when S3 cannot be reached.
+     */
+    @Test
+    @DisplayName("deleteFiles throws when the request fails")
+    @Tag("Unit")
+    void deleteFiles_failure_throwsFileStorageException() {
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenThrow(S3Exception.builder().message("fail").build());
+
+        assertThrows(FileStorageException.class, () -> service.deleteFiles(List.of("some-key")));
+    }
+
+    /**
+     * Verifies that listFiles walks every page of the bucket listing.
+     */
+    @Test
+    @DisplayName("listFiles returns the objects of all pages")
+    @Tag("Unit")
+    void listFiles_allPages() {
+        Instant modified = Instant.parse("2025-01-01T00:00:00Z");
+        when(s3Client.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(invocation -> new ListObjectsV2Iterable(s3Client, invocation.getArgument(0)));
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("a.png").lastModified(modified).build())
+                        .isTruncated(true)
+                        .nextContinuationToken("next")
+                        .build())
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("b.png").lastModified(modified).build())
+                        .isTruncated(false)
+                        .build());
+
+        try (Stream<FileStorageService.StoredFile> files = service.listFiles()) {
+            assertEquals(List.of(new FileStorageService.StoredFile("a.png", modified),
+                    new FileStorageService.StoredFile("b.png", modified)), files.toList());
+        }
+        assertEquals("https://" + bucketName + ".s3.amazonaws.com/a.png", service.urlOf("a.png"));
+    }
 }
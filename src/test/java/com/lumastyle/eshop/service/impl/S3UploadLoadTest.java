@@ -0,0 +1,206 @@
+package com.lumastyle.eshop.service.impl;
+
+import com.lumastyle.eshop.support.S3StandIn;
+import com.lumastyle.eshop.worker.FileCleanupQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Load test for {@link S3FileStorageServiceImpl}: uploads many 10 MB files concurrently
+ * through the real S3 client to a local {@link S3StandIn} and checks that the heap retained
+ * during the uploads stays far below the size of the files in flight.
+ */
+@ActiveProfiles("test")
+class S3UploadLoadTest {
+
+    private static final String BUCKET = "test-bucket";
+    private static final int THREADS = 16;
+    private static final int LARGE_FILES = 32;
+    private static final int LARGE_SIZE = 10 * 1024 * 1024;
+    private static final int SMALL_FILES = 8;
+    private static final int SMALL_SIZE = 1024 * 1024;
+    /**
+     * Sixteen buffered 10 MB uploads alone would retain 160 MB.
+     */
+    private static final long MAX_RETAINED_GROWTH = 48L * 1024 * 1024;
+
+    /**
+     * Test: 16 threads upload 32 files of 10 MB as multipart uploads and 8 files of 1 MB as single
+     * PUTs; every object arrives intact and the retained heap grows by far less than the files.
+     */
+    @Test
+    @DisplayName("concurrent 10 MB uploads are streamed in bounded memory")
+    @Tag("Load")
+    void concurrentLargeUploads_boundedHeap() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (S3StandIn s3 = new S3StandIn();
+             S3Client client = s3.configure(S3Client.builder()).build()) {
+            S3FileStorageServiceImpl service = new S3FileStorageServiceImpl(client, registry.counter("uploads"),
+                    registry.counter("deletes"), registry.counter("bytes"), registry.counter("deduplicated"),
+                    mock(FileCleanupQueue.class));
+            ReflectionTestUtils.setField(service, "bucketName", BUCKET);
+            ReflectionTestUtils.setField(service, "multipartThreshold", 8L * 1024 * 1024);
+            ReflectionTestUtils.setField(service, "partSize", 5L * 1024 * 1024);
+            // loads the SDK classes and opens a connection before the baseline is taken
+            service.uploadFile(new GeneratedFile(-1, 1024));
+
+            List<GeneratedFile> files = new ArrayList<>();
+            for (int i = 0; i < LARGE_FILES + SMALL_FILES; i++) {
+                files.add(new GeneratedFile(i, i < LARGE_FILES ? LARGE_SIZE : SMALL_SIZE));
+            }
+            long baseline = retainedHeap();
+            AtomicLong peak = new AtomicLong(baseline);
+            AtomicBoolean uploading = new AtomicBoolean(true);
+            Thread sampler = Thread.ofPlatform().start(() -> {
+                while (uploading.get()) {
+                    peak.accumulateAndGet(retainedHeap(), Math::max);
+                }
+            });
+            List<String> urls = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+                List<Future<String>> uploads = new ArrayList<>();
+                for (GeneratedFile file : files) {
+                    uploads.add(executor.submit(() -> service.uploadFile(file)));
+                }
+                for (Future<String> upload : uploads) {
+                    urls.add(upload.get());
+                }
+            } finally {
+                uploading.set(false);
+                sampler.join();
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                String key = urls.get(i).substring(urls.get(i).lastIndexOf('/') + 1);
+                S3StandIn.StoredObject object = s3.object(BUCKET, key);
+                GeneratedFile file = files.get(i);
+                assertNotNull(object, key);
+                assertEquals(file.getSize(), object.size(), key);
+                if (file.getSize() == SMALL_SIZE) {
+                    assertEquals(1, object.parts(), key);
+                    assertEquals(file.md5(), object.md5(), key);
+                } else {
+                    assertEquals(2, object.parts(), key);
+                }
+            }
+            assertEquals(0, s3.openUploads());
+            long expectedBytes = (long) LARGE_FILES * LARGE_SIZE + (long) SMALL_FILES * SMALL_SIZE;
+            assertEquals(expectedBytes + 1024, s3.bytesReceived());
+            assertEquals(expectedBytes + 1024, registry.counter("bytes").count());
+            long growth = peak.get() - baseline;
+            assertTrue(growth < MAX_RETAINED_GROWTH, "retained heap grew by " + growth + " bytes");
+        }
+    }
+
+    // === Helper methods ===
+
+    private static long retainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * A multipart file whose content is generated while it is read, so the test itself holds
+     * no file in memory. Reading it into a byte array fails.
+     */
+    private record GeneratedFile(long seed, long size) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "image-" + seed + ".png";
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new UnsupportedOperationException("uploads must be streamed");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private final SplittableRandom random = new SplittableRandom(seed);
+                private long position;
+
+                @Override
+                public int read() {
+                    return position < size ? next() : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    int count = (int) Math.min(len, size - position);
+                    for (int i = 0; i < count; i++) {
+                        b[off + i] = (byte) next();
+                    }
+                    return count;
+                }
+
+                private int next() {
+                    position++;
+                    return random.nextInt(256);
+                }
+            };
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException();
+        }
+
+        String md5() throws Exception {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            try (InputStream in = new DigestInputStream(getInputStream(), md5)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(md5.digest());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.lumastyle.eshop.entity.UserEntity;
 import com.lumastyle.eshop.exception.BadRequestException;
 import com.lumastyle.eshop.mapper.UserMapper;
 import com.lumastyle.eshop.repository.UserRepository;
+import com.lumastyle.eshop.service.AuthFacade;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
@@ -38,6 +39,9 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private AuthFacade authFacade;
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -118,4 +122,18 @@ class UserServiceTest {
         verify(userRepository).save(entity);
         verify(userMapper).toResponse(savedEntity);
     }
+
+    /**
+     * Verifies the current user ID comes from the authenticated principal without a database lookup.
+     */
+    @Test
+    @DisplayName("getCurrentUserId reads the principal without querying the repository")
+    @Tag("Unit")
+    void getCurrentUserId_usesPrincipal() {
+        when(authFacade.getCurrentUserId()).thenReturn("user-id-1");
+
+        assertEquals("user-id-1", userService.getCurrentUserId());
+
+        verifyNoInteractions(userRepository);
+    }
 }
@@ -0,0 +1,121 @@
+package com.lumastyle.eshop.store;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import com.lumastyle.eshop.repository.CartRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link MongoCartStore}, verifying that the cart metrics are fed from the
+ * change and size recorded by each update rather than from the items.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class MongoCartStoreTest {
+
+    @Mock
+    private CartRepository cartRepository;
+
+    private final LongAdder itemsActive = new LongAdder();
+    private final DistributionSummary cartSize = new SimpleMeterRegistry().summary("cartSize");
+
+    private MongoCartStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new MongoCartStore(cartRepository, itemsActive, cartSize);
+    }
+
+    /**
+     * Test: each update adds its own change to the active total and records the new cart size.
+     */
+    @Test
+    @DisplayName("updates feed their change and size to the metrics")
+    @Tag("Unit")
+    void updates_recordChangeAndSize() {
+        when(cartRepository.incrementItem("u1", "p1")).thenReturn(cart(3, 1));
+        when(cartRepository.updateItems("u1", Map.of("p1", 5), Map.of())).thenReturn(cart(5, 2));
+        when(cartRepository.decrementItem("u1", "p1")).thenReturn(Optional.of(cart(4, -1)));
+        when(cartRepository.decrementItem("u1", "p9")).thenReturn(Optional.empty());
+
+        store.incrementItem("u1", "p1");
+        store.updateItems("u1", Map.of("p1", 5), Map.of());
+        store.decrementItem("u1", "p1");
+        store.decrementItem("u1", "p9");
+
+        assertEquals(2, itemsActive.sum());
+        assertEquals(3, cartSize.count());
+        assertEquals(12, cartSize.totalAmount());
+    }
+
+    /**
+     * Test: deleting a cart takes its pieces off the active total; deleting no cart changes nothing.
+     */
+    @Test
+    @DisplayName("deleteByUserId subtracts the pieces of the deleted cart")
+    @Tag("Unit")
+    void deleteByUserId_subtractsPieces() {
+        when(cartRepository.deleteCart("u1")).thenReturn(Optional.of(cart(4, 1)));
+        when(cartRepository.deleteCart("u2")).thenReturn(Optional.empty());
+
+        store.deleteByUserId("u1");
+        store.deleteByUserId("u2");
+
+        assertEquals(-4, itemsActive.sum());
+        assertEquals(0, cartSize.count());
+    }
+
+    /**
+     * Test: removing from a cart the user does not have finds no cart and changes no metric.
+     */
+    @Test
+    @DisplayName("decrementItem without a cart finds no cart")
+    @Tag("Unit")
+    void decrementItem_noCart_empty() {
+        when(cartRepository.decrementItem("u1", "p1")).thenReturn(Optional.empty());
+        when(cartRepository.findByUserId("u1")).thenReturn(Optional.empty());
+
+        assertTrue(store.decrementItem("u1", "p1").isEmpty());
+        assertTrue(store.findByUserId("u1").isEmpty());
+        assertEquals(0, itemsActive.sum());
+        assertEquals(0, cartSize.count());
+    }
+
+    /**
+     * Test: a refresh replaces the net change of this instance with the pieces in all stored
+     * carts, and a failing count leaves the gauge as it was.
+     */
+    @Test
+    @DisplayName("refreshItemsActive sets the total from the stored carts")
+    @Tag("Unit")
+    void refreshItemsActive_setsStoredTotal() {
+        when(cartRepository.deleteCart("u1")).thenReturn(Optional.of(cart(4, 1)));
+        when(cartRepository.countAllItems()).thenReturn(10L).thenThrow(new RuntimeException("MongoDB is down"));
+        store.deleteByUserId("u1");
+
+        store.refreshItemsActive();
+        assertEquals(10, itemsActive.sum());
+
+        store.refreshItemsActive();
+        assertEquals(10, itemsActive.sum());
+    }
+
+    private static CartEntity cart(int totalItems, int lastChange) {
+        return CartEntity.builder().userId("u1").totalItems(totalItems).lastChange(lastChange).build();
+    }
+}
@@ -0,0 +1,446 @@
+package com.lumastyle.eshop.store;
+
+import com.lumastyle.eshop.entity.CartEntity;
+import com.lumastyle.eshop.repository.CartRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link RedisCartStore} against an embedded Redis server, so the store's Lua
+ * scripts run as they do in production, with a map standing in for the {@code carts}
+ * collection. Besides the write-behind itself, they cover crash recovery: a node dying
+ * before its flush, MongoDB failing during one, changes racing with one and Redis losing
+ * its data. Skipped when the embedded server cannot be started.
+ */
+@ActiveProfiles("test")
+class RedisCartStoreTest {
+
+    private final Map<String, Map<String, Integer>> mongo = new ConcurrentHashMap<>();
+    private final Map<String, Integer> mongoTotals = new ConcurrentHashMap<>();
+    private final AtomicBoolean mongoDown = new AtomicBoolean();
+    private final AtomicInteger bulkWrites = new AtomicInteger();
+    private final AtomicLong depth = new AtomicLong();
+    private final LongAdder itemsActive = new LongAdder();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // runs inside the bulk write, before it is applied, to simulate concurrent requests
+    private Runnable duringWrite = () -> { };
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    private RedisCartStore store;
+
+    @BeforeAll
+    static void startRedis() {
+        int port;
+        try {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        } catch (IOException | RuntimeException e) {
+            Assumptions.abort("Embedded Redis is not available: " + e.getMessage());
+            return;
+        }
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        flushAll();
+        store = newNode();
+    }
+
+    /**
+     * Test: the first change loads the stored cart into Redis; MongoDB is written only by the flush.
+     */
+    @Test
+    @DisplayName("incrementItem loads the cart from MongoDB and writes it back on flush")
+    @Tag("Integration")
+    void incrementItem_writesBehind() {
+        mongo.put("u1", Map.of("p1", 1));
+
+        CartEntity cart = store.incrementItem("u1", "p1");
+        store.incrementItem("u1", "p2");
+
+        assertEquals(Map.of("p1", 2), cart.getItems());
+        assertEquals(Map.of("p1", 1), mongo.get("u1"));
+        assertEquals(1L, redis.opsForZSet().zCard(RedisCartStore.DIRTY_KEY));
+
+        store.flush();
+
+        assertEquals(Map.of("p1", 2, "p2", 1), mongo.get("u1"));
+        assertEquals(0, depth.get());
+        assertEquals(1, bulkWrites.get());
+
+        store.flush();
+        assertEquals(1, bulkWrites.get());
+    }
+
+    /**
+     * Test: removing the last piece drops the product; removing a missing product changes nothing.
+     */
+    @Test
+    @DisplayName("decrementItem drops the product at zero and ignores missing products")
+    @Tag("Integration")
+    void decrementItem_dropsAtZero() {
+        store.incrementItem("u1", "p1");
+        store.incrementItem("u1", "p2");
+
+        assertEquals(Map.of("p2", 1), store.decrementItem("u1", "p1").orElseThrow().getItems());
+        assertTrue(store.decrementItem("u1", "p1").isEmpty());
+
+        store.flush();
+        assertEquals(Map.of("p2", 1), mongo.get("u1"));
+    }
+
+    /**
+     * Test: removing from or deleting a cart the user does not have finds no cart, like the
+     * MongoDB store, and leaves nothing behind in Redis.
+     */
+    @Test
+    @DisplayName("decrementItem and deleteByUserId without a cart leave no cart")
+    @Tag("Integration")
+    void noCart_staysAbsent() {
+        assertTrue(store.decrementItem("u1", "p1").isEmpty());
+        store.deleteByUserId("u1");
+
+        assertTrue(store.findByUserId("u1").isEmpty());
+        assertFalse(redis.hasKey(RedisCartStore.KEY_PREFIX + "u1"));
+        assertEquals(0L, redis.opsForZSet().zCard(RedisCartStore.DIRTY_KEY));
+        assertEquals(0, itemsActive.sum());
+    }
+
+    /**
+     * Test: a bulk update sets, adds and drops lines in one script run and is written behind.
+     */
+    @Test
+    @DisplayName("updateItems applies all lines at once")
+    @Tag("Integration")
+    void updateItems_appliesAllLines() {
+        mongo.put("u1", Map.of("p1", 1, "p2", 2, "p3", 1));
+
+        CartEntity cart = store.updateItems("u1", Map.of("p1", 5, "p2", 0), Map.of("p3", -1, "p4", 2));
+
+        assertEquals(Map.of("p1", 5, "p4", 2), cart.getItems());
+        store.flush();
+        assertEquals(Map.of("p1", 5, "p4", 2), mongo.get("u1"));
+    }
+
+    /**
+     * Test: every change feeds its own delta to the active-items total and the cart size to the
+     * summary, and the total pieces are written behind with the items.
+     */
+    @Test
+    @DisplayName("cart metrics follow the change of every update")
+    @Tag("Integration")
+    void metrics_followChanges() {
+        store.incrementItem("u1", "p1");
+        store.incrementItem("u1", "p1");
+        store.decrementItem("u1", "p1");
+        assertEquals(1, itemsActive.sum());
+
+        CartEntity cart = store.updateItems("u1", Map.of("p1", 3), Map.of("p2", 2, "p3", -5));
+
+        assertEquals(5, cart.getTotalItems());
+        assertEquals(4, cart.getLastChange());
+        assertEquals(5, itemsActive.sum());
+        assertEquals(4, registry.summary("cartSize").count());
+        assertEquals(5, registry.summary("cartSize").max());
+
+        store.flush();
+        assertEquals(5, mongoTotals.get("u1"));
+
+        store.deleteByUserId("u1");
+        assertEquals(0, itemsActive.sum());
+    }
+
+    /**
+     * Test: a deleted cart reads as absent at once and is removed from MongoDB by the flush.
+     */
+    @Test
+    @DisplayName("deleteByUserId hides the cart at once and removes it on flush")
+    @Tag("Integration")
+    void deleteByUserId_tombstoneUntilFlushed() {
+        mongo.put("u1", Map.of("p1", 3));
+
+        store.deleteByUserId("u1");
+
+        assertTrue(store.findByUserId("u1").isEmpty());
+        assertTrue(mongo.containsKey("u1"));
+
+        store.flush();
+
+        assertFalse(mongo.containsKey("u1"));
+        assertFalse(redis.hasKey(RedisCartStore.KEY_PREFIX + "u1"));
+        assertTrue(store.findByUserId("u1").isEmpty());
+    }
+
+    /**
+     * Test: changes of a node that stops before flushing are flushed by another node.
+     */
+    @Test
+    @DisplayName("carts left by a crashed node are flushed by another node")
+    @Tag("Integration")
+    void crashBeforeFlush_otherNodeFlushes() {
+        store.incrementItem("u1", "p1");
+        store.incrementItem("u2", "p1");
+        store.deleteByUserId("u2");
+        mongo.put("u2", Map.of("p9", 1));
+        // the node dies here: no flush, no shutdown hook
+
+        newNode().flush();
+
+        assertEquals(Map.of("p1", 1), mongo.get("u1"));
+        assertFalse(mongo.containsKey("u2"));
+        assertEquals(0, depth.get());
+    }
+
+    /**
+     * Test: carts claimed by a flush that failed in MongoDB are written once their lease runs out.
+     */
+    @Test
+    @DisplayName("carts of a failed flush are retried after the lease")
+    @Tag("Integration")
+    void mongoFailure_retriedAfterLease() {
+        store.incrementItem("u1", "p1");
+        mongoDown.set(true);
+
+        store.flush();
+
+        assertFalse(mongo.containsKey("u1"));
+        assertEquals(1, depth.get());
+
+        mongoDown.set(false);
+        store.flush();
+        assertFalse(mongo.containsKey("u1"), "still leased to the failed flush");
+
+        expireLeases();
+        store.flush();
+
+        assertEquals(Map.of("p1", 1), mongo.get("u1"));
+        assertEquals(0, depth.get());
+    }
+
+    /**
+     * Test: a change made while its cart is being flushed keeps the cart dirty for the next flush.
+     */
+    @Test
+    @DisplayName("changes during a flush are written by the next flush")
+    @Tag("Integration")
+    void changeDuringFlush_staysDirty() {
+        store.incrementItem("u1", "p1");
+        duringWrite = () -> store.incrementItem("u1", "p1");
+
+        store.flush();
+        duringWrite = () -> { };
+
+        assertEquals(Map.of("p1", 1), mongo.get("u1"));
+        assertEquals(1, depth.get());
+
+        store.flush();
+
+        assertEquals(Map.of("p1", 2), mongo.get("u1"));
+        assertEquals(0, depth.get());
+    }
+
+    /**
+     * Test: deleting a cart while it is being flushed still removes it from MongoDB.
+     */
+    @Test
+    @DisplayName("a delete racing with a flush still removes the cart")
+    @Tag("Integration")
+    void deleteDuringFlush_removedByNextFlush() {
+        store.incrementItem("u1", "p1");
+        duringWrite = () -> store.deleteByUserId("u1");
+
+        store.flush();
+        duringWrite = () -> { };
+        assertTrue(store.findByUserId("u1").isEmpty());
+
+        store.flush();
+
+        assertFalse(mongo.containsKey("u1"));
+        assertEquals(0, depth.get());
+    }
+
+    /**
+     * Test: after Redis loses its data, carts are reloaded from MongoDB as of the last flush;
+     * only changes within the durability window are lost.
+     */
+    @Test
+    @DisplayName("carts are reloaded from MongoDB after Redis loses its data")
+    @Tag("Integration")
+    void redisDataLoss_reloadsFromMongo() {
+        store.incrementItem("u1", "p1");
+        store.flush();
+        store.incrementItem("u1", "p2");
+
+        flushAll();
+
+        assertEquals(Map.of("p1", 1), store.findByUserId("u1").orElseThrow().getItems());
+        assertEquals(Map.of("p1", 2), store.incrementItem("u1", "p1").getItems());
+        assertTrue(store.findByUserId("nobody").isEmpty());
+    }
+
+    /**
+     * Test: a refresh sets the active pieces to the sum over the stored carts, dropping the
+     * changes counted before.
+     */
+    @Test
+    @DisplayName("refreshItemsActive sets the total from the stored carts")
+    @Tag("Integration")
+    void refreshItemsActive_setsStoredTotal() {
+        store.incrementItem("u1", "p1");
+        store.incrementItem("u1", "p1");
+        store.flush();
+        mongoTotals.put("u2", 5);
+
+        store.refreshItemsActive();
+
+        assertEquals(7, itemsActive.sum());
+    }
+
+    // === Helper methods ===
+
+    /**
+     * Creates a store instance, standing in for one application node.
+     */
+    private RedisCartStore newNode() {
+        RedisCartStore node = new RedisCartStore(redis, cartRepository(), mongoTemplate(), depth,
+                itemsActive, registry.summary("cartSize"));
+        ReflectionTestUtils.setField(node, "batchSize", 2);
+        ReflectionTestUtils.setField(node, "leaseMillis", 60_000L);
+        ReflectionTestUtils.setField(node, "ttlSeconds", 3600L);
+        return node;
+    }
+
+    /**
+     * Moves the lease of every dirty cart into the past, as if the flush holding it had died.
+     */
+    private void expireLeases() {
+        redis.opsForZSet().range(RedisCartStore.DIRTY_KEY, 0, -1)
+                .forEach(userId -> redis.opsForZSet().add(RedisCartStore.DIRTY_KEY, userId, 0));
+    }
+
+    /**
+     * Drops all data, like a Redis restart without persistence.
+     */
+    private void flushAll() {
+        redis.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    private CartRepository cartRepository() {
+        CartRepository repository = mock(CartRepository.class, withSettings().strictness(Strictness.LENIENT));
+        when(repository.countAllItems()).thenAnswer(invocation ->
+                mongoTotals.values().stream().mapToLong(Integer::longValue).sum());
+        when(repository.findByUserId(anyString())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            return Optional.ofNullable(mongo.get(userId))
+                    .map(items -> CartEntity.builder()
+                            .id("id-" + userId)
+                            .userId(userId)
+                            .items(new HashMap<>(items))
+                            .totalItems(items.values().stream().mapToInt(Integer::intValue).sum())
+                            .build());
+        });
+        return repository;
+    }
+
+    /**
+     * Bulk operations are collected and applied to the map on execute, unless MongoDB is down.
+     */
+    private MongoTemplate mongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(CartEntity.class))).thenAnswer(invocation -> {
+            List<Runnable> writes = new ArrayList<>();
+            return mock(BulkOperations.class, call -> {
+                switch (call.getMethod().getName()) {
+                    case "upsert" -> {
+                        String userId = call.<Query>getArgument(0).getQueryObject().getString("userId");
+                        Document set = (Document) call.<UpdateDefinition>getArgument(1).getUpdateObject().get("$set");
+                        @SuppressWarnings("unchecked")
+                        Map<String, Integer> items = (Map<String, Integer>) set.get("items");
+                        writes.add(() -> {
+                            mongo.put(userId, Map.copyOf(items));
+                            mongoTotals.put(userId, set.getInteger("totalItems"));
+                        });
+                    }
+                    case "remove" -> {
+                        String userId = call.<Query>getArgument(0).getQueryObject().getString("userId");
+                        writes.add(() -> mongo.remove(userId));
+                    }
+                    case "execute" -> {
+                        if (mongoDown.get()) {
+                            throw new DataAccessResourceFailureException("MongoDB is down");
+                        }
+                        duringWrite.run();
+                        writes.forEach(Runnable::run);
+                        bulkWrites.incrementAndGet();
+                        return null;
+                    }
+                    default -> {
+                    }
+                }
+                return call.getMock();
+            });
+        });
+        return mongoTemplate;
+    }
+}
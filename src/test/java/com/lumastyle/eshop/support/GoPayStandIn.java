@@ -0,0 +1,234 @@
+package com.lumastyle.eshop.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.service.impl.GoPayServiceImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.gopay.api.v3.model.payment.Payment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local GoPay REST API for tests, so the real {@link GoPayServiceImpl} and its SDK
+ * connector talk HTTP to it. It serves the app token ({@code POST /api/oauth2/token}), payment
+ * creation ({@code POST /api/payments/payment}) and payment status
+ * ({@code GET /api/payments/payment/{id}}), and rejects payment calls without a token it issued.
+ * Created payments get sequential IDs and stay {@link Payment.SessionState#CREATED} until a test
+ * sets another state; chosen payments fail with HTTP 500. Every payment call takes a configurable
+ * latency, and the stand-in records token requests, status reads, how many payment calls
+ * overlapped and how many connections clients opened.
+ */
+public class GoPayStandIn implements AutoCloseable {
+
+    public static final String CLIENT_ID = "client";
+    public static final String CLIENT_SECRET = "secret";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpServer server;
+    // platform threads: the JDK server reads request bodies inside synchronized blocks, which would
+    // pin virtual threads to their carriers and starve the virtual threads of the client under test
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<Long, Payment.SessionState> states = new ConcurrentHashMap<>();
+    private final Set<Long> failing = ConcurrentHashMap.newKeySet();
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final List<String> orderNumbers = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextPaymentId = new AtomicLong(3_000_000_000L);
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger statusCalls = new AtomicInteger();
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+    private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+    private final long latencyMillis;
+    private volatile long tokenExpiresIn = 1800;
+
+    public GoPayStandIn() throws IOException {
+        this(0);
+    }
+
+    public GoPayStandIn(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+        server.createContext("/api/oauth2/token", this::token);
+        server.createContext("/api/payments/payment", this::payment);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * The API URL to configure as {@code gopay.api.url}.
+     */
+    public String apiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    /**
+     * Creates a service talking to this stand-in, renewing its token five minutes before expiry.
+     */
+    public GoPayServiceImpl newService() {
+        GoPayServiceImpl service = new GoPayServiceImpl();
+        ReflectionTestUtils.setField(service, "gopayApiUrl", apiUrl());
+        ReflectionTestUtils.setField(service, "gopayClientId", CLIENT_ID);
+        ReflectionTestUtils.setField(service, "gopayClientSecret", CLIENT_SECRET);
+        ReflectionTestUtils.setField(service, "refreshMarginMillis", 300_000L);
+        return service;
+    }
+
+    /**
+     * Sets the lifetime, in seconds, of the app tokens issued from now on.
+     */
+    public void setTokenExpiresIn(long seconds) {
+        tokenExpiresIn = seconds;
+    }
+
+    /**
+     * Sets the state GoPay reports for a payment.
+     */
+    public void setState(long paymentId, Payment.SessionState state) {
+        states.put(paymentId, state);
+    }
+
+    /**
+     * Makes every call for the payment fail with HTTP 500.
+     */
+    public void fail(long paymentId) {
+        failing.add(paymentId);
+    }
+
+    public int tokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int statusCalls() {
+        return statusCalls.get();
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls.get();
+    }
+
+    /**
+     * Number of distinct client connections that sent requests.
+     */
+    public int connections() {
+        return connections.size();
+    }
+
+    /**
+     * The order numbers of the created payments, in creation order.
+     */
+    public List<String> orderNumbers() {
+        return List.copyOf(orderNumbers);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    // === Helper methods ===
+
+    private void token(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            connections.add(exchange.getRemoteAddress());
+            exchange.getRequestBody().readAllBytes();
+            String credentials = Base64.getEncoder().encodeToString(
+                    (CLIENT_ID + ":" + CLIENT_SECRET).getBytes(StandardCharsets.UTF_8));
+            if (!("Basic " + credentials).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, error(401, "Invalid client credentials"));
+                return;
+            }
+            String token = "token-" + tokenRequests.incrementAndGet();
+            tokens.add(token);
+            respond(exchange, 200, JSON.createObjectNode()
+                    .put("token_type", "bearer")
+                    .put("access_token", token)
+                    .put("expires_in", tokenExpiresIn)
+                    .put("refresh_token", "refresh-" + token));
+        }
+    }
+
+    private void payment(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            connections.add(exchange.getRemoteAddress());
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !tokens.contains(authorization.replaceFirst("^Bearer ", ""))) {
+                respond(exchange, 401, error(401, "Invalid access token"));
+                return;
+            }
+            maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+            try {
+                pause();
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    long paymentId = nextPaymentId.getAndIncrement();
+                    orderNumbers.add(JSON.readTree(body).path("order_number").asText());
+                    states.put(paymentId, Payment.SessionState.CREATED);
+                    answer(exchange, paymentId);
+                } else {
+                    statusCalls.incrementAndGet();
+                    String path = exchange.getRequestURI().getPath();
+                    answer(exchange, Long.parseLong(path.substring(path.lastIndexOf('/') + 1)));
+                }
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+        }
+    }
+
+    private void answer(HttpExchange exchange, long paymentId) throws IOException {
+        if (failing.contains(paymentId)) {
+            respond(exchange, 500, error(500, "Technical error"));
+            return;
+        }
+        respond(exchange, 200, JSON.createObjectNode()
+                .put("id", paymentId)
+                .put("state", states.getOrDefault(paymentId, Payment.SessionState.CREATED).name())
+                .put("gw_url", "https://gw.sandbox.gopay.com/gw/" + paymentId));
+    }
+
+    private void pause() throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+
+    private static JsonNode error(int code, String message) {
+        JsonNode error = JSON.createObjectNode()
+                .put("scope", "G")
+                .put("error_code", code)
+                .put("message", message);
+        return JSON.createObjectNode().set("errors", JSON.createArrayNode().add(error));
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
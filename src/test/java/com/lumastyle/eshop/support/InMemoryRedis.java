@@ -0,0 +1,152 @@
+package com.lumastyle.eshop.support;
+
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.mockito.quality.Strictness;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Map-backed stand-in for the Redis templates used by the caches, for tests that
+ * need real cache behavior without a Redis server. Only the commands the
+ * application uses are implemented; expirations are ignored. Published messages
+ * are delivered synchronously to every subscribed listener, whatever the channel.
+ */
+public class InMemoryRedis {
+
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+    private final AtomicLong commands = new AtomicLong();
+    private final List<MessageListener> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Number of commands received, with a pipeline counted once.
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key) || sets.containsKey(key);
+    }
+
+    /**
+     * Subscribes a listener to messages published through the string template.
+     *
+     * @param listener the listener, standing in for one node's listener container
+     */
+    public void subscribe(MessageListener listener) {
+        subscribers.add(listener);
+    }
+
+    /**
+     * Creates a template whose value operations read and write this store.
+     *
+     * @param <V> the value type
+     * @return the template stand-in
+     */
+    @SuppressWarnings("unchecked")
+    public <V> RedisTemplate<String, V> template() {
+        RedisTemplate<String, V> template = mock(RedisTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        ValueOperations<String, V> ops = mock(ValueOperations.class, withSettings().strictness(Strictness.LENIENT));
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.get(anyString())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            return values.get(invocation.<String>getArgument(0));
+        });
+        when(ops.multiGet(anyCollection())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            List<Object> result = new ArrayList<>();
+            invocation.<Collection<String>>getArgument(0).forEach(key -> result.add(values.get(key)));
+            return result;
+        });
+        doAnswer(invocation -> {
+            commands.incrementAndGet();
+            values.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(ops).set(anyString(), any(), any(Duration.class));
+        when(template.delete(anyString())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            return values.remove(invocation.<String>getArgument(0)) != null;
+        });
+        when(template.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            long before = commands.get();
+            invocation.<SessionCallback<Object>>getArgument(0).execute(template);
+            commands.set(before + 1);
+            return List.of();
+        });
+        return template;
+    }
+
+    /**
+     * Creates a string template whose set operations read and write this store
+     * and whose published messages reach the subscribed listeners.
+     *
+     * @return the template stand-in
+     */
+    @SuppressWarnings("unchecked")
+    public StringRedisTemplate stringTemplate() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        SetOperations<String, String> ops = mock(SetOperations.class, withSettings().strictness(Strictness.LENIENT));
+        when(template.opsForSet()).thenReturn(ops);
+        when(ops.members(anyString())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            Set<String> members = sets.get(invocation.<String>getArgument(0));
+            return members == null ? Set.of() : new HashSet<>(members);
+        });
+        when(ops.add(anyString(), any(String[].class))).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            Set<String> members = sets.computeIfAbsent(invocation.getArgument(0), key -> ConcurrentHashMap.newKeySet());
+            long added = 0;
+            for (Object member : invocation.getRawArguments()[1] instanceof Object[] array ? array : new Object[0]) {
+                added += members.add((String) member) ? 1 : 0;
+            }
+            return added;
+        });
+        when(ops.remove(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            Set<String> members = sets.get(invocation.<String>getArgument(0));
+            long removed = 0;
+            for (Object member : invocation.getRawArguments()[1] instanceof Object[] array ? array : new Object[0]) {
+                removed += members != null && members.remove(member) ? 1 : 0;
+            }
+            return removed;
+        });
+        when(template.delete(anyString())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            return sets.remove(invocation.<String>getArgument(0)) != null
+                    | values.remove(invocation.<String>getArgument(0)) != null;
+        });
+        when(template.expire(anyString(), any(Duration.class))).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            return containsKey(invocation.getArgument(0));
+        });
+        when(template.convertAndSend(anyString(), anyString())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            DefaultMessage message = new DefaultMessage(
+                    invocation.<String>getArgument(0).getBytes(StandardCharsets.UTF_8),
+                    invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8));
+            subscribers.forEach(listener -> listener.onMessage(message, null));
+            return (long) subscribers.size();
+        });
+        return template;
+    }
+}
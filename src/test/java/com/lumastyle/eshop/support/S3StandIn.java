@@ -0,0 +1,280 @@
+package com.lumastyle.eshop.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3BaseClientBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local S3-compatible server for tests, addressed path-style
+ * ({@code http://127.0.0.1:port/bucket/key}). It understands PutObject, HeadObject, DeleteObject and the
+ * multipart upload calls, decodes the {@code aws-chunked} bodies the SDK sends, and keeps only
+ * the size and MD5 of every stored object, so uploading many large files costs no memory.
+ * Every request can be delayed by a fixed latency to stand in for the round-trip to S3.
+ */
+public class S3StandIn implements AutoCloseable {
+
+    /**
+     * A stored object.
+     *
+     * @param size the number of bytes received
+     * @param md5  the hex MD5 of the content
+     * @param parts the number of parts of a multipart upload, 1 for a single PUT
+     */
+    public record StoredObject(long size, String md5, int parts) {
+    }
+
+    private final HttpServer server;
+    // platform threads: the JDK server reads request bodies inside synchronized blocks, which would
+    // pin virtual threads to their carriers and starve the virtual threads of the client under test
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    // uploadId -> part number -> received part
+    private final Map<String, Map<Integer, StoredObject>> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final long latencyMillis;
+
+    public S3StandIn() throws IOException {
+        this(0);
+    }
+
+    public S3StandIn(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Points a sync or async S3 client builder at this server. The clients send
+     * {@code Expect: 100-continue} with every upload, which the JDK HTTP server does not answer,
+     * so the header is removed before a request is sent.
+     */
+    public <B extends S3BaseClientBuilder<B, ?>> B configure(B builder) {
+        return builder
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .region(Region.EU_NORTH_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .overrideConfiguration(config -> config.addExecutionInterceptor(new ExecutionInterceptor() {
+                    @Override
+                    public SdkHttpRequest modifyHttpRequest(Context.ModifyHttpRequest context,
+                                                            ExecutionAttributes executionAttributes) {
+                        return context.httpRequest().toBuilder().removeHeader("Expect").build();
+                    }
+                }));
+    }
+
+    /**
+     * The stored object under {@code bucket/key}, or {@code null}.
+     */
+    public StoredObject object(String bucket, String key) {
+        return objects.get(bucket + "/" + key);
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    /**
+     * Multipart uploads that were started but neither completed nor aborted.
+     */
+    public int openUploads() {
+        return uploads.size();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    // === Helper methods ===
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+            String path = exchange.getRequestURI().getPath().substring(1);
+            Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            if ("PUT".equals(method) && params.containsKey("uploadId")) {
+                StoredObject part = receive(exchange);
+                Map<Integer, StoredObject> parts = uploads.get(params.get("uploadId"));
+                if (parts == null) {
+                    respond(exchange, 404, error("NoSuchUpload"));
+                    return;
+                }
+                parts.put(Integer.parseInt(params.get("partNumber")), part);
+                exchange.getResponseHeaders().add("ETag", "\"" + part.md5() + "\"");
+                respond(exchange, 200, "");
+            } else if ("PUT".equals(method)) {
+                StoredObject object = receive(exchange);
+                objects.put(path, object);
+                exchange.getResponseHeaders().add("ETag", "\"" + object.md5() + "\"");
+                respond(exchange, 200, "");
+            } else if ("POST".equals(method) && params.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                respond(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + path.substring(0, path.indexOf('/'))
+                        + "</Bucket><Key>" + path.substring(path.indexOf('/') + 1) + "</Key><UploadId>" + uploadId
+                        + "</UploadId></InitiateMultipartUploadResult>");
+            } else if ("POST".equals(method) && params.containsKey("uploadId")) {
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                Map<Integer, StoredObject> parts = uploads.remove(params.get("uploadId"));
+                if (parts == null) {
+                    respond(exchange, 404, error("NoSuchUpload"));
+                    return;
+                }
+                long size = parts.values().stream().mapToLong(StoredObject::size).sum();
+                String etag = "multipart-" + parts.size();
+                objects.put(path, new StoredObject(size, etag, parts.size()));
+                respond(exchange, 200, "<CompleteMultipartUploadResult><Key>" + path + "</Key><ETag>\"" + etag
+                        + "\"</ETag></CompleteMultipartUploadResult>");
+            } else if ("HEAD".equals(method)) {
+                StoredObject object = objects.get(path);
+                if (object == null) {
+                    respond(exchange, 404, null);
+                    return;
+                }
+                exchange.getResponseHeaders().add("ETag", "\"" + object.md5() + "\"");
+                respond(exchange, 200, null);
+            } else if ("DELETE".equals(method) && params.containsKey("uploadId")) {
+                uploads.remove(params.get("uploadId"));
+                respond(exchange, 204, null);
+            } else if ("DELETE".equals(method)) {
+                objects.remove(path);
+                respond(exchange, 204, null);
+            } else {
+                respond(exchange, 501, error("NotImplemented"));
+            }
+        }
+    }
+
+    /**
+     * Reads a request body, decoding {@code aws-chunked} framing, into a size and digest.
+     */
+    private StoredObject receive(HttpExchange exchange) throws IOException {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream body = exchange.getRequestBody();
+        String sha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (sha256 != null && sha256.startsWith("STREAMING-"))
+                || (encoding != null && encoding.contains("aws-chunked"));
+        long size = 0;
+        byte[] buffer = new byte[64 * 1024];
+        if (chunked) {
+            for (long chunk = chunkSize(body); chunk > 0; chunk = chunkSize(body)) {
+                for (long left = chunk; left > 0; ) {
+                    int read = body.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (read < 0) {
+                        throw new IOException("Truncated chunk");
+                    }
+                    md5.update(buffer, 0, read);
+                    left -= read;
+                }
+                size += chunk;
+                readLine(body);
+            }
+            // trailing checksums and signatures
+            body.transferTo(OutputStream.nullOutputStream());
+        } else {
+            try (DigestInputStream in = new DigestInputStream(body, md5)) {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    size += read;
+                }
+            }
+        }
+        bytesReceived.addAndGet(size);
+        return new StoredObject(size, HexFormat.of().formatHex(md5.digest()), 1);
+    }
+
+    private static long chunkSize(InputStream in) throws IOException {
+        String header = readLine(in);
+        int extension = header.indexOf(';');
+        return Long.parseLong(extension < 0 ? header.trim() : header.substring(0, extension), 16);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0 && b != '\n'; b = in.read()) {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new ConcurrentHashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                params.put(eq < 0 ? pair : pair.substring(0, eq), eq < 0 ? "" : pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static String error(String code) {
+        return "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.lumastyle.eshop.util;
 
+import com.lumastyle.eshop.security.AppUserPrincipal;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.io.Encoders;
@@ -8,7 +11,6 @@ import org.junit.jupiter.api.Test;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.lang.reflect.Field;
 import java.security.Key;
 import java.util.Collections;
 
@@ -16,26 +18,18 @@ import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Unit tests for JwtUtil.
- * Uses reflection to set @Value-injected fields.
  */
 class JwtUtilTest {
 
-    private final JwtUtil jwtUtil = new JwtUtil();
+    private JwtUtil jwtUtil;
 
     @BeforeEach
-    void setUp() throws Exception {
+    void setUp() {
         // Generate a secure 256-bit key for HS256
         Key key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
         String base64Key = Encoders.BASE64.encode(key.getEncoded());
-        // Inject the Base64-encoded key into the correct field
-        Field secretField = JwtUtil.class.getDeclaredField("secretKey");
-        secretField.setAccessible(true);
-        secretField.set(jwtUtil, base64Key);
-
-        // Set expiration to 1 hour
-        Field expirationField = JwtUtil.class.getDeclaredField("expiration");
-        expirationField.setAccessible(true);
-        expirationField.set(jwtUtil, 1000L * 60 * 60);
+        // Expiration set to 1 hour
+        jwtUtil = new JwtUtil(base64Key, 1000L * 60 * 60);
     }
 
     /**
@@ -52,6 +46,20 @@ class JwtUtilTest {
         assertTrue(jwtUtil.validateToken(token, userDetails));
     }
 
+    /**
+     * Test: the user ID of an application principal is embedded as a claim.
+     */
+    @Test
+    void generateTokenEmbedsUserId() {
+        UserDetails principal = new AppUserPrincipal("user-1", "test@example.com", "", Collections.emptyList());
+
+        String token = jwtUtil.generateToken(principal);
+
+        assertEquals("user-1", jwtUtil.extractUserId(token));
+        assertNull(jwtUtil.extractUserId(jwtUtil.generateToken(
+                new User("plain@example.com", "", Collections.emptyList()))));
+    }
+
     /**
      * Test: extracting from a malformed token should throw.
      */
@@ -60,4 +68,31 @@ class JwtUtilTest {
         String badToken = "malformed.token.value";
         assertThrows(Exception.class, () -> jwtUtil.extractUsername(badToken));
     }
+
+    /**
+     * Test: parsed claims can be validated without parsing the token again.
+     */
+    @Test
+    void parseTokenOnceAndValidateClaims() {
+        UserDetails userDetails = new User("test@example.com", "", Collections.emptyList());
+        String token = jwtUtil.generateToken(userDetails);
+
+        Claims claims = jwtUtil.parseToken(token);
+
+        assertEquals("test@example.com", claims.getSubject());
+        assertTrue(jwtUtil.validateToken(claims, userDetails));
+        assertFalse(jwtUtil.validateToken(claims, new User("other@example.com", "", Collections.emptyList())));
+    }
+
+    /**
+     * Test: a token signed with a different key is rejected.
+     */
+    @Test
+    void parseTokenRejectsForeignSignature() {
+        Key otherKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        JwtUtil other = new JwtUtil(Encoders.BASE64.encode(otherKey.getEncoded()), 1000L * 60 * 60);
+        String token = other.generateToken(new User("test@example.com", "", Collections.emptyList()));
+
+        assertThrows(JwtException.class, () -> jwtUtil.parseToken(token));
+    }
 }
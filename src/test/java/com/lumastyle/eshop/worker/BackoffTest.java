@@ -0,0 +1,32 @@
+package com.lumastyle.eshop.worker;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link Backoff}, the retry delays of the background workers.
+ */
+@ActiveProfiles("test")
+class BackoffTest {
+
+    /**
+     * Test: backoff grows exponentially, stays within the cap and is jittered.
+     */
+    @Test
+    @DisplayName("millis grows and respects the cap")
+    @Tag("Unit")
+    void millis_bounds() {
+        for (int i = 0; i < 100; i++) {
+            long first = Backoff.millis(1, 2000, 300000);
+            long fourth = Backoff.millis(4, 2000, 300000);
+            long capped = Backoff.millis(20, 2000, 300000);
+            assertTrue(first >= 1000 && first <= 2000);
+            assertTrue(fourth >= 8000 && fourth <= 16000);
+            assertTrue(capped >= 150000 && capped <= 300000);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.FileCleanupEntity;
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link FileCleanupQueue}, verifying the grace period of queued files and that an
+ * upload withdraws its key or waits while the worker deletes the file.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class FileCleanupQueueTest {
+
+    private static final String KEY = "a".repeat(64) + ".png";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private BulkOperations bulk;
+
+    @InjectMocks
+    private FileCleanupQueue queue;
+
+    /**
+     * Sets a ten minute grace period, a one second lease and a 10 ms poll interval.
+     */
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(queue, "graceMillis", 600000L);
+        ReflectionTestUtils.setField(queue, "leaseMillis", 1000L);
+        ReflectionTestUtils.setField(queue, "pollMillis", 10L);
+    }
+
+    /**
+     * Test: enqueue upserts each key in one bulk write, due after the grace period, so a key
+     * queued twice stays a single entry.
+     */
+    @Test
+    @DisplayName("enqueue upserts the keys due after the grace period")
+    @Tag("Unit")
+    void enqueue_upsertsKeysAfterGrace() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileCleanupEntity.class)).thenReturn(bulk);
+
+        queue.enqueue(List.of(KEY, "b".repeat(64)));
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(2)).upsert(any(Query.class), updates.capture());
+        verify(bulk).execute();
+        Instant due = (Instant) updates.getValue().getUpdateObject().get("$set", Document.class).get("nextAttemptAt");
+        assertTrue(due.isAfter(Instant.now().plusSeconds(500)));
+
+        queue.enqueue(List.of());
+        verifyNoMoreInteractions(bulk);
+    }
+
+    /**
+     * Test: an upload of a key that is not queued only looks the key up.
+     */
+    @Test
+    @DisplayName("withdraw does nothing when the key is not queued")
+    @Tag("Unit")
+    void withdraw_notQueued_returns() {
+        when(mongoTemplate.exists(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(false);
+
+        queue.withdraw(KEY);
+
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(FileCleanupEntity.class));
+    }
+
+    /**
+     * Test: a queued key that the worker is not deleting is removed from the queue at once.
+     */
+    @Test
+    @DisplayName("withdraw removes a queued key")
+    @Tag("Unit")
+    void withdraw_queued_removes() {
+        when(mongoTemplate.exists(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(true);
+        when(mongoTemplate.remove(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        queue.withdraw(KEY);
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(FileCleanupEntity.class));
+        assertEquals(KEY, removed.getValue().getQueryObject().get("key"));
+        assertTrue(removed.getValue().getQueryObject().containsKey("$or"));
+    }
+
+    /**
+     * Test: while the worker deletes the file the upload waits, and it returns once the worker
+     * has removed the entry.
+     */
+    @Test
+    @DisplayName("withdraw waits while the file is being deleted")
+    @Tag("Unit")
+    void withdraw_deleting_waits() {
+        when(mongoTemplate.exists(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(true, true, false);
+        when(mongoTemplate.remove(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(DeleteResult.acknowledged(0));
+
+        queue.withdraw(KEY);
+
+        verify(mongoTemplate, times(3)).exists(any(Query.class), eq(FileCleanupEntity.class));
+        verify(mongoTemplate, times(2)).remove(any(Query.class), eq(FileCleanupEntity.class));
+    }
+
+    /**
+     * Test: a deletion that does not end within the lease fails the upload.
+     */
+    @Test
+    @DisplayName("withdraw throws when the deletion outlasts the lease")
+    @Tag("Unit")
+    void withdraw_deletionTooLong_throws() {
+        ReflectionTestUtils.setField(queue, "leaseMillis", 50L);
+        when(mongoTemplate.exists(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(true);
+        when(mongoTemplate.remove(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(DeleteResult.acknowledged(0));
+
+        assertThrows(FileStorageException.class, () -> queue.withdraw(KEY));
+    }
+}
@@ -0,0 +1,287 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.FileCleanupEntity;
+import com.lumastyle.eshop.entity.ProductEntity;
+import com.lumastyle.eshop.exception.FileStorageException;
+import com.lumastyle.eshop.service.FileStorageService;
+import com.lumastyle.eshop.service.FileStorageService.StoredFile;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link FileCleanupWorker} with claims served from an in-memory queue, verifying
+ * the reference check, bulk deletion, retries and the orphan sweep.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class FileCleanupWorkerTest {
+
+    private static final String KEY_A = "a".repeat(64) + ".png";
+    private static final String KEY_B = "b".repeat(64) + ".png";
+    private static final String KEY_C = "c".repeat(64) + ".jpg";
+
+    @Mock
+    private FileStorageService fileStorage;
+    @Mock
+    private FileCleanupQueue fileCleanupQueue;
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private final Map<String, FileCleanupEntity> queue = new LinkedHashMap<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private FileCleanupWorker worker;
+
+    /**
+     * Creates a worker whose claims take the next file from an in-memory queue, whose claimed
+     * files can all be marked as being deleted and whose storage URLs are the key under a fixed
+     * bucket URL.
+     */
+    @BeforeEach
+    void setUp() {
+        worker = new FileCleanupWorker(fileStorage, fileCleanupQueue, mongoTemplate,
+                registry.counter("deleted"), registry.counter("errors"), registry.counter("failed"),
+                registry.counter("orphans"), registry.timer("batch"), queueDepth);
+        ReflectionTestUtils.setField(worker, "batchSize", 1000);
+        ReflectionTestUtils.setField(worker, "maxAttempts", 2);
+        ReflectionTestUtils.setField(worker, "initialBackoffMillis", 60000L);
+        ReflectionTestUtils.setField(worker, "maxBackoffMillis", 3600000L);
+        ReflectionTestUtils.setField(worker, "leaseMillis", 300000L);
+        ReflectionTestUtils.setField(worker, "sweepEnabled", true);
+        ReflectionTestUtils.setField(worker, "orphanMinAgeMillis", 86400000L);
+
+        when(fileStorage.urlOf(any())).thenAnswer(invocation -> "https://bucket/" + invocation.getArgument(0));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(FileCleanupEntity.class))).thenAnswer(invocation -> {
+            if (queue.isEmpty()) {
+                return null;
+            }
+            FileCleanupEntity file = queue.remove(queue.keySet().iterator().next());
+            file.setAttempts(file.getAttempts() + 1);
+            return file;
+        });
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(FileCleanupEntity.class)))
+                .thenAnswer(invocation -> {
+                    long claimed = keysOf(invocation.getArgument(0)).size();
+                    return UpdateResult.acknowledged(claimed, claimed, null);
+                });
+    }
+
+    /**
+     * Adds a due file to the in-memory queue.
+     *
+     * @param key      the storage key
+     * @param attempts the attempts made so far
+     */
+    private void queue(String key, int attempts) {
+        queue.put(key, FileCleanupEntity.builder()
+                .key(key)
+                .status(FileCleanupEntity.STATUS_QUEUED)
+                .attempts(attempts)
+                .createdAt(Instant.now())
+                .nextAttemptAt(Instant.now())
+                .build());
+    }
+
+    /**
+     * Test: a batch checks the references once, keeps files a product uses again, deletes the
+     * rest in one call and removes both from the queue.
+     */
+    @Test
+    @DisplayName("deleteBatch deletes unreferenced files in one call")
+    @Tag("Unit")
+    void deleteBatch_deletesUnreferenced() {
+        queue(KEY_A, 0);
+        queue(KEY_B, 0);
+        queue(KEY_C, 0);
+        ProductEntity product = ProductEntity.builder().imageUrl("https://bucket/" + KEY_B).build();
+        when(mongoTemplate.find(any(Query.class), eq(ProductEntity.class))).thenReturn(List.of(product));
+        when(fileStorage.deleteFiles(anyCollection())).thenReturn(Map.of());
+
+        assertEquals(3, worker.deleteBatch());
+
+        verify(fileStorage).deleteFiles(List.of(KEY_A, KEY_C));
+        ArgumentCaptor<Query> references = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(references.capture(), eq(ProductEntity.class));
+        List<?> conditions = references.getValue().getQueryObject().getList("$or", Object.class);
+        assertEquals(ProductEntity.IMAGE_FIELDS.size(), conditions.size());
+        assertEquals(new Document("imageUrl", new Document("$in",
+                List.of("https://bucket/" + KEY_A, "https://bucket/" + KEY_B, "https://bucket/" + KEY_C))),
+                conditions.getFirst());
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).remove(removed.capture(), eq(FileCleanupEntity.class));
+        assertEquals(List.of(KEY_B), keysOf(removed.getAllValues().get(0)));
+        assertEquals(List.of(KEY_A, KEY_C), keysOf(removed.getAllValues().get(1)));
+        assertEquals(2, registry.counter("deleted").count());
+        assertEquals(1, registry.timer("batch").count());
+    }
+
+    /**
+     * Test: a key the storage could not delete is rescheduled while the others leave the queue.
+     */
+    @Test
+    @DisplayName("deleteBatch reschedules files that could not be deleted")
+    @Tag("Unit")
+    void deleteBatch_partialFailure_reschedules() {
+        queue(KEY_A, 0);
+        queue(KEY_C, 0);
+        when(fileStorage.deleteFiles(anyCollection())).thenReturn(Map.of(KEY_C, "AccessDenied: denied"));
+
+        worker.deleteBatch();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(FileCleanupEntity.class));
+        assertEquals(List.of(KEY_A), keysOf(removed.getValue()));
+        verify(mongoTemplate).save(argThat((FileCleanupEntity file) -> file.getKey().equals(KEY_C)
+                && FileCleanupEntity.STATUS_QUEUED.equals(file.getStatus())
+                && file.getNextAttemptAt().isAfter(Instant.now())
+                && "AccessDenied: denied".equals(file.getLastError())));
+        assertEquals(1, registry.counter("deleted").count());
+        assertEquals(1, registry.counter("errors").count());
+    }
+
+    /**
+     * Test: an unreachable storage reschedules the whole batch, and a file on its last attempt
+     * stays in the queue as failed.
+     */
+    @Test
+    @DisplayName("deleteBatch reschedules batch when storage is down")
+    @Tag("Unit")
+    void deleteBatch_storageDown_reschedules() {
+        queue(KEY_A, 0);
+        queue(KEY_C, 1);
+        when(fileStorage.deleteFiles(anyCollection())).thenThrow(new FileStorageException("Deletion failed"));
+
+        worker.deleteBatch();
+
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(FileCleanupEntity.class));
+        verify(mongoTemplate).save(argThat((FileCleanupEntity file) -> file.getKey().equals(KEY_A)
+                && FileCleanupEntity.STATUS_QUEUED.equals(file.getStatus())));
+        verify(mongoTemplate).save(argThat((FileCleanupEntity file) -> file.getKey().equals(KEY_C)
+                && FileCleanupEntity.STATUS_FAILED.equals(file.getStatus())
+                && file.getNextAttemptAt() == null));
+        assertEquals(2, registry.counter("errors").count());
+        assertEquals(1, registry.counter("failed").count());
+    }
+
+    /**
+     * Test: the drain keeps taking batches while they are full and then refreshes the gauge.
+     */
+    @Test
+    @DisplayName("drainQueue takes batches until the queue is empty")
+    @Tag("Unit")
+    void drainQueue_fullBatches_continues() {
+        ReflectionTestUtils.setField(worker, "batchSize", 2);
+        queue(KEY_A, 0);
+        queue(KEY_B, 0);
+        queue(KEY_C, 0);
+        when(fileStorage.deleteFiles(anyCollection())).thenReturn(Map.of());
+        when(mongoTemplate.count(any(Query.class), eq(FileCleanupEntity.class))).thenReturn(7L);
+
+        worker.drainQueue();
+
+        verify(fileStorage).deleteFiles(List.of(KEY_A, KEY_B));
+        verify(fileStorage).deleteFiles(List.of(KEY_C));
+        assertEquals(3, registry.counter("deleted").count());
+        assertEquals(7, queueDepth.get());
+    }
+
+    /**
+     * Test: a file withdrawn by an upload after the claim is not marked as being deleted, so
+     * only the files still claimed are deleted.
+     */
+    @Test
+    @DisplayName("deleteBatch skips files withdrawn since the claim")
+    @Tag("Unit")
+    void deleteBatch_withdrawnFile_skipped() {
+        queue(KEY_A, 0);
+        queue(KEY_C, 0);
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(FileCleanupEntity.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.find(any(Query.class), eq(FileCleanupEntity.class)))
+                .thenReturn(List.of(FileCleanupEntity.builder().key(KEY_C).build()));
+        when(fileStorage.deleteFiles(anyCollection())).thenReturn(Map.of());
+
+        assertEquals(2, worker.deleteBatch());
+
+        ArgumentCaptor<Query> marked = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> deleting = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(marked.capture(), deleting.capture(), eq(FileCleanupEntity.class));
+        assertEquals(List.of(KEY_A, KEY_C), keysOf(marked.getValue()));
+        assertNotNull(marked.getValue().getQueryObject().get("nextAttemptAt"));
+        assertTrue(deleting.getValue().getUpdateObject().get("$set", Document.class).containsKey("deletingUntil"));
+        verify(fileStorage).deleteFiles(List.of(KEY_C));
+        assertEquals(1, registry.counter("deleted").count());
+    }
+
+    /**
+     * Test: the sweep queues stored files that are old enough, shaped like content-hash keys
+     * and referenced by no product.
+     */
+    @Test
+    @DisplayName("sweepOrphans queues old unreferenced files")
+    @Tag("Unit")
+    void sweepOrphans_queuesOrphans() {
+        Instant old = Instant.now().minus(Duration.ofDays(2));
+        ProductEntity product = ProductEntity.builder()
+                .imageUrl("https://bucket/" + KEY_B)
+                .imageVariants(Map.of("thumbnail", "https://bucket/" + KEY_C))
+                .build();
+        when(mongoTemplate.stream(any(Query.class), eq(ProductEntity.class))).thenReturn(Stream.of(product));
+        when(fileStorage.listFiles()).thenReturn(Stream.of(
+                new StoredFile(KEY_A, old),
+                new StoredFile(KEY_B, old),
+                new StoredFile(KEY_C, old),
+                new StoredFile("d".repeat(64) + ".png", Instant.now()),
+                new StoredFile("backups/products.json", old)));
+        List<Collection<String>> enqueued = new ArrayList<>();
+        doAnswer(invocation -> enqueued.add(List.copyOf(invocation.<Collection<String>>getArgument(0))))
+                .when(fileCleanupQueue).enqueue(anyCollection());
+
+        worker.sweepOrphans();
+
+        assertEquals(List.of(List.of(KEY_A)), enqueued);
+        assertEquals(1, registry.counter("orphans").count());
+    }
+
+    // === Helper methods ===
+
+    private static List<?> keysOf(Query query) {
+        return List.copyOf((Collection<?>) query.getQueryObject().get("key", Document.class).get("$in"));
+    }
+}
@@ -0,0 +1,272 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.MailEntity;
+import com.lumastyle.eshop.repository.MailRepository;
+import com.lumastyle.eshop.support.SmtpStandIn;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link MailDispatcher} against a local {@link SmtpStandIn}, verifying
+ * batched delivery over one connection, retries and the final failure state.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MailDispatcherTest {
+
+    @Mock
+    private MailRepository mailRepository;
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private final Map<String, MailEntity> spool = new ConcurrentHashMap<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private SmtpStandIn smtp;
+    private MailDispatcher dispatcher;
+
+    /**
+     * Starts the SMTP stand-in and a dispatcher whose claims are served from an in-memory spool.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        smtp = new SmtpStandIn();
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtp.getPort());
+        mailSender.getJavaMailProperties().put("mail.from", "shop@lumastyle.test");
+        mailSender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "5000");
+        mailSender.getJavaMailProperties().put("mail.smtp.timeout", "5000");
+
+        dispatcher = newDispatcher(mailSender);
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(MailEntity.class))).thenAnswer(invocation -> {
+            String id = invocation.<Query>getArgument(0).getQueryObject().getString("id");
+            MailEntity mail = spool.remove(id);
+            if (mail != null) {
+                mail.setAttempts(mail.getAttempts() + 1);
+            }
+            return mail;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        smtp.close();
+    }
+
+    /**
+     * Creates a dispatcher over the mocked spool and the given mail sender.
+     *
+     * @param mailSender the sender delivering the batches
+     */
+    private MailDispatcher newDispatcher(JavaMailSender mailSender) {
+        MailDispatcher newDispatcher = new MailDispatcher(mailSender, mailRepository, mongoTemplate,
+                registry.counter("sent"), registry.counter("failed"), registry.counter("errors"),
+                registry.timer("send"), new AtomicLong());
+        ReflectionTestUtils.setField(newDispatcher, "threads", 1);
+        ReflectionTestUtils.setField(newDispatcher, "queueCapacity", 100);
+        ReflectionTestUtils.setField(newDispatcher, "batchSize", 20);
+        ReflectionTestUtils.setField(newDispatcher, "maxAttempts", 2);
+        ReflectionTestUtils.setField(newDispatcher, "initialBackoffMillis", 5000L);
+        ReflectionTestUtils.setField(newDispatcher, "maxBackoffMillis", 900000L);
+        ReflectionTestUtils.setField(newDispatcher, "leaseMillis", 120000L);
+        return newDispatcher;
+    }
+
+    /**
+     * Adds a queued mail to the in-memory spool.
+     *
+     * @param id       the mail ID
+     * @param to       the recipient
+     * @param attempts the attempts made so far
+     */
+    private void spool(String id, String to, int attempts) {
+        spool.put(id, MailEntity.builder()
+                .id(id)
+                .to(to)
+                .subject("Potvrzení platby")
+                .text("Děkujeme")
+                .status(MailEntity.STATUS_QUEUED)
+                .attempts(attempts)
+                .createdAt(Instant.now())
+                .nextAttemptAt(Instant.now())
+                .build());
+    }
+
+    /**
+     * Test: a batch of mails is delivered over a single SMTP connection and removed from the spool.
+     */
+    @Test
+    @DisplayName("sendBatch sends all mails over one connection")
+    @Tag("Unit")
+    void sendBatch_reusesConnection() {
+        spool("m1", "a@example.com", 0);
+        spool("m2", "b@example.com", 0);
+        spool("m3", "c@example.com", 0);
+
+        dispatcher.sendBatch(List.of("m1", "m2", "m3"));
+
+        assertEquals(3, smtp.getMessages().size());
+        assertEquals(1, smtp.getConnections());
+        verify(mailRepository).deleteById("m1");
+        verify(mailRepository).deleteById("m2");
+        verify(mailRepository).deleteById("m3");
+        assertEquals(3, registry.counter("sent").count());
+        assertEquals(1, registry.timer("send").count());
+    }
+
+    /**
+     * Test: a rejected recipient is rescheduled while the rest of the batch is delivered.
+     */
+    @Test
+    @DisplayName("sendBatch reschedules rejected mail")
+    @Tag("Unit")
+    void sendBatch_partialFailure_reschedules() {
+        smtp.reject("bad@example.com");
+        spool("m1", "a@example.com", 0);
+        spool("m2", "bad@example.com", 0);
+
+        dispatcher.sendBatch(List.of("m1", "m2"));
+
+        verify(mailRepository).deleteById("m1");
+        verify(mailRepository, never()).deleteById("m2");
+        verify(mailRepository).save(argThat(mail -> mail.getId().equals("m2")
+                && MailEntity.STATUS_QUEUED.equals(mail.getStatus())
+                && mail.getNextAttemptAt().isAfter(Instant.now())));
+        assertEquals(1, registry.counter("sent").count());
+        assertEquals(1, registry.counter("errors").count());
+    }
+
+    /**
+     * Test: the last failed attempt leaves the mail in the spool as failed.
+     */
+    @Test
+    @DisplayName("sendBatch gives up after max attempts")
+    @Tag("Unit")
+    void sendBatch_lastAttempt_fails() {
+        smtp.reject("bad@example.com");
+        spool("m1", "bad@example.com", 1);
+
+        dispatcher.sendBatch(List.of("m1"));
+
+        verify(mailRepository).save(argThat(mail -> MailEntity.STATUS_FAILED.equals(mail.getStatus())
+                && mail.getLastError() != null));
+        assertEquals(1, registry.counter("failed").count());
+    }
+
+    /**
+     * Test: an unreachable server reschedules the whole batch.
+     */
+    @Test
+    @DisplayName("sendBatch reschedules batch when server is down")
+    @Tag("Unit")
+    void sendBatch_serverDown_reschedules() throws Exception {
+        smtp.close();
+        spool("m1", "a@example.com", 0);
+        spool("m2", "b@example.com", 0);
+
+        dispatcher.sendBatch(List.of("m1", "m2"));
+
+        verify(mailRepository, times(2)).save(any(MailEntity.class));
+        verify(mailRepository, never()).deleteById(any());
+        assertEquals(2, registry.counter("errors").count());
+    }
+
+    /**
+     * Test: a connection that fails to close after every message was accepted does not send
+     * the batch again.
+     */
+    @Test
+    @DisplayName("sendBatch treats a failed close as sent")
+    @Tag("Unit")
+    void sendBatch_closeFailure_marksSent() {
+        JavaMailSender mailSender = mock(JavaMailSender.class);
+        doThrow(new MailSendException("Failed to close server connection after message sending"))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        spool("m1", "a@example.com", 0);
+        spool("m2", "b@example.com", 0);
+
+        newDispatcher(mailSender).sendBatch(List.of("m1", "m2"));
+
+        verify(mailRepository).deleteById("m1");
+        verify(mailRepository).deleteById("m2");
+        verify(mailRepository, never()).save(any(MailEntity.class));
+        assertEquals(2, registry.counter("sent").count());
+        assertEquals(0, registry.counter("errors").count());
+    }
+
+    /**
+     * Test: a failed login reschedules the whole batch, as nothing was sent.
+     */
+    @Test
+    @DisplayName("sendBatch reschedules batch when authentication fails")
+    @Tag("Unit")
+    void sendBatch_authenticationFailure_reschedules() {
+        JavaMailSender mailSender = mock(JavaMailSender.class);
+        doThrow(new MailAuthenticationException("535 Authentication failed"))
+                .when(mailSender).send(any(SimpleMailMessage[].class));
+        spool("m1", "a@example.com", 0);
+        spool("m2", "b@example.com", 0);
+
+        newDispatcher(mailSender).sendBatch(List.of("m1", "m2"));
+
+        verify(mailRepository, times(2)).save(any(MailEntity.class));
+        verify(mailRepository, never()).deleteById(any());
+        assertEquals(2, registry.counter("errors").count());
+    }
+
+    /**
+     * Test: enqueued mails are delivered by the virtual-thread drainers.
+     */
+    @Test
+    @DisplayName("enqueue delivers mails asynchronously")
+    @Tag("Unit")
+    void enqueue_deliversAsynchronously() throws Exception {
+        spool("m1", "a@example.com", 0);
+        spool("m2", "b@example.com", 0);
+        dispatcher.start();
+        try {
+            dispatcher.enqueue("m1");
+            dispatcher.enqueue("m2");
+
+            assertTrue(smtp.awaitMessages(2, 5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.stop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.mongodb.client.result.UpdateResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link OrderCreatedAtBackfill}, verifying that orders without {@code createdAt}
+ * get the time of their ID and that a failure does not stop the application.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class OrderCreatedAtBackfillTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private OrderCreatedAtBackfill backfill;
+
+    /**
+     * Test: only orders without {@code createdAt} are updated, with the time of their ID.
+     */
+    @Test
+    @DisplayName("backfill sets createdAt from the ID of orders without it")
+    @Tag("Unit")
+    void backfill_setsCreatedAtFromId() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(OrderEntity.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null));
+
+        backfill.backfill();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq(OrderEntity.class));
+        assertEquals("{\"createdAt\": {\"$exists\": false}}", query.getValue().getQueryObject().toJson());
+        String pipeline = update.getValue().toString();
+        assertTrue(pipeline.contains("$toDate") && pipeline.contains("$_id"), pipeline);
+    }
+
+    /**
+     * Test: a failed backfill is logged and left for the next start.
+     */
+    @Test
+    @DisplayName("backfill does not throw when MongoDB fails")
+    @Tag("Unit")
+    void backfill_failure_logged() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(OrderEntity.class)))
+                .thenThrow(new DataAccessResourceFailureException("MongoDB is down"));
+
+        assertDoesNotThrow(backfill::backfill);
+    }
+}
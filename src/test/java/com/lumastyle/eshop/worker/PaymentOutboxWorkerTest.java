@@ -0,0 +1,215 @@
+package com.lumastyle.eshop.worker;
+
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.exception.GoPayIntegrationException;
+import com.lumastyle.eshop.service.GoPayService;
+import cz.gopay.api.v3.model.payment.BasePayment;
+import cz.gopay.api.v3.model.payment.Payment;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PaymentOutboxWorker}, verifying payment creation,
+ * retry scheduling and the final failure state.
+ */
+@ActiveProfiles("test")
+@ExtendWith(MockitoExtension.class)
+class PaymentOutboxWorkerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private GoPayService goPayService;
+    @Mock
+    private Counter ordersCreatedCounter;
+    @Mock
+    private Counter ordersPaymentFailedCounter;
+    @Mock
+    private Counter paymentOutboxStaleUpdatesCounter;
+
+    private PaymentOutboxWorker worker;
+
+    /**
+     * Creates the worker with the default retry settings.
+     */
+    @BeforeEach
+    void setUp() {
+        worker = new PaymentOutboxWorker(mongoTemplate, goPayService, ordersCreatedCounter,
+                ordersPaymentFailedCounter, paymentOutboxStaleUpdatesCounter, new AtomicLong(), new AtomicLong());
+        ReflectionTestUtils.setField(worker, "gopayGoId", "8123456789");
+        ReflectionTestUtils.setField(worker, "returnUrl", "http://localhost/return");
+        ReflectionTestUtils.setField(worker, "notifyUrl", "http://localhost/notify");
+        ReflectionTestUtils.setField(worker, "maxAttempts", 3);
+        ReflectionTestUtils.setField(worker, "initialBackoffMillis", 2000L);
+        ReflectionTestUtils.setField(worker, "maxBackoffMillis", 300000L);
+        ReflectionTestUtils.setField(worker, "leaseMillis", 60000L);
+    }
+
+    /**
+     * Creates a claimed pending order with the given number of attempts.
+     *
+     * @param attempts the attempt counter after the claim
+     */
+    private void claimedOrder(int attempts) {
+        OrderEntity order = new OrderEntity();
+        order.setId("order-1");
+        order.setAmount(new BigDecimal("10.00"));
+        order.setPaymentStatus(OrderEntity.PAYMENT_PENDING);
+        order.setPaymentAttempts(attempts);
+        order.setPaymentRequestedAt(Instant.now());
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(OrderEntity.class))).thenReturn(order);
+    }
+
+    /**
+     * Lets the conditional update of the order match the given number of documents.
+     */
+    private void updateMatches(long matched) {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderEntity.class)))
+                .thenReturn(UpdateResult.acknowledged(matched, matched, null));
+    }
+
+    private Document updatedQuery() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateFirst(query.capture(), any(Update.class), eq(OrderEntity.class));
+        return query.getValue().getQueryObject();
+    }
+
+    private Document updatedFields() {
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(OrderEntity.class));
+        return update.getValue().getUpdateObject();
+    }
+
+    /**
+     * Test: a successful GoPay call stores the payment ID and gateway URL on the order
+     * as long as the claiming attempt still holds it.
+     */
+    @Test
+    @DisplayName("process stores created payment")
+    @Tag("Unit")
+    void process_success() {
+        claimedOrder(1);
+        Payment payment = mock(Payment.class);
+        when(payment.getId()).thenReturn(77L);
+        when(payment.getGwUrl()).thenReturn("https://gw.sandbox.gopay.com/gw/77");
+        ArgumentCaptor<BasePayment> request = ArgumentCaptor.forClass(BasePayment.class);
+        when(goPayService.createPayment(request.capture())).thenReturn(payment);
+        updateMatches(1);
+
+        worker.process("order-1");
+
+        // GoPay takes the amount in hellers, and the order ID is the order number on every attempt
+        assertEquals(1000L, request.getValue().getAmount());
+        assertEquals("order-1", request.getValue().getOrderNumber());
+        Document query = updatedQuery();
+        assertEquals("order-1", query.get("id"));
+        assertEquals(1, query.get("paymentAttempts"));
+        assertEquals(OrderEntity.PAYMENT_PENDING, query.get("paymentStatus"));
+        Document set = (Document) updatedFields().get("$set");
+        assertEquals(OrderEntity.PAYMENT_CREATED, set.get("paymentStatus"));
+        assertEquals("77", set.get("gopayPaymentId"));
+        assertEquals("https://gw.sandbox.gopay.com/gw/77", set.get("paymentUrl"));
+        assertTrue(((Document) updatedFields().get("$unset")).containsKey("nextPaymentAttemptAt"));
+        verify(ordersCreatedCounter).increment();
+        verifyNoInteractions(paymentOutboxStaleUpdatesCounter);
+    }
+
+    /**
+     * Test: a payment created after another attempt took the order over is not recorded.
+     */
+    @Test
+    @DisplayName("process drops outcome of superseded attempt")
+    @Tag("Unit")
+    void process_success_superseded() {
+        claimedOrder(1);
+        Payment payment = mock(Payment.class);
+        when(payment.getId()).thenReturn(77L);
+        when(goPayService.createPayment(any(BasePayment.class))).thenReturn(payment);
+        updateMatches(0);
+
+        worker.process("order-1");
+
+        verify(paymentOutboxStaleUpdatesCounter).increment();
+        verifyNoInteractions(ordersCreatedCounter);
+    }
+
+    /**
+     * Test: a failed attempt below the limit is rescheduled with backoff.
+     */
+    @Test
+    @DisplayName("process reschedules failed attempt")
+    @Tag("Unit")
+    void process_failure_reschedules() {
+        claimedOrder(1);
+        when(goPayService.createPayment(any(BasePayment.class)))
+                .thenThrow(new GoPayIntegrationException("GoPay unavailable"));
+
+        updateMatches(1);
+
+        worker.process("order-1");
+
+        Document set = (Document) updatedFields().get("$set");
+        assertTrue(((Instant) set.get("nextPaymentAttemptAt")).isAfter(Instant.now()));
+        assertFalse(set.containsKey("paymentStatus"));
+        verifyNoInteractions(ordersPaymentFailedCounter, paymentOutboxStaleUpdatesCounter);
+    }
+
+    /**
+     * Test: the last failed attempt marks the payment as failed.
+     */
+    @Test
+    @DisplayName("process gives up after max attempts")
+    @Tag("Unit")
+    void process_failure_givesUp() {
+        claimedOrder(3);
+        when(goPayService.createPayment(any(BasePayment.class)))
+                .thenThrow(new GoPayIntegrationException("GoPay unavailable"));
+
+        updateMatches(1);
+
+        worker.process("order-1");
+
+        assertEquals(3, updatedQuery().get("paymentAttempts"));
+        assertEquals(OrderEntity.PAYMENT_FAILED, ((Document) updatedFields().get("$set")).get("paymentStatus"));
+        assertTrue(((Document) updatedFields().get("$unset")).containsKey("nextPaymentAttemptAt"));
+        verify(ordersPaymentFailedCounter).increment();
+    }
+
+    /**
+     * Test: an order claimed elsewhere is skipped without calling GoPay.
+     */
+    @Test
+    @DisplayName("process skips order that cannot be claimed")
+    @Tag("Unit")
+    void process_notClaimed() {
+        worker.process("order-1");
+
+        verifyNoInteractions(goPayService);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(OrderEntity.class));
+    }
+}
@@ -0,0 +1,225 @@
+package com.lumastyle.eshop.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lumastyle.eshop.entity.OrderEntity;
+import com.lumastyle.eshop.mapper.OrderMapper;
+import com.lumastyle.eshop.repository.OrderRepository;
+import com.lumastyle.eshop.repository.ProductRepository;
+import com.lumastyle.eshop.service.EmailService;
+import com.lumastyle.eshop.service.UserService;
+import com.lumastyle.eshop.service.impl.OrderServiceImpl;
+import com.lumastyle.eshop.store.CartStore;
+import com.lumastyle.eshop.support.GoPayStandIn;
+import cz.gopay.api.v3.model.payment.Payment;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PaymentReconciler}. The reconciler drives a real
+ * {@link OrderServiceImpl} against an in-memory order collection, and the real GoPay service
+ * against the {@link GoPayStandIn}, so the transitions it applies are the ones of a notification.
+ */
+@ActiveProfiles("test")
+class PaymentReconcilerTest {
+
+    private static final int OLD_ORDERS = 250;
+    private static final int RECENT_ORDERS = 5;
+
+    // keyed by the ObjectId, so iteration is in creation order like the payment_reconcile index
+    private final Map<ObjectId, OrderEntity> orders = new ConcurrentSkipListMap<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong lag = new AtomicLong();
+    private final CartStore cartStore = mock(CartStore.class);
+
+    private GoPayStandIn goPay;
+    private PaymentReconciler reconciler;
+
+    /**
+     * Creates hour-old orders, every fifth one paid and every fifth one timed out at GoPay,
+     * and a few orders placed just now, and starts the reconciler with four concurrent checks.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        goPay = new GoPayStandIn(2);
+        long hourAgo = Instant.now().minusSeconds(3600).getEpochSecond();
+        for (int i = 0; i < OLD_ORDERS + RECENT_ORDERS; i++) {
+            long seconds = i < OLD_ORDERS ? hourAgo : Instant.now().getEpochSecond();
+            ObjectId id = new ObjectId(String.format("%08x%016x", seconds, i));
+            long paymentId = 3_000_000_000L + i;
+            orders.put(id, OrderEntity.builder()
+                    .id(id.toHexString())
+                    .userId("user-" + i)
+                    .email("customer" + i + "@example.com")
+                    .paymentStatus(OrderEntity.PAYMENT_CREATED)
+                    .gopayPaymentId(String.valueOf(paymentId))
+                    .build());
+            if (i % 5 == 0) {
+                goPay.setState(paymentId, Payment.SessionState.PAID);
+            } else if (i % 5 == 1) {
+                goPay.setState(paymentId, Payment.SessionState.TIMEOUTED);
+            }
+        }
+        goPay.fail(3_000_000_007L);
+
+        OrderServiceImpl orderService = new OrderServiceImpl(orderRepository(), cartStore,
+                mock(ProductRepository.class), Mappers.getMapper(OrderMapper.class), mock(UserService.class),
+                mock(EmailService.class), mock(PaymentOutboxWorker.class), goPay.newService(), serviceMongoTemplate(),
+                new ObjectMapper(), registry.counter("created"), registry.counter("failed"),
+                registry.counter("deduplicated"), mock(Timer.class));
+        reconciler = new PaymentReconciler(reconcilerMongoTemplate(), orderService,
+                registry.counter("checked"), registry.counter("settled"), registry.counter("errors"), lag);
+        ReflectionTestUtils.setField(reconciler, "concurrency", 4);
+        ReflectionTestUtils.setField(reconciler, "batchSize", 100);
+        ReflectionTestUtils.setField(reconciler, "maxPerRun", 1000);
+        ReflectionTestUtils.setField(reconciler, "minAgeMillis", 600_000L);
+        reconciler.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        reconciler.stop();
+        goPay.close();
+    }
+
+    /**
+     * Test: one run checks every created payment older than the minimum age with at most four
+     * GoPay calls at a time, settles the paid and timed out ones and counts the failed check.
+     */
+    @Test
+    @DisplayName("reconcile settles payments whose notification was lost")
+    @Tag("Unit")
+    void reconcile_settlesLostNotifications() {
+        reconciler.reconcile();
+
+        assertEquals(OLD_ORDERS, goPay.statusCalls());
+        assertTrue(goPay.maxConcurrentCalls() <= 4, "concurrent calls: " + goPay.maxConcurrentCalls());
+        assertTrue(goPay.maxConcurrentCalls() > 1, "checks did not overlap");
+        assertEquals(OLD_ORDERS, registry.counter("checked").count());
+        assertEquals(2 * OLD_ORDERS / 5, registry.counter("settled").count());
+        assertEquals(1, registry.counter("errors").count());
+        assertEquals(OLD_ORDERS / 5, statusCount(OrderEntity.PAYMENT_PAID));
+        assertEquals(OLD_ORDERS / 5, statusCount(OrderEntity.PAYMENT_CANCELED));
+        verify(cartStore, times(OLD_ORDERS / 5)).deleteByUserId(anyString());
+        // the oldest payments still in progress were created an hour ago
+        assertTrue(lag.get() >= 3600 && lag.get() < 3700, "lag: " + lag.get());
+    }
+
+    /**
+     * Test: a run stops after {@code max-per-run} orders, the next run continues after the last
+     * checked order, and the run after reaching the end starts again from the oldest one.
+     */
+    @Test
+    @DisplayName("reconcile resumes after the last checked order")
+    @Tag("Unit")
+    void reconcile_resumesAfterLastOrder() {
+        ReflectionTestUtils.setField(reconciler, "maxPerRun", 150);
+
+        reconciler.reconcile();
+        assertEquals(150, goPay.statusCalls());
+
+        reconciler.reconcile();
+        assertEquals(OLD_ORDERS, goPay.statusCalls());
+
+        // 100 orders are settled, the remaining 150 are checked again from the oldest
+        reconciler.reconcile();
+        assertEquals(OLD_ORDERS + 150, goPay.statusCalls());
+        assertEquals(2 * OLD_ORDERS / 5, registry.counter("settled").count());
+    }
+
+    // === Helper methods ===
+
+    private long statusCount(String paymentStatus) {
+        return orders.values().stream().filter(order -> paymentStatus.equals(order.getPaymentStatus())).count();
+    }
+
+    private OrderRepository orderRepository() {
+        OrderRepository repository = mock(OrderRepository.class, withSettings().strictness(Strictness.LENIENT));
+        when(repository.findByGopayPaymentId(anyString())).thenAnswer(invocation -> orders.values().stream()
+                .filter(order -> invocation.getArgument(0).equals(order.getGopayPaymentId()))
+                .findFirst());
+        return repository;
+    }
+
+    /**
+     * Applies the conditional settle update of the order service to the in-memory orders; no
+     * order is left with pending side effects.
+     */
+    private MongoTemplate serviceMongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(OrderEntity.class))).thenAnswer(invocation -> {
+            String paymentId = invocation.<Query>getArgument(0).getQueryObject().getString("gopayPaymentId");
+            if (paymentId == null) {
+                // claims of pending side effects: the side effects of settled orders all succeed
+                return null;
+            }
+            Document set = (Document) invocation.<Update>getArgument(1).getUpdateObject().get("$set");
+            synchronized (orders) {
+                Optional<OrderEntity> order = orders.values().stream()
+                        .filter(o -> paymentId.equals(o.getGopayPaymentId()))
+                        .filter(o -> OrderEntity.PAYMENT_CREATED.equals(o.getPaymentStatus()))
+                        .findFirst();
+                order.ifPresent(o -> o.setPaymentStatus(set.getString("paymentStatus")));
+                return order.orElse(null);
+            }
+        });
+        return mongoTemplate;
+    }
+
+    /**
+     * Serves the reconciler's page queries: created orders within the {@code _id} bounds of the
+     * query, oldest first, up to its limit.
+     */
+    @SuppressWarnings("unchecked")
+    private MongoTemplate reconcilerMongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().strictness(Strictness.LENIENT));
+        when(mongoTemplate.find(any(Query.class), eq(OrderEntity.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            Document bounds = (Document) ((List<Document>) query.getQueryObject().get("$and")).getFirst().get("id");
+            ObjectId before = (ObjectId) bounds.get("$lt");
+            ObjectId after = (ObjectId) bounds.get("$gt");
+            return created()
+                    .filter(entry -> entry.getKey().compareTo(before) < 0)
+                    .filter(entry -> after == null || entry.getKey().compareTo(after) > 0)
+                    .limit(query.getLimit())
+                    .map(Map.Entry::getValue)
+                    .toList();
+        });
+        when(mongoTemplate.findOne(any(Query.class), eq(OrderEntity.class)))
+                .thenAnswer(invocation -> created().map(Map.Entry::getValue).findFirst().orElse(null));
+        return mongoTemplate;
+    }
+
+    private Stream<Map.Entry<ObjectId, OrderEntity>> created() {
+        return orders.entrySet().stream()
+                .filter(entry -> OrderEntity.PAYMENT_CREATED.equals(entry.getValue().getPaymentStatus()));
+    }
+}